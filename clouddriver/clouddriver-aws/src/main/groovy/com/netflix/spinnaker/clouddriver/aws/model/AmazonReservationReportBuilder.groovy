@@ -336,8 +336,22 @@ interface AmazonReservationReportBuilder {
 
     AmazonReservationReport build(AmazonS3DataProvider dataProvider,
                                   AmazonReservationReport source) {
+      return buildWithWeights(loadWeights(dataProvider), source)
+    }
+
+    /**
+     * @return the regional reservation weights the report is built with, or null if there are none
+     */
+    static String loadWeights(AmazonS3DataProvider dataProvider) {
       // this is very particular to an internal Netflix implementation
       if (!dataProvider.supportsIdentifier(DataProvider.IdentifierType.Static, "rri_weights")) {
+        return null
+      }
+      return dataProvider.getStaticData("rri_weights", [:]) as String
+    }
+
+    AmazonReservationReport buildWithWeights(String rriWeights, AmazonReservationReport source) {
+      if (rriWeights == null) {
         return source
       }
 
@@ -353,7 +367,6 @@ interface AmazonReservationReportBuilder {
        * m5.24xlarge,us-east-1,0
        * ...
        */
-      def rriWeights = dataProvider.getStaticData("rri_weights", [:]) as String
       def lines = rriWeights.split("\n") as List<String>
 
       def regionalReservationWeights = lines.subList(1, lines.size()).collect {
@@ -49,6 +49,7 @@ import com.netflix.spinnaker.clouddriver.aws.data.ArnUtils
 import com.netflix.spinnaker.clouddriver.aws.security.AmazonClientProvider
 import com.netflix.spinnaker.clouddriver.aws.security.EddaTimeoutConfig
 import com.netflix.spinnaker.clouddriver.aws.security.NetflixAmazonCredentials
+import com.netflix.spinnaker.clouddriver.aws.security.sdkclient.AmazonRequestPriority
 import com.netflix.spinnaker.clouddriver.cache.OnDemandAgent
 import com.netflix.spinnaker.clouddriver.cache.OnDemandMetricsSupport
 import com.netflix.spinnaker.clouddriver.aws.data.Keys
@@ -197,24 +198,27 @@ class ClusterCachingAgent implements CachingAgent, OnDemandAgent, AccountAware,
 
     String serverGroupName = data.serverGroupName.toString()
 
-    Map onDemandData = metricsSupport.readData {
-      def asg = loadAutoScalingGroup(serverGroupName, true)
+    // on-demand refreshes are user-facing, serve their AWS requests ahead of periodic caching
+    Map onDemandData = AmazonRequestPriority.prioritized {
+      metricsSupport.readData {
+        def asg = loadAutoScalingGroup(serverGroupName, true)
 
-      def clients = new AmazonClients(amazonClientProvider, account, region, true)
-      Map<String, Collection<Map>> scalingPolicies = asg ? loadScalingPolicies(clients, serverGroupName) : [:]
-      Map<String, Collection<Map>> scheduledActions = asg ? loadScheduledActions(clients, serverGroupName) : [:]
+        def clients = new AmazonClients(amazonClientProvider, account, region, true)
+        Map<String, Collection<Map>> scalingPolicies = asg ? loadScalingPolicies(clients, serverGroupName) : [:]
+        Map<String, Collection<Map>> scheduledActions = asg ? loadScheduledActions(clients, serverGroupName) : [:]
 
-      Map<String, String> subnetMap = [:]
-      if (asg?.getVPCZoneIdentifier()) {
-        subnetMap.putAll(getSubnetToVpcIdMap(clients, asg.getVPCZoneIdentifier().split(',')))
-      }
+        Map<String, String> subnetMap = [:]
+        if (asg?.getVPCZoneIdentifier()) {
+          subnetMap.putAll(getSubnetToVpcIdMap(clients, asg.getVPCZoneIdentifier().split(',')))
+        }
 
-      return [
-        asgs            : asg ? [asg] : [],
-        scalingPolicies : scalingPolicies,
-        scheduledActions: scheduledActions,
-        subnetMap       : subnetMap
-      ]
+        return [
+          asgs            : asg ? [asg] : [],
+          scalingPolicies : scalingPolicies,
+          scheduledActions: scheduledActions,
+          subnetMap       : subnetMap
+        ]
+      }
     }
 
     def cacheResult = metricsSupport.transformData {
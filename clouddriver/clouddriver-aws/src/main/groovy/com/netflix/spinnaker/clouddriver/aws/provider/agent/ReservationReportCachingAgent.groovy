@@ -50,13 +50,16 @@ import com.netflix.spinnaker.clouddriver.aws.security.AmazonClientProvider
 import com.netflix.spinnaker.clouddriver.aws.security.AmazonCredentials
 import com.netflix.spinnaker.clouddriver.aws.security.NetflixAmazonCredentials
 import com.netflix.spinnaker.clouddriver.cache.CustomScheduledAgent
+import groovy.transform.EqualsAndHashCode
 import groovy.util.logging.Slf4j
 import org.springframework.context.ApplicationContext
 
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
 import java.util.concurrent.atomic.AtomicInteger
 import java.util.function.ToDoubleFunction
 
@@ -86,6 +89,10 @@ class ReservationReportCachingAgent implements CachingAgent, CustomScheduledAgen
   final MetricsSupport metricsSupport
   final Registry registry
 
+  private Map<String, Map<String, ReservationCounter>> previousCountersByAccountRegion
+  private String previousWeights
+  private Map<String, Map> previousReports
+
 
   ReservationReportCachingAgent(Registry registry,
                                 AmazonClientProvider amazonClientProvider,
@@ -181,15 +188,42 @@ class ReservationReportCachingAgent implements CachingAgent, CustomScheduledAgen
     long startTime = System.currentTimeMillis()
     log.info("Describing items in ${agentType}")
 
-    ConcurrentHashMap<String, OverallReservationDetail> reservations = new ConcurrentHashMap<>()
     ConcurrentHashMap<String, Collection<String>> errorsByRegion = new ConcurrentHashMap<>()
+    Map<String, Map<String, ReservationCounter>> countersByAccountRegion = collectReservationCounters(errorsByRegion)
 
-    accounts.each { NetflixAmazonCredentials credential ->
-      try {
-        extractReservations(reservations, errorsByRegion, credential)
-      } catch (Exception e) {
-        recordError(registry, errorsByRegion, credential, "*", e)
+    // the v4 report also depends on the regional reservation weights, which can change on their own
+    String weights = null
+    boolean weightsLoaded = false
+    try {
+      weights = AmazonReservationReportBuilder.V4.loadWeights(amazonS3DataProvider)
+      weightsLoaded = true
+    } catch (Exception e) {
+      recordErrorMetric(registry, null, null)
+      log.error("Failed to load the regional reservation weights of the 'v4' reservation report", e)
+    }
+
+    boolean changed = countersByAccountRegion != previousCountersByAccountRegion || weights != previousWeights
+    if (!changed && weightsLoaded && errorsByRegion.isEmpty() && previousReports) {
+      // nothing has changed since the last cycle, skip rebuilding (and re-serializing) the reports
+      log.info("Reservation counters and weights unchanged, reusing reports in ${agentType} (took ${System.currentTimeMillis() - startTime}ms)")
+      registry.counter("reservedInstances.reportRebuilds", "changed", "false").increment()
+
+      // serialize dates the same way a freshly built report would have
+      def start = objectMapper.convertValue(new Date(startTime), Object)
+      def end = objectMapper.convertValue(new Date(), Object)
+      previousReports.values().each { Map report ->
+        if (report.containsKey("end")) {
+          report.start = start
+          report.end = end
+        }
       }
+      return buildCacheResult(previousReports)
+    }
+    registry.counter("reservedInstances.reportRebuilds", "changed", "true").increment()
+
+    ConcurrentHashMap<String, OverallReservationDetail> reservations = new ConcurrentHashMap<>()
+    countersByAccountRegion.each { String accountRegion, Map<String, ReservationCounter> counters ->
+      addReservations(reservations, accountRegion.substring(0, accountRegion.lastIndexOf(':')), counters.values())
     }
 
     def amazonReservationReport = new AmazonReservationReport(start: new Date(startTime), end: new Date())
@@ -240,19 +274,24 @@ class ReservationReportCachingAgent implements CachingAgent, CustomScheduledAgen
     )
 
     def v4 = [:]
+    boolean v4Built = false
     try {
+      if (!weightsLoaded) {
+        throw new IllegalStateException("Regional reservation weights could not be loaded")
+      }
       // v4 is experimental so let's go out of our way to prevent a failure from breaking other versions
       v4 = objectMapper.readValue(
         objectMapper
           .writerWithView(AmazonReservationReport.Views.V4.class)
           .writeValueAsString(
-          new AmazonReservationReportBuilder.V4().build(
-            amazonS3DataProvider,
+          new AmazonReservationReportBuilder.V4().buildWithWeights(
+            weights,
             objectMapper.convertValue(v3, AmazonReservationReport)
           )
         ),
         Map
       )
+      v4Built = true
     } catch (Exception e) {
       recordErrorMetric(registry, null, null)
       log.error("Failed to build 'v4' reservation report", e)
@@ -260,46 +299,122 @@ class ReservationReportCachingAgent implements CachingAgent, CustomScheduledAgen
 
     metricsSupport.registerMetrics(objectMapper.convertValue(v3, AmazonReservationReport))
 
+    def reports = [
+      "v1"  : v1,
+      "v2"  : v2,
+
+      // temporarily backport the changes from v4 to v3 (leaving v2_5 to be what 'v3' used to be)
+      "v2_5": v3,
+      "v3"  : v4,
+      "v4"  : v4
+    ] as Map<String, Map>
+
+    // only a complete cycle can be reused, regions that failed are re-described (and a 'v4' report
+    // that failed to build is rebuilt) next time around
+    if (errorsByRegion.isEmpty() && v4Built) {
+      previousCountersByAccountRegion = countersByAccountRegion
+      previousWeights = weights
+      previousReports = reports
+    } else {
+      previousCountersByAccountRegion = null
+      previousWeights = null
+      previousReports = null
+    }
+
+    return buildCacheResult(reports)
+  }
+
+  private static CacheResult buildCacheResult(Map<String, Map> reports) {
     return new DefaultCacheResult(
-      (RESERVATION_REPORTS.ns): [
-        new MutableCacheData("v1", ["report": v1], [:]),
-        new MutableCacheData("v2", ["report": v2], [:]),
-
-        // temporarily backport the changes from v4 to v3 (leaving v2_5 to be what 'v3' used to be)
-        new MutableCacheData("v2_5", ["report": v3], [:]),
-        new MutableCacheData("v3", ["report": v4], [:]),
-        new MutableCacheData("v4", ["report": v4], [:])
-      ]
+      (RESERVATION_REPORTS.ns): reports.collect { String version, Map report ->
+        new MutableCacheData(version, ["report": report], [:])
+      }
     )
   }
 
-  void extractReservations(ConcurrentHashMap<String, OverallReservationDetail> reservations,
-                           ConcurrentHashMap<String, Collection<String>> errorsByRegion,
-                           NetflixAmazonCredentials credentials) {
-    def getReservation = { String region, String availabilityZone, String operatingSystemType, String instanceType ->
-      String key = availabilityZone == null ?
-        [region, operatingSystemType, instanceType].join(':') :
-        [availabilityZone, operatingSystemType, instanceType].join(':')
-
-      def newOverallReservationDetail = new OverallReservationDetail(
-        region: region,
-        availabilityZone: availabilityZone,
-        os: AmazonReservationReport.OperatingSystemType.valueOf(operatingSystemType as String).name,
-        instanceType: instanceType
-      )
+  /**
+   * Describes reservations and instances for every account, in parallel on the reservation report pool.
+   *
+   * @return counters keyed by "account:region", and then by availability zone (or region), os and instance type
+   */
+  Map<String, Map<String, ReservationCounter>> collectReservationCounters(ConcurrentHashMap<String, Collection<String>> errorsByRegion) {
+    Map<String, Map<String, ReservationCounter>> countersByAccountRegion = new ConcurrentHashMap<>()
 
-      def existingOverallReservationDetail = reservations.putIfAbsent(key, newOverallReservationDetail)
-      if (existingOverallReservationDetail) {
-        return existingOverallReservationDetail
+    List<Future> futures = accounts.collect { NetflixAmazonCredentials credentials ->
+      reservationReportPool.submit {
+        try {
+          extractReservationCounters(errorsByRegion, credentials).each { String region, Map<String, ReservationCounter> counters ->
+            countersByAccountRegion.put("${credentials.name}:${region}".toString(), counters)
+          }
+        } catch (Exception e) {
+          recordError(registry, errorsByRegion, credentials, "*", e)
+        }
+      } as Future
+    }
+
+    // every account shares the one timeout, rather than each waiting for up to the timeout in turn
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getTimeoutMillis())
+    futures.each { Future future ->
+      try {
+        future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+      } catch (TimeoutException e) {
+        future.cancel(true)
+        errorsByRegion.putIfAbsent("*", new CopyOnWriteArrayList<String>())
+        errorsByRegion.get("*").add("Timed out describing reservations: ${e.message}".toString())
+        recordErrorMetric(registry, null, "*")
+      }
+    }
+
+    return countersByAccountRegion
+  }
+
+  static void addReservations(ConcurrentHashMap<String, OverallReservationDetail> reservations,
+                              String accountName,
+                              Collection<ReservationCounter> counters) {
+    counters.each { ReservationCounter counter ->
+      def reservation = reservations.computeIfAbsent(counter.key()) {
+        new OverallReservationDetail(
+          region: counter.region,
+          availabilityZone: counter.availabilityZone,
+          os: AmazonReservationReport.OperatingSystemType.valueOf(counter.os).name,
+          instanceType: counter.instanceType
+        )
       }
 
-      return newOverallReservationDetail
+      reservation.totalReserved.addAndGet(counter.reserved + counter.reservedVpc)
+      reservation.totalUsed.addAndGet(counter.used + counter.usedVpc)
+
+      def account = reservation.getAccount(accountName)
+      account.reserved.addAndGet(counter.reserved)
+      account.reservedVpc.addAndGet(counter.reservedVpc)
+      account.used.addAndGet(counter.used)
+      account.usedVpc.addAndGet(counter.usedVpc)
     }
+  }
+
+  /**
+   * @return reservation counters for each region of an account (regions that failed to be described are omitted)
+   */
+  Map<String, Map<String, ReservationCounter>> extractReservationCounters(ConcurrentHashMap<String, Collection<String>> errorsByRegion,
+                                                                          NetflixAmazonCredentials credentials) {
+    Map<String, Map<String, ReservationCounter>> countersByRegion = [:]
 
     credentials.regions.each { AmazonCredentials.AWSRegion region ->
         log.info("Fetching reservation report for ${credentials.name}:${region.name}")
         long startTime = System.currentTimeMillis()
 
+        Map<String, ReservationCounter> counters = [:]
+        def getCounter = { String regionName, String availabilityZone, String operatingSystemType, String instanceType ->
+          def counter = new ReservationCounter(
+            region: regionName,
+            availabilityZone: availabilityZone,
+            os: operatingSystemType,
+            instanceType: instanceType
+          )
+          def existingCounter = counters.putIfAbsent(counter.key(), counter)
+          return existingCounter ?: counter
+        }
+
         try {
           def amazonEC2 = amazonClientProvider.getAmazonEC2(credentials, region.name)
           def cacheView = getCacheView()
@@ -317,13 +432,12 @@ class ReservationReportCachingAgent implements CachingAgent, CustomScheduledAgen
               ["Heavy Utilization", "Partial Upfront", "All Upfront", "No Upfront"].contains(it.offeringType)
           }.each {
             def osType = operatingSystemType(it.productDescription)
-            def reservation = getReservation(region.name, it.availabilityZone, osType.name, it.instanceType)
-            reservation.totalReserved.addAndGet(it.instanceCount)
+            def counter = getCounter(region.name, it.availabilityZone, osType.name, it.instanceType)
 
             if (osType.isVpc || vpcOnlyAccounts.contains(credentials.name)) {
-              reservation.getAccount(credentials.name).reservedVpc.addAndGet(it.instanceCount)
+              counter.reservedVpc += it.instanceCount
             } else {
-              reservation.getAccount(credentials.name).reserved.addAndGet(it.instanceCount)
+              counter.reserved += it.instanceCount
             }
           }
 
@@ -343,13 +457,12 @@ class ReservationReportCachingAgent implements CachingAgent, CustomScheduledAgen
                 }
 
                 def osTypeName = operatingSystemType(it.platform ? "Windows" : "Linux/UNIX").name
-                def reservation = getReservation(it.placement.availabilityZone[0..-2], it.placement.availabilityZone, osTypeName, it.instanceType)
-                reservation.totalUsed.incrementAndGet()
+                def counter = getCounter(it.placement.availabilityZone[0..-2], it.placement.availabilityZone, osTypeName, it.instanceType)
 
                 if (it.vpcId) {
-                  reservation.getAccount(credentials.name).usedVpc.incrementAndGet()
+                  counter.usedVpc++
                 } else {
-                  reservation.getAccount(credentials.name).used.incrementAndGet()
+                  counter.used++
                 }
               }
 
@@ -364,12 +477,16 @@ class ReservationReportCachingAgent implements CachingAgent, CustomScheduledAgen
               break
             }
           }
+
+          countersByRegion.put(region.name, counters)
         } catch (Exception e) {
           recordError(registry, errorsByRegion, credentials, region.name, e)
         }
 
         log.debug("Took ${System.currentTimeMillis() - startTime}ms to describe instances for ${credentials.name}/${region.name}")
       }
+
+    return countersByRegion
   }
 
   static void recordError(Registry registry,
@@ -455,6 +572,27 @@ class ReservationReportCachingAgent implements CachingAgent, CustomScheduledAgen
     }
   }
 
+  /**
+   * Reserved and used instance counts of a single account for one (availability zone or region, os, instance type).
+   */
+  @EqualsAndHashCode
+  static class ReservationCounter {
+    String region
+    String availabilityZone
+    String os
+    String instanceType
+    int reserved
+    int reservedVpc
+    int used
+    int usedVpc
+
+    String key() {
+      return availabilityZone == null ?
+        [region, os, instanceType].join(':') :
+        [availabilityZone, os, instanceType].join(':')
+    }
+  }
+
   static class ReservedInstanceDetails {
     String state
     String offeringType
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.clouddriver.aws.security.sdkclient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket shared by every client of one (service, account, region).
+ *
+ * <p>The permitted rate starts at the configured limit. It is halved (down to a floor) whenever AWS
+ * reports throttling, and recovers additively while requests succeed. Prioritized callers are
+ * always served before regular ones that are waiting on the same bucket.
+ */
+public class AdaptiveRateLimiter {
+  static final double MIN_RATE_FRACTION = 0.1d;
+  static final double RECOVERY_FRACTION_PER_SECOND = 0.05d;
+  static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  static final long INCREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final long MIN_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final double maxRate;
+  private final double minRate;
+  private final LongSupplier nanoTime;
+
+  private double rate;
+  private double tokens;
+  private long lastRefillNanos;
+  private long lastDecreaseNanos;
+  private long lastIncreaseNanos;
+  private int waitingPrioritized;
+
+  public AdaptiveRateLimiter(double maxRate) {
+    this(maxRate, System::nanoTime);
+  }
+
+  AdaptiveRateLimiter(double maxRate, LongSupplier nanoTime) {
+    if (maxRate <= 0) {
+      throw new IllegalArgumentException("Rate limit must be positive, got " + maxRate);
+    }
+    this.maxRate = maxRate;
+    this.minRate = maxRate * MIN_RATE_FRACTION;
+    this.nanoTime = nanoTime;
+    this.rate = maxRate;
+    this.tokens = 1;
+    this.lastRefillNanos = nanoTime.getAsLong();
+    this.lastDecreaseNanos = lastRefillNanos - DECREASE_INTERVAL_NANOS;
+    this.lastIncreaseNanos = lastDecreaseNanos;
+  }
+
+  /**
+   * Blocks until a permit is available.
+   *
+   * @param prioritized whether this caller should be served ahead of regular callers
+   * @return the time spent waiting, in nanoseconds
+   */
+  public synchronized long acquire(boolean prioritized) {
+    final long start = nanoTime.getAsLong();
+    if (prioritized) {
+      waitingPrioritized++;
+    }
+    try {
+      while (true) {
+        refill();
+        if (tokens >= 1 && (prioritized || waitingPrioritized == 0)) {
+          tokens -= 1;
+          return nanoTime.getAsLong() - start;
+        }
+
+        long waitNanos = tokens >= 1 ? 0 : (long) ((1 - tokens) / rate * 1_000_000_000L);
+        try {
+          TimeUnit.NANOSECONDS.timedWait(this, Math.max(waitNanos, MIN_WAIT_NANOS));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return nanoTime.getAsLong() - start;
+        }
+      }
+    } finally {
+      if (prioritized) {
+        waitingPrioritized--;
+        notifyAll();
+      }
+    }
+  }
+
+  /** Reduces the permitted rate after AWS throttled a request. */
+  public synchronized void onThrottled() {
+    long now = nanoTime.getAsLong();
+    // a burst of in-flight requests is usually throttled together; treat it as a single signal
+    if (now - lastDecreaseNanos < DECREASE_INTERVAL_NANOS) {
+      return;
+    }
+    refill();
+    lastDecreaseNanos = now;
+    rate = Math.max(minRate, rate / 2);
+    tokens = Math.min(tokens, Math.max(1, rate));
+  }
+
+  /** Lets the permitted rate recover towards the configured limit after a successful request. */
+  public synchronized void onSuccess() {
+    if (rate >= maxRate) {
+      return;
+    }
+    long now = nanoTime.getAsLong();
+    // the rate climbs by at most one step per second, and not until a second after throttling
+    if (now - Math.max(lastDecreaseNanos, lastIncreaseNanos) < INCREASE_INTERVAL_NANOS) {
+      return;
+    }
+    refill();
+    lastIncreaseNanos = now;
+    rate = Math.min(maxRate, rate + maxRate * RECOVERY_FRACTION_PER_SECOND);
+  }
+
+  public synchronized double getRate() {
+    return rate;
+  }
+
+  public double getMaxRate() {
+    return maxRate;
+  }
+
+  private void refill() {
+    long now = nanoTime.getAsLong();
+    double elapsedSeconds = (now - lastRefillNanos) / 1_000_000_000d;
+    lastRefillNanos = now;
+    // at most one second worth of permits is stored, matching RateLimiter's bursty behavior
+    tokens = Math.min(Math.max(1, rate), tokens + elapsedSeconds * rate);
+  }
+}
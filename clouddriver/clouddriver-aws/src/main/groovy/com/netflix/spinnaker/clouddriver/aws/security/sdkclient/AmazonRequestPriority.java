@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.clouddriver.aws.security.sdkclient;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import java.util.function.Supplier;
+
+/**
+ * Decides which AWS requests are served first by the {@link AdaptiveRateLimiter}.
+ *
+ * <p>Mutating operations are always prioritized. Read operations are prioritized when they are
+ * issued from within {@link #prioritized(Supplier)}, which on-demand cache refreshes use so that
+ * they are not stuck behind periodic caching agents.
+ */
+public final class AmazonRequestPriority {
+  private static final ThreadLocal<Boolean> PRIORITIZED = ThreadLocal.withInitial(() -> false);
+
+  private AmazonRequestPriority() {}
+
+  public static <T> T prioritized(Supplier<T> work) {
+    boolean previous = PRIORITIZED.get();
+    PRIORITIZED.set(true);
+    try {
+      return work.get();
+    } finally {
+      PRIORITIZED.set(previous);
+    }
+  }
+
+  static boolean isPrioritized(AmazonWebServiceRequest request) {
+    return PRIORITIZED.get() || (request != null && isMutating(request));
+  }
+
+  private static boolean isMutating(AmazonWebServiceRequest request) {
+    String operation = request.getClass().getSimpleName();
+    return !(operation.startsWith("Describe")
+        || operation.startsWith("List")
+        || operation.startsWith("Get"));
+  }
+}
@@ -30,8 +30,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
-import com.google.common.util.concurrent.RateLimiter;
-import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Id;
 import com.netflix.spectator.api.Registry;
 import com.netflix.spinnaker.clouddriver.aws.security.AWSProxy;
 import com.netflix.spinnaker.clouddriver.aws.security.NetflixSTSAssumeRoleSessionCredentialsProvider;
@@ -90,17 +89,18 @@ public class AwsSdkClientSupplier {
 
   private RequestHandler2 getRateLimiterHandler(
       Class<?> sdkInterface, String account, String region) {
-    final RateLimiter limiter = rateLimiterSupplier.getRateLimiter(sdkInterface, account, region);
-    final Counter rateLimitCounter =
-        registry.counter(
-            "amazonClientProvider.rateLimitDelayMillis",
+    final AdaptiveRateLimiter limiter =
+        rateLimiterSupplier.getRateLimiter(sdkInterface, account, region);
+    final Id metricId =
+        registry.createId(
+            "amazonClientProvider.rateLimit",
             "clientType",
             sdkInterface.getSimpleName(),
             "account",
             account,
             "region",
             region == null ? "UNSPECIFIED" : region);
-    return new RateLimitingRequestHandler(rateLimitCounter, limiter);
+    return new RateLimitingRequestHandler(registry, metricId, limiter);
   }
 
   private static class SdkClientCacheLoader extends CacheLoader<AmazonClientKey<?>, Object> {
@@ -18,30 +18,69 @@ package com.netflix.spinnaker.clouddriver.aws.security.sdkclient;
 
 import static java.util.Objects.requireNonNull;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
 import com.amazonaws.handlers.RequestHandler2;
-import com.google.common.util.concurrent.RateLimiter;
+import com.amazonaws.retry.RetryUtils;
 import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Id;
+import com.netflix.spectator.api.Registry;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
-/** A RequestHandler that will throttle requests via the supplied RateLimiter. */
+/**
+ * A RequestHandler that will throttle requests via the supplied AdaptiveRateLimiter, slowing it
+ * down when AWS throttles a request and serving prioritized requests ahead of the others.
+ */
 public class RateLimitingRequestHandler extends RequestHandler2 {
+  private final Registry registry;
   private final Counter counter;
-  private final RateLimiter rateLimiter;
+  private final Id waitTimeId;
+  private final Counter throttledCounter;
+  private final AdaptiveRateLimiter rateLimiter;
 
-  public RateLimitingRequestHandler(Counter counter, RateLimiter rateLimiter) {
-    this.counter = requireNonNull(counter);
+  public RateLimitingRequestHandler(
+      Registry registry, Id metricId, AdaptiveRateLimiter rateLimiter) {
+    this.registry = requireNonNull(registry);
     this.rateLimiter = requireNonNull(rateLimiter);
+    this.counter =
+        registry.counter(
+            registry.createId("amazonClientProvider.rateLimitDelayMillis", metricId.tags()));
+    this.waitTimeId = registry.createId("amazonClientProvider.rateLimitWait", metricId.tags());
+    this.throttledCounter =
+        registry.counter(registry.createId("amazonClientProvider.throttled", metricId.tags()));
   }
 
   @Override
   public void beforeRequest(Request<?> request) {
-    double rateLimitedSeconds = rateLimiter.acquire();
-    long rateLimitedMillis = Double.valueOf(rateLimitedSeconds * 1000).longValue();
-    counter.increment(rateLimitedMillis);
+    boolean prioritized = AmazonRequestPriority.isPrioritized(request.getOriginalRequest());
+    long rateLimitedNanos = rateLimiter.acquire(prioritized);
+    counter.increment(TimeUnit.NANOSECONDS.toMillis(rateLimitedNanos));
+    registry
+        .timer(waitTimeId.withTag("prioritized", Boolean.toString(prioritized)))
+        .record(rateLimitedNanos, TimeUnit.NANOSECONDS);
     super.beforeRequest(request);
   }
 
+  @Override
+  public void afterResponse(Request<?> request, Response<?> response) {
+    rateLimiter.onSuccess();
+    super.afterResponse(request, response);
+  }
+
+  @Override
+  public void afterAttempt(HandlerAfterAttemptContext context) {
+    Exception exception = context.getException();
+    if (exception instanceof AmazonServiceException
+        && RetryUtils.isThrottlingException((AmazonServiceException) exception)) {
+      throttledCounter.increment();
+      rateLimiter.onThrottled();
+    }
+    super.afterAttempt(context);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -68,4 +68,42 @@ class ReservationReportCachingAgentSpec extends Specification {
     3 * registry.counter(registryId) >> counter
     3 * counter.increment()
   }
+
+  def "should aggregate reservation counters across accounts"() {
+    given:
+    def reservations = new ConcurrentHashMap<String, AmazonReservationReport.OverallReservationDetail>()
+    def counter = { int reserved, int used, int usedVpc ->
+      new ReservationReportCachingAgent.ReservationCounter(
+        region: "us-west-1",
+        availabilityZone: "us-west-1a",
+        os: "LINUX",
+        instanceType: "m5.large",
+        reserved: reserved,
+        used: used,
+        usedVpc: usedVpc
+      )
+    }
+
+    when:
+    ReservationReportCachingAgent.addReservations(reservations, "test", [counter(4, 1, 2)])
+    ReservationReportCachingAgent.addReservations(reservations, "prod", [counter(2, 3, 0)])
+
+    then:
+    reservations.keySet() == ["us-west-1a:LINUX:m5.large"] as Set
+    with(reservations["us-west-1a:LINUX:m5.large"]) {
+      totalReserved.get() == 6
+      totalUsed.get() == 6
+      getAccount("test").reserved.get() == 4
+      getAccount("test").usedVpc.get() == 2
+      getAccount("prod").used.get() == 3
+    }
+  }
+
+  def "reservation counters with equal counts should be equal"() {
+    expect:
+    new ReservationReportCachingAgent.ReservationCounter(region: "us-west-1", os: "LINUX", instanceType: "m5.large", reserved: 1) ==
+      new ReservationReportCachingAgent.ReservationCounter(region: "us-west-1", os: "LINUX", instanceType: "m5.large", reserved: 1)
+    new ReservationReportCachingAgent.ReservationCounter(region: "us-west-1", os: "LINUX", instanceType: "m5.large", reserved: 1) !=
+      new ReservationReportCachingAgent.ReservationCounter(region: "us-west-1", os: "LINUX", instanceType: "m5.large", reserved: 2)
+  }
 }
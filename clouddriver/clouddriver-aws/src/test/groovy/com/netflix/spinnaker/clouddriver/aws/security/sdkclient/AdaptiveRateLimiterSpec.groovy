@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.clouddriver.aws.security.sdkclient
+
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsRequest
+import com.amazonaws.services.autoscaling.model.UpdateAutoScalingGroupRequest
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class AdaptiveRateLimiterSpec extends Specification {
+
+  long now = 0
+  AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(10, { now })
+
+  void "halves the rate on throttling, but only once per interval"() {
+    when:
+    limiter.onThrottled()
+    limiter.onThrottled()
+
+    then:
+    limiter.rate == 5
+
+    when:
+    now += AdaptiveRateLimiter.DECREASE_INTERVAL_NANOS
+    limiter.onThrottled()
+
+    then:
+    limiter.rate == 2.5
+  }
+
+  void "never drops below the floor"() {
+    when:
+    10.times {
+      now += AdaptiveRateLimiter.DECREASE_INTERVAL_NANOS
+      limiter.onThrottled()
+    }
+
+    then:
+    limiter.rate == 10 * AdaptiveRateLimiter.MIN_RATE_FRACTION
+  }
+
+  void "recovers additively up to the configured rate"() {
+    given:
+    limiter.onThrottled()
+
+    when: 'a success right after throttling'
+    limiter.onSuccess()
+
+    then:
+    limiter.rate == 5
+
+    when:
+    now += TimeUnit.SECONDS.toNanos(1)
+    limiter.onSuccess()
+
+    then:
+    limiter.rate == 5.5
+
+    when:
+    100.times {
+      now += TimeUnit.SECONDS.toNanos(1)
+      limiter.onSuccess()
+    }
+
+    then:
+    limiter.rate == 10
+  }
+
+  void "does not wait while permits are available"() {
+    expect:
+    limiter.acquire(false) == 0
+  }
+
+  void "mutating requests are prioritized"() {
+    expect:
+    AmazonRequestPriority.isPrioritized(new UpdateAutoScalingGroupRequest())
+    !AmazonRequestPriority.isPrioritized(new DescribeAutoScalingGroupsRequest())
+    AmazonRequestPriority.prioritized {
+      AmazonRequestPriority.isPrioritized(new DescribeAutoScalingGroupsRequest())
+    }
+  }
+}
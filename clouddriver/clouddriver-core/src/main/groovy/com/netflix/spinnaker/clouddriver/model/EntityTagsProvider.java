@@ -74,6 +74,14 @@ public interface EntityTagsProvider {
   /** Reindex all EntityTags */
   void reindex();
 
+  /**
+   * Reindex all EntityTags, or with {@code resume}, pick up where an incomplete reindex left off
+   * rather than starting over.
+   */
+  default void reindex(boolean resume) {
+    reindex();
+  }
+
   /**
    * Fetch delta (counts of EntityTags broken down by Elasticsearch and Front50)
    *
@@ -21,7 +21,9 @@ import com.netflix.spinnaker.cats.cache.CacheData;
 import com.netflix.spinnaker.clouddriver.ecs.cache.Keys;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -74,6 +76,28 @@ abstract class AbstractCacheClient<T> {
     return null;
   }
 
+  /**
+   * Retrieves several objects with a single cache read, rather than one read per key.
+   *
+   * @param keys Keys within the key namespace that will be used to retrieve the objects.
+   * @return A map of generic type objects associated to their key. Keys that are not cached are
+   *     omitted.
+   */
+  public Map<String, T> getByKeys(Collection<String> keys) {
+    Map<String, T> result = new HashMap<>();
+    if (keys == null || keys.isEmpty()) {
+      return result;
+    }
+
+    Collection<CacheData> allData = cacheView.getAll(keyNamespace, keys);
+    if (allData != null) {
+      for (CacheData cacheData : allData) {
+        result.put(cacheData.getId(), convert(cacheData));
+      }
+    }
+    return result;
+  }
+
   /**
    * @param cacheData A collection of CacheData that will be converted into a collection of generic
    *     typ objects.
@@ -23,10 +23,15 @@ import com.amazonaws.services.ecs.model.TaskDefinition;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.spinnaker.cats.cache.Cache;
 import com.netflix.spinnaker.cats.cache.CacheData;
+import com.netflix.spinnaker.clouddriver.ecs.cache.Keys;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -40,6 +45,28 @@ public class TaskDefinitionCacheClient extends AbstractCacheClient<TaskDefinitio
     this.objectMapper = objectMapper;
   }
 
+  /**
+   * Looks up several task definitions with a single cache read.
+   *
+   * @param account name of the AWS account, as defined in clouddriver.yml
+   * @param region region of the AWS account, as defined in clouddriver.yml
+   * @param taskDefinitionArns ARNs of the task definitions to retrieve.
+   * @return Cached task definitions associated to their ARN. ARNs that are not cached are omitted.
+   */
+  public Map<String, TaskDefinition> getByArns(
+      String account, String region, Collection<String> taskDefinitionArns) {
+    Set<String> keys =
+        taskDefinitionArns.stream()
+            .map(arn -> Keys.getTaskDefinitionKey(account, region, arn))
+            .collect(Collectors.toSet());
+
+    Map<String, TaskDefinition> taskDefinitions = new HashMap<>();
+    for (TaskDefinition taskDefinition : getByKeys(keys).values()) {
+      taskDefinitions.put(taskDefinition.getTaskDefinitionArn(), taskDefinition);
+    }
+    return taskDefinitions;
+  }
+
   @Override
   protected TaskDefinition convert(CacheData cacheData) {
     TaskDefinition taskDefinition = new TaskDefinition();
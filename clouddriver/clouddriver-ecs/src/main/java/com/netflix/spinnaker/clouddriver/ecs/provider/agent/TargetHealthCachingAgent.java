@@ -27,6 +27,7 @@ import com.amazonaws.services.elasticloadbalancingv2.model.DescribeTargetHealthR
 import com.amazonaws.services.elasticloadbalancingv2.model.TargetGroupNotFoundException;
 import com.amazonaws.services.elasticloadbalancingv2.model.TargetHealthDescription;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.spectator.api.Registry;
 import com.netflix.spinnaker.cats.agent.*;
 import com.netflix.spinnaker.cats.cache.*;
 import com.netflix.spinnaker.cats.provider.ProviderCache;
@@ -52,15 +53,18 @@ public class TargetHealthCachingAgent extends AbstractEcsAwsAwareCachingAgent<Ec
 
   private final Logger log = LoggerFactory.getLogger(getClass());
   private final ObjectMapper objectMapper;
+  private final Registry registry;
 
   public TargetHealthCachingAgent(
       NetflixAmazonCredentials account,
       String region,
       AmazonClientProvider amazonClientProvider,
       AWSCredentialsProvider awsCredentialsProvider,
-      ObjectMapper objectMapper) {
+      ObjectMapper objectMapper,
+      Registry registry) {
     super(account, region, amazonClientProvider, awsCredentialsProvider);
     this.objectMapper = objectMapper;
+    this.registry = registry;
   }
 
   @Override
@@ -78,11 +82,15 @@ public class TargetHealthCachingAgent extends AbstractEcsAwsAwareCachingAgent<Ec
         amazonClientProvider.getAmazonElasticLoadBalancingV2(account, region, false);
 
     List<EcsTargetHealth> targetHealthList = new LinkedList<>();
+    int describeCalls = 0;
 
     if (targetGroups != null) {
+      // Each target group is described exactly once per cycle; TaskHealthCachingAgent joins the
+      // cached results against task network bindings in memory.
       for (String tgArn : targetGroups) {
 
         DescribeTargetHealthResult describeTargetHealthResult = new DescribeTargetHealthResult();
+        describeCalls++;
         try {
           describeTargetHealthResult =
               amazonLoadBalancing.describeTargetHealth(
@@ -103,6 +111,18 @@ public class TargetHealthCachingAgent extends AbstractEcsAwsAwareCachingAgent<Ec
       }
     }
 
+    registry
+        .distributionSummary(
+            registry.createId(
+                "ecs.cachingAgent.apiCalls",
+                "account",
+                accountName,
+                "region",
+                region,
+                "operation",
+                "DescribeTargetHealth"))
+        .record(describeCalls);
+
     return targetHealthList;
   }
 
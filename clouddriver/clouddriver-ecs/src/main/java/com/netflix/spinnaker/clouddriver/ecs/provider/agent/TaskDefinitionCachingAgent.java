@@ -54,6 +54,7 @@ public class TaskDefinitionCachingAgent extends AbstractEcsOnDemandAgent<TaskDef
           Arrays.asList(AUTHORITATIVE.forType(TASK_DEFINITIONS.toString())));
   private final Logger log = LoggerFactory.getLogger(getClass());
 
+  private final Registry registry;
   private ObjectMapper objectMapper;
 
   public TaskDefinitionCachingAgent(
@@ -64,6 +65,7 @@ public class TaskDefinitionCachingAgent extends AbstractEcsOnDemandAgent<TaskDef
       Registry registry,
       ObjectMapper objectMapper) {
     super(account, region, amazonClientProvider, awsCredentialsProvider, registry);
+    this.registry = registry;
     this.objectMapper = objectMapper;
   }
 
@@ -101,6 +103,7 @@ public class TaskDefinitionCachingAgent extends AbstractEcsOnDemandAgent<TaskDef
                 })
             .collect(Collectors.toSet());
 
+    int describeCalls = 0;
     String nextToken = null;
     do {
       ListTaskDefinitionsRequest listTasksRequest = new ListTaskDefinitionsRequest();
@@ -133,28 +136,31 @@ public class TaskDefinitionCachingAgent extends AbstractEcsOnDemandAgent<TaskDef
                     new DescribeTaskDefinitionRequest().withTaskDefinition(taskDefinitionArn))
                 .getTaskDefinition();
         taskDefinitionList.add(taskDefinition);
+        describeCalls++;
       }
 
       nextToken = listTaskDefinitionsResult.getNextToken();
     } while (nextToken != null && nextToken.length() != 0);
+
+    registry
+        .distributionSummary(
+            registry.createId(
+                "ecs.cachingAgent.apiCalls",
+                "account",
+                accountName,
+                "region",
+                region,
+                "operation",
+                "DescribeTaskDefinition"))
+        .record(describeCalls);
     return taskDefinitionList;
   }
 
-  private Set<TaskDefinition> retrieveFromCache(
+  private Collection<TaskDefinition> retrieveFromCache(
       Set<String> taskDefArns, ProviderCache providerCache) {
     TaskDefinitionCacheClient taskDefinitionCacheClient =
         new TaskDefinitionCacheClient(providerCache, objectMapper);
-    Set<TaskDefinition> taskDefs = new HashSet<>();
-
-    for (String taskDefArn : taskDefArns) {
-      String key = Keys.getTaskDefinitionKey(accountName, region, taskDefArn);
-      TaskDefinition taskDefinition = taskDefinitionCacheClient.get(key);
-      if (taskDefinition != null) {
-        taskDefs.add(taskDefinition);
-      }
-    }
-
-    return taskDefs;
+    return taskDefinitionCacheClient.getByArns(accountName, region, taskDefArns).values();
   }
 
   @Override
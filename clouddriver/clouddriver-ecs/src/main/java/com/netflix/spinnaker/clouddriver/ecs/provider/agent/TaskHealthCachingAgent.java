@@ -45,10 +45,13 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -105,15 +108,49 @@ public class TaskHealthCachingAgent extends AbstractEcsCachingAgent<TaskHealth>
     Collection<Task> tasks = taskCacheClient.getAll(accountName, region);
     if (tasks != null) {
       log.debug("Found {} tasks to retrieve health for.", tasks.size());
+
+      // Resolve everything the tasks refer to with one cache read per namespace, rather than one
+      // read per task and load balancer.
+      Set<String> serviceKeys = new HashSet<>();
+      Set<String> containerInstanceKeys = new HashSet<>();
+      for (Task task : tasks) {
+        serviceKeys.add(
+            Keys.getServiceKey(
+                accountName, region, StringUtils.substringAfter(task.getGroup(), "service:")));
+        containerInstanceKeys.add(
+            Keys.getContainerInstanceKey(accountName, region, task.getContainerInstanceArn()));
+      }
+      Map<String, Service> services = serviceCacheClient.getByKeys(serviceKeys);
+      Map<String, ContainerInstance> containerInstances =
+          containerInstanceCacheClient.getByKeys(containerInstanceKeys);
+
+      Set<String> taskDefinitionArns = new HashSet<>();
+      Set<String> targetGroupArns = new HashSet<>();
+      for (Service service : services.values()) {
+        if (service.getTaskDefinition() != null) {
+          taskDefinitionArns.add(service.getTaskDefinition());
+        }
+        if (service.getLoadBalancers() != null) {
+          for (LoadBalancer loadBalancer : service.getLoadBalancers()) {
+            if (loadBalancer.getTargetGroupArn() != null) {
+              targetGroupArns.add(loadBalancer.getTargetGroupArn());
+            }
+          }
+        }
+      }
+      Map<String, TaskDefinition> taskDefinitions =
+          taskDefinitionCacheClient.getByArns(accountName, region, taskDefinitionArns);
+      Map<String, Map<String, TargetHealthDescription>> targetHealths =
+          indexTargetHealths(targetHealthCacheClient, targetGroupArns);
+
       for (Task task : tasks) {
         String containerInstanceCacheKey =
             Keys.getContainerInstanceKey(accountName, region, task.getContainerInstanceArn());
-        ContainerInstance containerInstance =
-            containerInstanceCacheClient.get(containerInstanceCacheKey);
+        ContainerInstance containerInstance = containerInstances.get(containerInstanceCacheKey);
 
         String serviceName = StringUtils.substringAfter(task.getGroup(), "service:");
         String serviceKey = Keys.getServiceKey(accountName, region, serviceName);
-        Service service = serviceCacheClient.get(serviceKey);
+        Service service = services.get(serviceKey);
 
         if (service == null) {
           String taskEvictionKey = Keys.getTaskKey(accountName, region, task.getTaskId());
@@ -125,9 +162,7 @@ public class TaskHealthCachingAgent extends AbstractEcsCachingAgent<TaskHealth>
           continue;
         }
 
-        String taskDefinitionCacheKey =
-            Keys.getTaskDefinitionKey(accountName, region, service.getTaskDefinition());
-        TaskDefinition taskDefinition = taskDefinitionCacheClient.get(taskDefinitionCacheKey);
+        TaskDefinition taskDefinition = taskDefinitions.get(service.getTaskDefinition());
 
         boolean lacksNetworkInterfaces = isTaskMissingNetworkInterfaces(task);
         if (task.getContainers().isEmpty()
@@ -145,19 +180,19 @@ public class TaskHealthCachingAgent extends AbstractEcsCachingAgent<TaskHealth>
           // if network interfaces are present, assume awsvpc mode
           taskHealth =
               inferHealthNetworkInterfacedContainer(
-                  targetHealthCacheClient, task, serviceName, service, taskDefinition);
+                  targetHealths, task, serviceName, service, taskDefinition);
         } else {
           taskHealth =
               inferHealthNetworkBindedContainer(
-                  targetHealthCacheClient, task, containerInstance, serviceName, service);
+                  targetHealths, task, containerInstance, serviceName, service);
         }
         log.debug("Task Health contains the following elements: {}", taskHealth);
 
         if (taskHealth != null) {
           taskHealthList.add(taskHealth);
         }
-        log.debug("TaskHealthList contains the following elements: {}", taskHealthList);
       }
+      log.debug("TaskHealthList contains {} elements", taskHealthList.size());
     } else {
       log.debug("Task list is null. No healths to describe.");
     }
@@ -165,8 +200,41 @@ public class TaskHealthCachingAgent extends AbstractEcsCachingAgent<TaskHealth>
     return taskHealthList;
   }
 
+  /**
+   * Reads the cached health of every given target group once and indexes it by target, so that
+   * tasks can be joined against it without rescanning the descriptions.
+   *
+   * @return Target health descriptions by target group ARN, then by target id and port.
+   */
+  private Map<String, Map<String, TargetHealthDescription>> indexTargetHealths(
+      TargetHealthCacheClient targetHealthCacheClient, Collection<String> targetGroupArns) {
+    Set<String> targetHealthKeys =
+        targetGroupArns.stream()
+            .map(arn -> Keys.getTargetHealthKey(accountName, region, arn))
+            .collect(Collectors.toSet());
+
+    Map<String, Map<String, TargetHealthDescription>> index = new HashMap<>();
+    for (EcsTargetHealth targetHealth :
+        targetHealthCacheClient.getByKeys(targetHealthKeys).values()) {
+      Map<String, TargetHealthDescription> byTarget = new HashMap<>();
+      for (TargetHealthDescription description : targetHealth.getTargetHealthDescriptions()) {
+        if (description.getTarget() != null) {
+          byTarget.putIfAbsent(
+              targetKey(description.getTarget().getId(), description.getTarget().getPort()),
+              description);
+        }
+      }
+      index.put(targetHealth.getTargetGroupArn(), byTarget);
+    }
+    return index;
+  }
+
+  private static String targetKey(String targetId, Integer targetPort) {
+    return targetId + ":" + targetPort;
+  }
+
   private TaskHealth inferHealthNetworkInterfacedContainer(
-      TargetHealthCacheClient targetHealthCacheClient,
+      Map<String, Map<String, TargetHealthDescription>> targetHealths,
       Task task,
       String serviceName,
       Service loadBalancerService,
@@ -210,7 +278,7 @@ public class TaskHealthCachingAgent extends AbstractEcsCachingAgent<TaskHealth>
 
       overallTaskHealth =
           describeTargetHealth(
-              targetHealthCacheClient,
+              targetHealths,
               task,
               serviceName,
               loadBalancer.getTargetGroupArn(),
@@ -243,7 +311,7 @@ public class TaskHealthCachingAgent extends AbstractEcsCachingAgent<TaskHealth>
   }
 
   private TaskHealth inferHealthNetworkBindedContainer(
-      TargetHealthCacheClient targetHealthCacheClient,
+      Map<String, Map<String, TargetHealthDescription>> targetHealths,
       Task task,
       ContainerInstance containerInstance,
       String serviceName,
@@ -275,7 +343,7 @@ public class TaskHealthCachingAgent extends AbstractEcsCachingAgent<TaskHealth>
 
       overallTaskHealth =
           describeTargetHealth(
-              targetHealthCacheClient,
+              targetHealths,
               task,
               serviceName,
               loadBalancer.getTargetGroupArn(),
@@ -287,20 +355,8 @@ public class TaskHealthCachingAgent extends AbstractEcsCachingAgent<TaskHealth>
     return overallTaskHealth;
   }
 
-  private TargetHealthDescription findHealthDescription(
-      List<TargetHealthDescription> targetHealths, String targetId, Integer targetPort) {
-
-    return targetHealths.stream()
-        .filter(
-            h ->
-                h.getTarget().getId().equals(targetId)
-                    && h.getTarget().getPort().equals(targetPort))
-        .findFirst()
-        .orElse(null);
-  }
-
   private TaskHealth describeTargetHealth(
-      TargetHealthCacheClient targetHealthCacheClient,
+      Map<String, Map<String, TargetHealthDescription>> targetHealths,
       Task task,
       String serviceName,
       String targetGroupArn,
@@ -308,15 +364,14 @@ public class TaskHealthCachingAgent extends AbstractEcsCachingAgent<TaskHealth>
       Integer targetPort,
       TaskHealth overallTaskHealth) {
 
-    String targetHealthKey = Keys.getTargetHealthKey(accountName, region, targetGroupArn);
-    EcsTargetHealth targetHealth = targetHealthCacheClient.get(targetHealthKey);
+    Map<String, TargetHealthDescription> targetGroupHealth = targetHealths.get(targetGroupArn);
 
-    if (targetHealth == null) {
+    if (targetGroupHealth == null) {
       log.debug("Cached EcsTargetHealth is empty for targetGroup {}", targetGroupArn);
       return makeTaskHealth(task, serviceName, null);
     }
     TargetHealthDescription targetHealthDescription =
-        findHealthDescription(targetHealth.getTargetHealthDescriptions(), targetId, targetPort);
+        targetGroupHealth.get(targetKey(targetId, targetPort));
 
     if (targetHealthDescription == null) {
       log.debug(
@@ -165,7 +165,8 @@ public class EcsProviderConfig {
                   region.getName(),
                   amazonClientProvider,
                   awsCredentialsProvider,
-                  objectMapper));
+                  objectMapper,
+                  registry));
         }
       }
     }
@@ -95,13 +95,13 @@ class TaskHealthCacheSpec extends Specification {
       createdAt            : new Date().getTime()
     ]
     def serviceCacheData = new DefaultCacheData(serviceKey, serviceAttributes, Collections.emptyMap())
-    providerCache.get(Keys.Namespace.SERVICES.toString(), serviceKey) >> serviceCacheData
+    providerCache.getAll(Keys.Namespace.SERVICES.toString(), [serviceKey] as Set) >> [serviceCacheData]
 
     def containerInstanceAttributes = [
       ec2InstanceId: CommonCachingAgent.EC2_INSTANCE_ID_1
     ]
     def containerInstanceCache = new DefaultCacheData(containerInstanceKey, containerInstanceAttributes, Collections.emptyMap())
-    providerCache.get(Keys.Namespace.CONTAINER_INSTANCES.toString(), containerInstanceKey) >> containerInstanceCache
+    providerCache.getAll(Keys.Namespace.CONTAINER_INSTANCES.toString(), [containerInstanceKey] as Set) >> [containerInstanceCache]
 
     def targetHealthAttributes = [
       targetGroupArn : targetGroupArn,
@@ -109,7 +109,7 @@ class TaskHealthCacheSpec extends Specification {
     ]
 
     def targetHealthCache = new DefaultCacheData(targetHealthKey, targetHealthAttributes, Collections.emptyMap())
-    providerCache.get(TARGET_HEALTHS.toString(), targetHealthKey) >> targetHealthCache
+    providerCache.getAll(TARGET_HEALTHS.toString(), [targetHealthKey] as Set) >> [targetHealthCache]
 
     DescribeTargetHealthResult describeTargetHealthResult = new DescribeTargetHealthResult().withTargetHealthDescriptions(
       new TargetHealthDescription().withTargetHealth(new TargetHealth().withState(TargetHealthStateEnum.Healthy))
@@ -127,7 +127,7 @@ class TaskHealthCacheSpec extends Specification {
     ]
     def taskDefKey = Keys.getTaskDefinitionKey(CommonCachingAgent.ACCOUNT, CommonCachingAgent.REGION, CommonCachingAgent.TASK_DEFINITION_ARN_1)
     def taskDefCacheData = new DefaultCacheData(taskDefKey, taskDefAttributes, Collections.emptyMap())
-    providerCache.get(TASK_DEFINITIONS.toString(), taskDefKey) >> taskDefCacheData
+    providerCache.getAll(TASK_DEFINITIONS.toString(), [taskDefKey] as Set) >> [taskDefCacheData]
 
     when:
     def cacheResult = agent.loadData(providerCache)
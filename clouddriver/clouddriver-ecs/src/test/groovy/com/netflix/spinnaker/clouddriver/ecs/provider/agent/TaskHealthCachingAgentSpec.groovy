@@ -83,13 +83,13 @@ class TaskHealthCachingAgentSpec extends Specification {
       createdAt            : new Date().getTime()
     ]
     def serviceCacheData = new DefaultCacheData(serviceKey, serviceAttributes, Collections.emptyMap())
-    providerCache.get(Keys.Namespace.SERVICES.toString(), serviceKey) >> serviceCacheData
+    providerCache.getAll(Keys.Namespace.SERVICES.toString(), [serviceKey] as Set) >> [serviceCacheData]
 
     def containerInstanceAttributes = [
       ec2InstanceId: CommonCachingAgent.EC2_INSTANCE_ID_1
     ]
     def containerInstanceCache = new DefaultCacheData(containerInstanceKey, containerInstanceAttributes, Collections.emptyMap())
-    providerCache.get(Keys.Namespace.CONTAINER_INSTANCES.toString(), containerInstanceKey) >> containerInstanceCache
+    providerCache.getAll(Keys.Namespace.CONTAINER_INSTANCES.toString(), [containerInstanceKey] as Set) >> [containerInstanceCache]
 
     def targetHealthAttributes = [
       targetGroupArn : targetGroupArn,
@@ -97,7 +97,7 @@ class TaskHealthCachingAgentSpec extends Specification {
     ]
 
     def targetHealthCache = new DefaultCacheData(targetHealthKey, targetHealthAttributes, Collections.emptyMap())
-    providerCache.get(TARGET_HEALTHS.toString(), targetHealthKey) >> targetHealthCache
+    providerCache.getAll(TARGET_HEALTHS.toString(), [targetHealthKey] as Set) >> [targetHealthCache]
   }
 
   def 'should get a list of task health'() {
@@ -125,7 +125,7 @@ class TaskHealthCachingAgentSpec extends Specification {
     ]
     def taskDefKey = Keys.getTaskDefinitionKey(CommonCachingAgent.ACCOUNT, CommonCachingAgent.REGION, CommonCachingAgent.TASK_DEFINITION_ARN_1)
     def taskDefCacheData = new DefaultCacheData(taskDefKey, taskDefAttributes, Collections.emptyMap())
-    providerCache.get(TASK_DEFINITIONS.toString(), taskDefKey) >> taskDefCacheData
+    providerCache.getAll(TASK_DEFINITIONS.toString(), [taskDefKey] as Set) >> [taskDefCacheData]
 
 
     when:
@@ -171,7 +171,7 @@ class TaskHealthCachingAgentSpec extends Specification {
     ]
     def taskDefKey = Keys.getTaskDefinitionKey(CommonCachingAgent.ACCOUNT, CommonCachingAgent.REGION, CommonCachingAgent.TASK_DEFINITION_ARN_1)
     def taskDefCacheData = new DefaultCacheData(taskDefKey, taskDefAttributes, Collections.emptyMap())
-    providerCache.get(TASK_DEFINITIONS.toString(), taskDefKey) >> taskDefCacheData
+    providerCache.getAll(TASK_DEFINITIONS.toString(), [taskDefKey] as Set) >> [taskDefCacheData]
 
 
     when:
@@ -217,7 +217,7 @@ class TaskHealthCachingAgentSpec extends Specification {
     ]
     def taskDefKey = Keys.getTaskDefinitionKey(CommonCachingAgent.ACCOUNT, CommonCachingAgent.REGION, CommonCachingAgent.TASK_DEFINITION_ARN_1)
     def taskDefCacheData = new DefaultCacheData(taskDefKey, taskDefAttributes, Collections.emptyMap())
-    providerCache.get(TASK_DEFINITIONS.toString(), taskDefKey) >> taskDefCacheData
+    providerCache.getAll(TASK_DEFINITIONS.toString(), [taskDefKey] as Set) >> [taskDefCacheData]
 
     when:
     def taskHealthList = agent.getItems(ecs, providerCache)
@@ -282,7 +282,7 @@ class TaskHealthCachingAgentSpec extends Specification {
     ]
     def taskDefKey = Keys.getTaskDefinitionKey(CommonCachingAgent.ACCOUNT, CommonCachingAgent.REGION, CommonCachingAgent.TASK_DEFINITION_ARN_1)
     def taskDefCacheData = new DefaultCacheData(taskDefKey, taskDefAttributes, Collections.emptyMap())
-    providerCache.get(TASK_DEFINITIONS.toString(), taskDefKey) >> taskDefCacheData
+    providerCache.getAll(TASK_DEFINITIONS.toString(), [taskDefKey] as Set) >> [taskDefCacheData]
 
     when:
     def taskHealthList = agent.getItems(ecs, providerCache)
@@ -343,7 +343,7 @@ class TaskHealthCachingAgentSpec extends Specification {
     ]
     def taskDefKey = Keys.getTaskDefinitionKey(CommonCachingAgent.ACCOUNT, CommonCachingAgent.REGION, CommonCachingAgent.TASK_DEFINITION_ARN_1)
     def taskDefCacheData = new DefaultCacheData(taskDefKey, taskDefAttributes, Collections.emptyMap())
-    providerCache.get(TASK_DEFINITIONS.toString(), taskDefKey) >> taskDefCacheData
+    providerCache.getAll(TASK_DEFINITIONS.toString(), [taskDefKey] as Set) >> [taskDefCacheData]
 
     when:
     def taskHealthList = agent.getItems(ecs, providerCache)
@@ -373,7 +373,7 @@ class TaskHealthCachingAgentSpec extends Specification {
     ]
     def taskDefKey = Keys.getTaskDefinitionKey(CommonCachingAgent.ACCOUNT, CommonCachingAgent.REGION, CommonCachingAgent.TASK_DEFINITION_ARN_1)
     def taskDefCacheData = new DefaultCacheData(taskDefKey, taskDefAttributes, Collections.emptyMap())
-    providerCache.get(TASK_DEFINITIONS.toString(), taskDefKey) >> taskDefCacheData
+    providerCache.getAll(TASK_DEFINITIONS.toString(), [taskDefKey] as Set) >> [taskDefCacheData]
 
     when:
     def taskHealthList = agent.getItems(ecs, providerCache)
@@ -403,7 +403,7 @@ class TaskHealthCachingAgentSpec extends Specification {
     ]
     def taskDefKey = Keys.getTaskDefinitionKey(CommonCachingAgent.ACCOUNT, CommonCachingAgent.REGION, CommonCachingAgent.TASK_DEFINITION_ARN_1)
     def taskDefCacheData = new DefaultCacheData(taskDefKey, taskDefAttributes, Collections.emptyMap())
-    providerCache.get(TASK_DEFINITIONS.toString(), taskDefKey) >> taskDefCacheData
+    providerCache.getAll(TASK_DEFINITIONS.toString(), [taskDefKey] as Set) >> [taskDefCacheData]
 
     when:
     def taskHealthList = agent.getItems(ecs, providerCache)
@@ -443,7 +443,7 @@ class TaskHealthCachingAgentSpec extends Specification {
     ]
     def taskDefKey = Keys.getTaskDefinitionKey(CommonCachingAgent.ACCOUNT, CommonCachingAgent.REGION, CommonCachingAgent.TASK_DEFINITION_ARN_1)
     def taskDefCacheData = new DefaultCacheData(taskDefKey, taskDefAttributes, Collections.emptyMap())
-    providerCache.get(TASK_DEFINITIONS.toString(), taskDefKey) >> taskDefCacheData
+    providerCache.getAll(TASK_DEFINITIONS.toString(), [taskDefKey] as Set) >> [taskDefCacheData]
 
     when:
     def taskHealthList = agent.getItems(ecs, providerCache)
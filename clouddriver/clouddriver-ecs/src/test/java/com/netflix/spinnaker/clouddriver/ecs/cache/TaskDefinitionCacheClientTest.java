@@ -18,6 +18,8 @@ package com.netflix.spinnaker.clouddriver.ecs.cache;
 
 import static com.netflix.spinnaker.clouddriver.ecs.cache.Keys.Namespace.TASK_DEFINITIONS;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 
 import com.amazonaws.services.ecs.model.ContainerDefinition;
@@ -26,6 +28,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.spinnaker.cats.cache.DefaultCacheData;
 import com.netflix.spinnaker.clouddriver.ecs.cache.client.TaskDefinitionCacheClient;
 import com.netflix.spinnaker.clouddriver.ecs.provider.agent.TaskDefinitionCachingAgent;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
 import org.junit.Test;
@@ -75,4 +78,32 @@ public class TaskDefinitionCacheClientTest extends CommonCacheClient {
             + retrievedTaskDefinition,
         taskDefinition.equals(retrievedTaskDefinition));
   }
+
+  @Test
+  public void shouldRetrieveSeveralTaskDefinitionsByArn() {
+    // Given
+    String cachedArn = "arn:aws:ecs:" + REGION + ":012345678910:task-definition/hello_world:10";
+    String missingArn = "arn:aws:ecs:" + REGION + ":012345678910:task-definition/hello_world:11";
+    String key = Keys.getTaskDefinitionKey(ACCOUNT, REGION, cachedArn);
+
+    TaskDefinition taskDefinition = new TaskDefinition();
+    taskDefinition.setTaskDefinitionArn(cachedArn);
+    taskDefinition.setContainerDefinitions(Collections.emptyList());
+
+    Map<String, Object> attributes =
+        TaskDefinitionCachingAgent.convertTaskDefinitionToAttributes(taskDefinition);
+    when(cacheView.getAll(eq(TASK_DEFINITIONS.toString()), anyCollection()))
+        .thenReturn(
+            Collections.singletonList(
+                new DefaultCacheData(key, attributes, Collections.emptyMap())));
+
+    // When
+    Map<String, TaskDefinition> retrieved =
+        client.getByArns(ACCOUNT, REGION, Arrays.asList(cachedArn, missingArn));
+
+    // Then
+    assertTrue(
+        "Expected only the cached task definition to be returned but got " + retrieved.keySet(),
+        retrieved.size() == 1 && taskDefinition.equals(retrieved.get(cachedArn)));
+  }
 }
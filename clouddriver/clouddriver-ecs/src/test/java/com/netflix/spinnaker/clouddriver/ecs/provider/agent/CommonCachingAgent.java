@@ -24,6 +24,7 @@ import static org.mockito.Mockito.when;
 
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.services.ecs.AmazonECS;
+import com.netflix.spectator.api.NoopRegistry;
 import com.netflix.spectator.api.Registry;
 import com.netflix.spinnaker.cats.provider.ProviderCache;
 import com.netflix.spinnaker.clouddriver.aws.security.AmazonClientProvider;
@@ -72,7 +73,7 @@ public class CommonCachingAgent {
   static final AmazonClientProvider clientProvider = mock(AmazonClientProvider.class);
   final ProviderCache providerCache = mock(ProviderCache.class);
   final AWSCredentialsProvider credentialsProvider = mock(AWSCredentialsProvider.class);
-  final Registry registry = mock(Registry.class);
+  final Registry registry = new NoopRegistry();
   static final NetflixAmazonCredentials netflixAmazonCredentials;
 
   static {
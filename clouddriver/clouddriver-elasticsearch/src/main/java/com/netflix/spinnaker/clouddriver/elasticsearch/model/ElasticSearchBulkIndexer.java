@@ -0,0 +1,234 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.clouddriver.elasticsearch.model;
+
+import static java.lang.String.format;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.Index;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Indexes documents through a single background writer.
+ *
+ * <p>Documents are queued (blocking callers once the queue is full) and written in bulk requests of
+ * up to {@code batchSize} documents, or whatever has accumulated after {@code flushInterval}.
+ * Failed bulk requests are retried with exponential backoff before the documents in them are
+ * failed.
+ */
+public class ElasticSearchBulkIndexer {
+  private static final Logger log = LoggerFactory.getLogger(ElasticSearchBulkIndexer.class);
+
+  private final JestClient jestClient;
+  private final String index;
+  private final String mappingTypeName;
+  private final int batchSize;
+  private final Duration flushInterval;
+  private final Duration enqueueTimeout;
+  private final int maxRetries;
+  private final Duration initialBackoff;
+
+  private final BlockingQueue<PendingDocument> queue;
+  private final Thread writer;
+
+  private volatile boolean running = true;
+
+  public ElasticSearchBulkIndexer(
+      JestClient jestClient,
+      String index,
+      String mappingTypeName,
+      int queueCapacity,
+      int batchSize,
+      Duration flushInterval,
+      Duration enqueueTimeout,
+      int maxRetries,
+      Duration initialBackoff) {
+    this.jestClient = jestClient;
+    this.index = index;
+    this.mappingTypeName = mappingTypeName;
+    this.batchSize = batchSize;
+    this.flushInterval = flushInterval;
+    this.enqueueTimeout = enqueueTimeout;
+    this.maxRetries = maxRetries;
+    this.initialBackoff = initialBackoff;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+    this.writer =
+        new ThreadFactoryBuilder()
+            .setNameFormat(ElasticSearchBulkIndexer.class.getSimpleName() + "-%d")
+            .setDaemon(true)
+            .build()
+            .newThread(this::run);
+    this.writer.start();
+  }
+
+  /**
+   * Queues a document for indexing, waiting for space in the queue if necessary.
+   *
+   * @return a future that completes once the document has been indexed
+   * @throws ElasticSearchException if the queue stays full for longer than the enqueue timeout
+   */
+  public CompletableFuture<Void> submit(String id, Map document) {
+    PendingDocument pendingDocument = new PendingDocument(id, document);
+    try {
+      if (!running
+          || !queue.offer(pendingDocument, enqueueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+        throw new ElasticSearchException(
+            format("Unable to queue %s for indexing, the indexing queue is full", id));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ElasticSearchException(format("Interrupted while queueing %s for indexing", id));
+    }
+    return pendingDocument.future;
+  }
+
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  public void shutdown() {
+    running = false;
+    writer.interrupt();
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        List<PendingDocument> batch = nextBatch();
+        if (!batch.isEmpty()) {
+          write(batch);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (Exception e) {
+        log.error("Unexpected failure in bulk indexer", e);
+      }
+    }
+
+    List<PendingDocument> abandoned = new ArrayList<>();
+    queue.drainTo(abandoned);
+    abandoned.forEach(
+        d ->
+            d.future.completeExceptionally(
+                new ElasticSearchException(format("Indexer shut down before indexing %s", d.id))));
+  }
+
+  private List<PendingDocument> nextBatch() throws InterruptedException {
+    List<PendingDocument> batch = new ArrayList<>(batchSize);
+
+    PendingDocument first = queue.take();
+    batch.add(first);
+
+    long deadline = System.nanoTime() + flushInterval.toNanos();
+    while (batch.size() < batchSize) {
+      queue.drainTo(batch, batchSize - batch.size());
+      long remaining = deadline - System.nanoTime();
+      if (batch.size() >= batchSize || remaining <= 0) {
+        break;
+      }
+
+      PendingDocument next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        break;
+      }
+      batch.add(next);
+    }
+
+    return batch;
+  }
+
+  private void write(List<PendingDocument> batch) throws InterruptedException {
+    Bulk.Builder builder = new Bulk.Builder().defaultIndex(index);
+    for (PendingDocument pendingDocument : batch) {
+      builder.addAction(
+          new Index.Builder(pendingDocument.document)
+              .index(index)
+              .type(mappingTypeName)
+              .id(pendingDocument.id)
+              .build());
+    }
+    Bulk bulk = builder.build();
+
+    long backoffMillis = initialBackoff.toMillis();
+    String failure = null;
+    for (int attempt = 1; attempt <= maxRetries; attempt++) {
+      try {
+        JestResult jestResult = jestClient.execute(bulk);
+        if (jestResult.isSucceeded()) {
+          batch.forEach(d -> d.future.complete(null));
+          return;
+        }
+        failure = jestResult.getErrorMessage();
+      } catch (IOException e) {
+        failure = e.getMessage();
+      }
+
+      if (attempt < maxRetries) {
+        log.warn(
+            "Failed to index {} entity tags (attempt {} of {}), reason: '{}' ... retrying in {}ms",
+            batch.size(),
+            attempt,
+            maxRetries,
+            failure,
+            backoffMillis);
+        try {
+          Thread.sleep(backoffMillis);
+        } catch (InterruptedException e) {
+          batch.forEach(
+              d ->
+                  d.future.completeExceptionally(
+                      new ElasticSearchException(
+                          format("Indexer shut down before indexing %s", d.id))));
+          throw e;
+        }
+        backoffMillis *= 2;
+      }
+    }
+
+    ElasticSearchException exception =
+        new ElasticSearchException(
+            format("Failed to index bulk entity tags, reason: '%s'", failure));
+    log.error(exception.getMessage());
+    batch.forEach(d -> d.future.completeExceptionally(exception));
+  }
+
+  private static class PendingDocument {
+    private final String id;
+    private final Map document;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    PendingDocument(String id, Map document) {
+      this.id = id;
+      this.document = document;
+    }
+  }
+}
@@ -43,12 +43,16 @@ import io.searchbox.indices.DeleteIndex;
 import io.searchbox.params.Parameters;
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
 import org.apache.lucene.search.join.ScoreMode;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
@@ -74,6 +78,15 @@ public class ElasticSearchEntityTagsProvider implements EntityTagsProvider {
 
   private final String mappingTypeName;
 
+  private final ElasticSearchBulkIndexer bulkIndexer;
+  private final int reindexPageSize;
+
+  /**
+   * Id of the last entity tags indexed by an incomplete {@link #reindex()}; a reindex that is asked
+   * to resume picks up after it (rather than recreating the index and starting over).
+   */
+  private volatile String reindexCursor;
+
   @Autowired
   public ElasticSearchEntityTagsProvider(
       ApplicationContext applicationContext,
@@ -89,6 +102,23 @@ public class ElasticSearchEntityTagsProvider implements EntityTagsProvider {
     this.jestClient = jestClient;
     this.activeElasticSearchIndex = elasticSearchConfigProperties.getActiveIndex();
     this.mappingTypeName = elasticSearchConfigProperties.getMappingTypeName();
+    this.reindexPageSize = elasticSearchConfigProperties.getReindexPageSize();
+    this.bulkIndexer =
+        new ElasticSearchBulkIndexer(
+            jestClient,
+            activeElasticSearchIndex,
+            mappingTypeName,
+            elasticSearchConfigProperties.getBulkIndexQueueCapacity(),
+            elasticSearchConfigProperties.getBulkIndexBatchSize(),
+            Duration.ofMillis(elasticSearchConfigProperties.getBulkIndexFlushIntervalMs()),
+            Duration.ofMillis(elasticSearchConfigProperties.getBulkIndexEnqueueTimeoutMs()),
+            elasticSearchConfigProperties.getBulkIndexMaxRetries(),
+            Duration.ofMillis(elasticSearchConfigProperties.getBulkIndexInitialBackoffMs()));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    bulkIndexer.shutdown();
   }
 
   @Override
@@ -215,46 +245,27 @@ public class ElasticSearchEntityTagsProvider implements EntityTagsProvider {
 
   @Override
   public void bulkIndex(Collection<EntityTags> multipleEntityTags) {
-    Lists.partition(new ArrayList<>(multipleEntityTags), 1000)
-        .forEach(
-            tags -> {
-              Bulk.Builder builder = new Bulk.Builder().defaultIndex(activeElasticSearchIndex);
-
-              for (EntityTags entityTags : tags) {
-                Map tag =
-                    objectMapper.convertValue(prepareForWrite(objectMapper, entityTags), Map.class);
-                builder =
-                    builder.addAction(
-                        new Index.Builder(tag)
-                            .index(activeElasticSearchIndex)
-                            .type(mappingTypeName)
-                            .id(entityTags.getId())
-                            .build());
-              }
+    // documents are written asynchronously (and batched with those of any concurrent callers), but
+    // callers still expect everything to have been indexed by the time this returns
+    List<CompletableFuture<Void>> futures =
+        multipleEntityTags.stream()
+            .map(
+                entityTags ->
+                    bulkIndexer.submit(
+                        entityTags.getId(),
+                        objectMapper.convertValue(
+                            prepareForWrite(objectMapper, entityTags), Map.class)))
+            .collect(Collectors.toList());
 
-              Bulk bulk = builder.build();
-              retrySupport.retry(
-                  () -> {
-                    try {
-                      JestResult jestResult = jestClient.execute(bulk);
-                      if (!jestResult.isSucceeded()) {
-                        throw new ElasticSearchException(
-                            format(
-                                "Failed to index bulk entity tags, reason: '%s'",
-                                jestResult.getErrorMessage()));
-                      }
-                      return true;
-                    } catch (IOException e) {
-                      String message =
-                          format("Failed to index bulk entity tags, reason: '%s'", e.getMessage());
-                      log.error(message + " ... retrying!");
-                      throw new ElasticSearchException(message);
-                    }
-                  },
-                  5,
-                  1000,
-                  false);
-            });
+    try {
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof ElasticSearchException) {
+        throw (ElasticSearchException) e.getCause();
+      }
+      throw new ElasticSearchException(
+          format("Failed to index bulk entity tags, reason: '%s'", e.getMessage()), e);
+    }
   }
 
   @Override
@@ -311,17 +322,30 @@ public class ElasticSearchEntityTagsProvider implements EntityTagsProvider {
 
   @Override
   public void reindex() {
-    try {
-      log.info("Deleting Index {}", activeElasticSearchIndex);
-      jestClient.execute(new DeleteIndex.Builder(activeElasticSearchIndex).build());
-      log.info("Deleted Index {}", activeElasticSearchIndex);
+    reindex(false);
+  }
 
-      log.info("Creating Index {}", activeElasticSearchIndex);
-      jestClient.execute(new CreateIndex.Builder(activeElasticSearchIndex).build());
-      log.info("Created Index {}", activeElasticSearchIndex);
-    } catch (IOException e) {
-      throw new ElasticSearchException(
-          "Unable to re-create index '" + activeElasticSearchIndex + "'");
+  @Override
+  public void reindex(boolean resume) {
+    if (!resume) {
+      reindexCursor = null;
+    }
+    String resumeAfter = reindexCursor;
+    if (resumeAfter == null) {
+      try {
+        log.info("Deleting Index {}", activeElasticSearchIndex);
+        jestClient.execute(new DeleteIndex.Builder(activeElasticSearchIndex).build());
+        log.info("Deleted Index {}", activeElasticSearchIndex);
+
+        log.info("Creating Index {}", activeElasticSearchIndex);
+        jestClient.execute(new CreateIndex.Builder(activeElasticSearchIndex).build());
+        log.info("Created Index {}", activeElasticSearchIndex);
+      } catch (IOException e) {
+        throw new ElasticSearchException(
+            "Unable to re-create index '" + activeElasticSearchIndex + "'");
+      }
+    } else {
+      log.info("Resuming reindex of {} after '{}'", activeElasticSearchIndex, resumeAfter);
     }
 
     Collection<EntityTags> entityTags = front50Service.getAllEntityTags(true);
@@ -333,12 +357,24 @@ public class ElasticSearchEntityTagsProvider implements EntityTagsProvider {
         filteredEntityTags.size(),
         entityTags.size() - filteredEntityTags.size());
 
-    bulkIndex(
+    // index in id order so that an interrupted reindex can pick up where it left off
+    List<EntityTags> remainingEntityTags =
         filteredEntityTags.stream()
             .filter(e -> e.getEntityRef() != null)
-            .collect(Collectors.toList()));
+            .filter(e -> resumeAfter == null || e.getId().compareTo(resumeAfter) > 0)
+            .sorted(Comparator.comparing(EntityTags::getId))
+            .collect(Collectors.toList());
+
+    int indexed = 0;
+    for (List<EntityTags> page : Lists.partition(remainingEntityTags, reindexPageSize)) {
+      bulkIndex(page);
+      indexed += page.size();
+      reindexCursor = page.get(page.size() - 1).getId();
+      log.debug("Indexed {} of {} entity tags", indexed, remainingEntityTags.size());
+    }
+    reindexCursor = null;
 
-    log.info("Indexed {} entity tags", filteredEntityTags.size());
+    log.info("Indexed {} entity tags", indexed);
   }
 
   @Override
@@ -36,6 +36,19 @@ public class ElasticSearchConfigProperties {
   // recommended for forward compatibility with Elasticsearch 7.0.
   private String mappingTypeName = "_doc";
 
+  // Bulk indexing (and reindexing) goes through a bounded queue that is drained by a single writer.
+  // Callers block once bulkIndexQueueCapacity documents are pending, for at most
+  // bulkIndexEnqueueTimeoutMs.
+  private int bulkIndexQueueCapacity = 10000;
+  private int bulkIndexBatchSize = 1000;
+  private long bulkIndexFlushIntervalMs = 1000;
+  private long bulkIndexEnqueueTimeoutMs = 60000;
+  private int bulkIndexMaxRetries = 5;
+  private long bulkIndexInitialBackoffMs = 1000;
+
+  // Number of entity tags indexed between reindex cursor checkpoints.
+  private int reindexPageSize = 5000;
+
   public String getActiveIndex() {
     return activeIndex;
   }
@@ -75,4 +88,60 @@ public class ElasticSearchConfigProperties {
   public String getMappingTypeName() {
     return mappingTypeName;
   }
+
+  public int getBulkIndexQueueCapacity() {
+    return bulkIndexQueueCapacity;
+  }
+
+  public void setBulkIndexQueueCapacity(int bulkIndexQueueCapacity) {
+    this.bulkIndexQueueCapacity = bulkIndexQueueCapacity;
+  }
+
+  public int getBulkIndexBatchSize() {
+    return bulkIndexBatchSize;
+  }
+
+  public void setBulkIndexBatchSize(int bulkIndexBatchSize) {
+    this.bulkIndexBatchSize = bulkIndexBatchSize;
+  }
+
+  public long getBulkIndexFlushIntervalMs() {
+    return bulkIndexFlushIntervalMs;
+  }
+
+  public void setBulkIndexFlushIntervalMs(long bulkIndexFlushIntervalMs) {
+    this.bulkIndexFlushIntervalMs = bulkIndexFlushIntervalMs;
+  }
+
+  public long getBulkIndexEnqueueTimeoutMs() {
+    return bulkIndexEnqueueTimeoutMs;
+  }
+
+  public void setBulkIndexEnqueueTimeoutMs(long bulkIndexEnqueueTimeoutMs) {
+    this.bulkIndexEnqueueTimeoutMs = bulkIndexEnqueueTimeoutMs;
+  }
+
+  public int getBulkIndexMaxRetries() {
+    return bulkIndexMaxRetries;
+  }
+
+  public void setBulkIndexMaxRetries(int bulkIndexMaxRetries) {
+    this.bulkIndexMaxRetries = bulkIndexMaxRetries;
+  }
+
+  public long getBulkIndexInitialBackoffMs() {
+    return bulkIndexInitialBackoffMs;
+  }
+
+  public void setBulkIndexInitialBackoffMs(long bulkIndexInitialBackoffMs) {
+    this.bulkIndexInitialBackoffMs = bulkIndexInitialBackoffMs;
+  }
+
+  public int getReindexPageSize() {
+    return reindexPageSize;
+  }
+
+  public void setReindexPageSize(int reindexPageSize) {
+    this.reindexPageSize = reindexPageSize;
+  }
 }
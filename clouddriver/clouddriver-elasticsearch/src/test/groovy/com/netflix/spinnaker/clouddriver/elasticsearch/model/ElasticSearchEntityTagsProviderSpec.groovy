@@ -295,6 +295,48 @@ class ElasticSearchEntityTagsProviderSpec extends Specification {
     !entityTagsProvider.get(allEntityTags[0].id).isPresent()
   }
 
+  def "should only resume an incomplete reindex when asked to"() {
+    given:
+    def allEntityTags = [
+      buildEntityTags("aws:servergroup:clouddriver-main-v001:myaccount:us-west-1", [:]),
+      buildEntityTags("aws:servergroup:clouddriver-main-v002:myaccount:us-west-1", [:]),
+    ]
+    front50Service.getAllEntityTags(true) >> { return allEntityTags }
+    entityTagsReconciler.filter(allEntityTags) >> { return allEntityTags }
+
+    when: "a reindex that stopped after the first entity tags is resumed"
+    entityTagsProvider.@reindexCursor = allEntityTags[0].id
+    entityTagsProvider.reindex(true)
+
+    then:
+    entityTagsProvider.verifyIndex(allEntityTags[1])
+    verifyNotIndexed(allEntityTags[0])
+
+    when: "a reindex that stopped after the first entity tags is requested again"
+    entityTagsProvider.@reindexCursor = allEntityTags[0].id
+    entityTagsProvider.reindex()
+
+    then: "the index is recreated and everything is indexed"
+    entityTagsProvider.verifyIndex(allEntityTags[0])
+    entityTagsProvider.verifyIndex(allEntityTags[1])
+    entityTagsProvider.@reindexCursor == null
+  }
+
+  def "should index multiple entity tags (bulk)"() {
+    given:
+    def allEntityTags = (1..5).collect {
+      buildEntityTags("aws:servergroup:clouddriver-main-v00${it}:myaccount:us-west-1", ["tag${it}": "value${it}"])
+    }
+
+    when:
+    entityTagsProvider.bulkIndex(allEntityTags)
+
+    then:
+    allEntityTags.each {
+      entityTagsProvider.verifyIndex(it)
+    }
+  }
+
   def "should delete multiple entity tags (bulk)"() {
     given:
     def allEntityTags = [
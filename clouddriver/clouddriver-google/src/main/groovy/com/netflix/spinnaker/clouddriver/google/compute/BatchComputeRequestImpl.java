@@ -41,6 +41,7 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import lombok.AllArgsConstructor;
@@ -59,14 +60,29 @@ final class BatchComputeRequestImpl<RequestT extends ComputeRequest<ResponseT>,
   private final Registry registry;
   private final String userAgent;
   private final ListeningExecutorService executor;
+  private final Semaphore inFlightBatches;
   private final List<QueuedRequest<RequestT, ResponseT>> queuedRequests;
 
   BatchComputeRequestImpl(
       Compute compute, Registry registry, String userAgent, ListeningExecutorService executor) {
+    this(compute, registry, userAgent, executor, new Semaphore(Integer.MAX_VALUE));
+  }
+
+  /**
+   * @param inFlightBatches permits shared by every batch request to the same project, limiting how
+   *     many batches can be executing against it at once
+   */
+  BatchComputeRequestImpl(
+      Compute compute,
+      Registry registry,
+      String userAgent,
+      ListeningExecutorService executor,
+      Semaphore inFlightBatches) {
     this.compute = compute;
     this.registry = registry;
     this.userAgent = userAgent;
     this.executor = executor;
+    this.inFlightBatches = inFlightBatches;
     this.queuedRequests = new ArrayList<>();
   }
 
@@ -116,7 +132,7 @@ final class BatchComputeRequestImpl<RequestT extends ComputeRequest<ResponseT>,
 
   private void executeBatches(List<BatchRequest> queuedBatches) throws IOException {
     if (queuedBatches.size() == 1) {
-      queuedBatches.get(0).execute();
+      executeBatch(queuedBatches.get(0));
       return;
     }
 
@@ -127,7 +143,7 @@ final class BatchComputeRequestImpl<RequestT extends ComputeRequest<ResponseT>,
                     executor.submit(
                         (Callable<Void>)
                             () -> {
-                              batchRequest.execute();
+                              executeBatch(batchRequest);
                               return null;
                             }))
             .collect(Collectors.toList());
@@ -143,6 +159,20 @@ final class BatchComputeRequestImpl<RequestT extends ComputeRequest<ResponseT>,
     }
   }
 
+  private void executeBatch(BatchRequest batchRequest) throws IOException {
+    try {
+      inFlightBatches.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    try {
+      batchRequest.execute();
+    } finally {
+      inFlightBatches.release();
+    }
+  }
+
   private List<BatchRequest> createBatchRequests(
       List<List<QueuedRequest<RequestT, ResponseT>>> requestPartitions) throws IOException {
 
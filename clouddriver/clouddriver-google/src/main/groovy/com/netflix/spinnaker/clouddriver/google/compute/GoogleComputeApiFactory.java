@@ -19,9 +19,13 @@ package com.netflix.spinnaker.clouddriver.google.compute;
 import com.google.api.services.compute.ComputeRequest;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.netflix.spectator.api.Registry;
+import com.netflix.spinnaker.clouddriver.google.config.GoogleConfigurationProperties;
 import com.netflix.spinnaker.clouddriver.google.deploy.GoogleOperationPoller;
 import com.netflix.spinnaker.clouddriver.google.model.GoogleServerGroup;
 import com.netflix.spinnaker.clouddriver.google.security.GoogleNamedAccountCredentials;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
@@ -33,6 +37,21 @@ public class GoogleComputeApiFactory {
   private final Registry registry;
   private String clouddriverUserAgentApplicationName;
   private ListeningExecutorService batchExecutor;
+  private final int maxInFlightBatchesPerProject;
+  private final ConcurrentMap<String, Semaphore> inFlightBatchPermits = new ConcurrentHashMap<>();
+
+  public GoogleComputeApiFactory(
+      GoogleOperationPoller operationPoller,
+      Registry registry,
+      String clouddriverUserAgentApplicationName,
+      ListeningExecutorService batchExecutor) {
+    this(
+        operationPoller,
+        registry,
+        clouddriverUserAgentApplicationName,
+        batchExecutor,
+        GoogleConfigurationProperties.MAX_IN_FLIGHT_BATCHES_PER_PROJECT);
+  }
 
   @Autowired
   public GoogleComputeApiFactory(
@@ -40,11 +59,32 @@ public class GoogleComputeApiFactory {
       Registry registry,
       String clouddriverUserAgentApplicationName,
       @Qualifier(ComputeConfiguration.BATCH_REQUEST_EXECUTOR)
-          ListeningExecutorService batchExecutor) {
+          ListeningExecutorService batchExecutor,
+      GoogleConfigurationProperties googleConfigurationProperties) {
+    this(
+        operationPoller,
+        registry,
+        clouddriverUserAgentApplicationName,
+        batchExecutor,
+        googleConfigurationProperties.getMaxInFlightBatchesPerProject());
+  }
+
+  private GoogleComputeApiFactory(
+      GoogleOperationPoller operationPoller,
+      Registry registry,
+      String clouddriverUserAgentApplicationName,
+      ListeningExecutorService batchExecutor,
+      int maxInFlightBatchesPerProject) {
     this.operationPoller = operationPoller;
     this.registry = registry;
     this.clouddriverUserAgentApplicationName = clouddriverUserAgentApplicationName;
     this.batchExecutor = batchExecutor;
+    this.maxInFlightBatchesPerProject = maxInFlightBatchesPerProject;
+  }
+
+  /** The executor that batches (and anything that waits on them) should be run on. */
+  public ListeningExecutorService getBatchExecutor() {
+    return batchExecutor;
   }
 
   public Images createImages(GoogleNamedAccountCredentials credentials) {
@@ -89,8 +129,15 @@ public class GoogleComputeApiFactory {
   public <RequestT extends ComputeRequest<ResponseT>, ResponseT>
       BatchComputeRequest<RequestT, ResponseT> createBatchRequest(
           GoogleNamedAccountCredentials credentials) {
+    Semaphore inFlightBatches =
+        inFlightBatchPermits.computeIfAbsent(
+            credentials.getProject(), project -> new Semaphore(maxInFlightBatchesPerProject));
     return new BatchComputeRequestImpl<>(
-        credentials.getCompute(), registry, clouddriverUserAgentApplicationName, batchExecutor);
+        credentials.getCompute(),
+        registry,
+        clouddriverUserAgentApplicationName,
+        batchExecutor,
+        inFlightBatches);
   }
 
   public <ComputeRequestT extends ComputeRequest<ResponseT>, ResponseT, ItemT>
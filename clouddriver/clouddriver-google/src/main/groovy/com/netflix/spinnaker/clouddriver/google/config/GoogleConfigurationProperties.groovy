@@ -23,6 +23,7 @@ import groovy.transform.ToString
 class GoogleConfigurationProperties {
   public static final int ASYNC_OPERATION_TIMEOUT_SECONDS_DEFAULT = 300
   public static final int ASYNC_OPERATION_MAX_POLLING_INTERVAL_SECONDS = 8
+  public static final int MAX_IN_FLIGHT_BATCHES_PER_PROJECT = 8
 
   @ToString(includeNames = true)
   static class ManagedAccount extends GoogleCommonManagedAccount {
@@ -42,6 +43,9 @@ class GoogleConfigurationProperties {
   int asyncOperationMaxPollingIntervalSeconds = ASYNC_OPERATION_MAX_POLLING_INTERVAL_SECONDS
   List<String> baseImageProjects
   long maxMIGPageSize = 50
+  // Caps how many compute batch requests may be executing against a single project at once, across
+  // all of its caching agents.
+  int maxInFlightBatchesPerProject = MAX_IN_FLIGHT_BATCHES_PER_PROJECT
   // Takes a list of regions you want indexed. Will default to indexing all regions if left
   // unspecified. An empty list will index no regions.
   List<String> defaultRegions
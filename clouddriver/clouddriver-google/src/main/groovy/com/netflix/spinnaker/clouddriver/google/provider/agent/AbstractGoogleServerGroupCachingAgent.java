@@ -35,6 +35,7 @@ import static com.netflix.spinnaker.clouddriver.google.deploy.GCEUtil.REGIONAL_L
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.util.Throwables;
 import com.google.api.services.compute.Compute;
 import com.google.api.services.compute.model.AttachedDisk;
 import com.google.api.services.compute.model.Autoscaler;
@@ -56,6 +57,7 @@ import com.google.common.base.Splitter.MapSplitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.netflix.frigga.ami.AppVersion;
 import com.netflix.spectator.api.Registry;
 import com.netflix.spinnaker.cats.agent.AccountAware;
@@ -100,6 +102,7 @@ import com.netflix.spinnaker.clouddriver.names.NamerRegistry;
 import com.netflix.spinnaker.moniker.Moniker;
 import com.netflix.spinnaker.moniker.Namer;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.util.ArrayList;
@@ -110,6 +113,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -137,6 +142,7 @@ abstract class AbstractGoogleServerGroupCachingAgent
 
   private final GoogleNamedAccountCredentials credentials;
   private final GoogleComputeApiFactory computeApiFactory;
+  private final Registry registry;
   private final String region;
   private final OnDemandMetricsSupport onDemandMetricsSupport;
   private final ObjectMapper objectMapper;
@@ -150,6 +156,7 @@ abstract class AbstractGoogleServerGroupCachingAgent
       ObjectMapper objectMapper) {
     this.credentials = credentials;
     this.computeApiFactory = computeApiFactory;
+    this.registry = registry;
     this.region = region;
     this.onDemandMetricsSupport = new OnDemandMetricsSupport(registry, this, ON_DEMAND_TYPE);
     this.objectMapper = objectMapper;
@@ -451,16 +458,74 @@ abstract class AbstractGoogleServerGroupCachingAgent
 
   private List<GoogleServerGroup> getServerGroups(ProviderCache providerCache) throws IOException {
 
-    ImmutableList<GoogleInstance> instances =
-        retrieveAllInstancesInRegion().stream()
-            .map(instance -> GoogleInstances.createFromComputeInstance(instance, credentials))
-            .collect(toImmutableList());
-    return constructServerGroups(
-        providerCache,
-        retrieveInstanceGroupManagers(),
-        instances,
-        retrieveInstanceTemplates(),
-        retrieveAutoscalers());
+    // None of these depend on each other, so issue them all at once. The number of batches that
+    // are actually in flight for a project is capped by the compute API factory.
+    ListenableFuture<Collection<Instance>> instancesFuture =
+        retrieveAsync("instances", this::retrieveAllInstancesInRegion);
+    ListenableFuture<Collection<InstanceGroupManager>> managersFuture =
+        retrieveAsync("instanceGroupManagers", this::retrieveInstanceGroupManagers);
+    ListenableFuture<Collection<InstanceTemplate>> instanceTemplatesFuture =
+        retrieveAsync("instanceTemplates", this::retrieveInstanceTemplates);
+    ListenableFuture<Collection<Autoscaler>> autoscalersFuture =
+        retrieveAsync("autoscalers", this::retrieveAutoscalers);
+
+    try {
+      ImmutableList<GoogleInstance> instances =
+          getResult(instancesFuture).stream()
+              .map(instance -> GoogleInstances.createFromComputeInstance(instance, credentials))
+              .collect(toImmutableList());
+      return timePhase(
+          "constructServerGroups",
+          () ->
+              constructServerGroups(
+                  providerCache,
+                  getResult(managersFuture),
+                  instances,
+                  getResult(instanceTemplatesFuture),
+                  getResult(autoscalersFuture)));
+    } finally {
+      Stream.of(instancesFuture, managersFuture, instanceTemplatesFuture, autoscalersFuture)
+          .forEach(future -> future.cancel(true));
+    }
+  }
+
+  @FunctionalInterface
+  private interface IoSupplier<T> {
+    T get() throws IOException;
+  }
+
+  private <T> ListenableFuture<T> retrieveAsync(String phase, IoSupplier<T> retriever) {
+    return computeApiFactory.getBatchExecutor().submit(() -> timePhase(phase, retriever));
+  }
+
+  private <T> T timePhase(String phase, IoSupplier<T> supplier) throws IOException {
+    long start = registry.clock().monotonicTime();
+    String success = "false";
+    try {
+      T result = supplier.get();
+      success = "true";
+      return result;
+    } finally {
+      registry
+          .timer(
+              registry.createId(
+                  "google.serverGroupCaching.phase",
+                  ImmutableMap.of(
+                      "agent", getBatchContextPrefix(), "phase", phase, "success", success)))
+          .record(registry.clock().monotonicTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private static <T> T getResult(ListenableFuture<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new RuntimeException(e.getCause());
+    }
   }
 
   /**
@@ -559,8 +624,10 @@ abstract class AbstractGoogleServerGroupCachingAgent
     Map<TargetAndScope, Autoscaler> autoscalerMap =
         autoscalers.stream()
             .collect(toImmutableMap(TargetAndScope::forAutoscaler, scaler -> scaler));
-    Map<String, InstanceTemplate> instanceTemplatesMap =
-        instanceTemplates.stream().collect(toImmutableMap(InstanceTemplate::getName, i -> i));
+    // Many server groups share an instance template, so only parse each of them once per cycle.
+    Map<String, ParsedInstanceTemplate> instanceTemplatesMap =
+        instanceTemplates.stream()
+            .collect(toImmutableMap(InstanceTemplate::getName, this::parseInstanceTemplate));
     return managers.stream()
         .map(
             manager -> {
@@ -576,7 +643,7 @@ abstract class AbstractGoogleServerGroupCachingAgent
               }
               TargetAndScope key = TargetAndScope.forInstanceGroupManager(manager);
               Autoscaler autoscaler = autoscalerMap.get(key);
-              InstanceTemplate instanceTemplate =
+              ParsedInstanceTemplate instanceTemplate =
                   instanceTemplatesMap.get(Utils.getLocalName(manager.getInstanceTemplate()));
               return createServerGroup(
                   manager, ownedInstances, instanceTemplate, autoscaler, providerCache);
@@ -594,10 +661,52 @@ abstract class AbstractGoogleServerGroupCachingAgent
     }
   }
 
+  /** An instance template along with the pieces of it that every server group needs. */
+  @Value
+  private static class ParsedInstanceTemplate {
+    InstanceTemplate template;
+    ImmutableList<AttachedDisk> disks;
+    @Nullable ImmutableMap<String, String> metadata;
+    @Nullable GoogleHttpLoadBalancingPolicy loadBalancingPolicy;
+  }
+
+  private ParsedInstanceTemplate parseInstanceTemplate(InstanceTemplate instanceTemplate) {
+
+    ImmutableList<AttachedDisk> disks = getDisks(instanceTemplate);
+    if (instanceTemplate.getProperties() != null) {
+      instanceTemplate.getProperties().setDisks(disks);
+    }
+
+    if (instanceTemplate.getProperties() == null
+        || instanceTemplate.getProperties().getMetadata() == null
+        || instanceTemplate.getProperties().getMetadata().getItems() == null) {
+      return new ParsedInstanceTemplate(instanceTemplate, disks, null, null);
+    }
+
+    ImmutableMap<String, String> metadata =
+        instanceTemplate.getProperties().getMetadata().getItems().stream()
+            .filter(item -> item.getKey() != null)
+            .filter(item -> item.getValue() != null)
+            .collect(toImmutableMap(Items::getKey, Items::getValue));
+
+    GoogleHttpLoadBalancingPolicy loadBalancingPolicy = null;
+    if (metadata.containsKey(LOAD_BALANCING_POLICY)) {
+      try {
+        loadBalancingPolicy =
+            objectMapper.readValue(
+                metadata.get(LOAD_BALANCING_POLICY), GoogleHttpLoadBalancingPolicy.class);
+      } catch (IOException e) {
+        log.warn("Error parsing load balancing policy", e);
+      }
+    }
+
+    return new ParsedInstanceTemplate(instanceTemplate, disks, metadata, loadBalancingPolicy);
+  }
+
   private GoogleServerGroup createServerGroup(
       InstanceGroupManager manager,
       ImmutableSet<GoogleInstance> instances,
-      @Nullable InstanceTemplate instanceTemplate,
+      @Nullable ParsedInstanceTemplate parsedInstanceTemplate,
       @Nullable Autoscaler autoscaler,
       ProviderCache providerCache) {
 
@@ -610,10 +719,10 @@ abstract class AbstractGoogleServerGroupCachingAgent
     serverGroup.setSelfLink(manager.getSelfLink());
     serverGroup.setCurrentActions(manager.getCurrentActions());
 
-    setLaunchConfig(serverGroup, manager, instanceTemplate, providerCache);
-    setAutoscalerGroup(serverGroup, manager, instanceTemplate);
-    if (instanceTemplate != null) {
-      InstanceProperties properties = instanceTemplate.getProperties();
+    setLaunchConfig(serverGroup, manager, parsedInstanceTemplate, providerCache);
+    setAutoscalerGroup(serverGroup, manager, parsedInstanceTemplate);
+    if (parsedInstanceTemplate != null) {
+      InstanceProperties properties = parsedInstanceTemplate.getTemplate().getProperties();
       if (properties != null) {
         serverGroup.setCanIpForward(properties.getCanIpForward());
         if (properties.getServiceAccounts() != null) {
@@ -693,18 +802,18 @@ abstract class AbstractGoogleServerGroupCachingAgent
   private void setLaunchConfig(
       GoogleServerGroup serverGroup,
       InstanceGroupManager manager,
-      @Nullable InstanceTemplate instanceTemplate,
+      @Nullable ParsedInstanceTemplate parsedInstanceTemplate,
       ProviderCache providerCache) {
 
     HashMap<String, Object> launchConfig = new HashMap<>();
     launchConfig.put("createdTime", Utils.getTimeFromTimestamp(manager.getCreationTimestamp()));
 
-    if (instanceTemplate != null) {
+    if (parsedInstanceTemplate != null) {
+      InstanceTemplate instanceTemplate = parsedInstanceTemplate.getTemplate();
       launchConfig.put("launchConfigurationName", instanceTemplate.getName());
       launchConfig.put("instanceTemplate", instanceTemplate);
       if (instanceTemplate.getProperties() != null) {
-        List<AttachedDisk> disks = getDisks(instanceTemplate);
-        instanceTemplate.getProperties().setDisks(disks);
+        List<AttachedDisk> disks = parsedInstanceTemplate.getDisks();
         if (instanceTemplate.getProperties().getMachineType() != null) {
           launchConfig.put("instanceType", instanceTemplate.getProperties().getMachineType());
         }
@@ -819,7 +928,7 @@ abstract class AbstractGoogleServerGroupCachingAgent
   private void setAutoscalerGroup(
       GoogleServerGroup serverGroup,
       InstanceGroupManager manager,
-      @Nullable InstanceTemplate instanceTemplate) {
+      @Nullable ParsedInstanceTemplate parsedInstanceTemplate) {
 
     Map<String, Object> autoscalerGroup = new HashMap<>();
 
@@ -829,16 +938,9 @@ abstract class AbstractGoogleServerGroupCachingAgent
       autoscalerGroup.put("desiredCapacity", manager.getTargetSize());
     }
 
-    if (instanceTemplate != null
-        && instanceTemplate.getProperties() != null
-        && instanceTemplate.getProperties().getMetadata() != null
-        && instanceTemplate.getProperties().getMetadata().getItems() != null) {
+    if (parsedInstanceTemplate != null && parsedInstanceTemplate.getMetadata() != null) {
 
-      ImmutableMap<String, String> metadata =
-          instanceTemplate.getProperties().getMetadata().getItems().stream()
-              .filter(item -> item.getKey() != null)
-              .filter(item -> item.getValue() != null)
-              .collect(toImmutableMap(Items::getKey, Items::getValue));
+      ImmutableMap<String, String> metadata = parsedInstanceTemplate.getMetadata();
 
       if (metadata.containsKey(GLOBAL_LOAD_BALANCER_NAMES)) {
         autoscalerGroup.put(
@@ -869,15 +971,8 @@ abstract class AbstractGoogleServerGroupCachingAgent
             BACKEND_SERVICE_NAMES, COMMA.splitToList(metadata.get(BACKEND_SERVICE_NAMES)));
       }
 
-      if (metadata.containsKey(LOAD_BALANCING_POLICY)) {
-        try {
-          autoscalerGroup.put(
-              LOAD_BALANCING_POLICY,
-              objectMapper.readValue(
-                  metadata.get(LOAD_BALANCING_POLICY), GoogleHttpLoadBalancingPolicy.class));
-        } catch (IOException e) {
-          log.warn("Error parsing load balancing policy", e);
-        }
+      if (parsedInstanceTemplate.getLoadBalancingPolicy() != null) {
+        autoscalerGroup.put(LOAD_BALANCING_POLICY, parsedInstanceTemplate.getLoadBalancingPolicy());
       }
     }
 
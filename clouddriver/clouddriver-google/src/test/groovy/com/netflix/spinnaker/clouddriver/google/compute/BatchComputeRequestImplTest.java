@@ -40,6 +40,7 @@ import com.netflix.spectator.api.Registry;
 import com.netflix.spectator.api.Tag;
 import com.netflix.spectator.api.Timer;
 import java.io.IOException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.http.client.HttpResponseException;
 import org.junit.Before;
@@ -93,6 +94,35 @@ public class BatchComputeRequestImplTest {
     assertThat(responses.failures).hasValue(0);
   }
 
+  @Test
+  public void releasesInFlightPermitsAfterEachBatch() throws IOException {
+
+    Compute compute =
+        computeWithResponses(
+            () -> successBatchResponse(BatchComputeRequestImpl.MAX_BATCH_SIZE),
+            () -> successBatchResponse(3));
+
+    // with a single permit the batches can only run one after the other
+    Semaphore inFlightBatches = new Semaphore(1);
+    BatchComputeRequest<Get, Image> batchRequest =
+        new BatchComputeRequestImpl<>(
+            compute,
+            registry,
+            USER_AGENT,
+            MoreExecutors.newDirectExecutorService(),
+            inFlightBatches);
+
+    CountResponses responses = new CountResponses();
+    for (int i = 0; i < BatchComputeRequestImpl.MAX_BATCH_SIZE + 3; ++i) {
+      batchRequest.queue(request(compute), responses);
+    }
+
+    batchRequest.execute("batchContext");
+
+    assertThat(responses.successes).hasValue(BatchComputeRequestImpl.MAX_BATCH_SIZE + 3);
+    assertThat(inFlightBatches.availablePermits()).isEqualTo(1);
+  }
+
   @Test
   public void singleBatch() throws IOException {
 
@@ -41,8 +41,8 @@ public class EntityTagsAdminController {
   }
 
   @RequestMapping(value = "/reindex", method = RequestMethod.POST)
-  void reindex() {
-    entityTagsProvider.reindex();
+  void reindex(@RequestParam(name = "resume", defaultValue = "false") boolean resume) {
+    entityTagsProvider.reindex(resume);
   }
 
   @RequestMapping(value = "/delta", method = RequestMethod.GET)
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.q.benchmark
+
+import com.fasterxml.jackson.annotation.JsonTypeName
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.module.kotlin.KotlinModule
+import com.netflix.spinnaker.kork.jedis.EmbeddedRedis
+import com.netflix.spinnaker.kork.sql.config.RetryProperties
+import com.netflix.spinnaker.kork.sql.config.SqlRetryProperties
+import com.netflix.spinnaker.kork.sql.test.SqlTestUtil
+import com.netflix.spinnaker.q.DeadMessageCallback
+import com.netflix.spinnaker.q.Message
+import com.netflix.spinnaker.q.Queue
+import com.netflix.spinnaker.q.memory.InMemoryQueue
+import com.netflix.spinnaker.q.metrics.NoopEventPublisher
+import com.netflix.spinnaker.q.redis.RedisQueue
+import com.netflix.spinnaker.q.sql.SqlQueue
+import java.io.Closeable
+import java.time.Clock
+import java.time.Duration
+import java.util.Optional
+
+@JsonTypeName("benchmark")
+data class BenchmarkMessage(val id: Long, val payload: String) : Message()
+
+/**
+ * The queue implementations that can be benchmarked.
+ */
+enum class QueueBackend {
+  MEMORY {
+    override fun start() = object : Backend {
+      override fun createQueue() = InMemoryQueue(
+        clock = clock,
+        deadMessageHandlers = listOf(ignoreDeadMessages),
+        canPollMany = true,
+        publisher = NoopEventPublisher()
+      )
+
+      override fun clear() {}
+
+      override fun close() {}
+    }
+  },
+
+  /**
+   * Runs against an embedded Redis server.
+   */
+  REDIS {
+    override fun start() = object : Backend {
+      private val redis = EmbeddedRedis.embed()
+
+      override fun createQueue() = RedisQueue(
+        queueName = "benchmark",
+        pool = redis.pool,
+        clock = clock,
+        mapper = mapper,
+        serializationMigrator = Optional.empty(),
+        deadMessageHandlers = listOf(ignoreDeadMessages),
+        publisher = NoopEventPublisher()
+      )
+
+      override fun clear() {
+        redis.jedis.use { it.flushDB() }
+      }
+
+      override fun close() {
+        redis.destroy()
+      }
+    }
+  },
+
+  /**
+   * Runs against a MySQL container, so needs Docker.
+   */
+  SQL {
+    override fun start() = object : Backend {
+      private val database = SqlTestUtil.initTcMysqlDatabase()
+
+      override fun createQueue() = SqlQueue(
+        queueName = "benchmark",
+        schemaVersion = 1,
+        jooq = database.context,
+        clock = clock,
+        lockTtlSeconds = 10,
+        mapper = mapper,
+        serializationMigrator = Optional.empty(),
+        deadMessageHandlers = listOf(ignoreDeadMessages),
+        publisher = NoopEventPublisher(),
+        sqlRetryProperties = SqlRetryProperties(retryProperties, retryProperties)
+      )
+
+      override fun clear() {
+        SqlTestUtil.cleanupDb(database.context)
+      }
+
+      override fun close() {
+        database.close()
+      }
+    }
+  };
+
+  /**
+   * Starts whatever the queue implementation is backed by.
+   */
+  abstract fun start(): Backend
+
+  interface Backend : Closeable {
+    fun createQueue(): Queue
+
+    /**
+     * Removes any messages left behind by a previous queue.
+     */
+    fun clear()
+  }
+}
+
+private val clock = Clock.systemUTC()
+
+private val mapper = ObjectMapper().apply {
+  registerModule(KotlinModule())
+  disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+  registerSubtypes(BenchmarkMessage::class.java)
+}
+
+private val ignoreDeadMessages: DeadMessageCallback = { _, _ -> }
+
+private val retryProperties = RetryProperties(maxRetries = 1, backoffMs = 10)
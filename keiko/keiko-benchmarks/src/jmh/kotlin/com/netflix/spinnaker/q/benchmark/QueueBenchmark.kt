@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.q.benchmark
+
+import com.netflix.spinnaker.q.Queue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Threads
+import org.openjdk.jmh.annotations.Warmup
+
+/**
+ * Measures the throughput and latency (including percentiles, from the
+ * sample time mode) of each queue implementation.
+ *
+ * Every operation works on [batchSize] messages of roughly [payloadBytes]
+ * each, so divide by [batchSize] for per-message figures:
+ * - [push] pushes the messages.
+ * - the `roundTrip` benchmarks push the messages then poll and ack until
+ * they have received as many as they pushed, from as many threads as the
+ * benchmark is named for. Threads receive each other's messages, just as
+ * instances sharing a queue do.
+ *
+ * Each iteration starts with an empty queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput, Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+open class QueueBenchmark {
+  @Param("MEMORY", "REDIS", "SQL")
+  @JvmField
+  var backend: QueueBackend = QueueBackend.MEMORY
+
+  @Param("1", "10")
+  @JvmField
+  var batchSize: Int = 1
+
+  @Param("64", "4096")
+  @JvmField
+  var payloadBytes: Int = 64
+
+  private lateinit var started: QueueBackend.Backend
+  private lateinit var queue: Queue
+  private lateinit var payload: String
+  private val ids = AtomicLong()
+
+  @Setup(Level.Trial)
+  fun startBackend() {
+    started = backend.start()
+    payload = "x".repeat(payloadBytes)
+  }
+
+  @Setup(Level.Iteration)
+  fun createQueue() {
+    started.clear()
+    queue = started.createQueue()
+  }
+
+  @TearDown(Level.Trial)
+  fun stopBackend() {
+    started.close()
+  }
+
+  @Benchmark
+  fun push() {
+    repeat(batchSize) {
+      queue.push(message())
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  fun roundTrip1Consumer() = roundTrip()
+
+  @Benchmark
+  @Threads(4)
+  fun roundTrip4Consumers() = roundTrip()
+
+  @Benchmark
+  @Threads(16)
+  fun roundTrip16Consumers() = roundTrip()
+
+  private fun roundTrip(): Int {
+    repeat(batchSize) {
+      queue.push(message())
+    }
+    var received = 0
+    while (received < batchSize) {
+      queue.poll(batchSize - received) { _, ack ->
+        ack()
+        received++
+      }
+    }
+    return received
+  }
+
+  // every message is unique so none are de-duplicated
+  private fun message() = BenchmarkMessage(ids.incrementAndGet(), payload)
+}
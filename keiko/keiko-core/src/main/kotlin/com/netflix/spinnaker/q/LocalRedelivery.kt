@@ -0,0 +1,257 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.q
+
+import com.netflix.spinnaker.q.metrics.MessageProcessing
+import com.netflix.spinnaker.q.metrics.MonitorableQueue
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.temporal.TemporalAmount
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory.getLogger
+
+/**
+ * Re-delivers messages that are pushed back onto the queue with a short delay
+ * _while they are being processed_ from memory, rather than round-tripping
+ * them through the queue's backing store.
+ *
+ * A deferred message stays un-acknowledged in the backing store, its ack
+ * timeout pushed back to [ackGrace] past its delivery time, so if this
+ * instance goes away before re-delivering it the message is retried by
+ * [Queue.retry] as usual. When the message is re-delivered its ack timeout is
+ * pushed back again, as if it had just been polled. The acknowledge function
+ * of the original delivery is handed on to the re-delivery, so acking the
+ * message once it is finally done with removes it from the backing store.
+ * [drain] pushes any messages that are still deferred back onto the queue.
+ *
+ * Queues support this by:
+ * - wrapping the acknowledge function of every message they deliver with
+ * [track].
+ * - trying [defer] before pushing a message and [reschedule] before
+ * rescheduling one.
+ * - calling [redeliver] each time they are polled.
+ * - implementing [Queue.extendAckTimeout].
+ */
+class LocalRedelivery(
+  private val clock: Clock,
+  val maxDelay: Duration = Duration.ofSeconds(30),
+  val ackGrace: Duration = Duration.ofMinutes(1),
+  tick: Duration = Duration.ofMillis(100)
+) {
+  private val log: Logger = getLogger(javaClass)
+
+  private val wheel = TimerWheel<Deferred>(tick, clock.instant())
+  private val ready = mutableListOf<Deferred>()
+  private val inFlight = mutableMapOf<Message, Delivery>()
+  private val deferred = mutableMapOf<Message, Deferred>()
+  private var draining = false
+  private var nextPurge = clock.instant()
+
+  /**
+   * The number of messages currently waiting to be re-delivered.
+   */
+  val size: Int
+    get() = synchronized(this) { deferred.size }
+
+  /**
+   * The time the next deferred message is due to be re-delivered, or `null` if
+   * there are none.
+   */
+  val nextDue: Instant?
+    get() = synchronized(this) { deferred.values.minBy { it.due }?.due }
+
+  /**
+   * Registers [message] as being processed by this instance.
+   *
+   * @return the acknowledge function to pass on with the message in place of
+   * [ack].
+   */
+  fun track(message: Message, ack: () -> Unit): () -> Unit {
+    val delivery = Delivery(ack, clock.instant())
+    synchronized(this) {
+      inFlight[message] = delivery
+    }
+    return {
+      val acknowledge = synchronized(this) {
+        inFlight.remove(message, delivery)
+        !delivery.deferred
+      }
+      // a deferred message carries its ack over to its re-delivery
+      if (acknowledge) {
+        ack()
+      }
+    }
+  }
+
+  /**
+   * Defers [message] for local re-delivery after [delay] if it is being
+   * processed by this instance and [delay] is no more than [maxDelay].
+   *
+   * @return `true` if the message was deferred, `false` if it should be
+   * pushed onto [queue] as usual.
+   */
+  fun defer(queue: Queue, message: Message, delay: TemporalAmount): Boolean {
+    val now = clock.instant()
+    val due = now.plus(delay)
+    if (!due.isAfter(now) || due.isAfter(now.plus(maxDelay))) {
+      return false
+    }
+
+    val delivery = synchronized(this) {
+      inFlight[message]?.takeIf { !draining && !it.deferred }
+    } ?: return false
+
+    if (!queue.extendAckTimeout(message, Duration.between(now, due).plus(ackGrace))) {
+      return false
+    }
+
+    synchronized(this) {
+      if (draining || inFlight[message] !== delivery) {
+        return false
+      }
+      inFlight.remove(message)
+      delivery.deferred = true
+      schedule(Deferred(message, due, delivery.ack))
+    }
+    log.debug("Deferred $message for local re-delivery in $delay")
+    return true
+  }
+
+  /**
+   * Updates the delivery time of [message] if it is deferred on this instance.
+   *
+   * @return `true` if the message was rescheduled, `false` if it is not
+   * deferred here.
+   */
+  fun reschedule(queue: Queue, message: Message, delay: TemporalAmount): Boolean {
+    val now = clock.instant()
+    val due = now.plus(delay)
+
+    val current = synchronized(this) {
+      deferred[message]?.takeIf { !draining }
+    } ?: return false
+
+    if (!queue.extendAckTimeout(message, Duration.between(now, due).plus(ackGrace))) {
+      return false
+    }
+
+    synchronized(this) {
+      if (draining || deferred[message] !== current) {
+        return false
+      }
+      schedule(Deferred(message, due, current.ack))
+    }
+    return true
+  }
+
+  /**
+   * Hands up to [maxMessages] deferred messages that are now due to
+   * [callback].
+   *
+   * @return the number of messages handed to [callback].
+   */
+  fun redeliver(queue: MonitorableQueue, maxMessages: Int, callback: QueueCallback): Int {
+    val now = clock.instant()
+    val batch = mutableListOf<Deferred>()
+    synchronized(this) {
+      if (!now.isBefore(nextPurge)) {
+        purgeAbandoned(queue, now)
+        nextPurge = now.plus(ackGrace)
+      }
+      ready.addAll(wheel.advance(now))
+      val candidates = ready.iterator()
+      while (batch.size < maxMessages && candidates.hasNext()) {
+        val next = candidates.next()
+        if (deferred[next.message] !== next) {
+          // superseded entries are left in the wheel when a message is rescheduled
+          candidates.remove()
+        } else if (!next.due.isAfter(now)) {
+          // the wheel hands back everything due within the current tick
+          candidates.remove()
+          deferred.remove(next.message)
+          batch.add(next)
+        }
+      }
+    }
+
+    return batch.count { entry ->
+      val message = entry.message
+      if (queue.extendAckTimeout(message, message.ackTimeout(queue))) {
+        queue.fire(MessageProcessing(message, entry.due, clock.instant()))
+        callback(message, track(message, entry.ack))
+        true
+      } else {
+        // the backing store gave up waiting and has retried the message itself
+        log.warn("Not re-delivering $message locally as it is no longer un-acknowledged")
+        false
+      }
+    }
+  }
+
+  /**
+   * Stops deferring messages and pushes any that are still waiting to be
+   * re-delivered back onto [queue].
+   */
+  fun drain(queue: Queue) {
+    val pending = synchronized(this) {
+      draining = true
+      wheel.drain()
+      ready.clear()
+      deferred.values.toList().also { deferred.clear() }
+    }
+
+    if (pending.isNotEmpty()) {
+      log.info("Returning ${pending.size} locally deferred messages to the queue")
+    }
+
+    val now = clock.instant()
+    pending.forEach { entry ->
+      try {
+        val remaining = Duration.between(now, entry.due)
+        queue.push(entry.message, if (remaining.isNegative) Duration.ZERO else remaining)
+        entry.ack()
+      } catch (e: Exception) {
+        // the message is still un-acknowledged so will be retried eventually
+        log.error("Failed to return locally deferred message ${entry.message} to the queue", e)
+      }
+    }
+  }
+
+  /**
+   * Forgets messages whose handler never acknowledged them (because it failed,
+   * for example) and that the backing store will have retried by now.
+   */
+  private fun purgeAbandoned(queue: Queue, now: Instant) {
+    inFlight.entries.removeIf { (message, delivery) ->
+      delivery.trackedAt.plus(message.ackTimeout(queue)).plus(ackGrace).isBefore(now)
+    }
+  }
+
+  private fun schedule(entry: Deferred) {
+    deferred[entry.message] = entry
+    wheel.schedule(entry.due, entry)
+  }
+
+  private fun Message.ackTimeout(queue: Queue): TemporalAmount =
+    ackTimeoutMs?.let { Duration.ofMillis(it) } ?: queue.ackTimeout
+
+  private class Delivery(val ack: () -> Unit, val trackedAt: Instant) {
+    var deferred = false
+  }
+
+  private class Deferred(val message: Message, val due: Instant, val ack: () -> Unit)
+}
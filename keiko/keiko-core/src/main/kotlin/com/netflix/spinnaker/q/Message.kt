@@ -16,6 +16,7 @@
 
 package com.netflix.spinnaker.q
 
+import com.fasterxml.jackson.annotation.JsonIgnore
 import com.fasterxml.jackson.annotation.JsonTypeInfo
 import com.fasterxml.jackson.annotation.JsonTypeInfo.Id.NAME
 import com.fasterxml.jackson.annotation.JsonTypeName
@@ -37,6 +38,15 @@ const val JSON_NAME_PROPERTY = "kind"
    */
   open val ackTimeoutMs: Long? = null
 
+  /**
+   * The priority lane the message is queued in. Sub-types that unblock other
+   * work should override this with a getter rather than a stored property so it
+   * stays out of the serialized form (and the message fingerprint).
+   */
+  @get:JsonIgnore
+  open val priority: MessagePriority
+    get() = MessagePriority.NORMAL
+
   /**
    * @return the attribute of type [A] or `null`.
    */
@@ -54,6 +64,17 @@ const val JSON_NAME_PROPERTY = "kind"
   }
 }
 
+/**
+ * Implemented by messages that should be handled by the same instance as other
+ * messages with the same [affinityKey], on queues that route messages by
+ * affinity. Like [Message.priority] the key should be a getter rather than a
+ * stored property so it stays out of the serialized form.
+ */
+interface AffinityAware {
+  @get:JsonIgnore
+  val affinityKey: String
+}
+
 /**
  * The base type for message metadata attributes.
  */
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.q
+
+import java.time.Duration
+import java.time.Instant
+import kotlin.math.max
+
+/**
+ * The priority lane a [Message] is queued in, highest priority first.
+ */
+enum class MessagePriority {
+  HIGH, NORMAL, LOW
+}
+
+/**
+ * Decides the order in which a [Queue] claims ready messages from its priority
+ * lanes.
+ *
+ * Lanes are claimed from in priority order, except that a lane is promoted by
+ * one level for every [agingInterval] its oldest ready message has been
+ * waiting. A steady stream of higher priority messages can therefore delay
+ * lower priority ones, but never starve them. Lanes of equal (effective)
+ * priority are claimed oldest message first.
+ *
+ * The Redis queues order their lanes the same way within their claim script,
+ * so changes here need making there too.
+ */
+class MessagePriorityPolicy(
+  val agingInterval: Duration = Duration.ofSeconds(30)
+) {
+  /**
+   * @param oldestReady the time the oldest ready message in each non-empty lane
+   * became ready.
+   * @return the lanes of [oldestReady] in the order they should be claimed
+   * from.
+   */
+  fun claimOrder(oldestReady: Map<MessagePriority, Instant>, now: Instant): List<MessagePriority> =
+    oldestReady
+      .entries
+      .sortedWith(compareBy({ effectiveRank(it.key, it.value, now) }, { it.value }))
+      .map { it.key }
+
+  private fun effectiveRank(priority: MessagePriority, readySince: Instant, now: Instant): Long {
+    val waitedMs = max(0L, Duration.between(readySince, now).toMillis())
+    val promotions = if (agingInterval.isZero || agingInterval.isNegative) {
+      0L
+    } else {
+      waitedMs / agingInterval.toMillis()
+    }
+    return priority.ordinal - promotions
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.netflix.spinnaker.q
 
+import java.time.Duration
 import java.time.Duration.ZERO
 import java.time.temporal.TemporalAmount
 
@@ -87,6 +88,31 @@ interface Queue {
    */
   fun retry() {}
 
+  /**
+   * Push back the time at which [message], which must currently be
+   * un-acknowledged, will be retried to [timeout] from now.
+   *
+   * @return `false` if [message] is not un-acknowledged or the implementation
+   * does not support extending ack timeouts.
+   */
+  fun extendAckTimeout(message: Message, timeout: TemporalAmount): Boolean = false
+
+  /**
+   * Denotes a queue implementation whose [awaitReady] returns as soon as a
+   * message is pushed, by any instance.
+   */
+  val notifiesReady: Boolean
+    get() = false
+
+  /**
+   * Blocks for up to [timeout], or until a message may be ready for delivery
+   * if the implementation [notifiesReady]. Used to avoid polling an idle queue
+   * on a fixed schedule.
+   */
+  fun awaitReady(timeout: Duration) {
+    Thread.sleep(timeout.toMillis())
+  }
+
   /**
    * The expired time after which un-acknowledged messages will be retried.
    */
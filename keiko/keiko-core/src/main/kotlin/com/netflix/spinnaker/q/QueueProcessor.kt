@@ -20,11 +20,13 @@ import com.netflix.spinnaker.KotlinOpen
 import com.netflix.spinnaker.q.metrics.EventPublisher
 import com.netflix.spinnaker.q.metrics.HandlerThrewError
 import com.netflix.spinnaker.q.metrics.MessageDead
+import com.netflix.spinnaker.q.metrics.MessageHandled
 import com.netflix.spinnaker.q.metrics.NoHandlerCapacity
 import java.time.Duration
 import java.util.Random
 import java.util.concurrent.RejectedExecutionException
 import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory.getLogger
 import org.springframework.scheduling.annotation.Scheduled
@@ -32,6 +34,11 @@ import org.springframework.scheduling.annotation.Scheduled
 /**
  * The processor that fetches messages from the [Queue] and hands them off to
  * the appropriate [MessageHandler].
+ *
+ * The time each message spends waiting for a handler thread, in its handler
+ * and being acknowledged is published as a [MessageHandled] event. A fraction
+ * [traceSampleRate] of messages also have those timings logged, so the trip
+ * of individual messages through the queue can be followed.
  */
 @KotlinOpen
 class QueueProcessor(
@@ -43,55 +50,164 @@ class QueueProcessor(
   private val deadMessageHandler: DeadMessageCallback,
   private val fillExecutorEachCycle: Boolean = false,
   private val requeueDelay: Duration = Duration.ofSeconds(0),
-  private val requeueMaxJitter: Duration = Duration.ofSeconds(0)
+  private val requeueMaxJitter: Duration = Duration.ofSeconds(0),
+  private val pollMode: PollMode = PollMode.FIXED_DELAY,
+  private val minIdleWait: Duration = Duration.ofMillis(10),
+  private val maxIdleWait: Duration = Duration.ofSeconds(1),
+  private val notifiedIdleWait: Duration = Duration.ofSeconds(5),
+  private val traceSampleRate: Double = 0.0
 ) {
   private val log: Logger = getLogger(javaClass)
   private val random: Random = Random()
 
+  @Volatile
+  private var poller: Thread? = null
+
   /**
    * Polls the [Queue] once (or more if [fillExecutorEachCycle] is true) so
    * long as [executor] has capacity.
    */
   @Scheduled(fixedDelayString = "\${queue.poll.frequency.ms:50}")
-  fun poll() =
-    ifEnabled {
-      if (executor.hasCapacity()) {
-        if (fillExecutorEachCycle) {
-          if (queue.canPollMany) {
-            queue.poll(executor.availableCapacity(), callback)
-          } else {
-            executor.availableCapacity().downTo(1).forEach {
-              pollOnce()
-            }
+  fun poll() {
+    if (pollMode == PollMode.FIXED_DELAY) {
+      ifEnabled {
+        pollCycle()
+      }
+    }
+  }
+
+  /**
+   * @return the number of messages received from the queue, or `null` if the
+   * queue was not polled because [executor] has no capacity.
+   */
+  private fun pollCycle(): Int? {
+    if (!executor.hasCapacity()) {
+      publisher.publishEvent(NoHandlerCapacity)
+      return null
+    }
+
+    var received = 0
+    val countingCallback: QueueCallback = { message, ack ->
+      received++
+      callback(message, ack)
+    }
+
+    if (fillExecutorEachCycle) {
+      if (queue.canPollMany) {
+        queue.poll(executor.availableCapacity(), countingCallback)
+      } else {
+        executor.availableCapacity().downTo(1).forEach {
+          queue.poll(countingCallback)
+        }
+      }
+    } else {
+      queue.poll(countingCallback)
+    }
+    return received
+  }
+
+  /**
+   * Polls continuously while there are messages to receive. Once the queue
+   * runs dry it waits on [Queue.awaitReady] for [notifiedIdleWait] if the
+   * queue [Queue.notifiesReady], otherwise for an interval that doubles from
+   * [minIdleWait] up to [maxIdleWait] for as long as the queue stays empty.
+   */
+  private fun pollUntilStopped() {
+    var idleWait = Duration.ZERO
+    while (poller === Thread.currentThread()) {
+      try {
+        if (!activators.all { it.enabled }) {
+          Thread.sleep(maxIdleWait.toMillis())
+          continue
+        }
+
+        val received = pollCycle()
+        idleWait = when {
+          received == null -> {
+            // waiting for handler capacity rather than for messages
+            Thread.sleep(minIdleWait.toMillis())
+            Duration.ZERO
           }
-        } else {
-          pollOnce()
+          received > 0 -> Duration.ZERO
+          else -> nextIdleWait(idleWait).also { queue.awaitReady(it) }
         }
-      } else {
-        publisher.publishEvent(NoHandlerCapacity)
+      } catch (e: InterruptedException) {
+        break
+      } catch (e: Exception) {
+        log.error("Error polling the queue", e)
+        try {
+          Thread.sleep(maxIdleWait.toMillis())
+        } catch (e: InterruptedException) {
+          break
+        }
+      }
+    }
+  }
+
+  private fun nextIdleWait(previous: Duration): Duration =
+    when {
+      queue.notifiesReady -> notifiedIdleWait
+      previous.isZero -> minIdleWait
+      else -> minOf(previous.multipliedBy(2), maxIdleWait)
+    }
+
+  @PostConstruct
+  fun startPolling() {
+    if (pollMode == PollMode.ADAPTIVE) {
+      poller = Thread({ pollUntilStopped() }, "queue-poller").apply {
+        isDaemon = true
+        start()
       }
     }
+  }
 
   /**
-   * Polls the [Queue] once to attempt to read a single message.
+   * Stops the poller started by [startPolling] and waits for it to finish its
+   * current cycle. Interrupting the poller wakes it from a sleep but not from
+   * a blocking read in [Queue.awaitReady] such as a Redis `BRPOP`, which only
+   * returns once its own timeout runs out, so the wait is bounded by the
+   * longest idle wait plus a second for the poll in progress.
    */
-  private fun pollOnce() {
-    queue.poll(callback)
+  @PreDestroy
+  fun stopPolling() {
+    poller?.let {
+      poller = null
+      it.interrupt()
+      it.join(maxOf(notifiedIdleWait, maxIdleWait).plusSeconds(1).toMillis())
+      if (it.isAlive) {
+        log.warn("Queue poller did not stop in time, leaving it to exit on its own")
+      }
+    }
   }
 
   val callback: QueueCallback = { message, ack ->
     log.info("Received message $message")
     val handler = handlerFor(message)
     if (handler != null) {
+      val received = System.nanoTime()
       try {
         executor.execute {
+          val started = System.nanoTime()
+          var handled: Long? = null
           try {
             handler.invoke(message)
+            handled = System.nanoTime()
             ack.invoke()
+            publishTimings(message, received, started, handled, true, System.nanoTime())
           } catch (e: Throwable) {
             // Something very bad is happening
             log.error("Unhandled throwable from $message", e)
             publisher.publishEvent(HandlerThrewError(message))
+            // handled is only set once the handler has returned, so if it is set it was the ack
+            // that failed
+            publishTimings(
+              message,
+              received,
+              started,
+              handled ?: System.nanoTime(),
+              handled != null,
+              null
+            )
           }
         }
       } catch (e: RejectedExecutionException) {
@@ -119,6 +235,33 @@ class QueueProcessor(
     }
   }
 
+  private fun publishTimings(
+    message: Message,
+    received: Long,
+    started: Long,
+    handled: Long,
+    handlerSucceeded: Boolean,
+    acked: Long?
+  ) {
+    val event = MessageHandled(
+      message,
+      Duration.ofNanos(started - received),
+      Duration.ofNanos(handled - started),
+      handlerSucceeded,
+      acked?.let { Duration.ofNanos(it - handled) }
+    )
+    publisher.publishEvent(event)
+    if (traceSampleRate > 0 && random.nextDouble() < traceSampleRate) {
+      log.info(
+        "Trace of {}: waited {} for a handler thread, handled in {}, acknowledged in {}",
+        message,
+        event.dispatchWait,
+        event.handlerTime,
+        event.ackTime ?: "(not acknowledged)"
+      )
+    }
+  }
+
   private fun ifEnabled(fn: () -> Unit) {
     if (activators.all { it.enabled }) {
       fn.invoke()
@@ -138,4 +281,21 @@ class QueueProcessor(
   @PostConstruct
   fun confirmQueueType() =
     log.info("Using queue $queue")
+
+  /**
+   * How the processor decides when to poll the queue.
+   */
+  enum class PollMode {
+    /**
+     * Polls every `queue.poll.frequency.ms`, whether or not there are
+     * messages.
+     */
+    FIXED_DELAY,
+
+    /**
+     * Polls from a dedicated thread as long as there are messages, and waits
+     * on [Queue.awaitReady] while the queue is idle.
+     */
+    ADAPTIVE
+  }
 }
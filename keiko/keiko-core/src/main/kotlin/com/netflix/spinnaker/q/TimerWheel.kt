@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.q
+
+import java.time.Duration
+import java.time.Instant
+
+/**
+ * A hierarchical timer wheel.
+ *
+ * Each level has [wheelSize] buckets, the buckets of the lowest level are
+ * [tick] wide and those of every level above are [wheelSize] times wider than
+ * the buckets below. Timers are filed in the lowest level that can hold them
+ * and cascade down a level whenever the wheel reaches the start of their
+ * bucket, so scheduling and expiring a timer are both constant time. Timers
+ * fire at [tick] granularity, once the wheel reaches the tick their due time
+ * falls in, so may fire up to [tick] early.
+ *
+ * The wheel has no thread of its own, it is advanced by calling [advance].
+ * It is not thread safe.
+ */
+internal class TimerWheel<T>(
+  tick: Duration,
+  start: Instant,
+  private val wheelSize: Int = 64,
+  private val levels: Int = 3
+) {
+  private val tickMs = tick.toMillis()
+
+  init {
+    require(tickMs > 0) { "tick must be at least 1ms" }
+    require(wheelSize > 1) { "wheelSize must be greater than 1" }
+    require(levels > 0) { "levels must be positive" }
+  }
+
+  private val buckets = Array(levels) { Array(wheelSize) { mutableListOf<Timer<T>>() } }
+  private val expired = mutableListOf<Timer<T>>()
+  private var currentTick = start.toEpochMilli() / tickMs
+
+  /**
+   * The number of timers that have not fired yet.
+   */
+  var size: Int = 0
+    private set
+
+  /**
+   * Schedules [value] to be returned by the first call to [advance] in or
+   * after the tick [due] falls in.
+   */
+  fun schedule(due: Instant, value: T) {
+    file(Timer(due.toEpochMilli() / tickMs, value))
+    size++
+  }
+
+  /**
+   * Moves the wheel forward to [now].
+   *
+   * @return the values of all timers due in or before the tick [now] falls
+   * in, in the order they became due.
+   */
+  fun advance(now: Instant): List<T> {
+    val targetTick = now.toEpochMilli() / tickMs
+    val due = mutableListOf<T>()
+    collectExpired(due)
+
+    if (size == 0) {
+      currentTick = maxOf(currentTick, targetTick)
+      return due
+    }
+
+    while (currentTick < targetTick && size > 0) {
+      currentTick++
+      cascade()
+      buckets[0][slot(currentTick, 0)].let { bucket ->
+        bucket.forEach { due.add(it.value) }
+        size -= bucket.size
+        bucket.clear()
+      }
+      collectExpired(due)
+    }
+    currentTick = maxOf(currentTick, targetTick)
+    return due
+  }
+
+  /**
+   * Removes every timer that has not fired yet.
+   *
+   * @return the values of the removed timers.
+   */
+  fun drain(): List<T> {
+    val pending = mutableListOf<T>()
+    collectExpired(pending)
+    buckets.forEach { level ->
+      level.forEach { bucket ->
+        bucket.forEach { pending.add(it.value) }
+        bucket.clear()
+      }
+    }
+    size = 0
+    return pending
+  }
+
+  /**
+   * Re-files the timers of every higher level bucket that starts at
+   * [currentTick], highest level first so that timers can cascade through
+   * more than one level at once.
+   */
+  private fun cascade() {
+    for (level in levels - 1 downTo 1) {
+      if (currentTick % span(level) == 0L) {
+        val bucket = buckets[level][slot(currentTick, level)]
+        val timers = bucket.toList()
+        bucket.clear()
+        timers.forEach { file(it) }
+      }
+    }
+  }
+
+  private fun file(timer: Timer<T>) {
+    val remaining = timer.tick - currentTick
+    if (remaining <= 0) {
+      expired.add(timer)
+      return
+    }
+
+    var level = 0
+    while (level < levels - 1 && remaining >= span(level + 1)) {
+      level++
+    }
+    buckets[level][slot(timer.tick, level)].add(timer)
+  }
+
+  private fun collectExpired(into: MutableList<T>) {
+    expired.forEach { into.add(it.value) }
+    size -= expired.size
+    expired.clear()
+  }
+
+  /**
+   * The number of ticks covered by a single bucket of [level].
+   */
+  private fun span(level: Int): Long {
+    var span = 1L
+    repeat(level) { span *= wheelSize }
+    return span
+  }
+
+  private fun slot(tick: Long, level: Int) =
+    Math.floorMod(tick / span(level), wheelSize.toLong()).toInt()
+
+  private class Timer<T>(val tick: Long, val value: T)
+}
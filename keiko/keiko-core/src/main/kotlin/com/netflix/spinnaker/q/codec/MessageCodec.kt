@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.q.codec
+
+import com.fasterxml.jackson.core.JsonParseException
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.dataformat.smile.SmileFactory
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator
+import com.netflix.spectator.api.NoopRegistry
+import com.netflix.spectator.api.Registry
+import com.netflix.spinnaker.q.Message
+import com.netflix.spinnaker.q.migration.SerializationMigrator
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.util.Base64
+import java.util.Optional
+import java.util.concurrent.TimeUnit
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.Inflater
+import java.util.zip.InflaterInputStream
+import java.util.zip.ZipException
+
+/**
+ * The format [MessageCodec] writes message bodies in.
+ */
+enum class MessageFormat {
+  /**
+   * Plain JSON, readable by every version of keiko.
+   */
+  JSON,
+
+  /**
+   * Deflated [Smile](https://github.com/FasterXML/smile-format-specification),
+   * base64 encoded so that it can be stored anywhere a JSON body can.
+   */
+  SMILE
+}
+
+/**
+ * Converts messages to and from the string bodies queue implementations store.
+ *
+ * Bodies are written in [format] but bodies in any [MessageFormat] can be
+ * read, as binary bodies are prefixed with a marker no JSON document can start
+ * with. Only JSON bodies are passed through [serializationMigrator], as binary
+ * bodies are only ever written by versions that already use the current
+ * message format.
+ *
+ * To switch a fleet to a binary format, deploy a version that can read it
+ * everywhere first, then change [format]. Instances still on an older version
+ * can not read binary bodies.
+ *
+ * Smile writes repeated property names and short string values (such as the
+ * `kind` type ids of a message and its attributes) once per body and refers
+ * back to them after that.
+ *
+ * The size of encoded bodies and the time taken to encode and decode them are
+ * recorded in [registry] by format, so formats can be compared.
+ */
+class MessageCodec(
+  private val mapper: ObjectMapper,
+  val format: MessageFormat = MessageFormat.JSON,
+  private val serializationMigrator: Optional<SerializationMigrator> = Optional.empty(),
+  private val registry: Registry = NoopRegistry()
+) {
+  private val smileFactory = SmileFactory()
+    .enable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+    .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+
+  fun encode(message: Message): String {
+    val start = System.nanoTime()
+    val body = when (format) {
+      MessageFormat.JSON -> mapper.writeValueAsString(message)
+      MessageFormat.SMILE -> SMILE_PREFIX + Base64.getEncoder().encodeToString(writeSmile(message))
+    }
+    registry
+      .timer("queue.message.encode", "format", format.name)
+      .record(System.nanoTime() - start, TimeUnit.NANOSECONDS)
+    registry
+      .distributionSummary(
+        "queue.message.encoded.size",
+        "format", format.name,
+        "messageType", message.javaClass.simpleName
+      )
+      .record(body.length.toLong())
+    return body
+  }
+
+  fun decode(body: String): Message {
+    val start = System.nanoTime()
+    val bodyFormat = formatOf(body)
+    val message = when (bodyFormat) {
+      MessageFormat.JSON -> mapper.readValue(migrate(body), Message::class.java)
+      MessageFormat.SMILE -> readSmile(body.substring(SMILE_PREFIX.length))
+    }
+    registry
+      .timer("queue.message.decode", "format", bodyFormat.name)
+      .record(System.nanoTime() - start, TimeUnit.NANOSECONDS)
+    return message
+  }
+
+  /**
+   * @return `true` if [body] is not JSON, so can not be inspected by anything
+   * other than a [MessageCodec] (such as a Lua script).
+   */
+  fun isBinary(body: String) = formatOf(body) != MessageFormat.JSON
+
+  private fun formatOf(body: String) =
+    if (body.startsWith(SMILE_PREFIX)) MessageFormat.SMILE else MessageFormat.JSON
+
+  private fun migrate(json: String) =
+    if (serializationMigrator.isPresent) {
+      serializationMigrator.get().migrate(json)
+    } else {
+      json
+    }
+
+  private fun writeSmile(message: Message): ByteArray {
+    val bytes = ByteArrayOutputStream()
+    val deflater = Deflater(Deflater.BEST_SPEED)
+    try {
+      DeflaterOutputStream(bytes, deflater).use { out ->
+        smileFactory.createGenerator(out).use { mapper.writeValue(it, message) }
+      }
+    } finally {
+      deflater.end()
+    }
+    return bytes.toByteArray()
+  }
+
+  private fun readSmile(encoded: String): Message {
+    val inflater = Inflater()
+    try {
+      val bytes = Base64.getDecoder().decode(encoded)
+      return InflaterInputStream(ByteArrayInputStream(bytes), inflater).use { input ->
+        smileFactory.createParser(input).use { mapper.readValue(it, Message::class.java) }
+      }
+    } catch (e: IllegalArgumentException) {
+      throw JsonParseException(null as JsonParser?, "Message body is not valid base64", e)
+    } catch (e: ZipException) {
+      throw JsonParseException(null as JsonParser?, "Message body is not valid deflate data", e)
+    } finally {
+      inflater.end()
+    }
+  }
+
+  companion object {
+    /**
+     * JSON bodies always start with `{` so can not be mistaken for this.
+     */
+    const val SMILE_PREFIX = "smile:"
+  }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.q.metrics
+
+import com.netflix.spinnaker.q.Message
+
+/**
+ * Supplies tags, on top of the message type, for the per-message timers recorded by
+ * [QueueMetricsPublisher]. Lets applications break timings down by what a message is for.
+ * Tag values should come from a small, fixed set.
+ */
+interface MessageTagger {
+  fun tags(message: Message): Map<String, String>
+}
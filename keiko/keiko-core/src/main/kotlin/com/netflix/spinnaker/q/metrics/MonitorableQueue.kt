@@ -17,6 +17,7 @@
 package com.netflix.spinnaker.q.metrics
 
 import com.netflix.spinnaker.q.Message
+import com.netflix.spinnaker.q.MessagePriority
 import com.netflix.spinnaker.q.Queue
 
 /**
@@ -73,5 +74,18 @@ data class QueueState(
    * Some implementations may not have any way to implement this metric. It is
    * only intended for alerting leaks.
    */
-  val hashDrift: Int = 0
+  val hashDrift: Int = 0,
+  /**
+   * Number of messages currently queued in each priority lane, including any
+   * not yet due.
+   *
+   * Implementations without priority lanes may leave this empty.
+   */
+  val depthByPriority: Map<MessagePriority, Int> = emptyMap(),
+  /**
+   * Number of messages ready for delivery in each priority lane.
+   *
+   * Implementations without priority lanes may leave this empty.
+   */
+  val readyByPriority: Map<MessagePriority, Int> = emptyMap()
 )
@@ -48,3 +48,17 @@ object NoHandlerCapacity : QueueEvent()
 data class MessageRescheduled(val payload: Message) : QueueEvent()
 data class MessageNotFound(val payload: Message) : QueueEvent()
 data class HandlerThrewError(val payload: Message) : QueueEvent()
+
+/**
+ * The time a message spent in a [com.netflix.spinnaker.q.QueueProcessor] after it was received
+ * from the queue: waiting for a handler thread, in its handler, and being acknowledged.
+ * [ackTime] is `null` if the message was not acknowledged, either because its handler failed or
+ * because acknowledging it did, which [handlerSucceeded] tells apart.
+ */
+data class MessageHandled(
+  val payload: Message,
+  val dispatchWait: Duration,
+  val handlerTime: Duration,
+  val handlerSucceeded: Boolean,
+  val ackTime: Duration?
+) : QueueEvent()
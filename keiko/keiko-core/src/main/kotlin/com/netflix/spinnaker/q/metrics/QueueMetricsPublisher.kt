@@ -17,8 +17,12 @@
 package com.netflix.spinnaker.q.metrics
 
 import com.netflix.spectator.api.Counter
+import com.netflix.spectator.api.Id
 import com.netflix.spectator.api.Registry
+import com.netflix.spectator.api.Timer
+import com.netflix.spectator.api.histogram.PercentileTimer
 import com.netflix.spectator.api.patterns.PolledMeter
+import com.netflix.spinnaker.q.Message
 import com.netflix.spinnaker.q.Queue
 import java.time.Clock
 import java.time.Duration
@@ -29,10 +33,13 @@ import java.util.concurrent.atomic.AtomicReference
 /**
  * - can be registered as a queue EventPublisher
  * - publishes metrics based on queue events
+ * - times each stage of a message's trip through the queue by message type,
+ * plus any tags from [tagger]
  */
 class QueueMetricsPublisher(
   val registry: Registry,
-  val clock: Clock
+  val clock: Clock,
+  private val tagger: MessageTagger? = null
 ) : EventPublisher {
   init {
     PolledMeter.using(registry)
@@ -58,7 +65,16 @@ class QueueMetricsPublisher(
     when (event) {
       QueuePolled -> _lastQueuePoll.set(clock.instant())
       is MessageProcessing -> {
-        registry.timer("queue.message.lag").record(event.lag.toMillis(), TimeUnit.MILLISECONDS)
+        event.lagTimer.record(event.lag.toMillis(), TimeUnit.MILLISECONDS)
+        event.priorityLagTimer.record(event.lag.toMillis(), TimeUnit.MILLISECONDS)
+        event.payload.timer("queue.message.claim.wait").record(event.lag)
+      }
+      is MessageHandled -> {
+        event.payload.timer("queue.message.dispatch.wait").record(event.dispatchWait)
+        event.payload
+          .timer("queue.message.handler.time") { withTag("success", event.handlerSucceeded.toString()) }
+          .record(event.handlerTime)
+        event.ackTime?.let { event.payload.timer("queue.message.ack.time").record(it) }
       }
       is RetryPolled -> _lastRetryPoll.set(clock.instant())
       is MessagePushed -> event.counter.increment()
@@ -72,6 +88,42 @@ class QueueMetricsPublisher(
     }
   }
 
+  /**
+   * Time between a message becoming ready and being picked up by a poll. This
+   * is what [com.netflix.spinnaker.q.QueueProcessor.PollMode] trades off
+   * against idle polling, so it is recorded with percentiles.
+   */
+  private val MessageProcessing.lagTimer: PercentileTimer
+    get() = PercentileTimer.get(registry, registry.createId("queue.message.lag"))
+
+  /**
+   * Time between a message becoming ready and being processed, by priority
+   * lane.
+   */
+  private val MessageProcessing.priorityLagTimer: Timer
+    get() = registry.timer("queue.message.priority.lag",
+      "priority", payload.priority.name)
+
+  private fun Timer.record(duration: Duration) =
+    record(duration.toNanos(), TimeUnit.NANOSECONDS)
+
+  /**
+   * The time messages of one type (and any tags from [tagger]) spend at one
+   * stage of their trip through the queue:
+   * - `queue.message.claim.wait` from becoming ready to being claimed by a poll.
+   * - `queue.message.dispatch.wait` from being claimed to a handler thread
+   * picking them up.
+   * - `queue.message.handler.time` in their handler, by whether it succeeded.
+   * - `queue.message.ack.time` being acknowledged.
+   */
+  private fun Message.timer(name: String, customize: Id.() -> Id = { this }): PercentileTimer =
+    PercentileTimer.get(
+      registry,
+      registry.createId(name, "messageType", javaClass.simpleName)
+        .withTags(tagger?.tags(this) ?: emptyMap())
+        .customize()
+    )
+
   /**
    * Count of messages pushed to the queue.
    */
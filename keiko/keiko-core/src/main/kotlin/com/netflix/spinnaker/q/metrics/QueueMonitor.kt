@@ -18,6 +18,7 @@ package com.netflix.spinnaker.q.metrics
 
 import com.netflix.spectator.api.Registry
 import com.netflix.spectator.api.patterns.PolledMeter
+import com.netflix.spinnaker.q.MessagePriority
 import java.time.Clock
 import java.util.concurrent.atomic.AtomicReference
 import org.springframework.scheduling.annotation.Scheduled
@@ -54,6 +55,22 @@ class QueueMonitor(
       .monitorValue(this, {
         it.lastState.orphaned.toDouble()
       })
+
+    MessagePriority.values().forEach { priority ->
+      PolledMeter.using(registry)
+        .withName("queue.priority.depth")
+        .withTag("priority", priority.name)
+        .monitorValue(this, {
+          (it.lastState.depthByPriority[priority] ?: 0).toDouble()
+        })
+
+      PolledMeter.using(registry)
+        .withName("queue.priority.ready.depth")
+        .withTag("priority", priority.name)
+        .monitorValue(this, {
+          (it.lastState.readyByPriority[priority] ?: 0).toDouble()
+        })
+    }
   }
 
   val lastState: QueueState
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.q
+
+import com.netflix.spinnaker.q.metrics.MonitorableQueue
+import com.netflix.spinnaker.time.MutableClock
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.eq
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.never
+import com.nhaarman.mockito_kotlin.reset
+import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.verifyZeroInteractions
+import com.nhaarman.mockito_kotlin.whenever
+import java.time.Duration
+import org.assertj.core.api.Assertions.assertThat
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.describe
+import org.jetbrains.spek.api.dsl.it
+
+object LocalRedeliveryTest : Spek({
+  val clock = MutableClock()
+  val queue: MonitorableQueue = mock()
+  val ack: () -> Unit = mock()
+  val callback: QueueCallback = mock()
+  val message = SimpleMessage("a")
+  val delay = Duration.ofSeconds(5)
+
+  fun resetMocks() {
+    reset(queue, ack, callback)
+    whenever(queue.ackTimeout) doReturn Duration.ofMinutes(1)
+    whenever(queue.extendAckTimeout(any(), any())) doReturn true
+  }
+
+  describe("deferring a message") {
+    beforeEachTest { resetMocks() }
+
+    it("re-delivers a message being processed once its delay has elapsed") {
+      val subject = LocalRedelivery(clock)
+      val trackedAck = subject.track(message, ack)
+
+      assertThat(subject.defer(queue, message, delay)).isTrue()
+      trackedAck()
+      verify(ack, never()).invoke()
+      verify(queue).extendAckTimeout(message, delay.plus(subject.ackGrace))
+
+      assertThat(subject.redeliver(queue, 10, callback)).isZero()
+      clock.incrementBy(delay)
+      assertThat(subject.redeliver(queue, 10, callback)).isEqualTo(1)
+      verify(queue).extendAckTimeout(message, Duration.ofMinutes(1))
+      verify(callback).invoke(eq(message), any())
+    }
+
+    it("hands the original acknowledgment on to the re-delivery") {
+      val subject = LocalRedelivery(clock)
+      subject.track(message, ack)
+      subject.defer(queue, message, delay)
+      clock.incrementBy(delay)
+
+      subject.redeliver(queue, 1) { _, redeliveredAck -> redeliveredAck() }
+
+      verify(ack).invoke()
+    }
+
+    it("does not defer messages that are not being processed") {
+      val subject = LocalRedelivery(clock)
+
+      assertThat(subject.defer(queue, message, delay)).isFalse()
+    }
+
+    it("does not defer messages for longer than the maximum delay") {
+      val subject = LocalRedelivery(clock, maxDelay = Duration.ofSeconds(1))
+      subject.track(message, ack)
+
+      assertThat(subject.defer(queue, message, delay)).isFalse()
+    }
+
+    it("does not defer messages whose ack timeout can not be extended") {
+      val subject = LocalRedelivery(clock)
+      whenever(queue.extendAckTimeout(any(), any())) doReturn false
+      val trackedAck = subject.track(message, ack)
+
+      assertThat(subject.defer(queue, message, delay)).isFalse()
+      trackedAck()
+      verify(ack).invoke()
+    }
+
+    it("does not re-deliver messages the backing store has since retried") {
+      val subject = LocalRedelivery(clock)
+      subject.track(message, ack)
+      subject.defer(queue, message, delay)
+      clock.incrementBy(delay)
+      whenever(queue.extendAckTimeout(any(), any())) doReturn false
+
+      assertThat(subject.redeliver(queue, 1, callback)).isZero()
+      verifyZeroInteractions(callback)
+    }
+  }
+
+  describe("draining") {
+    beforeEachTest { resetMocks() }
+
+    it("returns deferred messages to the queue with their remaining delay") {
+      val subject = LocalRedelivery(clock)
+      subject.track(message, ack)
+      subject.defer(queue, message, delay)
+      clock.incrementBy(Duration.ofSeconds(2))
+
+      subject.drain(queue)
+
+      verify(queue).push(message, Duration.ofSeconds(3))
+      verify(ack).invoke()
+      assertThat(subject.size).isZero()
+    }
+
+    it("stops deferring messages") {
+      val subject = LocalRedelivery(clock)
+      subject.drain(queue)
+      subject.track(message, ack)
+
+      assertThat(subject.defer(queue, message, delay)).isFalse()
+    }
+  }
+})
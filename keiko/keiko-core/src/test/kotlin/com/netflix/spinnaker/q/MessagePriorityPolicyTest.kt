@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.q
+
+import com.netflix.spinnaker.q.MessagePriority.HIGH
+import com.netflix.spinnaker.q.MessagePriority.LOW
+import com.netflix.spinnaker.q.MessagePriority.NORMAL
+import java.time.Duration
+import java.time.Instant
+import org.assertj.core.api.Assertions.assertThat
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.describe
+import org.jetbrains.spek.api.dsl.it
+
+object MessagePriorityPolicyTest : Spek({
+  val policy = MessagePriorityPolicy(Duration.ofSeconds(30))
+  val now = Instant.parse("2020-06-01T12:00:00Z")
+
+  describe("ordering priority lanes") {
+    it("claims from lanes in priority order when nothing has waited long") {
+      val order = policy.claimOrder(
+        mapOf(
+          LOW to now.minusSeconds(5),
+          NORMAL to now.minusSeconds(10),
+          HIGH to now.minusSeconds(1)
+        ),
+        now
+      )
+
+      assertThat(order).containsExactly(HIGH, NORMAL, LOW)
+    }
+
+    it("only returns lanes with ready messages") {
+      assertThat(policy.claimOrder(mapOf(NORMAL to now), now)).containsExactly(NORMAL)
+      assertThat(policy.claimOrder(emptyMap(), now)).isEmpty()
+    }
+
+    it("promotes a lane whose oldest message has waited past the aging interval") {
+      val order = policy.claimOrder(
+        mapOf(
+          HIGH to now.minusSeconds(1),
+          NORMAL to now.minusSeconds(45)
+        ),
+        now
+      )
+
+      assertThat(order).containsExactly(NORMAL, HIGH)
+    }
+
+    it("promotes a lane by one level per aging interval waited") {
+      val order = policy.claimOrder(
+        mapOf(
+          HIGH to now.minusSeconds(1),
+          NORMAL to now.minusSeconds(20),
+          LOW to now.minusSeconds(65)
+        ),
+        now
+      )
+
+      assertThat(order).containsExactly(LOW, HIGH, NORMAL)
+    }
+  }
+})
@@ -22,9 +22,11 @@ import com.netflix.spinnaker.q.metrics.LockFailed
 import com.netflix.spinnaker.q.metrics.MessageAcknowledged
 import com.netflix.spinnaker.q.metrics.MessageDead
 import com.netflix.spinnaker.q.metrics.MessageDuplicate
+import com.netflix.spinnaker.q.metrics.MessageHandled
 import com.netflix.spinnaker.q.metrics.MessageProcessing
 import com.netflix.spinnaker.q.metrics.MessagePushed
 import com.netflix.spinnaker.q.metrics.MessageRetried
+import com.netflix.spinnaker.q.metrics.MessageTagger
 import com.netflix.spinnaker.q.metrics.QueueMetricsPublisher
 import com.netflix.spinnaker.q.metrics.QueuePolled
 import com.netflix.spinnaker.q.metrics.RetryPolled
@@ -41,11 +43,16 @@ import org.jetbrains.spek.subject.SubjectSpek
 object QueueMetricsPublisherTest : SubjectSpek<QueueMetricsPublisher>({
   val clock = fixedClock(instant = now().minus(Duration.ofHours(1)))
   val registry: Registry = DefaultRegistry()
+  val tagger = object : MessageTagger {
+    override fun tags(message: Message) =
+      mapOf("payload" to (message as SimpleMessage).payload)
+  }
 
   subject(GROUP) {
     QueueMetricsPublisher(
       registry,
-      clock
+      clock,
+      tagger
     )
   }
 
@@ -92,6 +99,91 @@ object QueueMetricsPublisherTest : SubjectSpek<QueueMetricsPublisher>({
         assertThat(registry.timer("queue.message.lag").totalTime())
           .isEqualTo(event.lag.toNanos())
       }
+
+      it("records the wait to be claimed by message type and tags") {
+        assertThat(
+          registry.timer(
+            "queue.message.claim.wait",
+            "messageType", "SimpleMessage",
+            "payload", "message"
+          ).totalTime()
+        )
+          .isEqualTo(event.lag.toNanos())
+      }
+    }
+
+    describe("when a message is handled") {
+      val event = MessageHandled(
+        SimpleMessage("handled"),
+        Duration.ofMillis(3),
+        Duration.ofMillis(20),
+        true,
+        Duration.ofMillis(1)
+      )
+
+      on("receiving a ${event.javaClass.simpleName} event") {
+        subject.publishEvent(event)
+      }
+
+      it("records the time spent at each step by message type and tags") {
+        val tags = arrayOf("messageType", "SimpleMessage", "payload", "handled")
+        assertThat(registry.timer("queue.message.dispatch.wait", *tags).totalTime())
+          .isEqualTo(event.dispatchWait.toNanos())
+        assertThat(
+          registry.timer("queue.message.handler.time", *tags, "success", "true").totalTime()
+        )
+          .isEqualTo(event.handlerTime.toNanos())
+        assertThat(registry.timer("queue.message.ack.time", *tags).totalTime())
+          .isEqualTo(event.ackTime!!.toNanos())
+      }
+    }
+
+    describe("when a message handler fails") {
+      val event = MessageHandled(
+        SimpleMessage("failed"),
+        Duration.ofMillis(3),
+        Duration.ofMillis(20),
+        false,
+        null
+      )
+
+      on("receiving a ${event.javaClass.simpleName} event") {
+        subject.publishEvent(event)
+      }
+
+      it("records the handler time as unsuccessful and no ack time") {
+        val tags = arrayOf("messageType", "SimpleMessage", "payload", "failed")
+        assertThat(
+          registry.timer("queue.message.handler.time", *tags, "success", "false").totalTime()
+        )
+          .isEqualTo(event.handlerTime.toNanos())
+        assertThat(registry.timer("queue.message.ack.time", *tags).count())
+          .isEqualTo(0)
+      }
+    }
+
+    describe("when acknowledging a handled message fails") {
+      val event = MessageHandled(
+        SimpleMessage("unacknowledged"),
+        Duration.ofMillis(3),
+        Duration.ofMillis(20),
+        true,
+        null
+      )
+
+      on("receiving a ${event.javaClass.simpleName} event") {
+        subject.publishEvent(event)
+      }
+
+      it("records the handler time as successful and no ack time") {
+        val tags = arrayOf("messageType", "SimpleMessage", "payload", "unacknowledged")
+        assertThat(
+          registry.timer("queue.message.handler.time", *tags, "success", "true").totalTime()
+        )
+          .isEqualTo(event.handlerTime.toNanos())
+        assertThat(registry.timer("queue.message.ack.time", *tags).count())
+          .isEqualTo(0)
+      }
     }
 
     describe("when a message is pushed") {
@@ -20,9 +20,14 @@ import com.fasterxml.jackson.annotation.JsonTypeName
 import com.netflix.spinnaker.mockito.doStub
 import com.netflix.spinnaker.q.metrics.EventPublisher
 import com.netflix.spinnaker.q.metrics.MessageDead
+import com.netflix.spinnaker.q.metrics.MessageHandled
 import com.netflix.spinnaker.q.metrics.NoHandlerCapacity
+import com.netflix.spinnaker.q.metrics.QueueEvent
 import com.netflix.spinnaker.spek.and
 import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.argumentCaptor
+import com.nhaarman.mockito_kotlin.atLeastOnce
+import com.nhaarman.mockito_kotlin.check
 import com.nhaarman.mockito_kotlin.doReturn
 import com.nhaarman.mockito_kotlin.doThrow
 import com.nhaarman.mockito_kotlin.eq
@@ -33,14 +38,17 @@ import com.nhaarman.mockito_kotlin.reset
 import com.nhaarman.mockito_kotlin.verify
 import com.nhaarman.mockito_kotlin.verifyZeroInteractions
 import com.nhaarman.mockito_kotlin.whenever
+import java.time.Duration
 import java.util.concurrent.CountDownLatch
 import java.util.concurrent.Executor
 import java.util.concurrent.Executors
+import org.assertj.core.api.Assertions.assertThat
 import org.jetbrains.spek.api.Spek
 import org.jetbrains.spek.api.dsl.context
 import org.jetbrains.spek.api.dsl.describe
 import org.jetbrains.spek.api.dsl.it
 import org.jetbrains.spek.api.dsl.on
+import org.mockito.Mockito.timeout
 
 object QueueProcessorTest : Spek({
   describe("the queue processor") {
@@ -160,6 +168,16 @@ object QueueProcessorTest : Spek({
             it("acknowledges the message") {
               verify(ackFunction).invoke()
             }
+
+            it("publishes the time taken to handle the message") {
+              verify(publisher).publishEvent(
+                check<MessageHandled> {
+                  assertThat(it.payload).isEqualTo(message)
+                  assertThat(it.handlerSucceeded).isTrue()
+                  assertThat(it.ackTime).isNotNull()
+                }
+              )
+            }
           }
 
           and("it is a subclass of a supported message type") {
@@ -252,7 +270,84 @@ object QueueProcessorTest : Spek({
             it("does not acknowledge the message") {
               verify(ackFunction, never()).invoke()
             }
+
+            it("publishes the handler as failed") {
+              val events = argumentCaptor<QueueEvent>()
+              verify(publisher, atLeastOnce()).publishEvent(events.capture())
+              events.allValues.filterIsInstance<MessageHandled>().single().let {
+                assertThat(it.handlerSucceeded).isFalse()
+                assertThat(it.ackTime).isNull()
+              }
+            }
           }
+
+          context("acknowledging the message throws an exception") {
+            val message = SimpleMessage("foo")
+
+            beforeGroup {
+              whenever(simpleMessageHandler.messageType) doReturn SimpleMessage::class.java
+              whenever(parentMessageHandler.messageType) doReturn ParentMessage::class.java
+
+              whenever(queue.poll(any())) doStub { callback: QueueCallback ->
+                callback.invoke(message, ackFunction)
+              }
+
+              whenever(ackFunction.invoke()) doThrow DummyException()
+            }
+
+            afterGroup(::resetMocks)
+
+            on("the next polling cycle") {
+              subject.poll()
+            }
+
+            it("publishes the handler as successful but the message as not acknowledged") {
+              val events = argumentCaptor<QueueEvent>()
+              verify(publisher, atLeastOnce()).publishEvent(events.capture())
+              events.allValues.filterIsInstance<MessageHandled>().single().let {
+                assertThat(it.handlerSucceeded).isTrue()
+                assertThat(it.ackTime).isNull()
+              }
+            }
+          }
+        }
+      }
+
+      and("polling adaptively") {
+        val subject = QueueProcessor(
+          queue,
+          BlockingQueueExecutor(),
+          listOf(simpleMessageHandler),
+          listOf(activator),
+          publisher,
+          deadMessageHandler,
+          pollMode = QueueProcessor.PollMode.ADAPTIVE,
+          minIdleWait = Duration.ofMillis(10),
+          maxIdleWait = Duration.ofMillis(40)
+        )
+
+        afterGroup {
+          subject.stopPolling()
+          resetMocks()
+        }
+
+        on("the fixed delay polling cycle") {
+          subject.poll()
+        }
+
+        it("leaves polling to the adaptive poller") {
+          verifyZeroInteractions(queue)
+        }
+
+        on("starting the adaptive poller while the queue is empty") {
+          subject.startPolling()
+        }
+
+        it("backs off exponentially up to the maximum idle wait") {
+          verify(queue, timeout(1000)).awaitReady(Duration.ofMillis(10))
+          verify(queue, timeout(1000)).awaitReady(Duration.ofMillis(20))
+          verify(queue, timeout(1000).atLeastOnce()).awaitReady(Duration.ofMillis(40))
+          verify(queue, never()).awaitReady(Duration.ofMillis(80))
         }
       }
     }
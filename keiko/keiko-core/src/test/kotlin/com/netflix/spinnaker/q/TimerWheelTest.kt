@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.q
+
+import java.time.Duration
+import java.time.Instant
+import org.assertj.core.api.Assertions.assertThat
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.describe
+import org.jetbrains.spek.api.dsl.it
+
+object TimerWheelTest : Spek({
+  val start = Instant.parse("2020-06-01T12:00:00Z")
+  val tick = Duration.ofMillis(100)
+
+  describe("advancing the wheel") {
+    it("does not fire timers before the tick they are due in") {
+      val wheel = TimerWheel<String>(tick, start, wheelSize = 8, levels = 3)
+      wheel.schedule(start.plusMillis(500), "a")
+
+      assertThat(wheel.advance(start.plusMillis(499))).isEmpty()
+      assertThat(wheel.advance(start.plusMillis(500))).containsExactly("a")
+      assertThat(wheel.size).isZero()
+    }
+
+    it("fires timers filed in higher levels once they cascade down") {
+      val wheel = TimerWheel<String>(tick, start, wheelSize = 8, levels = 3)
+      // 8 ticks per level 1 bucket, 64 per level 2 bucket
+      wheel.schedule(start.plusMillis(1_250), "level 1")
+      wheel.schedule(start.plusMillis(30_000), "level 2")
+      wheel.schedule(start.plusMillis(200), "level 0")
+
+      assertThat(wheel.advance(start.plusMillis(1_000))).containsExactly("level 0")
+      assertThat(wheel.advance(start.plusMillis(1_299))).containsExactly("level 1")
+      assertThat(wheel.advance(start.plusMillis(29_900))).isEmpty()
+      assertThat(wheel.advance(start.plusMillis(30_000))).containsExactly("level 2")
+    }
+
+    it("fires timers due beyond the top level once they come round again") {
+      val wheel = TimerWheel<String>(tick, start, wheelSize = 4, levels = 2)
+      wheel.schedule(start.plusSeconds(10), "a")
+
+      assertThat(wheel.advance(start.plusMillis(9_900))).isEmpty()
+      assertThat(wheel.advance(start.plusSeconds(10))).containsExactly("a")
+    }
+
+    it("fires timers that are already due on the next advance") {
+      val wheel = TimerWheel<String>(tick, start)
+      wheel.schedule(start.minusSeconds(1), "a")
+
+      assertThat(wheel.advance(start)).containsExactly("a")
+    }
+
+    it("fires everything due when it has not been advanced for a while") {
+      val wheel = TimerWheel<String>(tick, start, wheelSize = 8, levels = 3)
+      wheel.schedule(start.plusMillis(300), "a")
+      wheel.schedule(start.plusSeconds(5), "b")
+      wheel.schedule(start.plusSeconds(60), "c")
+
+      assertThat(wheel.advance(start.plusSeconds(10))).containsExactly("a", "b")
+      assertThat(wheel.size).isEqualTo(1)
+    }
+  }
+
+  describe("draining the wheel") {
+    it("returns every timer that has not fired") {
+      val wheel = TimerWheel<String>(tick, start, wheelSize = 8, levels = 3)
+      wheel.schedule(start.plusMillis(300), "a")
+      wheel.schedule(start.plusSeconds(5), "b")
+      wheel.schedule(start.plusSeconds(60), "c")
+      wheel.advance(start.plusMillis(300))
+
+      assertThat(wheel.drain()).containsExactlyInAnyOrder("b", "c")
+      assertThat(wheel.size).isZero()
+    }
+  }
+})
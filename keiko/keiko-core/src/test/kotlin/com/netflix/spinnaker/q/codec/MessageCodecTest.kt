@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.q.codec
+
+import com.fasterxml.jackson.core.JsonParseException
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.module.kotlin.KotlinModule
+import com.netflix.spectator.api.DefaultRegistry
+import com.netflix.spinnaker.q.AttemptsAttribute
+import com.netflix.spinnaker.q.SimpleMessage
+import com.netflix.spinnaker.q.migration.SerializationMigrator
+import java.util.Optional
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.describe
+import org.jetbrains.spek.api.dsl.it
+
+object MessageCodecTest : Spek({
+  val mapper = ObjectMapper().apply {
+    registerModule(KotlinModule())
+    registerSubtypes(SimpleMessage::class.java, AttemptsAttribute::class.java)
+  }
+  val message = SimpleMessage("a").apply {
+    setAttribute(AttemptsAttribute(2))
+  }
+
+  describe("encoding messages") {
+    it("writes JSON by default") {
+      val body = MessageCodec(mapper).encode(message)
+
+      assertThat(body).startsWith("{")
+      assertThat(mapper.readTree(body)["payload"].asText()).isEqualTo("a")
+    }
+
+    it("writes prefixed Smile bodies that can be read back") {
+      val codec = MessageCodec(mapper, MessageFormat.SMILE)
+      val body = codec.encode(message)
+
+      assertThat(body).startsWith(MessageCodec.SMILE_PREFIX)
+      assertThat(codec.isBinary(body)).isTrue()
+      assertThat(codec.decode(body)).isEqualTo(message)
+      assertThat(codec.decode(body).getAttribute<AttemptsAttribute>()?.attempts).isEqualTo(2)
+    }
+
+    it("records the size of encoded bodies") {
+      val registry = DefaultRegistry()
+      val body = MessageCodec(mapper, MessageFormat.SMILE, registry = registry).encode(message)
+
+      registry
+        .distributionSummary(
+          "queue.message.encoded.size",
+          "format", "SMILE",
+          "messageType", "SimpleMessage"
+        )
+        .let {
+          assertThat(it.count()).isEqualTo(1)
+          assertThat(it.totalAmount()).isEqualTo(body.length.toLong())
+        }
+    }
+  }
+
+  describe("decoding messages") {
+    val migrator = object : SerializationMigrator {
+      override fun migrate(json: String) = json.replace("\"legacy\"", "\"simple\"")
+    }
+
+    it("reads bodies in any format regardless of the format it writes") {
+      val jsonBody = MessageCodec(mapper).encode(message)
+      val smileBody = MessageCodec(mapper, MessageFormat.SMILE).encode(message)
+
+      assertThat(MessageCodec(mapper, MessageFormat.SMILE).decode(jsonBody)).isEqualTo(message)
+      assertThat(MessageCodec(mapper, MessageFormat.JSON).decode(smileBody)).isEqualTo(message)
+    }
+
+    it("migrates JSON bodies") {
+      val codec = MessageCodec(mapper, serializationMigrator = Optional.of(migrator))
+
+      assertThat(codec.decode("""{"kind":"legacy","payload":"a"}"""))
+        .isEqualTo(SimpleMessage("a"))
+    }
+
+    it("rejects corrupt binary bodies") {
+      val codec = MessageCodec(mapper)
+
+      assertThatThrownBy { codec.decode("${MessageCodec.SMILE_PREFIX}not base64!") }
+        .isInstanceOf(JsonParseException::class.java)
+      assertThatThrownBy { codec.decode("${MessageCodec.SMILE_PREFIX}bm90IGRlZmxhdGVk") }
+        .isInstanceOf(JsonParseException::class.java)
+    }
+  }
+})
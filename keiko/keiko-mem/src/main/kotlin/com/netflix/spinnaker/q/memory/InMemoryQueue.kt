@@ -17,7 +17,10 @@
 package com.netflix.spinnaker.q.memory
 
 import com.netflix.spinnaker.q.DeadMessageCallback
+import com.netflix.spinnaker.q.LocalRedelivery
 import com.netflix.spinnaker.q.Message
+import com.netflix.spinnaker.q.MessagePriority
+import com.netflix.spinnaker.q.MessagePriorityPolicy
 import com.netflix.spinnaker.q.Queue
 import com.netflix.spinnaker.q.QueueCallback
 import com.netflix.spinnaker.q.metrics.EventPublisher
@@ -52,17 +55,37 @@ class InMemoryQueue(
   override val ackTimeout: TemporalAmount = Duration.ofMinutes(1),
   override val deadMessageHandlers: List<DeadMessageCallback>,
   override val canPollMany: Boolean = false,
-  override val publisher: EventPublisher
+  override val publisher: EventPublisher,
+  private val priorityPolicy: MessagePriorityPolicy = MessagePriorityPolicy(),
+  private val localRedelivery: LocalRedelivery? = null
 ) : MonitorableQueue {
 
   private val log: Logger = getLogger(javaClass)
 
-  private val queue = DelayQueue<Envelope>()
+  private val lanes = MessagePriority.values().associate { it to DelayQueue<Envelope>() }
   private val unacked = DelayQueue<Envelope>()
 
   override fun poll(callback: (Message, () -> Unit) -> Unit) {
     fire(QueuePolled)
 
+    if (localRedelivery != null && localRedelivery.redeliver(this, 1, callback) > 0) {
+      return
+    }
+
+    val oldestReady = lanes
+      .mapNotNull { (priority, lane) ->
+        lane.peek()
+          ?.takeIf { it.getDelay(NANOSECONDS) <= 0 }
+          ?.let { priority to it.scheduledTime }
+      }
+      .toMap()
+
+    val queue = priorityPolicy
+      .claimOrder(oldestReady, clock.instant())
+      .firstOrNull()
+      ?.let { lanes.getValue(it) }
+      ?: return
+
     queue.poll()?.let { envelope ->
       val messageAckTimeout = if (envelope.payload.ackTimeoutMs == null) {
         ackTimeout
@@ -75,10 +98,14 @@ class InMemoryQueue(
       } else {
         unacked.put(envelope.copy(scheduledTime = clock.instant().plus(messageAckTimeout)))
         fire(MessageProcessing(envelope.payload, envelope.scheduledTime, clock.instant()))
-        callback.invoke(envelope.payload) {
+        val acknowledge = {
           ack(envelope.id)
           fire(MessageAcknowledged)
         }
+        callback.invoke(
+          envelope.payload,
+          localRedelivery?.track(envelope.payload, acknowledge) ?: acknowledge
+        )
       }
     }
   }
@@ -88,6 +115,12 @@ class InMemoryQueue(
   }
 
   override fun push(message: Message, delay: TemporalAmount) {
+    if (localRedelivery?.defer(this, message, delay) == true) {
+      fire(MessagePushed(message))
+      return
+    }
+
+    val queue = laneFor(message)
     val existed = queue.removeIf { it.payload == message }
     queue.put(Envelope(message, clock.instant().plus(delay), clock))
     if (existed) {
@@ -98,6 +131,11 @@ class InMemoryQueue(
   }
 
   override fun reschedule(message: Message, delay: TemporalAmount) {
+    if (localRedelivery?.reschedule(this, message, delay) == true) {
+      return
+    }
+
+    val queue = laneFor(message)
     val existed = queue.removeIf { it.payload == message }
     if (existed) {
       queue.put(Envelope(message, clock.instant().plus(delay), clock))
@@ -105,7 +143,7 @@ class InMemoryQueue(
   }
 
   override fun ensure(message: Message, delay: TemporalAmount) {
-    if (queue.none { it.payload == message } && unacked.none { it.payload == message }) {
+    if (laneFor(message).none { it.payload == message } && unacked.none { it.payload == message }) {
       push(message, delay)
     }
   }
@@ -119,6 +157,7 @@ class InMemoryQueue(
         deadMessageHandlers.forEach { it.invoke(this, message.payload) }
         fire(MessageDead)
       } else {
+        val queue = laneFor(message.payload)
         val existed = queue.removeIf { it.payload == message.payload }
         log.warn("redelivering unacked message ${message.payload}")
         queue.put(message.copy(scheduledTime = now, count = message.count + 1))
@@ -131,15 +170,41 @@ class InMemoryQueue(
     }
   }
 
-  override fun readState() =
-    QueueState(
-      depth = queue.size,
-      ready = queue.count { it.getDelay(NANOSECONDS) <= 0 },
-      unacked = unacked.size
+  override fun extendAckTimeout(message: Message, timeout: TemporalAmount): Boolean {
+    val envelope = unacked.firstOrNull { it.payload == message } ?: return false
+    if (!unacked.remove(envelope)) {
+      return false
+    }
+    unacked.put(envelope.copy(scheduledTime = clock.instant().plus(timeout)))
+    return true
+  }
+
+  /**
+   * Returns any locally deferred messages to the queue.
+   */
+  fun shutdown() {
+    localRedelivery?.drain(this)
+  }
+
+  override fun readState(): QueueState {
+    val depthByPriority = lanes.mapValues { (_, lane) -> lane.size }
+    val readyByPriority = lanes.mapValues { (_, lane) ->
+      lane.count { it.getDelay(NANOSECONDS) <= 0 }
+    }
+
+    return QueueState(
+      depth = depthByPriority.values.sum(),
+      ready = readyByPriority.values.sum(),
+      unacked = unacked.size,
+      depthByPriority = depthByPriority,
+      readyByPriority = readyByPriority
     )
+  }
 
   override fun containsMessage(predicate: (Message) -> Boolean): Boolean =
-    queue.map(Envelope::payload).any(predicate)
+    lanes.values.any { lane -> lane.map(Envelope::payload).any(predicate) }
+
+  private fun laneFor(message: Message) = lanes.getValue(message.priority)
 
   private fun ack(messageId: UUID) {
     unacked.removeIf { it.id == messageId }
@@ -17,6 +17,7 @@
 package com.netflix.spinnaker.q.memory
 
 import com.netflix.spinnaker.q.DeadMessageCallback
+import com.netflix.spinnaker.q.LocalRedelivery
 import com.netflix.spinnaker.q.QueueTest
 import com.netflix.spinnaker.q.metrics.EventPublisher
 import com.netflix.spinnaker.q.metrics.MonitorableQueueTest
@@ -26,19 +27,28 @@ import org.funktionale.partials.invoke
 
 object InMemoryQueueTest : QueueTest<InMemoryQueue>(createQueue(p3 = null))
 
+object InMemoryLocalRedeliveryQueueTest : QueueTest<InMemoryQueue>(
+  createLocallyRedeliveringQueue(p3 = null)
+)
+
 object InMemoryMonitorableQueueTest : MonitorableQueueTest<InMemoryQueue>(
   createQueue,
   InMemoryQueue::retry
 )
 
-private val createQueue = { clock: Clock,
-                            deadLetterCallback: DeadMessageCallback,
-                            publisher: EventPublisher? ->
+private val createQueue = queueFactory(localRedelivery = false)
+
+private val createLocallyRedeliveringQueue = queueFactory(localRedelivery = true)
+
+private fun queueFactory(localRedelivery: Boolean) = { clock: Clock,
+                                                        deadLetterCallback: DeadMessageCallback,
+                                                        publisher: EventPublisher? ->
   InMemoryQueue(
     clock = clock,
     deadMessageHandlers = listOf(deadLetterCallback),
     publisher = publisher ?: (object : EventPublisher {
       override fun publishEvent(event: QueueEvent) {}
-    })
+    }),
+    localRedelivery = if (localRedelivery) LocalRedelivery(clock) else null
   )
 }
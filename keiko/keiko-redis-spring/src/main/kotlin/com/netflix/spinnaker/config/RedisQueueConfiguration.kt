@@ -19,6 +19,10 @@ package com.netflix.spinnaker.config
 import com.fasterxml.jackson.databind.DeserializationFeature
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.module.kotlin.KotlinModule
+import com.netflix.spectator.api.Registry
+import com.netflix.spinnaker.q.LocalRedelivery
+import com.netflix.spinnaker.q.MessagePriorityPolicy
+import com.netflix.spinnaker.q.codec.MessageCodec
 import com.netflix.spinnaker.q.metrics.EventPublisher
 import com.netflix.spinnaker.q.migration.SerializationMigrator
 import com.netflix.spinnaker.q.redis.RedisClusterDeadMessageHandler
@@ -94,7 +98,8 @@ class RedisQueueConfiguration {
     deadMessageHandler: RedisDeadMessageHandler,
     publisher: EventPublisher,
     redisQueueObjectMapper: ObjectMapper,
-    serializationMigrator: Optional<SerializationMigrator>
+    serializationMigrator: Optional<SerializationMigrator>,
+    registry: Registry
   ) =
     RedisQueue(
       queueName = redisQueueProperties.queueName,
@@ -104,7 +109,18 @@ class RedisQueueConfiguration {
       deadMessageHandlers = listOf(deadMessageHandler),
       publisher = publisher,
       ackTimeout = Duration.ofSeconds(redisQueueProperties.ackTimeoutSeconds.toLong()),
-      serializationMigrator = serializationMigrator
+      serializationMigrator = serializationMigrator,
+      priorityPolicy = MessagePriorityPolicy(
+        Duration.ofSeconds(redisQueueProperties.priorityAgingSeconds.toLong())
+      ),
+      localRedelivery = redisQueueProperties.localRedelivery(clock),
+      readySignals = redisQueueProperties.readySignals,
+      messageCodec = MessageCodec(
+        redisQueueObjectMapper,
+        redisQueueProperties.messageFormat,
+        serializationMigrator,
+        registry
+      )
     )
 
   @Bean
@@ -157,7 +173,8 @@ class RedisQueueConfiguration {
     deadMessageHandler: RedisClusterDeadMessageHandler,
     publisher: EventPublisher,
     redisQueueObjectMapper: ObjectMapper,
-    serializationMigrator: Optional<SerializationMigrator>
+    serializationMigrator: Optional<SerializationMigrator>,
+    registry: Registry
   ) =
     RedisClusterQueue(
       queueName = redisQueueProperties.queueName,
@@ -167,7 +184,18 @@ class RedisQueueConfiguration {
       deadMessageHandlers = listOf(deadMessageHandler),
       publisher = publisher,
       ackTimeout = Duration.ofSeconds(redisQueueProperties.ackTimeoutSeconds.toLong()),
-      serializationMigrator = serializationMigrator
+      serializationMigrator = serializationMigrator,
+      priorityPolicy = MessagePriorityPolicy(
+        Duration.ofSeconds(redisQueueProperties.priorityAgingSeconds.toLong())
+      ),
+      localRedelivery = redisQueueProperties.localRedelivery(clock),
+      readySignals = redisQueueProperties.readySignals,
+      messageCodec = MessageCodec(
+        redisQueueObjectMapper,
+        redisQueueProperties.messageFormat,
+        serializationMigrator,
+        registry
+      )
     )
 
   @Bean
@@ -195,3 +223,10 @@ class RedisQueueConfiguration {
       ).registerSubtypes(this)
     }
 }
+
+private fun RedisQueueProperties.localRedelivery(clock: Clock) =
+  if (localRedeliveryEnabled) {
+    LocalRedelivery(clock, Duration.ofSeconds(localRedeliveryMaxDelaySeconds.toLong()))
+  } else {
+    null
+  }
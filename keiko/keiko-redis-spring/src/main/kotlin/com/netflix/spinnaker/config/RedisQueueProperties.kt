@@ -16,6 +16,7 @@
 
 package com.netflix.spinnaker.config
 
+import com.netflix.spinnaker.q.codec.MessageFormat
 import org.springframework.boot.context.properties.ConfigurationProperties
 
 @ConfigurationProperties("keiko.queue.redis")
@@ -24,4 +25,9 @@ class RedisQueueProperties {
   var deadLetterQueueName: String = "keiko.queue.deadLetters"
   var ackTimeoutSeconds: Int = 60
   var shards: Int = 1
+  var priorityAgingSeconds: Int = 30
+  var localRedeliveryEnabled: Boolean = false
+  var localRedeliveryMaxDelaySeconds: Int = 30
+  var readySignals: Boolean = false
+  var messageFormat: MessageFormat = MessageFormat.JSON
 }
@@ -5,6 +5,9 @@ import com.fasterxml.jackson.databind.SerializationFeature
 import com.google.common.hash.Hashing
 import com.netflix.spinnaker.q.DeadMessageCallback
 import com.netflix.spinnaker.q.Message
+import com.netflix.spinnaker.q.MessagePriority
+import com.netflix.spinnaker.q.MessagePriorityPolicy
+import com.netflix.spinnaker.q.codec.MessageCodec
 import com.netflix.spinnaker.q.metrics.EventPublisher
 import com.netflix.spinnaker.q.metrics.MonitorableQueue
 import com.netflix.spinnaker.q.migration.SerializationMigrator
@@ -12,7 +15,9 @@ import java.nio.charset.Charset
 import java.nio.charset.StandardCharsets
 import java.time.Clock
 import java.time.Duration
+import java.time.Instant
 import java.time.temporal.TemporalAmount
+import java.util.Locale
 import java.util.Optional
 import org.slf4j.Logger
 import redis.clients.jedis.Jedis
@@ -28,8 +33,10 @@ abstract class AbstractRedisQueue(
   override val ackTimeout: TemporalAmount = Duration.ofMinutes(1),
   override val deadMessageHandlers: List<DeadMessageCallback>,
   override val canPollMany: Boolean = false,
-  override val publisher: EventPublisher
-
+  override val publisher: EventPublisher,
+  private val priorityPolicy: MessagePriorityPolicy = MessagePriorityPolicy(),
+  private val readySignals: Boolean = false,
+  internal val codec: MessageCodec
 ) : MonitorableQueue {
   internal abstract val queueKey: String
   internal abstract val unackedKey: String
@@ -37,21 +44,144 @@ abstract class AbstractRedisQueue(
   internal abstract val locksKey: String
   internal abstract val attemptsKey: String
 
+  /**
+   * A list that gets an entry whenever a message is pushed, so that idle
+   * instances can block on it rather than polling. See [awaitReady].
+   */
+  internal abstract val signalKey: String
+
   internal abstract val log: Logger
 
+  override val notifiesReady: Boolean
+    get() = readySignals
+
   // Internal ObjectMapper that enforces deterministic property ordering for use only in hashing.
   private val hashObjectMapper = ObjectMapper().copy().apply {
     enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
   }
 
   abstract fun cacheScript()
-  abstract var readMessageWithLockScriptSha: String
+  abstract var readMessagesWithLockScriptSha: String
+
+  /**
+   * The number of ready fingerprints a multi-message poll will consider when
+   * trying to claim [maxMessages]. Some of them are likely locked by other
+   * instances so look at a few more than are needed.
+   */
+  internal fun peekFingerprintCount(maxMessages: Int) =
+    maxOf(10, maxMessages * 2)
+
+  /**
+   * The sorted set holding queued messages of [priority]. [MessagePriority.NORMAL]
+   * messages use [queueKey] itself so that messages queued before priority
+   * lanes existed are still delivered.
+   */
+  internal fun laneKey(priority: MessagePriority) =
+    if (priority == MessagePriority.NORMAL) {
+      queueKey
+    } else {
+      "$queueKey.${priority.name.toLowerCase(Locale.US)}"
+    }
+
+  internal val laneKeys: List<String>
+    get() = MessagePriority.values().map { laneKey(it) }
+
+  /**
+   * The keys of [READ_MESSAGES_WITH_LOCK_SRC]: the unacked set, the lock
+   * prefix and the message hash, followed by every lane in priority order.
+   */
+  internal val claimKeys: List<String>
+    get() = listOf(unackedKey, locksKey, messagesKey) + laneKeys
+
+  /**
+   * The arguments of [READ_MESSAGES_WITH_LOCK_SRC] when claiming up to
+   * [maxMessages].
+   */
+  internal fun claimArgs(maxMessages: Int): List<String> =
+    listOf(
+      score().toString(),
+      peekFingerprintCount(maxMessages).toString(),
+      lockTtlSeconds.toString(),
+      String.format(Locale.US, "%f", score(ackTimeout)),
+      String.format(Locale.US, "%f", score()),
+      priorityPolicy.agingInterval.toMillis().toString(),
+      maxMessages.toString()
+    )
+
+  /**
+   * Reads the flat list of `lane, fingerprint, fingerprintScore, message`
+   * quadruples [READ_MESSAGES_WITH_LOCK_SRC] returns.
+   */
+  internal fun claimedMessages(response: List<*>): List<ClaimedMessage> =
+    response.chunked(4) { (lane, fingerprint, fingerprintScore, message) ->
+      ClaimedMessage(
+        laneKeys[(lane as Long).toInt()],
+        fingerprint.toString(),
+        Instant.ofEpochMilli(fingerprintScore.toString().toLong()),
+        message?.toString()
+      )
+    }
 
-  internal fun runSerializationMigration(json: String): String {
-    if (serializationMigrator.isPresent) {
-      return serializationMigrator.get().migrate(json)
+  /**
+   * Finds the lane one of [fingerprints] is queued in. Every lane is checked,
+   * [laneKey] first, as an identical message may have been queued in another
+   * lane, such as the default one by an instance that predates priority lanes.
+   *
+   * @param ranks returns the rank of each fingerprint in each lane (or `null`
+   * if it is not there), in the order given, in a single round trip.
+   * @return the lane and the fingerprint found in it, or `null` if none of
+   * [fingerprints] is queued.
+   */
+  internal fun findQueued(
+    laneKey: String,
+    fingerprints: Collection<String>,
+    ranks: (List<Pair<String, String>>) -> List<Any?>
+  ): Pair<String, String>? {
+    val candidates = (listOf(laneKey) + (laneKeys - laneKey))
+      .flatMap { lane -> fingerprints.map { lane to it } }
+    return candidates
+      .zip(ranks(candidates))
+      .firstOrNull { (_, rank) -> rank != null }
+      ?.first
+  }
+
+  /**
+   * Adds an entry to [signalKey], waking one instance blocked in
+   * [awaitReady], if ready signals are enabled. The list is trimmed so that
+   * signals nobody is waiting for do not pile up.
+   */
+  internal fun Transaction.signalReady() {
+    if (!readySignals) return
+    lpush(signalKey, "ready")
+    ltrim(signalKey, 0, MAX_READY_SIGNALS - 1)
+  }
+
+  /**
+   * How long an idle instance can wait for a ready signal without missing a
+   * delayed message coming due.
+   *
+   * @param nextScore returns the score of the first message in the sorted set
+   * with the given key, or `null` if it is empty.
+   * @param nextRedelivery the time the next locally deferred message is due.
+   */
+  internal fun readyWait(
+    timeout: Duration,
+    nextRedelivery: Instant?,
+    nextScore: (String) -> Double?
+  ): Duration {
+    val now = clock.instant()
+    // messages that are already due are locked by other instances, waiting on
+    // them would mean spinning until they are acknowledged
+    val nextDue = laneKeys
+      .mapNotNull { nextScore(it)?.let { score -> Instant.ofEpochMilli(score.toLong()) } }
+      .plus(listOfNotNull(nextRedelivery))
+      .filter { it.isAfter(now) }
+      .min()
+    return if (nextDue == null) {
+      timeout
+    } else {
+      minOf(timeout, Duration.between(now, nextDue))
     }
-    return json
   }
 
   internal fun handleDeadMessage(message: Message) {
@@ -124,8 +254,26 @@ abstract class AbstractRedisQueue(
     val latest: String,
     val all: Set<String> = setOf()
   )
+
+  /**
+   * A message claimed by [READ_MESSAGES_WITH_LOCK_SRC], and the lane it was
+   * claimed from.
+   */
+  internal data class ClaimedMessage(
+    val laneKey: String,
+    val fingerprint: String,
+    val scheduledTime: Instant,
+    val json: String?
+  )
 }
 
+/**
+ * The most signals [AbstractRedisQueue.signalKey] will hold. Each wakes one
+ * waiting instance so there is no point keeping more than there are
+ * instances.
+ */
+internal const val MAX_READY_SIGNALS = 64L
+
 internal const val READ_MESSAGE_SRC = """
   local java_scientific = function(x)
     return string.format("%.12E", x):gsub("\+", "")
@@ -134,9 +282,10 @@ internal const val READ_MESSAGE_SRC = """
   -- get the message, move the fingerprint to the unacked queue and return
   local message = redis.call("HGET", messagesKey, fingerprint)
 
-  -- check for an ack timeout override on the message
+  -- check for an ack timeout override on the message, binary bodies can not be
+  -- decoded here so their override is applied once the message has been read
   local unackScore = unackDefaultScore
-  if type(message) == "string" and message ~= nil then
+  if type(message) == "string" and message ~= nil and string.sub(message, 1, 1) == "{" then
     local ackTimeoutOverride = tonumber(cjson.decode(message)["ackTimeoutMs"])
     if ackTimeoutOverride ~= nil and unackBaseScore ~= nil then
       unackScore = unackBaseScore + ackTimeoutOverride
@@ -149,50 +298,86 @@ internal const val READ_MESSAGE_SRC = """
   redis.call("ZADD", unackKey, unackScore, fingerprint)
 """
 
+/**
+ * Claims up to `maxMessages` ready messages in a single round trip, from
+ * every lane. Each claimed fingerprint is locked and moved to the unacked set.
+ *
+ * The lanes (`KEYS[4]` onwards, highest priority first) are claimed from in
+ * the order [com.netflix.spinnaker.q.MessagePriorityPolicy.claimOrder] gives,
+ * worked out here from the oldest ready fingerprint of each lane so that
+ * ordering them takes no round trips of its own. A lane is promoted by one
+ * level for every `agingIntervalMs` its oldest ready message has waited, and
+ * lanes of equal rank are claimed oldest message first.
+ *
+ * Returns a flat list of `lane, fingerprint, fingerprintScore, message`
+ * quadruples, `lane` being the index of the lane in `KEYS[4]` onwards.
+ */
 /* ktlint-disable max-line-length */
-internal const val READ_MESSAGE_WITH_LOCK_SRC = """
-  local queueKey = KEYS[1]
-  local unackKey = KEYS[2]
-  local lockKey = KEYS[3]
-  local messagesKey = KEYS[4]
+internal const val READ_MESSAGES_WITH_LOCK_SRC = """
+  local unackKey = KEYS[1]
+  local lockKey = KEYS[2]
+  local messagesKey = KEYS[3]
   local maxScore = ARGV[1]
   local peekFingerprintCount = ARGV[2]
   local lockTtlSeconds = ARGV[3]
   local unackDefaultScore = ARGV[4]
   local unackBaseScore = ARGV[5]
+  local agingIntervalMs = tonumber(ARGV[6])
+  local maxMessages = tonumber(ARGV[7])
+
+  local now = tonumber(maxScore)
+  local lanes = {}
+  for k = 4, #KEYS do
+    local fingerprints = redis.call("ZRANGEBYSCORE", KEYS[k], 0.0, maxScore, "WITHSCORES", "LIMIT", 0, peekFingerprintCount)
+    if #fingerprints > 0 then
+      local oldest = tonumber(fingerprints[2])
+      local rank = k - 4
+      if agingIntervalMs > 0 then
+        rank = rank - math.floor(math.max(0, now - oldest) / agingIntervalMs)
+      end
+      lanes[#lanes+1] = {index = k - 4, key = KEYS[k], fingerprints = fingerprints, oldest = oldest, rank = rank}
+    end
+  end
 
-  local not_empty = function(x)
-    return (type(x) == "table") and (not x.err) and (#x ~= 0)
+  if #lanes == 0 then
+    return "NoReadyMessages"
   end
 
-  local acquire_lock = function(fingerprints, locksKey, lockTtlSeconds)
-    if not_empty(fingerprints) then
-      local i=1
-      while (i <= #fingerprints) do
-        redis.call("ECHO", "attempting lock on " .. fingerprints[i])
-        if redis.call("SET", locksKey .. ":" .. fingerprints[i], "\uD83D\uDD12", "EX", lockTtlSeconds, "NX") then
-          redis.call("ECHO", "acquired lock on " .. fingerprints[i])
-          return fingerprints[i], fingerprints[i+1]
-        end
-        i=i+2
+  table.sort(lanes, function(a, b)
+    if a.rank ~= b.rank then
+      return a.rank < b.rank
+    end
+    if a.oldest ~= b.oldest then
+      return a.oldest < b.oldest
+    end
+    return a.index < b.index
+  end)
+
+  local results = {}
+  local claimed = 0
+  for _, lane in ipairs(lanes) do
+    local queueKey = lane.key
+    local fingerprints = lane.fingerprints
+    local i = 1
+    while (i <= #fingerprints) and (claimed < maxMessages) do
+      local fingerprint = fingerprints[i]
+      local fingerprintScore = fingerprints[i+1]
+      if redis.call("SET", lockKey .. ":" .. fingerprint, "\uD83D\uDD12", "EX", lockTtlSeconds, "NX") then
+        $READ_MESSAGE_SRC
+
+        results[#results+1] = lane.index
+        results[#results+1] = fingerprint
+        results[#results+1] = fingerprintScore
+        results[#results+1] = message
+        claimed = claimed + 1
       end
+      i = i + 2
     end
-    return nil, nil
   end
 
-  -- acquire a lock on a fingerprint
-  local fingerprints = redis.call("ZRANGEBYSCORE", queueKey, 0.0, maxScore, "WITHSCORES", "LIMIT", 0, peekFingerprintCount)
-  local fingerprint, fingerprintScore = acquire_lock(fingerprints, lockKey, lockTtlSeconds)
-
-  -- no lock could be acquired
-  if fingerprint == nil then
-    if #fingerprints == 0 then
-      return "NoReadyMessages"
-    end
+  if claimed == 0 then
     return "AcquireLockFailed"
   end
 
-  $READ_MESSAGE_SRC
-
-  return {fingerprint, fingerprintScore, message}
+  return results
 """
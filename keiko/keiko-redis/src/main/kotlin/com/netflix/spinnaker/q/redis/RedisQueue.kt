@@ -21,10 +21,14 @@ import com.fasterxml.jackson.databind.ObjectMapper
 import com.netflix.spinnaker.KotlinOpen
 import com.netflix.spinnaker.q.AttemptsAttribute
 import com.netflix.spinnaker.q.DeadMessageCallback
+import com.netflix.spinnaker.q.LocalRedelivery
 import com.netflix.spinnaker.q.MaxAttemptsAttribute
 import com.netflix.spinnaker.q.Message
+import com.netflix.spinnaker.q.MessagePriority
+import com.netflix.spinnaker.q.MessagePriorityPolicy
 import com.netflix.spinnaker.q.Queue
 import com.netflix.spinnaker.q.QueueCallback
+import com.netflix.spinnaker.q.codec.MessageCodec
 import com.netflix.spinnaker.q.metrics.EventPublisher
 import com.netflix.spinnaker.q.metrics.LockFailed
 import com.netflix.spinnaker.q.metrics.MessageAcknowledged
@@ -44,9 +48,7 @@ import java.time.Clock
 import java.time.Duration
 import java.time.Instant
 import java.time.temporal.TemporalAmount
-import java.util.Locale
 import java.util.Optional
-import org.funktionale.partials.partially1
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import org.springframework.scheduling.annotation.Scheduled
@@ -66,8 +68,13 @@ class RedisQueue(
   private val serializationMigrator: Optional<SerializationMigrator>,
   override val ackTimeout: TemporalAmount = Duration.ofMinutes(1),
   override val deadMessageHandlers: List<DeadMessageCallback>,
-  override val canPollMany: Boolean = false,
-  override val publisher: EventPublisher
+  override val canPollMany: Boolean = true,
+  override val publisher: EventPublisher,
+  priorityPolicy: MessagePriorityPolicy = MessagePriorityPolicy(),
+  private val localRedelivery: LocalRedelivery? = null,
+  readySignals: Boolean = false,
+  messageCodec: MessageCodec =
+    MessageCodec(mapper, serializationMigrator = serializationMigrator)
 ) : AbstractRedisQueue(
   clock,
   lockTtlSeconds,
@@ -76,7 +83,10 @@ class RedisQueue(
   ackTimeout,
   deadMessageHandlers,
   canPollMany,
-  publisher
+  publisher,
+  priorityPolicy,
+  readySignals,
+  messageCodec
 ) {
 
   final override val log: Logger = LoggerFactory.getLogger(javaClass)
@@ -86,8 +96,9 @@ class RedisQueue(
   override val messagesKey = "$queueName.messages"
   override val locksKey = "$queueName.locks"
   override val attemptsKey = "$queueName.attempts"
+  override val signalKey = "$queueName.signal"
 
-  override lateinit var readMessageWithLockScriptSha: String
+  override lateinit var readMessagesWithLockScriptSha: String
 
   init {
     cacheScript()
@@ -96,47 +107,86 @@ class RedisQueue(
 
   final override fun cacheScript() {
     pool.resource.use { redis ->
-      readMessageWithLockScriptSha = redis.scriptLoad(READ_MESSAGE_WITH_LOCK_SRC)
+      readMessagesWithLockScriptSha = redis.scriptLoad(READ_MESSAGES_WITH_LOCK_SRC)
     }
   }
 
   override fun poll(callback: (Message, () -> Unit) -> Unit) {
+    if (localRedelivery != null && localRedelivery.redeliver(this, 1, callback) > 0) {
+      fire(QueuePolled)
+      return
+    }
+
     pool.resource.use { redis ->
-      redis.readMessageWithLock()
-        ?.also { (fingerprint, scheduledTime, json) ->
-          val ack = this::ackMessage.partially1(fingerprint)
-          redis.readMessage(fingerprint, json) { message ->
-            val attempts = message.getAttribute<AttemptsAttribute>()?.attempts
-              ?: 0
-            val maxAttempts = message.getAttribute<MaxAttemptsAttribute>()?.maxAttempts
-              ?: 0
-
-            if (maxAttempts > 0 && attempts > maxAttempts) {
-              log.warn("Message $fingerprint with payload $message exceeded $maxAttempts retries")
-              handleDeadMessage(message)
-              redis.removeMessage(fingerprint)
-              fire(MessageDead)
-            } else {
-              fire(MessageProcessing(message, scheduledTime, clock.instant()))
-              callback(message, ack)
-            }
-          }
-        }
+      redis.readMessagesWithLock(1).forEach { (laneKey, fingerprint, scheduledTime, json) ->
+        redis.processMessage(laneKey, fingerprint, scheduledTime, json, callback)
+      }
       fire(QueuePolled)
     }
   }
 
   override fun poll(maxMessages: Int, callback: QueueCallback) {
-    poll(callback)
+    pool.resource.use { redis ->
+      val remaining = maxMessages - (localRedelivery?.redeliver(this, maxMessages, callback) ?: 0)
+      if (remaining > 0) {
+        redis.readMessagesWithLock(remaining).forEach { (laneKey, fingerprint, scheduledTime, json) ->
+          redis.processMessage(laneKey, fingerprint, scheduledTime, json, callback)
+        }
+      }
+      fire(QueuePolled)
+    }
+  }
+
+  /**
+   * See [findQueued], the lanes are all checked in a single transaction.
+   */
+  private fun Jedis.findQueued(laneKey: String, fingerprints: Collection<String>) =
+    findQueued(laneKey, fingerprints) { candidates ->
+      multi { candidates.forEach { (lane, fingerprint) -> zrank(lane, fingerprint) } }
+    }
+
+  private fun Jedis.processMessage(
+    laneKey: String,
+    fingerprint: String,
+    scheduledTime: Instant,
+    json: String?,
+    callback: QueueCallback
+  ) {
+    val ack = { ackMessage(laneKey, fingerprint) }
+    readMessage(fingerprint, json) { message ->
+      val attempts = message.getAttribute<AttemptsAttribute>()?.attempts
+        ?: 0
+      val maxAttempts = message.getAttribute<MaxAttemptsAttribute>()?.maxAttempts
+        ?: 0
+
+      if (maxAttempts > 0 && attempts > maxAttempts) {
+        log.warn("Message $fingerprint with payload $message exceeded $maxAttempts retries")
+        handleDeadMessage(message)
+        removeMessage(fingerprint)
+        fire(MessageDead)
+      } else {
+        fire(MessageProcessing(message, scheduledTime, clock.instant()))
+        callback(message, localRedelivery?.track(message, ack) ?: ack)
+      }
+    }
   }
 
   override fun push(message: Message, delay: TemporalAmount) {
+    if (localRedelivery?.defer(this, message, delay) == true) {
+      fire(MessagePushed(message))
+      return
+    }
+
     pool.resource.use { redis ->
-      redis.firstFingerprint(queueKey, message.fingerprint()).also { fingerprint ->
-        if (fingerprint != null) {
+      redis.findQueued(laneKey(message.priority), message.fingerprint().all).also { queued ->
+        if (queued != null) {
+          val (laneKey, fingerprint) = queued
           log.info("Re-prioritizing message as an identical one is already on the queue: " +
             "$fingerprint, message: $message")
-          redis.zadd(queueKey, score(delay), fingerprint, zAddParams().xx())
+          redis.multi {
+            zadd(laneKey, score(delay), fingerprint, zAddParams().xx())
+            signalReady()
+          }
           fire(MessageDuplicate(message))
         } else {
           redis.queueMessage(message, delay)
@@ -147,11 +197,21 @@ class RedisQueue(
   }
 
   override fun reschedule(message: Message, delay: TemporalAmount) {
+    if (localRedelivery?.reschedule(this, message, delay) == true) {
+      fire(MessageRescheduled(message))
+      return
+    }
+
     pool.resource.use { redis ->
       val fingerprint = message.fingerprint().latest
       log.debug("Re-scheduling message: $message, fingerprint: $fingerprint to deliver in $delay")
-      val status: Long = redis.zadd(queueKey, score(delay), fingerprint, zAddParams().xx())
-      if (status.toInt() == 1) {
+      val laneKey = redis.findQueued(laneKey(message.priority), setOf(fingerprint))?.first
+        ?: laneKey(message.priority)
+      val status = redis.multi {
+        zadd(laneKey, score(delay), fingerprint, zAddParams().xx())
+        signalReady()
+      }
+      if (status.first() == 1L) {
         fire(MessageRescheduled(message))
       } else {
         fire(MessageNotFound(message))
@@ -162,7 +222,7 @@ class RedisQueue(
   override fun ensure(message: Message, delay: TemporalAmount) {
     pool.resource.use { redis ->
       val fingerprint = message.fingerprint()
-      if (!redis.anyZismember(queueKey, fingerprint.all) &&
+      if (redis.findQueued(laneKey(message.priority), fingerprint.all) == null &&
         !redis.anyZismember(unackedKey, fingerprint.all)) {
         log.debug(
           "Pushing ensured message onto queue as it does not exist in queue or unacked sets"
@@ -198,12 +258,15 @@ class RedisQueue(
                 redis.removeMessage(fingerprint)
                 fire(MessageDead)
               } else {
-                if (redis.zismember(queueKey, fingerprint)) {
+                val queued = redis.findQueued(laneKey(message.priority), setOf(fingerprint))
+                if (queued != null) {
+                  val laneKey = queued.first
                   redis
                     .multi {
                       zrem(unackedKey, fingerprint)
-                      zadd(queueKey, score(), fingerprint)
+                      zadd(laneKey, score(), fingerprint)
                       hincrBy(attemptsKey, fingerprint, 1L)
+                      signalReady()
                     }
                   log.info("Not retrying message $fingerprint because an identical message " +
                     "is already on the queue")
@@ -211,7 +274,7 @@ class RedisQueue(
                 } else {
                   log.warn("Retrying message $fingerprint after $attempts attempts")
                   redis.hincrBy(attemptsKey, fingerprint, 1L)
-                  redis.requeueMessage(fingerprint)
+                  redis.requeueMessage(fingerprint, laneKey(message.priority))
                   fire(MessageRetried)
                 }
               }
@@ -224,21 +287,75 @@ class RedisQueue(
     }
   }
 
+  override fun extendAckTimeout(message: Message, timeout: TemporalAmount): Boolean =
+    pool.resource.use { redis ->
+      redis.firstFingerprint(unackedKey, message.fingerprint())
+        ?.let { fingerprint ->
+          // XX so that a message retried in the meantime is not made un-acknowledged again
+          redis.zadd(unackedKey, score(timeout), fingerprint, zAddParams().xx())
+          true
+        }
+        ?: false
+    }
+
+  /**
+   * If ready signals are enabled, blocks on [signalKey] until a message is
+   * pushed or the next delayed message is due. `BRPOP` only takes a whole
+   * number of seconds so shorter waits just sleep.
+   */
+  override fun awaitReady(timeout: Duration) {
+    if (!notifiesReady) {
+      super.awaitReady(timeout)
+      return
+    }
+
+    val wait = pool.resource.use { redis ->
+      readyWait(timeout, localRedelivery?.nextDue) { laneKey ->
+        redis.zrangeWithScores(laneKey, 0, 0).firstOrNull()?.score
+      }
+    }
+    if (wait.seconds < 1) {
+      Thread.sleep(wait.toMillis())
+    } else {
+      pool.resource.use { redis ->
+        redis.brpop(wait.seconds.toInt(), signalKey)
+      }
+    }
+  }
+
+  /**
+   * Returns any locally deferred messages to the queue.
+   */
+  fun shutdown() {
+    localRedelivery?.drain(this)
+  }
+
   override fun readState(): QueueState =
     pool.resource.use { redis ->
+      val maxScore = score()
       redis.multi {
-        zcard(queueKey)
-        zcount(queueKey, 0.0, score())
         zcard(unackedKey)
         hlen(messagesKey)
+        laneKeys.forEach { laneKey ->
+          zcard(laneKey)
+          zcount(laneKey, 0.0, maxScore)
+        }
       }
         .map { (it as Long).toInt() }
-        .let { (queued, ready, processing, messages) ->
+        .let { counts ->
+          val (processing, messages) = counts
+          val lanes = counts.drop(2).chunked(2)
+          val depthByPriority = MessagePriority.values().zip(lanes.map { it[0] }).toMap()
+          val readyByPriority = MessagePriority.values().zip(lanes.map { it[1] }).toMap()
+          val queued = depthByPriority.values.sum()
+
           return QueueState(
             depth = queued,
-            ready = ready,
+            ready = readyByPriority.values.sum(),
             unacked = processing,
-            orphaned = messages - (queued + processing)
+            orphaned = messages - (queued + processing),
+            depthByPriority = depthByPriority,
+            readyByPriority = readyByPriority
           )
         }
     }
@@ -250,7 +367,7 @@ class RedisQueue(
       while (!found) {
         redis.hscan(messagesKey, cursor).apply {
           found = result
-            .map { mapper.readValue<Message>(it.value) }
+            .map { codec.decode(it.value) }
             .any(predicate)
           cursor = getCursor()
         }
@@ -261,9 +378,9 @@ class RedisQueue(
 
   override fun toString() = "RedisQueue[$queueName]"
 
-  private fun ackMessage(fingerprint: String) {
+  private fun ackMessage(laneKey: String, fingerprint: String) {
     pool.resource.use { redis ->
-      if (redis.zismember(queueKey, fingerprint)) {
+      if (redis.findQueued(laneKey, setOf(fingerprint)) != null) {
         // only remove this message from the unacked queue as a matching one has
         // been put on the main queue
         redis.multi {
@@ -286,21 +403,27 @@ class RedisQueue(
     )
 
     multi {
-      hset(messagesKey, fingerprint, mapper.writeValueAsString(message))
-      zadd(queueKey, score(delay), fingerprint)
+      hset(messagesKey, fingerprint, codec.encode(message))
+      zadd(laneKey(message.priority), score(delay), fingerprint)
+      signalReady()
     }
   }
 
-  internal fun Jedis.requeueMessage(fingerprint: String) {
+  /**
+   * Messages that can not be read are requeued in the [queueKey] lane, as
+   * their priority is unknown.
+   */
+  internal fun Jedis.requeueMessage(fingerprint: String, laneKey: String = queueKey) {
     multi {
       zrem(unackedKey, fingerprint)
-      zadd(queueKey, score(), fingerprint)
+      zadd(laneKey, score(), fingerprint)
+      signalReady()
     }
   }
 
   internal fun Jedis.removeMessage(fingerprint: String) {
     multi {
-      zrem(queueKey, fingerprint)
+      laneKeys.forEach { zrem(it, fingerprint) }
       zrem(unackedKey, fingerprint)
       hdel(messagesKey, fingerprint)
       del("$locksKey:$fingerprint")
@@ -312,7 +435,7 @@ class RedisQueue(
     try {
       hget(messagesKey, fingerprint)
         .let {
-          val message = mapper.readValue<Message>(runSerializationMigration(it))
+          val message = codec.decode(it)
           block.invoke(message)
         }
     } catch (e: IOException) {
@@ -325,28 +448,13 @@ class RedisQueue(
     }
   }
 
-  internal fun ScriptingCommands.readMessageWithLock(): Triple<String, Instant, String?>? {
+  internal fun ScriptingCommands.readMessagesWithLock(maxMessages: Int): List<ClaimedMessage> {
     try {
-      val response = evalsha(readMessageWithLockScriptSha, listOf(
-        queueKey,
-        unackedKey,
-        locksKey,
-        messagesKey
-      ), listOf(
-        score().toString(),
-        10.toString(), // TODO rz - make this configurable.
-        lockTtlSeconds.toString(),
-        java.lang.String.format(Locale.US, "%f", score(ackTimeout)),
-        java.lang.String.format(Locale.US, "%f", score())
-      ))
+      val response = evalsha(readMessagesWithLockScriptSha, claimKeys, claimArgs(maxMessages))
       if (response is List<*>) {
-        return Triple(
-          response[0].toString(), // fingerprint
-          Instant.ofEpochMilli(response[1].toString().toLong()), // fingerprintScore
-          response[2]?.toString() // message
-        )
+        return claimedMessages(response)
       }
-      if (response == "ReadLockFailed") {
+      if (response == "AcquireLockFailed") {
         // This isn't a "bad" thing, but means there's more work than keiko can process in a cycle
         // in this case, but may be a signal to tune `peekFingerprintCount`
         fire(LockFailed)
@@ -354,12 +462,12 @@ class RedisQueue(
     } catch (e: JedisDataException) {
       if ((e.message ?: "").startsWith("NOSCRIPT")) {
         cacheScript()
-        return readMessageWithLock()
+        return readMessagesWithLock(maxMessages)
       } else {
         throw e
       }
     }
-    return null
+    return emptyList()
   }
 
   /**
@@ -374,14 +482,18 @@ class RedisQueue(
       removeMessage(fingerprint)
     } else {
       try {
-        val message = mapper.readValue<Message>(runSerializationMigration(json))
+        val message = codec.decode(json)
           .apply {
             val currentAttempts = (getAttribute() ?: AttemptsAttribute())
               .run { copy(attempts = attempts + 1) }
             setAttribute(currentAttempts)
           }
 
-        hset(messagesKey, fingerprint, mapper.writeValueAsString(message))
+        hset(messagesKey, fingerprint, codec.encode(message))
+        message.ackTimeoutMs?.takeIf { codec.isBinary(json) }?.let { timeout ->
+          // the read script can only apply the ack timeout override of JSON bodies
+          zadd(unackedKey, score(Duration.ofMillis(timeout)), fingerprint, zAddParams().xx())
+        }
 
         block.invoke(message)
       } catch (e: IOException) {
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.q.redis
+
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.module.kotlin.KotlinModule
+import com.netflix.spinnaker.q.AttemptsAttribute
+import com.netflix.spinnaker.q.LocalRedelivery
+import com.netflix.spinnaker.q.MaxAttemptsAttribute
+import com.netflix.spinnaker.q.TestMessage
+import com.netflix.spinnaker.time.MutableClock
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.eq
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.whenever
+import java.time.Duration
+import java.util.Optional
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit.SECONDS
+import kotlin.concurrent.thread
+import org.assertj.core.api.Assertions.assertThat
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.describe
+import org.jetbrains.spek.api.dsl.it
+import redis.clients.jedis.Jedis
+import redis.clients.jedis.JedisCluster
+import redis.clients.jedis.Transaction
+import redis.clients.jedis.Tuple
+
+/**
+ * Embedded Redis can't run as a cluster so the ready signals are checked
+ * against the commands the queue sends.
+ */
+object RedisClusterQueueTest : Spek({
+  val clock = MutableClock()
+  lateinit var transaction: Transaction
+  lateinit var cluster: JedisCluster
+  lateinit var localRedelivery: LocalRedelivery
+  lateinit var queue: RedisClusterQueue
+
+  beforeEachTest {
+    transaction = mock()
+    val connection: Jedis = mock {
+      on { multi() } doReturn transaction
+    }
+    cluster = mock {
+      on { scriptLoad(any<String>(), any<String>()) } doReturn "sha"
+      on { getConnectionFromSlot(any()) } doReturn connection
+    }
+    localRedelivery = LocalRedelivery(clock)
+    queue = RedisClusterQueue(
+      queueName = "test",
+      jedisCluster = cluster,
+      clock = clock,
+      mapper = ObjectMapper().apply {
+        registerModule(KotlinModule())
+        disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+
+        registerSubtypes(TestMessage::class.java)
+        registerSubtypes(MaxAttemptsAttribute::class.java, AttemptsAttribute::class.java)
+      },
+      serializationMigrator = Optional.empty(),
+      deadMessageHandlers = emptyList(),
+      publisher = mock(),
+      localRedelivery = localRedelivery,
+      readySignals = true
+    )
+  }
+
+  describe("pushing a message") {
+    it("signals a waiting instance and trims the signals") {
+      queue.push(TestMessage("foo"))
+
+      verify(transaction).lpush(queue.signalKey, "ready")
+      verify(transaction).ltrim(queue.signalKey, 0, MAX_READY_SIGNALS - 1)
+    }
+  }
+
+  describe("waiting for a message to be ready") {
+    it("blocks on the signals for the whole timeout if nothing is due") {
+      queue.awaitReady(Duration.ofSeconds(5))
+
+      verify(cluster).brpop(5, queue.signalKey)
+    }
+
+    it("only blocks until the next delayed message is due") {
+      whenever(cluster.zrangeWithScores(eq(queue.queueKey), eq(0L), eq(0L))) doReturn
+        setOf(Tuple("delayed", clock.millis() + 3000.0))
+
+      queue.awaitReady(Duration.ofSeconds(30))
+
+      verify(cluster).brpop(3, queue.signalKey)
+    }
+
+    it("only blocks until a locally deferred message is due") {
+      val message = TestMessage("deferred")
+      whenever(cluster.zrank(eq(queue.unackedKey), any<String>())) doReturn 0L
+      localRedelivery.track(message) {}
+      assertThat(localRedelivery.defer(queue, message, Duration.ofSeconds(2))).isTrue()
+
+      queue.awaitReady(Duration.ofSeconds(30))
+
+      verify(cluster).brpop(2, queue.signalKey)
+    }
+
+    it("wakes when a message is pushed") {
+      val signal = CountDownLatch(1)
+      whenever(transaction.lpush(eq(queue.signalKey), any<String>())).thenAnswer {
+        signal.countDown()
+        null
+      }
+      whenever(cluster.brpop(any(), eq(queue.signalKey))).thenAnswer {
+        signal.await(it.getArgument<Int>(0).toLong(), SECONDS)
+        emptyList<String>()
+      }
+
+      val waiter = thread { queue.awaitReady(Duration.ofSeconds(10)) }
+      Thread.sleep(200)
+      queue.push(TestMessage("wake up"))
+      waiter.join(5000)
+
+      assertThat(waiter.isAlive).isFalse()
+    }
+  }
+})
@@ -16,36 +16,238 @@
 
 package com.netflix.spinnaker.q.redis
 
+import com.fasterxml.jackson.annotation.JsonTypeName
 import com.fasterxml.jackson.databind.DeserializationFeature
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.module.kotlin.KotlinModule
 import com.netflix.spinnaker.kork.jedis.EmbeddedRedis
 import com.netflix.spinnaker.q.AttemptsAttribute
 import com.netflix.spinnaker.q.DeadMessageCallback
+import com.netflix.spinnaker.q.LocalRedelivery
 import com.netflix.spinnaker.q.MaxAttemptsAttribute
+import com.netflix.spinnaker.q.Message
+import com.netflix.spinnaker.q.MessagePriority
+import com.netflix.spinnaker.q.MessagePriority.HIGH
+import com.netflix.spinnaker.q.QueueCallback
 import com.netflix.spinnaker.q.QueueTest
 import com.netflix.spinnaker.q.TestMessage
+import com.netflix.spinnaker.q.codec.MessageCodec
+import com.netflix.spinnaker.q.codec.MessageFormat
 import com.netflix.spinnaker.q.metrics.EventPublisher
 import com.netflix.spinnaker.q.metrics.MonitorableQueueTest
 import com.netflix.spinnaker.q.metrics.QueueEvent
+import com.netflix.spinnaker.time.MutableClock
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.eq
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.reset
+import com.nhaarman.mockito_kotlin.verify
 import java.time.Clock
+import java.time.Duration
 import java.util.Optional
+import kotlin.concurrent.thread
+import org.assertj.core.api.Assertions.assertThat
 import org.funktionale.partials.invoke
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.describe
+import org.jetbrains.spek.api.dsl.it
 
 object RedisQueueTest : QueueTest<RedisQueue>(createQueue(p3 = null), ::shutdownCallback)
 
+object RedisLocalRedeliveryQueueTest : QueueTest<RedisQueue>(
+  createLocallyRedeliveringQueue(p3 = null),
+  ::shutdownCallback
+)
+
+object RedisSmileQueueTest : QueueTest<RedisQueue>(
+  createSmileQueue(p3 = null),
+  ::shutdownCallback
+)
+
 object RedisMonitorableQueueTest : MonitorableQueueTest<RedisQueue>(
   createQueue,
   RedisQueue::retry,
   ::shutdownCallback
 )
 
+object RedisQueuePriorityTest : Spek({
+  val clock = MutableClock()
+  val callback: QueueCallback = mock()
+  lateinit var queue: RedisQueue
+
+  beforeEachTest {
+    queue = createQueue(clock, mock<DeadMessageCallback>(), null)
+  }
+
+  afterEachTest {
+    reset(callback)
+    shutdownCallback()
+  }
+
+  describe("claiming from the priority lanes") {
+    it("claims a high priority message before an older normal one") {
+      queue.push(TestMessage("normal"))
+      clock.incrementBy(Duration.ofSeconds(1))
+      queue.push(HighPriorityTestMessage("high"))
+
+      queue.poll(1, callback)
+
+      verify(callback).invoke(eq(HighPriorityTestMessage("high")), any())
+    }
+
+    it("claims a normal message once it has waited past the aging interval") {
+      queue.push(TestMessage("normal"))
+      clock.incrementBy(Duration.ofSeconds(45))
+      queue.push(HighPriorityTestMessage("high"))
+
+      queue.poll(1, callback)
+
+      verify(callback).invoke(eq(TestMessage("normal")), any())
+    }
+  }
+
+  describe("a message queued in another lane than that of its priority") {
+    val message = HighPriorityTestMessage("queued by an older instance")
+
+    fun queueInDefaultLane() {
+      with(queue) {
+        val fingerprint = message.fingerprint().latest
+        redis!!.pool.resource.use {
+          it.hset(messagesKey, fingerprint, codec.encode(message))
+          it.zadd(queueKey, score(), fingerprint)
+        }
+      }
+    }
+
+    it("is not queued again when it is ensured or pushed") {
+      queueInDefaultLane()
+
+      queue.ensure(message, Duration.ZERO)
+      queue.push(message)
+
+      with(queue.readState()) {
+        assertThat(depth).isEqualTo(1)
+        assertThat(depthByPriority[HIGH]).isEqualTo(0)
+      }
+    }
+
+    it("is rescheduled in the lane it is in") {
+      queueInDefaultLane()
+
+      queue.reschedule(message, Duration.ofMinutes(1))
+
+      with(queue.readState()) {
+        assertThat(depth).isEqualTo(1)
+        assertThat(ready).isEqualTo(0)
+      }
+    }
+  }
+})
+
+object RedisQueueReadySignalTest : Spek({
+  val clock = MutableClock()
+  lateinit var queue: RedisQueue
+
+  fun clearSignals() {
+    redis!!.pool.resource.use { it.del(queue.signalKey) }
+  }
+
+  fun timeToAwaitReady(timeout: Duration): Duration {
+    val started = System.nanoTime()
+    queue.awaitReady(timeout)
+    return Duration.ofNanos(System.nanoTime() - started)
+  }
+
+  afterEachTest {
+    shutdownCallback()
+  }
+
+  describe("waiting for a message to be ready") {
+    beforeEachTest {
+      queue = createReadySignallingQueue(clock, mock<DeadMessageCallback>(), null)
+    }
+
+    it("wakes a waiting instance when a message is pushed") {
+      var waited: Duration? = null
+      val waiter = thread { waited = timeToAwaitReady(Duration.ofSeconds(10)) }
+
+      Thread.sleep(200)
+      queue.push(TestMessage("wake up"))
+      waiter.join(5000)
+
+      assertThat(waiter.isAlive).isFalse()
+      assertThat(waited).isLessThan(Duration.ofSeconds(5))
+    }
+
+    it("waits out the timeout if nothing is pushed") {
+      assertThat(timeToAwaitReady(Duration.ofSeconds(1)))
+        .isGreaterThanOrEqualTo(Duration.ofMillis(900))
+        .isLessThan(Duration.ofSeconds(5))
+    }
+
+    it("keeps no more than $MAX_READY_SIGNALS signals") {
+      (1..100).forEach { queue.push(TestMessage("message $it")) }
+
+      redis!!.pool.resource.use {
+        assertThat(it.llen(queue.signalKey)).isEqualTo(MAX_READY_SIGNALS)
+      }
+    }
+  }
+
+  describe("waiting with a message deferred for local re-delivery") {
+    beforeEachTest {
+      queue = createLocallyRedeliveringReadySignallingQueue(
+        clock,
+        mock<DeadMessageCallback>(),
+        null
+      )
+      queue.push(TestMessage("deferred"))
+      queue.poll(1) { message, _ -> queue.push(message, Duration.ofSeconds(2)) }
+      clearSignals()
+    }
+
+    it("only waits until the message is due") {
+      assertThat(timeToAwaitReady(Duration.ofSeconds(30)))
+        .isGreaterThanOrEqualTo(Duration.ofMillis(1900))
+        .isLessThan(Duration.ofSeconds(10))
+    }
+  }
+})
+
+@JsonTypeName("highPriorityTest")
+data class HighPriorityTestMessage(val payload: String) : Message() {
+  override val priority: MessagePriority
+    get() = HIGH
+}
+
 private var redis: EmbeddedRedis? = null
 
-private val createQueue = { clock: Clock,
-                            deadLetterCallback: DeadMessageCallback,
-                            publisher: EventPublisher? ->
+private val createQueue = queueFactory(localRedelivery = false)
+
+private val createLocallyRedeliveringQueue = queueFactory(localRedelivery = true)
+
+private val createSmileQueue = queueFactory(messageFormat = MessageFormat.SMILE)
+
+private val createReadySignallingQueue = queueFactory(readySignals = true)
+
+private val createLocallyRedeliveringReadySignallingQueue =
+  queueFactory(localRedelivery = true, readySignals = true)
+
+private fun queueFactory(
+  localRedelivery: Boolean = false,
+  messageFormat: MessageFormat = MessageFormat.JSON,
+  readySignals: Boolean = false
+) = { clock: Clock,
+      deadLetterCallback: DeadMessageCallback,
+      publisher: EventPublisher? ->
   redis = EmbeddedRedis.embed()
+  val mapper = ObjectMapper().apply {
+    registerModule(KotlinModule())
+    disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+
+    registerSubtypes(TestMessage::class.java, HighPriorityTestMessage::class.java)
+    registerSubtypes(MaxAttemptsAttribute::class.java, AttemptsAttribute::class.java)
+  }
   RedisQueue(
     queueName = "test",
     pool = redis!!.pool,
@@ -54,14 +256,11 @@ private val createQueue = { clock: Clock,
     publisher = publisher ?: (object : EventPublisher {
       override fun publishEvent(event: QueueEvent) {}
     }),
-    mapper = ObjectMapper().apply {
-      registerModule(KotlinModule())
-      disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
-
-      registerSubtypes(TestMessage::class.java)
-      registerSubtypes(MaxAttemptsAttribute::class.java, AttemptsAttribute::class.java)
-    },
-    serializationMigrator = Optional.empty()
+    mapper = mapper,
+    serializationMigrator = Optional.empty(),
+    localRedelivery = if (localRedelivery) LocalRedelivery(clock) else null,
+    readySignals = readySignals,
+    messageCodec = MessageCodec(mapper, messageFormat)
   )
 }
 
@@ -25,12 +25,14 @@ import com.netflix.spinnaker.q.Queue
 import com.netflix.spinnaker.q.QueueExecutor
 import com.netflix.spinnaker.q.QueueProcessor
 import com.netflix.spinnaker.q.metrics.EventPublisher
+import com.netflix.spinnaker.q.metrics.MessageTagger
 import com.netflix.spinnaker.q.metrics.MonitorableQueue
 import com.netflix.spinnaker.q.metrics.NoopEventPublisher
 import com.netflix.spinnaker.q.metrics.QueueMetricsPublisher
 import com.netflix.spinnaker.q.metrics.QueueMonitor
 import java.time.Clock
 import java.time.Duration
+import java.util.Optional
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.boot.context.properties.EnableConfigurationProperties
@@ -92,7 +94,12 @@ class QueueConfiguration {
     deadMessageHandler,
     queueProperties.fillExecutorEachCycle,
     Duration.ofSeconds(queueProperties.requeueDelaySeconds),
-    Duration.ofSeconds(queueProperties.requeueMaxJitterSeconds)
+    Duration.ofSeconds(queueProperties.requeueMaxJitterSeconds),
+    queueProperties.pollMode,
+    Duration.ofMillis(queueProperties.minIdleWaitMs),
+    Duration.ofMillis(queueProperties.maxIdleWaitMs),
+    Duration.ofMillis(queueProperties.notifiedIdleWaitMs),
+    queueProperties.traceSampleRate
   )
 
   @Bean
@@ -110,9 +117,10 @@ class QueueConfiguration {
   @ConditionalOnProperty("queue.metrics.enabled", havingValue = "true", matchIfMissing = true)
   fun queueMetricsPublisher(
     registry: Registry,
-    clock: Clock
+    clock: Clock,
+    tagger: Optional<MessageTagger>
   ): EventPublisher =
-    QueueMetricsPublisher(registry, clock)
+    QueueMetricsPublisher(registry, clock, tagger.orElse(null))
 
   @Bean
   @ConditionalOnMissingBean(EventPublisher::class)
@@ -16,6 +16,7 @@
 
 package com.netflix.spinnaker.config
 
+import com.netflix.spinnaker.q.QueueProcessor
 import org.springframework.boot.context.properties.ConfigurationProperties
 
 @ConfigurationProperties("keiko.queue")
@@ -27,4 +28,9 @@ class QueueProperties {
   var fillExecutorEachCycle: Boolean = false
   var requeueDelaySeconds: Long = 0
   var requeueMaxJitterSeconds: Long = 0
+  var pollMode: QueueProcessor.PollMode = QueueProcessor.PollMode.FIXED_DELAY
+  var minIdleWaitMs: Long = 10
+  var maxIdleWaitMs: Long = 1000
+  var notifiedIdleWaitMs: Long = 5000
+  var traceSampleRate: Double = 0.0
 }
@@ -1,6 +1,10 @@
 package com.netflix.spinnaker.config
 
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spectator.api.Registry
+import com.netflix.spinnaker.q.LocalRedelivery
+import com.netflix.spinnaker.q.MessagePriorityPolicy
+import com.netflix.spinnaker.q.codec.MessageCodec
 import com.netflix.spinnaker.q.metrics.EventPublisher
 import com.netflix.spinnaker.q.migration.SerializationMigrator
 import com.netflix.spinnaker.q.sql.SqlDeadMessageHandler
@@ -35,7 +39,8 @@ class SqlQueueConfiguration {
     deadMessageHandler: SqlDeadMessageHandler,
     publisher: EventPublisher,
     serializationMigrator: Optional<SerializationMigrator>,
-    properties: SqlQueueProperties
+    properties: SqlQueueProperties,
+    registry: Registry
   ) =
     SqlQueue(
       queueName = properties.queueName,
@@ -48,7 +53,19 @@ class SqlQueueConfiguration {
       ackTimeout = properties.ackTimeout,
       deadMessageHandlers = listOf(deadMessageHandler),
       publisher = publisher,
-      sqlRetryProperties = properties.retries
+      sqlRetryProperties = properties.retries,
+      claimMode = properties.claimMode,
+      shardCount = properties.shards,
+      shardsPerPoll = properties.shardsPerPoll,
+      priorityPolicy = MessagePriorityPolicy(properties.priorityAgingInterval),
+      localRedelivery = if (properties.localRedeliveryEnabled) {
+        LocalRedelivery(clock, properties.localRedeliveryMaxDelay)
+      } else {
+        null
+      },
+      codec = MessageCodec(mapper, properties.messageFormat, serializationMigrator, registry),
+      affinity = properties.affinityEnabled,
+      affinityLeaseDuration = properties.affinityLeaseDuration
     )
 
   @Bean
@@ -2,6 +2,8 @@ package com.netflix.spinnaker.config
 
 import com.netflix.spinnaker.kork.sql.config.RetryProperties
 import com.netflix.spinnaker.kork.sql.config.SqlRetryProperties
+import com.netflix.spinnaker.q.codec.MessageFormat
+import com.netflix.spinnaker.q.sql.SqlQueue
 import java.time.Duration
 import javax.validation.constraints.Pattern
 import javax.validation.constraints.Positive
@@ -47,6 +49,70 @@ class SqlQueueProperties {
   @Positive(message = "lockTtlSeconds must be a positive integer")
   val lockTtlSeconds: Int = 20
 
+  /**
+   * How ready messages are claimed from the queue table. [SqlQueue.ClaimMode.SKIP_LOCKED] claims
+   * a batch of messages in a single transaction but requires MySQL 8+ or PostgreSQL 9.5+;
+   * [SqlQueue.ClaimMode.OPTIMISTIC] works on older versions of MySQL.
+   */
+  var claimMode: SqlQueue.ClaimMode = SqlQueue.ClaimMode.OPTIMISTIC
+
+  /**
+   * The number of queue, unacked and messages table sets that messages are spread across, by
+   * fingerprint. Sharding spreads polling contention on the ready messages index across tables
+   * as the number of queue processors grows. Shard 0 uses the table names of an unsharded queue.
+   *
+   * Changing this moves messages to different shards, so it must only be changed on a drained
+   * queue. The queue refuses to start if it finds messages that would be left on the wrong shard.
+   */
+  @Positive(message = "shards must be a positive integer")
+  var shards: Int = 1
+
+  /**
+   * The maximum number of shards polled by each poll cycle. Every instance polls its own
+   * preferred shard first and rotates through the others.
+   */
+  @Positive(message = "shardsPerPoll must be a positive integer")
+  var shardsPerPoll: Int = 2
+
+  /**
+   * Ready messages are claimed from higher priority lanes first, but a lane is promoted by one
+   * priority level for every [priorityAgingInterval] its oldest ready message has been waiting.
+   */
+  var priorityAgingInterval: Duration = Duration.ofSeconds(30)
+
+  /**
+   * When enabled, a message pushed back onto the queue with a delay of up to
+   * [localRedeliveryMaxDelay] while it is being processed is re-delivered from memory by the
+   * instance processing it. It stays in the unacked table meanwhile, so it is still retried if the
+   * instance goes away.
+   */
+  var localRedeliveryEnabled: Boolean = false
+
+  var localRedeliveryMaxDelay: Duration = Duration.ofSeconds(30)
+
+  /**
+   * The format message bodies are written in. Bodies in any format can be read, so
+   * [MessageFormat.SMILE] should only be enabled once every instance sharing the queue runs a
+   * version that can read it.
+   */
+  var messageFormat: MessageFormat = MessageFormat.JSON
+
+  /**
+   * When enabled, messages that are [com.netflix.spinnaker.q.AffinityAware] (such as all the
+   * messages for one pipeline execution) are routed to a shard by their affinity key rather than
+   * their fingerprint, and each shard is only polled by the instance holding its lease. So all
+   * the messages with the same key are handled by the same instance while it is up. Instances
+   * renew their leases every `queue.affinity.lease.frequency.ms`, which must be well within
+   * [affinityLeaseDuration], and the shards of an instance that goes away are taken over by the
+   * others once its leases expire.
+   *
+   * Enabling this moves messages to different shards, so it should be changed along with
+   * [shards] on a drained queue. Works best with [shards] a multiple of the number of instances.
+   */
+  var affinityEnabled: Boolean = false
+
+  var affinityLeaseDuration: Duration = Duration.ofSeconds(30)
+
   /**
    * [SqlRetryProperties] determines how read and write database queries are retried.
    * See: https://github.com/spinnaker/kork/blob/master/kork-sql/src/main/kotlin/com/netflix/spinnaker/kork/sql/config/SqlRetryProperties.kt
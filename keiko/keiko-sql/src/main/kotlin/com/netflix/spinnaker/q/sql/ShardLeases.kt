@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.q.sql
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import org.jooq.DSLContext
+import org.jooq.Record
+import org.jooq.Table
+import org.jooq.impl.DSL.field
+import org.slf4j.LoggerFactory
+
+/**
+ * Lease-based ownership of the shards of a [SqlQueue] that routes messages by affinity.
+ *
+ * Every instance heartbeats a row in [membersTable] and holds leases in [leasesTable] on its
+ * share of the shards, the shard count divided by the number of live members, rounded up. An
+ * instance holding more than its share (because another has joined) releases the excess, and one
+ * holding less claims shards that are unowned or whose lease has expired. So the shards of an
+ * instance that goes away are handed off to the others once its leases expire, [leaseDuration]
+ * after they were last renewed.
+ *
+ * Ownership is advisory: a handoff can leave the previous owner finishing off messages it has
+ * already claimed while the new owner starts on the next, so handlers must still cope with
+ * messages with the same affinity key being processed elsewhere.
+ */
+internal class ShardLeases(
+  private val jooq: DSLContext,
+  private val clock: Clock,
+  private val leasesTable: Table<Record>,
+  private val membersTable: Table<Record>,
+  private val owner: String,
+  private val shardCount: Int,
+  private val leaseDuration: Duration
+) {
+  private val log = LoggerFactory.getLogger(ShardLeases::class.java)
+
+  private val shardField = field("shard", Int::class.java)
+  private val ownerField = field("owner", String::class.java)
+  private val expiryField = field("expiry", Long::class.java)
+
+  @Volatile
+  private var owned: List<Int> = emptyList()
+
+  /**
+   * The time the leases in [owned] were last known to be held until.
+   */
+  @Volatile
+  private var validUntil: Instant = Instant.EPOCH
+
+  /**
+   * The shards this instance holds leases on. Empty if the leases could not be renewed before
+   * they expired, as other instances may have claimed them since.
+   */
+  fun ownedShards(): List<Int> =
+    if (clock.instant().isBefore(validUntil)) owned else emptyList()
+
+  /**
+   * Renews the leases held by this instance, then releases or claims shards until it holds its
+   * share of them.
+   */
+  fun rebalance() {
+    val now = clock.instant()
+    val nowMs = now.toEpochMilli()
+    val expiry = now.plus(leaseDuration).toEpochMilli()
+
+    jooq.insertInto(membersTable)
+      .set(ownerField, owner)
+      .set(expiryField, expiry)
+      .onDuplicateKeyUpdate()
+      .set(expiryField, expiry)
+      .execute()
+
+    jooq.update(leasesTable)
+      .set(expiryField, expiry)
+      .where(ownerField.eq(owner), expiryField.gt(nowMs))
+      .execute()
+
+    val members = jooq.selectCount()
+      .from(membersTable)
+      .where(expiryField.gt(nowMs))
+      .fetchOne(0, Int::class.java)
+      .coerceAtLeast(1)
+    val share = (shardCount + members - 1) / members
+
+    val leases = jooq.select(shardField, ownerField, expiryField)
+      .from(leasesTable)
+      .fetch()
+      .associateBy({ it.get(shardField) }, { Lease(it.get(ownerField), it.get(expiryField)) })
+
+    val held = leases
+      .filter { (shard, lease) -> shard < shardCount && lease.owner == owner }
+      .filterValues { it.expiry > nowMs }
+      .keys
+      .toMutableSet()
+
+    if (held.size > share) {
+      held.shuffled().take(held.size - share).forEach { shard ->
+        jooq.update(leasesTable)
+          .set(expiryField, 0L)
+          .where(shardField.eq(shard), ownerField.eq(owner))
+          .execute()
+        held.remove(shard)
+      }
+    } else {
+      (0 until shardCount)
+        .filter { leases[it]?.let { lease -> lease.expiry <= nowMs } ?: true }
+        .shuffled()
+        .forEach { shard ->
+          if (held.size < share && claim(shard, leases.containsKey(shard), nowMs, expiry)) {
+            held.add(shard)
+          }
+        }
+    }
+
+    if (held != owned.toSet()) {
+      log.info("Holding leases on shards ${held.sorted()}, a share of $share for $members members")
+    }
+    owned = held.sorted()
+    validUntil = now.plus(leaseDuration)
+  }
+
+  /**
+   * Gives up all leases held by this instance so other instances can claim them straight away.
+   */
+  fun release() {
+    owned = emptyList()
+    validUntil = Instant.EPOCH
+    jooq.update(leasesTable)
+      .set(expiryField, 0L)
+      .where(ownerField.eq(owner))
+      .execute()
+    jooq.deleteFrom(membersTable)
+      .where(ownerField.eq(owner))
+      .execute()
+  }
+
+  /**
+   * Claims [shard], guarding against another instance claiming it first.
+   */
+  private fun claim(shard: Int, exists: Boolean, nowMs: Long, expiry: Long): Boolean =
+    if (exists) {
+      jooq.update(leasesTable)
+        .set(ownerField, owner)
+        .set(expiryField, expiry)
+        .where(shardField.eq(shard), expiryField.le(nowMs))
+        .execute() == 1
+    } else {
+      jooq.insertInto(leasesTable)
+        .set(shardField, shard)
+        .set(ownerField, owner)
+        .set(expiryField, expiry)
+        .onDuplicateKeyIgnore()
+        .execute() == 1
+    }
+
+  private data class Lease(val owner: String, val expiry: Long)
+}
@@ -2,17 +2,21 @@ package com.netflix.spinnaker.q.sql
 
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.databind.SerializationFeature
-import com.fasterxml.jackson.module.kotlin.readValue
 import com.google.common.hash.Hashing
 import com.netflix.spinnaker.KotlinOpen
 import com.netflix.spinnaker.kork.sql.config.SqlRetryProperties
 import com.netflix.spinnaker.kork.sql.routing.withPool
 import com.netflix.spinnaker.q.AckAttemptsAttribute
+import com.netflix.spinnaker.q.AffinityAware
 import com.netflix.spinnaker.q.AttemptsAttribute
 import com.netflix.spinnaker.q.DeadMessageCallback
+import com.netflix.spinnaker.q.LocalRedelivery
 import com.netflix.spinnaker.q.MaxAttemptsAttribute
 import com.netflix.spinnaker.q.Message
+import com.netflix.spinnaker.q.MessagePriority
+import com.netflix.spinnaker.q.MessagePriorityPolicy
 import com.netflix.spinnaker.q.Queue
+import com.netflix.spinnaker.q.codec.MessageCodec
 import com.netflix.spinnaker.q.metrics.EventPublisher
 import com.netflix.spinnaker.q.metrics.MessageAcknowledged
 import com.netflix.spinnaker.q.metrics.MessageDead
@@ -39,15 +43,19 @@ import java.time.Clock
 import java.time.Duration
 import java.time.Instant
 import java.time.temporal.TemporalAmount
+import java.util.Locale
 import java.util.Optional
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.Exception
 import kotlin.math.max
 import kotlin.math.min
 import kotlin.random.Random.Default.nextLong
-import org.funktionale.partials.partially1
 import org.jooq.DSLContext
+import org.jooq.Record
+import org.jooq.SelectJoinStep
 import org.jooq.SortOrder
+import org.jooq.Table
 import org.jooq.exception.SQLDialectNotSupportedException
 import org.jooq.impl.DSL
 import org.jooq.impl.DSL.count
@@ -74,7 +82,16 @@ class SqlQueue(
   override val publisher: EventPublisher,
   private val sqlRetryProperties: SqlRetryProperties,
   private val ULID: ULID = ULID(),
-  private val poolName: String = "default"
+  private val poolName: String = "default",
+  private val claimMode: ClaimMode = ClaimMode.OPTIMISTIC,
+  private val shardCount: Int = 1,
+  private val shardsPerPoll: Int = 2,
+  private val priorityPolicy: MessagePriorityPolicy = MessagePriorityPolicy(),
+  private val localRedelivery: LocalRedelivery? = null,
+  private val codec: MessageCodec =
+    MessageCodec(mapper, serializationMigrator = serializationMigrator),
+  private val affinity: Boolean = false,
+  private val affinityLeaseDuration: Duration = Duration.ofSeconds(30)
 ) : MonitorableQueue {
 
   companion object {
@@ -102,14 +119,59 @@ class SqlQueue(
   private val queueBase = "keiko_v${schemaVersion}_queue"
   private val unackedBase = "keiko_v${schemaVersion}_unacked"
   private val messagesBase = "keiko_v${schemaVersion}_messages"
+  private val leasesBase = "keiko_v${schemaVersion}_leases"
+  private val membersBase = "keiko_v${schemaVersion}_members"
 
-  private val queueTableName = "${queueBase}_$sanitizedName"
-  private val unackedTableName = "${unackedBase}_$sanitizedName"
-  private val messagesTableName = "${messagesBase}_$sanitizedName"
+  init {
+    require(shardCount > 0) { "shardCount must be positive, got $shardCount" }
+  }
 
-  private val queueTable = table(queueTableName)
-  private val unackedTable = table(unackedTableName)
-  private val messagesTable = table(messagesTableName)
+  /**
+   * Shard 0 keeps the table names of an unsharded queue, so that an unsharded queue can be sharded
+   * without renaming its tables. Messages are routed to a shard by [shardFor], which depends on
+   * the number of shards (and on [affinity]), so messages already on the queue would end up on the
+   * wrong shard once either changes: they could not be de-duplicated, rescheduled or extended, and
+   * the messages of shards that no longer exist would never be polled. So the queue must be drained
+   * before changing either, and [checkShards] refuses to start on a queue that was not.
+   */
+  private val shards = (0 until shardCount).map { index ->
+    val suffix = if (index == 0) sanitizedName else "${sanitizedName}_s$index"
+    QueueShard(
+      index = index,
+      queueTableNames = MessagePriority.values().associate { priority ->
+        priority to when (priority) {
+          MessagePriority.NORMAL -> "${queueBase}_$suffix"
+          else -> "${queueBase}_${suffix}_${priority.name.toLowerCase(Locale.US)}"
+        }
+      },
+      unackedTableName = "${unackedBase}_$suffix",
+      messagesTableName = "${messagesBase}_$suffix"
+    )
+  }
+
+  /**
+   * The shard this instance polls first on every cycle, derived from [lockId] so that instances
+   * tend to spread out across shards rather than all contending on the same one.
+   */
+  private val homeShard = Math.floorMod(lockId.hashCode(), shardCount)
+  private val pollCursor = AtomicInteger()
+
+  /**
+   * When routing by [affinity], each shard is only polled by the instance holding its lease.
+   */
+  private val shardLeases = if (affinity) {
+    ShardLeases(
+      jooq = jooq,
+      clock = clock,
+      leasesTable = table("${leasesBase}_$sanitizedName"),
+      membersTable = table("${membersBase}_$sanitizedName"),
+      owner = lockId,
+      shardCount = shardCount,
+      leaseDuration = affinityLeaseDuration
+    )
+  } else {
+    null
+  }
 
   private val bodyField = field("body")
   private val deliveryField = field("delivery")
@@ -129,7 +191,9 @@ class SqlQueue(
     initTables()
   }
 
-  override fun toString(): String = "SqlQueue(queueName=$sanitizedName, poolName=$poolName)"
+  override fun toString(): String =
+    "SqlQueue(queueName=$sanitizedName, poolName=$poolName, claimMode=$claimMode, " +
+      "shards=$shardCount, affinity=$affinity)"
 
   override fun readState(): QueueState {
     withPool(poolName) {
@@ -138,50 +202,66 @@ class SqlQueue(
   }
 
   private fun doReadState(): QueueState {
+    val now = clock.instant().toEpochMilli()
+
     /**
-     * Reading counts across all tables in a single query for consistency
+     * Reading counts across all tables of all shards in a single query for consistency
      */
     val rs = jooq.select()
       .select(
-        select(count())
-          .from(queueTable)
-          .asField<Int>("depth"),
-        select(count())
-          .from(queueTable)
-          .where(deliveryField.le(clock.instant().toEpochMilli()))
-          .asField<Int>("ready"),
-        select(count())
-          .from(unackedTable)
-          .asField<Int>("unacked"),
-        select(count())
-          .from(messagesTable)
-          .asField<Int>("messages")
+        shards.flatMap { shard ->
+          shard.queueTables.flatMap { (priority, queueTable) ->
+            listOf(
+              select(count())
+                .from(queueTable)
+                .asField<Int>("depth_${shard.index}_$priority"),
+              select(count())
+                .from(queueTable)
+                .where(deliveryField.le(now))
+                .asField<Int>("ready_${shard.index}_$priority")
+            )
+          } + listOf(
+            select(count())
+              .from(shard.unackedTable)
+              .asField<Int>("unacked_${shard.index}"),
+            select(count())
+              .from(shard.messagesTable)
+              .asField<Int>("messages_${shard.index}")
+          )
+        }
       )
       .fetch()
       .intoResultSet()
 
     rs.next()
 
-    val depth = rs.getInt("depth")
-    val ready = rs.getInt("ready")
-    val unacked = rs.getInt("unacked")
-    val messages = rs.getInt("messages")
+    val depthByPriority = MessagePriority.values().associate { priority ->
+      priority to shards.sumBy { rs.getInt("depth_${it.index}_$priority") }
+    }
+    val readyByPriority = MessagePriority.values().associate { priority ->
+      priority to shards.sumBy { rs.getInt("ready_${it.index}_$priority") }
+    }
+    val depth = depthByPriority.values.sum()
+    val unacked = shards.sumBy { rs.getInt("unacked_${it.index}") }
+    val messages = shards.sumBy { rs.getInt("messages_${it.index}") }
 
     return QueueState(
       depth = depth,
-      ready = ready,
+      ready = readyByPriority.values.sum(),
       unacked = unacked,
-      orphaned = messages - (depth + unacked)
+      orphaned = messages - (depth + unacked),
+      depthByPriority = depthByPriority,
+      readyByPriority = readyByPriority
     )
   }
 
   override fun containsMessage(predicate: (Message) -> Boolean): Boolean {
     withPool(poolName) {
-      return doContainsMessage(predicate)
+      return shards.any { doContainsMessage(it, predicate) }
     }
   }
 
-  private fun doContainsMessage(predicate: (Message) -> Boolean): Boolean {
+  private fun doContainsMessage(shard: QueueShard, predicate: (Message) -> Boolean): Boolean {
     val batchSize = 100
     var found = false
     var lastId = "0"
@@ -189,7 +269,7 @@ class SqlQueue(
     do {
       val rs: ResultSet = withRetry(READ) {
         jooq.select(idField, fingerprintField, bodyField)
-          .from(messagesTable)
+          .from(shard.messagesTable)
           .where(idField.gt(lastId))
           .limit(batchSize)
           .fetch()
@@ -198,7 +278,7 @@ class SqlQueue(
 
       while (!found && rs.next()) {
         try {
-          found = predicate.invoke(mapper.readValue(rs.getString("body")))
+          found = predicate.invoke(codec.decode(rs.getString("body")))
         } catch (e: Exception) {
           log.error("Failed reading message with fingerprint: ${rs.getString("fingerprint")} " +
             "message: ${rs.getString("body")}", e)
@@ -216,14 +296,98 @@ class SqlQueue(
 
   override fun poll(maxMessages: Int, callback: (Message, () -> Unit) -> Unit) {
     withPool(poolName) {
-      doPoll(maxMessages, callback)
+      var remaining = maxMessages - (localRedelivery?.redeliver(this, maxMessages, callback) ?: 0)
+      for (shard in pollShards()) {
+        for (queueTable in laneClaimOrder(shard)) {
+          if (remaining <= 0) {
+            break
+          }
+          remaining -= when (claimMode) {
+            ClaimMode.SKIP_LOCKED -> doPollSkipLocked(shard, queueTable, remaining, callback)
+            ClaimMode.OPTIMISTIC -> doPoll(shard, queueTable, remaining, callback)
+          }
+        }
+      }
+    }
+
+    fire(QueuePolled)
+  }
+
+  /**
+   * Reads the delivery time of the oldest ready message in each of [shard]'s priority lanes and
+   * returns the queue tables of the lanes with ready messages, in the order [priorityPolicy]
+   * says they should be claimed from.
+   */
+  private fun laneClaimOrder(shard: QueueShard): List<Table<Record>> {
+    val now = clock.instant().toEpochMilli()
+
+    val oldest = withRetry(READ) {
+      jooq.select(
+        shard.queueTables.map { (priority, queueTable) ->
+          select(DSL.min(deliveryField))
+            .from(queueTable)
+            .where(deliveryField.le(now), lockedField.eq("0"))
+            .asField<Long>(priority.name)
+        }
+      )
+        .fetchOne()
     }
+
+    val oldestReady = MessagePriority.values()
+      .mapNotNull { priority ->
+        oldest.get(priority.name, Long::class.javaObjectType)
+          ?.let { priority to Instant.ofEpochMilli(it) }
+      }
+      .toMap()
+
+    return priorityPolicy
+      .claimOrder(oldestReady, clock.instant())
+      .map { shard.queueTables.getValue(it) }
   }
 
   /**
+   * Selects the shards to poll this cycle: the [homeShard] first, followed by up-to
+   * ([shardsPerPoll] - 1) of the remaining shards, rotating through them on each call so that
+   * every shard is regularly polled by every instance. Later shards are only polled if the
+   * earlier ones did not yield enough messages.
+   *
+   * When routing by [affinity], all the shards this instance holds leases on are polled instead,
+   * starting from a different one on each call.
+   */
+  private fun pollShards(): List<QueueShard> {
+    if (shardLeases != null) {
+      val owned = shardLeases.ownedShards()
+      if (owned.isEmpty()) {
+        return emptyList()
+      }
+      val offset = Math.floorMod(pollCursor.getAndIncrement(), owned.size)
+      return (owned.drop(offset) + owned.take(offset)).map { shards[it] }
+    }
+
+    if (shards.size == 1) {
+      return shards
+    }
+
+    val others = shards.size - 1
+    val offset = pollCursor.getAndIncrement()
+
+    return listOf(shards[homeShard]) +
+      (0 until min(max(shardsPerPoll, 1), shards.size) - 1).map { k ->
+        shards[(homeShard + 1 + Math.floorMod(offset + k, others)) % shards.size]
+      }
+  }
+
+  /**
+   * Returns the number of messages handed to [callback].
+   *
    * TODO: Emit metrics: histogram of poll runtime, count of messages grabbed per poll, count of passes
    */
-  private fun doPoll(maxMessages: Int, callback: (Message, () -> Unit) -> Unit) {
+  private fun doPoll(
+    shard: QueueShard,
+    queueTable: Table<Record>,
+    maxMessages: Int,
+    callback: (Message, () -> Unit) -> Unit
+  ): Int {
     val now = clock.instant().toEpochMilli()
     var changed = 0
 
@@ -269,8 +433,7 @@ class SqlQueue(
       .fetchInto(String::class.java)
 
     if (candidates == null || candidates.isEmpty()) {
-      fire(QueuePolled)
-      return
+      return 0
     }
 
     candidates.shuffle()
@@ -299,7 +462,7 @@ class SqlQueue(
           field("q.delivery").`as`("delivery"),
           field("m.body").`as`("body"))
           .from(queueTable.`as`("q"))
-          .leftOuterJoin(messagesTable.`as`("m"))
+          .leftOuterJoin(shard.messagesTable.`as`("m"))
           .on(sql("q.fingerprint = m.fingerprint"))
           .where(field("q.locked").like("$lockId%"))
           .fetch()
@@ -317,40 +480,22 @@ class SqlQueue(
 
         if (json == null) {
           log.error("Payload for message $fingerprint is missing")
-          deleteAll(fingerprint)
+          deleteAll(shard, fingerprint)
           continue
         }
 
-        try {
-          val message = mapper.readValue<Message>(runSerializationMigration(json))
-            .apply {
-              val currentAttempts = (getAttribute() ?: AttemptsAttribute())
-                .run { copy(attempts = attempts + 1) }
-
-              setAttribute(currentAttempts)
-            }
-
-          val timeoutOverride = message.ackTimeoutMs ?: 0
+        val lockedMessage = readLockedMessage(
+          shard = shard,
+          queueId = rs.getString("id"),
+          fingerprint = fingerprint,
+          delivery = rs.getLong("delivery"),
+          json = json
+        )
 
-          candidates.add(
-            LockedMessage(
-              queueId = rs.getString("id"),
-              fingerprint = fingerprint,
-              scheduledTime = Instant.ofEpochMilli(rs.getLong("delivery")),
-              message = message,
-              expiry = if (timeoutOverride > 0) {
-                atTime(Duration.ofMillis(timeoutOverride))
-              } else {
-                atTime(ackTimeout)
-              },
-              maxAttempts = message.getAttribute<MaxAttemptsAttribute>()?.maxAttempts ?: 0,
-              ackCallback = this::ackMessage.partially1(fingerprint)
-            )
-          )
-        } catch (e: Exception) {
-          log.error("Failed reading message for fingerprint: $fingerprint, " +
-            "json: $json, removing", e)
-          deleteAll(fingerprint)
+        if (lockedMessage == null) {
+          deleteAll(shard, fingerprint)
+        } else {
+          candidates.add(lockedMessage)
         }
       }
 
@@ -360,14 +505,14 @@ class SqlQueue(
          * for messages with [MaxAttemptsAttribute] set.
          */
         val body = when (m.maxAttempts > 0) {
-          true -> mapper.writeValueAsString(m.message)
+          true -> codec.encode(m.message)
           else -> null
         }
 
         withRetry(WRITE) {
           jooq.transaction { config ->
             val txn = DSL.using(config)
-            val changed = txn.insertInto(unackedTable)
+            val changed = txn.insertInto(shard.unackedTable)
               .set(idField, ulid.toString())
               .set(fingerprintField, m.fingerprint)
               .set(expiryField, m.expiry)
@@ -379,7 +524,7 @@ class SqlQueue(
               else -> {
                 locked.add(m.queueId)
                 if (body != null) {
-                  txn.update(messagesTable)
+                  txn.update(shard.messagesTable)
                     .set(bodyField, body)
                     .set(updatedAtField, now)
                     .where(fingerprintField.eq(m.fingerprint))
@@ -415,18 +560,205 @@ class SqlQueue(
         }
       }
 
-      candidates
-        .filterNot { toRelease.contains(it.queueId) }
-        .forEach {
-          fire(MessageProcessing(it.message, it.scheduledTime, clock.instant()))
-          callback(it.message, it.ackCallback)
+      val claimed = candidates.filterNot { toRelease.contains(it.queueId) }
+      claimed.forEach {
+        fire(MessageProcessing(it.message, it.scheduledTime, clock.instant()))
+        callback(it.message, localRedelivery?.track(it.message, it.ackCallback) ?: it.ackCallback)
+      }
+      return claimed.size
+    }
+
+    return 0
+  }
+
+  /**
+   * Claims up to [maxMessages] ready messages in a single transaction, relying on
+   * `SELECT ... FOR UPDATE SKIP LOCKED` (MySQL 8+, PostgreSQL 9.5+) so that instances polling
+   * concurrently never wait on, or compete for, the same queue rows.
+   *
+   * Within the transaction, the ready rows are locked, moved to [unackedTable] with a single
+   * multi-row insert and removed from [queueTable] with a single delete, so a claim costs a
+   * fixed number of statements regardless of batch size. Messages that are already unacked
+   * (i.e. still being processed elsewhere) are left on the queue, as in [doPoll].
+   *
+   * If another instance inserts the same fingerprint into [unackedTable] concurrently, the
+   * unique index fails the insert and the whole transaction is rolled back and retried.
+   */
+  private fun doPollSkipLocked(
+    shard: QueueShard,
+    queueTable: Table<Record>,
+    maxMessages: Int,
+    callback: (Message, () -> Unit) -> Unit
+  ): Int {
+    val now = clock.instant().toEpochMilli()
+    val claimed = mutableListOf<LockedMessage>()
+    val invalid = mutableSetOf<String>()
+
+    withRetry(WRITE) {
+      claimed.clear()
+      invalid.clear()
+
+      jooq.transaction { config ->
+        val txn = DSL.using(config)
+
+        /**
+         * As with [doPoll], more rows than [maxMessages] are selected, so that rows that turn out
+         * not to be claimable (their message was acked or pushed again since) do not leave the
+         * poll short. Only up to [maxMessages] of them are claimed, the others are unlocked again
+         * as soon as the transaction commits.
+         */
+        val ready = txn.select(idField, fingerprintField, deliveryField)
+          .from(queueTable)
+          .where(deliveryField.le(now), lockedField.eq("0"))
+          .orderBy(deliveryField.asc())
+          .limit(max(10, maxMessages * 3))
+          .forUpdate()
+          .skipLocked()
+          .fetch()
+
+        if (ready.isEmpty()) {
+          return@transaction
+        }
+
+        val fingerprints = ready.map { it.get(fingerprintField, String::class.java) }
+
+        val bodies = txn.select(fingerprintField, bodyField)
+          .from(shard.messagesTable)
+          .where(fingerprintField.`in`(*fingerprints.toTypedArray()))
+          .fetch()
+          .associate {
+            it.get(fingerprintField, String::class.java) to it.get(bodyField, String::class.java)
+          }
+
+        val unacked = txn.select(fingerprintField)
+          .from(shard.unackedTable)
+          .where(fingerprintField.`in`(*fingerprints.toTypedArray()))
+          .fetchSet(fingerprintField, String::class.java)
+
+        ready
+          .filterNot { unacked.contains(it.get(fingerprintField, String::class.java)) }
+          .forEach { record ->
+            if (claimed.size >= maxMessages) {
+              return@forEach
+            }
+            val fingerprint = record.get(fingerprintField, String::class.java)
+            val json = bodies[fingerprint]
+
+            if (json == null) {
+              log.error("Payload for message $fingerprint is missing")
+              invalid.add(fingerprint)
+              return@forEach
+            }
+
+            val lockedMessage = readLockedMessage(
+              shard = shard,
+              queueId = record.get(idField, String::class.java),
+              fingerprint = fingerprint,
+              delivery = record.get(deliveryField, Long::class.javaObjectType),
+              json = json
+            )
+
+            if (lockedMessage == null) {
+              invalid.add(fingerprint)
+            } else {
+              claimed.add(lockedMessage)
+            }
+          }
+
+        if (claimed.isEmpty()) {
+          return@transaction
+        }
+
+        var ulid = ULID.nextValue()
+        val insert = txn.insertInto(shard.unackedTable, idField, fingerprintField, expiryField)
+        claimed.forEach { m ->
+          insert.values(ulid.toString(), m.fingerprint, m.expiry)
+          ulid = ULID.nextMonotonicValue(ulid)
         }
+        insert.execute()
+
+        txn.deleteFrom(queueTable)
+          .where(idField.`in`(*claimed.map { it.queueId }.sorted().toTypedArray()))
+          .execute()
+
+        /**
+         * As with [doPoll], message bodies are only updated to persist the incremented
+         * [AttemptsAttribute] for messages with [MaxAttemptsAttribute] set.
+         */
+        claimed
+          .filter { it.maxAttempts > 0 }
+          .forEach { m ->
+            txn.update(shard.messagesTable)
+              .set(bodyField, codec.encode(m.message))
+              .set(updatedAtField, now)
+              .where(fingerprintField.eq(m.fingerprint))
+              .execute()
+          }
+      }
     }
 
-    fire(QueuePolled)
+    /**
+     * Cleaned up after the claim transaction has committed, as the queue rows of these
+     * messages were locked by it.
+     */
+    invalid.forEach { deleteAll(shard, it) }
+
+    claimed.forEach {
+      fire(MessageProcessing(it.message, it.scheduledTime, clock.instant()))
+      callback(it.message, localRedelivery?.track(it.message, it.ackCallback) ?: it.ackCallback)
+    }
+
+    return claimed.size
+  }
+
+  /**
+   * Deserializes a claimed message, incrementing its [AttemptsAttribute]. Returns null if
+   * the message can not be read, in which case the caller is expected to remove it.
+   */
+  private fun readLockedMessage(
+    shard: QueueShard,
+    queueId: String,
+    fingerprint: String,
+    delivery: Long,
+    json: String
+  ): LockedMessage? {
+    return try {
+      val message = codec.decode(json)
+        .apply {
+          val currentAttempts = (getAttribute() ?: AttemptsAttribute())
+            .run { copy(attempts = attempts + 1) }
+
+          setAttribute(currentAttempts)
+        }
+
+      val timeoutOverride = message.ackTimeoutMs ?: 0
+
+      LockedMessage(
+        queueId = queueId,
+        fingerprint = fingerprint,
+        scheduledTime = Instant.ofEpochMilli(delivery),
+        message = message,
+        expiry = if (timeoutOverride > 0) {
+          atTime(Duration.ofMillis(timeoutOverride))
+        } else {
+          atTime(ackTimeout)
+        },
+        maxAttempts = message.getAttribute<MaxAttemptsAttribute>()?.maxAttempts ?: 0,
+        ackCallback = { ackMessage(shard, fingerprint) }
+      )
+    } catch (e: Exception) {
+      log.error("Failed reading message for fingerprint: $fingerprint, " +
+        "json: $json, removing", e)
+      null
+    }
   }
 
   override fun push(message: Message, delay: TemporalAmount) {
+    if (localRedelivery?.defer(this, message, delay) == true) {
+      fire(MessagePushed(message))
+      return
+    }
+
     withPool(poolName) {
       doPush(message, delay)
     }
@@ -434,6 +766,8 @@ class SqlQueue(
 
   private fun doPush(message: Message, delay: TemporalAmount) {
     val fingerprint = message.hashV2()
+    val shard = shardFor(message, fingerprint)
+    val queueTable = shard.queueTableFor(message)
     val ulid = ULID.nextValue()
     val deliveryTime = atTime(delay)
 
@@ -445,10 +779,10 @@ class SqlQueue(
       jooq.transaction { config ->
         val txn = DSL.using(config)
 
-        txn.insertInto(messagesTable)
+        txn.insertInto(shard.messagesTable)
           .set(idField, ulid.toString())
           .set(fingerprintField, fingerprint)
-          .set(bodyField, mapper.writeValueAsString(message))
+          .set(bodyField, codec.encode(message))
           .set(updatedAtField, clock.millis())
           .onDuplicateKeyUpdate()
           .set(idField, MySQLDSL.values(idField) as Any)
@@ -470,6 +804,11 @@ class SqlQueue(
   }
 
   override fun reschedule(message: Message, delay: TemporalAmount) {
+    if (localRedelivery?.reschedule(this, message, delay) == true) {
+      fire(MessageRescheduled(message))
+      return
+    }
+
     withPool(poolName) {
       return doReschedule(message, delay)
     }
@@ -477,6 +816,7 @@ class SqlQueue(
 
   private fun doReschedule(message: Message, delay: TemporalAmount) {
     val fingerprint = message.hashV2()
+    val queueTable = shardFor(message, fingerprint).queueTableFor(message)
 
     withRetry(WRITE) {
       val rows = jooq.update(queueTable)
@@ -503,6 +843,8 @@ class SqlQueue(
 
   private fun doEnsure(message: Message, delay: TemporalAmount) {
     val fingerprint = message.hashV2()
+    val shard = shardFor(message, fingerprint)
+    val queueTable = shard.queueTableFor(message)
     var missing = false
 
     withRetry(WRITE) {
@@ -517,7 +859,7 @@ class SqlQueue(
 
         if (queueRows == 0) {
           val unackedRows = txn.select(fingerprintField)
-            .from(unackedTable)
+            .from(shard.unackedTable)
             .where(fingerprintField.eq(fingerprint))
             .limit(1)
             .execute()
@@ -537,7 +879,7 @@ class SqlQueue(
     }
   }
 
-  private fun expireStaleLocks() {
+  private fun expireStaleLocks(queueTable: Table<Record>) {
     val now = clock.instant().toEpochMilli()
     val minMs = now.minus(TimeUnit.SECONDS.toMillis(lockTtlSeconds.toLong()))
     val minUlid = ULID.nextValue(minMs).toString()
@@ -600,6 +942,51 @@ class SqlQueue(
     }
   }
 
+  override fun extendAckTimeout(message: Message, timeout: TemporalAmount): Boolean =
+    withPool(poolName) {
+      val fingerprint = message.hashV2()
+      withRetry(WRITE) {
+        jooq.update(shardFor(message, fingerprint).unackedTable)
+          .set(expiryField, atTime(timeout))
+          .where(fingerprintField.eq(fingerprint))
+          .execute()
+      } > 0
+    }
+
+  /**
+   * Returns any locally deferred messages to the queue and gives up any shard leases so that other
+   * instances can take over the shards straight away.
+   */
+  fun shutdown() {
+    localRedelivery?.drain(this)
+    if (shardLeases != null) {
+      withPool(poolName) {
+        try {
+          withRetry(WRITE) { shardLeases.release() }
+        } catch (e: Exception) {
+          log.error("Failed to release shard leases, they will expire instead", e)
+        }
+      }
+    }
+  }
+
+  /**
+   * Renews the shard leases of a queue routing by [affinity], and claims or releases shards as
+   * instances come and go. Must run well within [affinityLeaseDuration].
+   */
+  @Scheduled(fixedDelayString = "\${queue.affinity.lease.frequency.ms:5000}")
+  fun renewLeases() {
+    if (shardLeases != null) {
+      withPool(poolName) {
+        try {
+          withRetry(WRITE) { shardLeases.rebalance() }
+        } catch (e: Exception) {
+          log.error("Failed to renew shard leases", e)
+        }
+      }
+    }
+  }
+
   /**
    * Differs from other [Queue.retry] implementations, as unacked messages are requeued for
    * delivery at now + [lockTtlSeconds] instead of immediately.
@@ -612,16 +999,22 @@ class SqlQueue(
   }
 
   private fun doRetry() {
-    expireStaleLocks()
+    shards.forEach { shard ->
+      shard.queueTables.values.forEach { expireStaleLocks(it) }
+      retryUnacked(shard)
+    }
+    fire(RetryPolled)
+  }
 
+  private fun retryUnacked(shard: QueueShard) {
     val unackBaseTime = clock.instant().toEpochMilli()
 
     val rs = jooq.select(field("u.id").`as`("id"),
       field("u.expiry").`as`("expiry"),
       field("u.fingerprint").`as`("fingerprint"),
       field("m.body").`as`("body"))
-      .from(unackedTable.`as`("u"))
-      .leftOuterJoin(messagesTable.`as`("m"))
+      .from(shard.unackedTable.`as`("u"))
+      .leftOuterJoin(shard.messagesTable.`as`("m"))
       .on(sql("u.fingerprint = m.fingerprint"))
       .where(field("u.expiry").le(unackBaseTime))
       .fetch()
@@ -635,7 +1028,7 @@ class SqlQueue(
       var acks: Int
 
       try {
-        message = mapper.readValue(runSerializationMigration(rs.getString("body")))
+        message = codec.decode(rs.getString("body"))
 
         val ackAttemptsAttribute = (message.getAttribute() ?: AckAttemptsAttribute())
           .run { copy(ackAttempts = ackAttempts + 1) }
@@ -655,12 +1048,12 @@ class SqlQueue(
         }
       } catch (e: Exception) {
         log.error("Failed to deserialize message $fingerprint, cleaning up", e)
-        deleteAll(fingerprint)
+        deleteAll(shard, fingerprint)
         continue
       }
 
       if (dlq) {
-        deleteAll(fingerprint)
+        deleteAll(shard, fingerprint)
         handleDeadMessage(message)
         continue
       }
@@ -668,14 +1061,14 @@ class SqlQueue(
       jooq.transaction { config ->
         val txn = DSL.using(config)
 
-        rows = txn.delete(unackedTable)
+        rows = txn.delete(shard.unackedTable)
           .where(idField.eq(rs.getString("id")))
           .execute()
 
         if (rows == 1) {
           log.warn("Retrying message $fingerprint after $acks ack attempts")
 
-          txn.insertInto(queueTable)
+          txn.insertInto(shard.queueTableFor(message))
             .set(idField, ULID.nextValue().toString())
             .set(fingerprintField, fingerprint)
             .set(deliveryField, atTime(lockTtlDuration))
@@ -692,8 +1085,8 @@ class SqlQueue(
        * [lockTtlSeconds], the ackAttempt attribute increment may be lost, making it best effort.
        */
       if (rows == 1) {
-        jooq.update(messagesTable)
-          .set(bodyField, mapper.writeValueAsString(message))
+        jooq.update(shard.messagesTable)
+          .set(bodyField, codec.encode(message))
           .set(updatedAtField, unackBaseTime)
           .where(fingerprintField.eq(fingerprint))
           .execute()
@@ -701,17 +1094,16 @@ class SqlQueue(
         fire(MessageRetried)
       }
     }
-    fire(RetryPolled)
   }
 
   @Scheduled(fixedDelayString = "\${queue.cleanup.frequency.ms:2000}")
   fun cleanupMessages() {
     withPool(poolName) {
-      doCleanupMessages()
+      shards.forEach { doCleanupMessages(it) }
     }
   }
 
-  private fun doCleanupMessages() {
+  private fun doCleanupMessages(shard: QueueShard) {
     val start = clock.millis()
     val cleanBefore = start - ackTimeout.multipliedBy(2).toMillis()
 
@@ -721,17 +1113,26 @@ class SqlQueue(
     val order = orders.shuffled().first()
 
     // TODO: make limits/batchSizes configurable
+    val laneAliases = shard.queueTables.mapKeys { (priority, _) ->
+      "q_${priority.name.toLowerCase(Locale.US)}"
+    }
+
     val rs = withRetry(READ) {
-      jooq.select(
-        field("m.id").`as`("mid"),
-        field("q.id").`as`("qid"),
-        field("u.id").`as`("uid")
+      var select: SelectJoinStep<Record> = jooq.select(
+        listOf(field("m.id").`as`("mid"), field("u.id").`as`("uid")) +
+          laneAliases.keys.map { field("$it.id").`as`("${it}_id") }
       )
-        .from(messagesTable.`as`("m"))
-        .leftOuterJoin(queueTable.`as`("q"))
-        .on(sql("m.fingerprint = q.fingerprint"))
-        .leftOuterJoin(unackedTable.`as`("u"))
+        .from(shard.messagesTable.`as`("m"))
+        .leftOuterJoin(shard.unackedTable.`as`("u"))
         .on(sql("m.fingerprint = u.fingerprint"))
+
+      laneAliases.forEach { (alias, queueTable) ->
+        select = select
+          .leftOuterJoin(queueTable.`as`(alias))
+          .on(sql("m.fingerprint = $alias.fingerprint"))
+      }
+
+      select
         .where(field("m.updated_at").lt(cleanBefore))
         .orderBy(field("m.id").sort(order))
         .limit(2000)
@@ -743,10 +1144,10 @@ class SqlQueue(
     var olderMessages = 0
 
     while (rs.next() && candidates.size < 1000) {
-      val queueId: String? = rs.getString("qid")
+      val queued = laneAliases.keys.any { rs.getString("${it}_id") != null }
       val unackedId: String? = rs.getString("uid")
 
-      if (queueId == null && unackedId == null) {
+      if (!queued && unackedId == null) {
         candidates.add(rs.getString("mid"))
       }
 
@@ -757,7 +1158,7 @@ class SqlQueue(
 
     candidates.chunked(100).forEach { chunk ->
       withRetry(WRITE) {
-        deleted += jooq.deleteFrom(messagesTable)
+        deleted += jooq.deleteFrom(shard.messagesTable)
           .where(
             idField.`in`(*chunk.toTypedArray()),
             updatedAtField.lt(cleanBefore)
@@ -772,16 +1173,16 @@ class SqlQueue(
     }
   }
 
-  private fun ackMessage(fingerprint: String) {
+  private fun ackMessage(shard: QueueShard, fingerprint: String) {
     withPool(poolName) {
       withRetry(WRITE) {
-        jooq.deleteFrom(unackedTable)
+        jooq.deleteFrom(shard.unackedTable)
           .where(fingerprintField.eq(fingerprint))
           .execute()
       }
 
       withRetry(WRITE) {
-        jooq.update(messagesTable)
+        jooq.update(shard.messagesTable)
           .set(updatedAtField, clock.millis())
           .where(fingerprintField.eq(fingerprint))
           .execute()
@@ -791,17 +1192,19 @@ class SqlQueue(
     fire(MessageAcknowledged)
   }
 
-  private fun deleteAll(fingerprint: String) {
+  private fun deleteAll(shard: QueueShard, fingerprint: String) {
     withRetry(WRITE) {
-      jooq.deleteFrom(queueTable)
-        .where(fingerprintField.eq(fingerprint))
-        .execute()
+      shard.queueTables.values.forEach { queueTable ->
+        jooq.deleteFrom(queueTable)
+          .where(fingerprintField.eq(fingerprint))
+          .execute()
+      }
 
-      jooq.deleteFrom(unackedTable)
+      jooq.deleteFrom(shard.unackedTable)
         .where(fingerprintField.eq(fingerprint))
         .execute()
 
-      jooq.deleteFrom(messagesTable)
+      jooq.deleteFrom(shard.messagesTable)
         .where(fingerprintField.eq(fingerprint))
         .execute()
     }
@@ -809,14 +1212,70 @@ class SqlQueue(
 
   private fun initTables() {
     withPool(poolName) {
-      withRetry(WRITE) {
-        jooq.execute("CREATE TABLE IF NOT EXISTS $queueTableName LIKE ${queueBase}_template")
-        jooq.execute("CREATE TABLE IF NOT EXISTS $unackedTableName LIKE ${unackedBase}_template")
-        jooq.execute("CREATE TABLE IF NOT EXISTS $messagesTableName LIKE ${messagesBase}_template")
+      checkShards()
+      shards.forEach { shard ->
+        withRetry(WRITE) {
+          shard.queueTableNames.values.forEach { queueTableName ->
+            jooq.execute("CREATE TABLE IF NOT EXISTS $queueTableName LIKE ${queueBase}_template")
+          }
+          jooq.execute(
+            "CREATE TABLE IF NOT EXISTS ${shard.unackedTableName} LIKE ${unackedBase}_template")
+          jooq.execute(
+            "CREATE TABLE IF NOT EXISTS ${shard.messagesTableName} LIKE ${messagesBase}_template")
+        }
+      }
+      if (affinity) {
+        withRetry(WRITE) {
+          jooq.execute(
+            "CREATE TABLE IF NOT EXISTS ${leasesBase}_$sanitizedName LIKE ${leasesBase}_template")
+          jooq.execute(
+            "CREATE TABLE IF NOT EXISTS ${membersBase}_$sanitizedName LIKE ${membersBase}_template")
+        }
       }
     }
   }
 
+  /**
+   * Fails if the number of shards changed while there were messages on the queue, which is when
+   * there are messages in the tables of a shard that is no longer configured, or when shards are
+   * being added to a queue that has messages on it. Changes to [affinity] can not be detected, so
+   * they are left to the operator.
+   */
+  private fun checkShards() {
+    val shardTable = Regex("^${messagesBase}_${sanitizedName}_s(\\d+)$")
+    val existing = jooq.select(field("table_name", String::class.java))
+      .from(table("information_schema.tables"))
+      .where(field("table_schema").eq(DSL.currentSchema()))
+      .and(field("table_name").like("${messagesBase}_%"))
+      .fetch(0, String::class.java)
+      .mapNotNull { name ->
+        when (name) {
+          messagesTableName(0) -> 0
+          else -> shardTable.matchEntire(name)?.groupValues?.get(1)?.toInt()
+        }
+      }
+      .toSortedSet()
+
+    val withMessages = existing.filter { jooq.fetchExists(table(messagesTableName(it))) }
+    val stranded = withMessages.filter { it >= shardCount }
+    check(stranded.isEmpty()) {
+      "Queue $sanitizedName has messages on shards $stranded, beyond the $shardCount shards " +
+        "configured. Drain the queue with the previous number of shards before resharding it."
+    }
+    val added = (0 until shardCount).filterNot { existing.contains(it) }
+    check(existing.isEmpty() || added.isEmpty() || withMessages.isEmpty()) {
+      "Queue $sanitizedName has messages on shards $withMessages while shards $added are being " +
+        "added. Drain the queue with the previous number of shards before resharding it."
+    }
+  }
+
+  private fun messagesTableName(shardIndex: Int) =
+    if (shardIndex == 0) {
+      "${messagesBase}_$sanitizedName"
+    } else {
+      "${messagesBase}_${sanitizedName}_s$shardIndex"
+    }
+
   private fun handleDeadMessage(message: Message) {
     deadMessageHandlers.forEach {
       it.invoke(this, message)
@@ -825,11 +1284,15 @@ class SqlQueue(
     fire(MessageDead)
   }
 
-  private fun runSerializationMigration(json: String): String {
-    if (serializationMigrator.isPresent) {
-      return serializationMigrator.get().migrate(json)
-    }
-    return json
+  /**
+   * Messages are routed to a shard by their fingerprint, so that pushing the same message always
+   * lands on (and is de-duplicated within) the same shard. When routing by [affinity], messages
+   * that are [AffinityAware] are routed by their affinity key instead, so that they all land on
+   * the shard of the instance holding its lease.
+   */
+  private fun shardFor(message: Message, fingerprint: String): QueueShard {
+    val key = (message as? AffinityAware)?.takeIf { affinity }?.affinityKey ?: fingerprint
+    return shards[Math.floorMod(key.hashCode(), shards.size)]
   }
 
   private fun atTime(delay: TemporalAmount = Duration.ZERO) =
@@ -850,6 +1313,23 @@ class SqlQueue(
     WRITE, READ
   }
 
+  /**
+   * How [poll] claims ready messages.
+   */
+  enum class ClaimMode {
+    /**
+     * Claims messages by setting [lockedField] on unlocked candidate rows, then moves each claimed
+     * message to the unacked table in its own transaction. Works on any supported database.
+     */
+    OPTIMISTIC,
+
+    /**
+     * Claims a whole batch of messages in a single transaction using
+     * `SELECT ... FOR UPDATE SKIP LOCKED`. Requires MySQL 8+ or PostgreSQL 9.5+.
+     */
+    SKIP_LOCKED
+  }
+
   private fun <T> withRetry(category: RetryCategory, action: () -> T): T {
     return if (category == WRITE) {
       val retry = Retry.of(
@@ -878,6 +1358,23 @@ class SqlQueue(
     }
   }
 
+  /**
+   * The queue tables (one per priority lane), unacked and messages tables holding the messages
+   * routed to one shard.
+   */
+  private class QueueShard(
+    val index: Int,
+    val queueTableNames: Map<MessagePriority, String>,
+    val unackedTableName: String,
+    val messagesTableName: String
+  ) {
+    val queueTables = queueTableNames.mapValues { (_, name) -> table(name) }
+    val unackedTable = table(unackedTableName)
+    val messagesTable = table(messagesTableName)
+
+    fun queueTableFor(message: Message) = queueTables.getValue(message.priority)
+  }
+
   private data class LockedMessage(
     val queueId: String,
     val fingerprint: String,
@@ -9,16 +9,26 @@ import com.netflix.spinnaker.kork.sql.test.SqlTestUtil
 import com.netflix.spinnaker.q.AckAttemptsAttribute
 import com.netflix.spinnaker.q.AttemptsAttribute
 import com.netflix.spinnaker.q.DeadMessageCallback
+import com.netflix.spinnaker.q.LocalRedelivery
 import com.netflix.spinnaker.q.MaxAttemptsAttribute
 import com.netflix.spinnaker.q.QueueTest
 import com.netflix.spinnaker.q.TestMessage
 import com.netflix.spinnaker.q.metrics.EventPublisher
 import com.netflix.spinnaker.q.metrics.MonitorableQueueTest
 import com.netflix.spinnaker.q.metrics.QueueEvent
+import com.netflix.spinnaker.time.MutableClock
 import java.time.Clock
 import java.time.Duration
 import java.util.Optional
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
 import org.funktionale.partials.invoke
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.describe
+import org.jetbrains.spek.api.dsl.it
+import org.jooq.DSLContext
+import org.jooq.SQLDialect
+import org.jooq.impl.DSL.table
 
 object SqlQueueTest : QueueTest<SqlQueue>(createQueue(p3 = null), ::cleanupCallback)
 
@@ -28,16 +38,130 @@ object SqlMonitorableQueueTest : MonitorableQueueTest<SqlQueue>(
   ::cleanupCallback
 )
 
+object ShardedSqlQueueTest : QueueTest<SqlQueue>(createShardedQueue(p3 = null), ::cleanupCallback)
+
+object SqlLocalRedeliveryQueueTest : QueueTest<SqlQueue>(
+  createLocallyRedeliveringQueue(p3 = null),
+  ::cleanupCallback
+)
+
+object AffinitySqlQueueTest : QueueTest<SqlQueue>(createAffinityQueue(p3 = null), ::cleanupCallback)
+
+/**
+ * `SKIP LOCKED` needs MySQL 8, so unlike the other queue tests this one runs against a MySQL 8
+ * container of its own.
+ */
+object SkipLockedSqlQueueTest : QueueTest<SqlQueue>(
+  createSkipLockedQueue(p3 = null),
+  ::cleanupMysql8Callback
+)
+
+object ShardLeasesTest : Spek({
+  describe("sharing shards between instances") {
+    val clock = MutableClock()
+    val leaseDuration = Duration.ofSeconds(30)
+
+    fun leases(owner: String) = ShardLeases(
+      jooq = jooq,
+      clock = clock,
+      leasesTable = table("keiko_v1_leases_leasetest"),
+      membersTable = table("keiko_v1_members_leasetest"),
+      owner = owner,
+      shardCount = 4,
+      leaseDuration = leaseDuration
+    )
+
+    val a = leases("a")
+    val b = leases("b")
+
+    beforeGroup {
+      listOf("leases", "members").forEach {
+        jooq.execute(
+          "CREATE TABLE IF NOT EXISTS keiko_v1_${it}_leasetest LIKE keiko_v1_${it}_template")
+      }
+    }
+
+    afterGroup(::cleanupCallback)
+
+    it("claims every shard when it is the only instance") {
+      a.rebalance()
+
+      assertThat(a.ownedShards()).containsExactly(0, 1, 2, 3)
+    }
+
+    it("hands half the shards over to a new instance") {
+      b.rebalance()
+      assertThat(b.ownedShards()).isEmpty()
+
+      a.rebalance()
+      b.rebalance()
+
+      assertThat(a.ownedShards()).hasSize(2)
+      assertThat(b.ownedShards()).hasSize(2).doesNotContainAnyElementsOf(a.ownedShards())
+    }
+
+    it("takes over the shards of an instance that has gone away once its leases expire") {
+      clock.incrementBy(leaseDuration.dividedBy(2))
+      b.rebalance()
+      clock.incrementBy(leaseDuration.dividedBy(2))
+      b.rebalance()
+
+      assertThat(a.ownedShards()).isEmpty()
+      assertThat(b.ownedShards()).containsExactly(0, 1, 2, 3)
+    }
+  }
+})
+
+object ReshardingSqlQueueTest : Spek({
+  describe("changing the number of shards of a queue") {
+    val deadMessageCallback: DeadMessageCallback = { _, _ -> }
+
+    afterGroup(::cleanupCallback)
+
+    it("refuses to start if messages would be left on shards nobody polls") {
+      val sharded = createShardedQueue(MutableClock(), deadMessageCallback, null)
+      (1..12).forEach { sharded.push(TestMessage("message $it")) }
+
+      assertThatThrownBy { createQueue(MutableClock(), deadMessageCallback, null) }
+        .isInstanceOf(IllegalStateException::class.java)
+    }
+  }
+})
+
 private val testDb = SqlTestUtil.initTcMysqlDatabase()
 private val jooq = testDb.context
 
-private val createQueue = { clock: Clock,
-                            deadLetterCallback: DeadMessageCallback,
-                            publisher: EventPublisher? ->
+private val createQueue = queueFactory(shardCount = 1)
+
+private val createShardedQueue = queueFactory(shardCount = 3)
+
+private val createLocallyRedeliveringQueue = queueFactory(shardCount = 1, localRedelivery = true)
+
+private val createAffinityQueue = queueFactory(shardCount = 3, affinity = true)
+
+private val mysql8Db by lazy {
+  SqlTestUtil.initDatabase("jdbc:tc:mysql:8.0.22://somehostname:someport/somedb", SQLDialect.MYSQL)
+}
+
+private val createSkipLockedQueue = queueFactory(
+  shardCount = 1,
+  claimMode = SqlQueue.ClaimMode.SKIP_LOCKED,
+  database = { mysql8Db.context }
+)
+
+private fun queueFactory(
+  shardCount: Int,
+  localRedelivery: Boolean = false,
+  affinity: Boolean = false,
+  claimMode: SqlQueue.ClaimMode = SqlQueue.ClaimMode.OPTIMISTIC,
+  database: () -> DSLContext = { jooq }
+) = { clock: Clock,
+      deadLetterCallback: DeadMessageCallback,
+      publisher: EventPublisher? ->
   SqlQueue(
     queueName = "test",
     schemaVersion = 1,
-    jooq = jooq,
+    jooq = database(),
     clock = clock,
     lockTtlSeconds = 2,
     mapper = ObjectMapper().apply {
@@ -56,14 +180,26 @@ private val createQueue = { clock: Clock,
       override fun publishEvent(event: QueueEvent) {}
     }),
     sqlRetryProperties = SqlRetryProperties(transactions = retryPolicy,
-      reads = retryPolicy)
-  )
+      reads = retryPolicy),
+    shardCount = shardCount,
+    shardsPerPoll = shardCount,
+    localRedelivery = if (localRedelivery) LocalRedelivery(clock) else null,
+    affinity = affinity,
+    affinityLeaseDuration = Duration.ofDays(1),
+    claimMode = claimMode
+  ).apply {
+    renewLeases()
+  }
 }
 
 private fun cleanupCallback() {
   SqlTestUtil.cleanupDb(jooq)
 }
 
+private fun cleanupMysql8Callback() {
+  SqlTestUtil.cleanupDb(mysql8Db.context)
+}
+
 private val retryPolicy: RetryProperties = RetryProperties(
   maxRetries = 1,
   backoffMs = 10 // minimum allowed
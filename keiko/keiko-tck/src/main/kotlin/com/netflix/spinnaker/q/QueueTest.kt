@@ -22,6 +22,7 @@ import com.netflix.spinnaker.time.MutableClock
 import com.nhaarman.mockito_kotlin.any
 import com.nhaarman.mockito_kotlin.eq
 import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.never
 import com.nhaarman.mockito_kotlin.reset
 import com.nhaarman.mockito_kotlin.verify
 import com.nhaarman.mockito_kotlin.verifyNoMoreInteractions
@@ -124,6 +125,37 @@ abstract class QueueTest<out Q : Queue>(
       }
     }
 
+    given("there are more ready messages than requested") {
+      val message1 = TestMessage("a")
+      val message2 = TestMessage("b")
+      val message3 = TestMessage("c")
+
+      beforeGroup {
+        queue = createQueue(clock, deadLetterCallback).apply {
+          push(message1)
+          clock.incrementBy(Duration.ofSeconds(1))
+          push(message2)
+          clock.incrementBy(Duration.ofSeconds(1))
+          push(message3)
+        }
+      }
+
+      afterGroup(::stopQueue)
+      afterGroup(::resetMocks)
+
+      on("polling the queue for two messages") {
+        queue!!.poll(2, callback)
+      }
+
+      it("passes no more than the requested number of messages to the callback, oldest first") {
+        verify(callback).invoke(eq(message1), any())
+        if (queue!!.canPollMany) {
+          verify(callback).invoke(eq(message2), any())
+        }
+        verify(callback, never()).invoke(eq(message3), any())
+      }
+    }
+
     given("there is a delayed message") {
       val delay = Duration.ofHours(1)
 
@@ -351,6 +383,127 @@ abstract class QueueTest<out Q : Queue>(
     }
   }
 
+  describe("pushing a message back onto the queue while processing it") {
+    val delay = Duration.ofSeconds(5)
+
+    given("the message is pushed with a short delay and acknowledged") {
+      val message = TestMessage("a")
+
+      beforeGroup {
+        queue = createQueue(clock, deadLetterCallback).apply {
+          push(message)
+          poll { received, ack ->
+            push(received, delay)
+            ack()
+          }
+        }
+      }
+
+      afterGroup(::stopQueue)
+      afterGroup(::resetMocks)
+
+      on("polling the queue before the delay has elapsed") {
+        queue!!.poll(callback)
+      }
+
+      it("does not deliver the message") {
+        verifyZeroInteractions(callback)
+      }
+
+      on("polling the queue once the delay has elapsed") {
+        clock.incrementBy(delay)
+        queue!!.poll { received, ack ->
+          callback(received, ack)
+          ack()
+        }
+      }
+
+      it("delivers the message again") {
+        verify(callback).invoke(eq(message), any())
+      }
+
+      on("polling the queue after the acknowledgment would have timed out") {
+        with(queue!!) {
+          clock.incrementBy(ackTimeout)
+          retry()
+          clock.incrementBy(ackTimeout)
+          poll(callback)
+        }
+      }
+
+      it("does not retry the acknowledged message") {
+        verifyNoMoreInteractions(callback)
+      }
+    }
+
+    given("the message is pushed with a short delay and never acknowledged again") {
+      val message = TestMessage("a")
+
+      beforeGroup {
+        queue = createQueue(clock, deadLetterCallback).apply {
+          push(message)
+          poll { received, ack ->
+            push(received, delay)
+            ack()
+          }
+          clock.incrementBy(delay)
+          poll { _, _ -> }
+        }
+      }
+
+      afterGroup(::stopQueue)
+      afterGroup(::resetMocks)
+
+      on("polling the queue after the message acknowledgment has timed out") {
+        with(queue!!) {
+          clock.incrementBy(ackTimeout)
+          retry()
+          clock.incrementBy(ackTimeout)
+          poll(callback)
+        }
+      }
+
+      it("retries the message") {
+        verify(callback).invoke(eq(message), any())
+      }
+    }
+
+    given("the message is pushed with a short delay then rescheduled") {
+      val message = TestMessage("a")
+
+      beforeGroup {
+        queue = createQueue(clock, deadLetterCallback).apply {
+          push(message)
+          poll { received, ack ->
+            push(received, delay)
+            ack()
+          }
+          reschedule(message, ZERO)
+        }
+      }
+
+      afterGroup(::stopQueue)
+      afterGroup(::resetMocks)
+
+      on("polling the queue") {
+        queue!!.poll(callback)
+      }
+
+      it("delivers the message immediately") {
+        verify(callback).invoke(eq(message), any())
+      }
+
+      on("polling the queue once the original delay has elapsed") {
+        clock.incrementBy(delay)
+        queue!!.poll(callback)
+      }
+
+      it("does not deliver the message again") {
+        verifyNoMoreInteractions(callback)
+      }
+    }
+  }
+
   describe("message hashing") {
     given("a message was pushed") {
       val message = TestMessage("a")
@@ -40,14 +40,29 @@ public class ExpressionTransform {
   private final ExpressionParser parser;
   private final Function<String, String> stringExpressionPreprocessor;
   private final Collection<Class<?>> typesToStringify;
+  private final ParsedExpressionCache expressionCache;
 
   public ExpressionTransform(
       ParserContext parserContext,
       ExpressionParser parser,
       Function<String, String> stringExpressionPreprocessor,
       Class<?>... typesToStringify) {
+    this(parserContext, parser, null, stringExpressionPreprocessor, typesToStringify);
+  }
+
+  /**
+   * @param expressionCache cache of parsed expressions to consult before parsing an expression, or
+   *     null to parse every expression as it is evaluated
+   */
+  public ExpressionTransform(
+      ParserContext parserContext,
+      ExpressionParser parser,
+      ParsedExpressionCache expressionCache,
+      Function<String, String> stringExpressionPreprocessor,
+      Class<?>... typesToStringify) {
     this.parserContext = parserContext;
     this.parser = parser;
+    this.expressionCache = expressionCache;
     this.stringExpressionPreprocessor = stringExpressionPreprocessor;
     this.typesToStringify = Arrays.asList(typesToStringify);
   }
@@ -158,7 +173,7 @@ public class ExpressionTransform {
       String escapedExpressionString = null;
       Throwable exception = null;
       try {
-        Expression exp = parser.parseExpression(preprocessed, parserContext);
+        Expression exp = parseExpression(preprocessed);
         escapedExpressionString = escapeExpression(exp);
         if (exp instanceof CompositeStringExpression) {
           StringBuilder sb = new StringBuilder();
@@ -230,6 +245,13 @@ public class ExpressionTransform {
     return source;
   }
 
+  private Expression parseExpression(String expressionString) {
+    if (expressionCache != null) {
+      return expressionCache.parse(parser, expressionString, parserContext);
+    }
+    return parser.parseExpression(expressionString, parserContext);
+  }
+
   private boolean isExpression(Object obj) {
     return (obj instanceof String && obj.toString().contains(parserContext.getExpressionPrefix()));
   }
@@ -57,6 +57,7 @@ public class ExpressionsSupport {
 
   private final Set<Class<?>> allowedReturnTypes;
   private final List<ExpressionFunctionProvider> expressionFunctionProviders;
+  private final ParsedExpressionCache expressionCache;
 
   public ExpressionsSupport(Class<?> extraAllowedReturnType) {
     this(new Class[] {extraAllowedReturnType}, null, null);
@@ -66,6 +67,24 @@ public class ExpressionsSupport {
       Class<?>[] extraAllowedReturnTypes,
       List<ExpressionFunctionProvider> extraExpressionFunctionProviders,
       PluginManager pluginManager) {
+    this(
+        extraAllowedReturnTypes,
+        extraExpressionFunctionProviders,
+        pluginManager,
+        new ParsedExpressionCache());
+  }
+
+  /**
+   * @param expressionCache cache for the expressions evaluated against contexts built by this
+   *     instance, or null to not cache them; must not be shared with instances that allow
+   *     different return types
+   */
+  public ExpressionsSupport(
+      Class<?>[] extraAllowedReturnTypes,
+      List<ExpressionFunctionProvider> extraExpressionFunctionProviders,
+      PluginManager pluginManager,
+      ParsedExpressionCache expressionCache) {
+    this.expressionCache = expressionCache;
 
     allowedReturnTypes =
         new HashSet<>(
@@ -106,6 +125,14 @@ public class ExpressionsSupport {
     return expressionFunctionProviders;
   }
 
+  /**
+   * @return the cache of parsed expressions to pass to an {@link ExpressionTransform} that
+   *     evaluates against contexts built by this instance, or null if they are not cached
+   */
+  public ParsedExpressionCache getExpressionCache() {
+    return expressionCache;
+  }
+
   private static void registerFunction(
       StandardEvaluationContext context,
       String registrationName,
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.kork.expressions;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.NoopRegistry;
+import com.netflix.spectator.api.Registry;
+import java.util.Objects;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.ParserContext;
+
+/**
+ * A bounded cache of parsed SpEL expressions, so that the same expression strings (typically the
+ * templates in a stage context, evaluated every time a task runs) are only parsed once.
+ *
+ * <p>Parsed expressions hold no evaluation state and are safe to evaluate from several threads, as
+ * long as they are evaluated against contexts that resolve methods the same way. So a cache should
+ * not be shared between {@link ExpressionsSupport} instances that allow different return types;
+ * each {@link ExpressionsSupport} has a cache of its own for that reason.
+ *
+ * <p>Records hits and misses as the {@code expressions.parse.cache} counter, tagged with {@code
+ * result}.
+ */
+public class ParsedExpressionCache {
+  public static final int DEFAULT_MAX_SIZE = 10_000;
+
+  private final Cache<Key, Expression> expressions;
+  private final Counter hits;
+  private final Counter misses;
+
+  public ParsedExpressionCache() {
+    this(DEFAULT_MAX_SIZE, new NoopRegistry());
+  }
+
+  public ParsedExpressionCache(int maxSize, Registry registry) {
+    this.expressions = Caffeine.newBuilder().maximumSize(maxSize).build();
+    this.hits = registry.counter("expressions.parse.cache", "result", "hit");
+    this.misses = registry.counter("expressions.parse.cache", "result", "miss");
+  }
+
+  /**
+   * Parses an expression string, or returns the expression it was parsed to before by the same
+   * parser with an equivalent parser context.
+   *
+   * @throws org.springframework.expression.ParseException if the expression string is invalid;
+   *     invalid expressions are not cached
+   */
+  public Expression parse(
+      ExpressionParser parser, String expressionString, ParserContext parserContext) {
+    Key key = new Key(parser, expressionString, parserContext);
+    Expression expression = expressions.getIfPresent(key);
+    if (expression != null) {
+      hits.increment();
+      return expression;
+    }
+
+    misses.increment();
+    expression = parser.parseExpression(expressionString, parserContext);
+    expressions.put(key, expression);
+    return expression;
+  }
+
+  /** @return how many parsed expressions are currently cached. */
+  public long size() {
+    return expressions.estimatedSize();
+  }
+
+  private static class Key {
+    private final ExpressionParser parser;
+    private final String expressionString;
+    private final boolean template;
+    private final String prefix;
+    private final String suffix;
+
+    Key(ExpressionParser parser, String expressionString, ParserContext parserContext) {
+      this.parser = parser;
+      this.expressionString = expressionString;
+      this.template = parserContext != null && parserContext.isTemplate();
+      this.prefix = template ? parserContext.getExpressionPrefix() : null;
+      this.suffix = template ? parserContext.getExpressionSuffix() : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Key key = (Key) o;
+      return parser == key.parser
+          && template == key.template
+          && expressionString.equals(key.expressionString)
+          && Objects.equals(prefix, key.prefix)
+          && Objects.equals(suffix, key.suffix);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(System.identityHashCode(parser), expressionString, prefix, suffix);
+    }
+  }
+}
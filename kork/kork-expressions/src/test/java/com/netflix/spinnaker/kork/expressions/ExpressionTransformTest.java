@@ -2,6 +2,8 @@ package com.netflix.spinnaker.kork.expressions;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.spectator.api.Registry;
 import java.util.function.Function;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -32,6 +34,51 @@ class ExpressionTransformTest {
     assertThat(summary.getFailureCount()).isEqualTo(0);
   }
 
+  @Test
+  void reusesParsedExpressions() {
+    Registry registry = new DefaultRegistry();
+    ParsedExpressionCache cache = new ParsedExpressionCache(10, registry);
+    ExpressionTransform transform =
+        new ExpressionTransform(parserContext, parser, cache, Function.identity());
+    ExpressionsSupport support = new ExpressionsSupport(Trigger.class);
+
+    for (int buildNumber = 1; buildNumber <= 3; buildNumber++) {
+      StandardEvaluationContext evaluationContext =
+          support.buildEvaluationContext(new Pipeline(new Trigger(buildNumber)), true);
+
+      String evaluated =
+          transform.transformString(
+              "group:artifact:${trigger['buildNumber']}",
+              evaluationContext,
+              new ExpressionEvaluationSummary());
+
+      assertThat(evaluated).isEqualTo("group:artifact:" + buildNumber);
+    }
+
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(registry.counter("expressions.parse.cache", "result", "miss").count())
+        .isEqualTo(1);
+    assertThat(registry.counter("expressions.parse.cache", "result", "hit").count())
+        .isEqualTo(2);
+  }
+
+  @Test
+  void doesNotCacheInvalidExpressions() {
+    ParsedExpressionCache cache = new ParsedExpressionCache();
+    ExpressionEvaluationSummary summary = new ExpressionEvaluationSummary();
+    StandardEvaluationContext evaluationContext =
+        new ExpressionsSupport(Trigger.class)
+            .buildEvaluationContext(new Pipeline(new Trigger(100)), true);
+
+    String evaluated =
+        new ExpressionTransform(parserContext, parser, cache, Function.identity())
+            .transformString("${trigger[}", evaluationContext, summary);
+
+    assertThat(evaluated).isEqualTo("${trigger[}");
+    assertThat(summary.getFailureCount()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
   @AllArgsConstructor
   @Data
   static class Pipeline {
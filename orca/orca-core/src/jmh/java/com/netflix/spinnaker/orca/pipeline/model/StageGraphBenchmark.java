@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.orca.pipeline.model;
+
+import static com.netflix.spinnaker.orca.api.pipeline.models.ExecutionType.PIPELINE;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+import com.netflix.spinnaker.orca.api.pipeline.SyntheticStageOwner;
+import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Walks the stage graph of a large pipeline: a chain of {@link #stages} top-level stages, each
+ * with a before and an after stage, the way a handler does for every stage it completes.
+ *
+ * <p>{@link #scan} walks it the way the graph helpers did before executions kept a {@link
+ * StageIndex}, by filtering every stage of the execution at each step. {@link #rebuild} measures
+ * the worst case of the index, where it has to be rebuilt for every walk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StageGraphBenchmark {
+
+  @Param({"50", "500", "2000"})
+  public int stages;
+
+  private PipelineExecutionImpl execution;
+  private List<StageExecution> topLevelStages;
+
+  @Setup
+  public void buildPipeline() {
+    execution = new PipelineExecutionImpl(PIPELINE, "benchmark");
+    for (int i = 0; i < stages; i++) {
+      StageExecutionImpl stage = new StageExecutionImpl(execution, "wait");
+      stage.setRefId(String.valueOf(i));
+      if (i > 0) {
+        stage.setRequisiteStageRefIds(singletonList(String.valueOf(i - 1)));
+      }
+      execution.getStages().add(stage);
+      execution.getStages().add(synthetic(stage, SyntheticStageOwner.STAGE_BEFORE));
+      execution.getStages().add(synthetic(stage, SyntheticStageOwner.STAGE_AFTER));
+    }
+    topLevelStages =
+        execution.getStages().stream()
+            .filter(it -> it.getParentStageId() == null)
+            .collect(toList());
+  }
+
+  @Benchmark
+  public void walk(Blackhole blackhole) {
+    for (StageExecution stage : topLevelStages) {
+      blackhole.consume(stage.downstreamStages());
+      blackhole.consume(stage.directChildren());
+      blackhole.consume(execution.stageById(stage.getId()));
+    }
+  }
+
+  @Benchmark
+  public void rebuild(Blackhole blackhole) {
+    for (StageExecution stage : topLevelStages) {
+      execution.invalidateStageIndex();
+      blackhole.consume(stage.downstreamStages());
+      blackhole.consume(stage.directChildren());
+      blackhole.consume(execution.stageById(stage.getId()));
+    }
+  }
+
+  @Benchmark
+  public void scan(Blackhole blackhole) {
+    List<StageExecution> all = execution.getStages();
+    for (StageExecution stage : topLevelStages) {
+      blackhole.consume(
+          all.stream()
+              .filter(it -> it.getRequisiteStageRefIds().contains(stage.getRefId()))
+              .collect(toList()));
+      blackhole.consume(
+          all.stream().filter(it -> stage.getId().equals(it.getParentStageId())).collect(toList()));
+      blackhole.consume(
+          all.stream().filter(it -> it.getId().equals(stage.getId())).findFirst().orElse(null));
+    }
+  }
+
+  @Benchmark
+  public void ancestors(Blackhole blackhole) {
+    // the last stage's ancestors are every other stage, so just walk a few from the end
+    for (int i = Math.max(0, topLevelStages.size() - 10); i < topLevelStages.size(); i++) {
+      blackhole.consume(topLevelStages.get(i).ancestors());
+    }
+  }
+
+  private StageExecution synthetic(StageExecution parent, SyntheticStageOwner owner) {
+    StageExecutionImpl stage = new StageExecutionImpl(execution, "wait");
+    stage.setParentStageId(parent.getId());
+    stage.setSyntheticStageOwner(owner);
+    return stage;
+  }
+}
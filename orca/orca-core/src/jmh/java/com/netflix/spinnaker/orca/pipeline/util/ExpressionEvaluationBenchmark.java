@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.orca.pipeline.util;
+
+import static com.netflix.spinnaker.orca.api.pipeline.models.ExecutionType.PIPELINE;
+
+import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService;
+import com.netflix.spinnaker.kork.expressions.ParsedExpressionCache;
+import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
+import com.netflix.spinnaker.orca.pipeline.expressions.functions.StageExpressionFunctionProvider;
+import com.netflix.spinnaker.orca.pipeline.model.DefaultTrigger;
+import com.netflix.spinnaker.orca.pipeline.model.PipelineExecutionImpl;
+import com.netflix.spinnaker.orca.pipeline.model.StageExecutionImpl;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pf4j.DefaultPluginManager;
+
+/**
+ * Evaluates the context of a deploy-like stage, the way {@link ContextParameterProcessor} does
+ * every time one of the stage's tasks runs, with the parsed expressions cached and with every
+ * expression parsed as it is evaluated.
+ *
+ * <p>The context has a few clusters, each with a dozen or so expressions that refer to the trigger,
+ * pipeline parameters and an upstream stage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExpressionEvaluationBenchmark {
+
+  @Param({"true", "false"})
+  public boolean cached;
+
+  @Param({"1", "10"})
+  public int clusters;
+
+  private ContextParameterProcessor processor;
+  private StageExecution stage;
+
+  @Setup
+  public void buildStage() {
+    processor =
+        new ContextParameterProcessor(
+            Collections.singletonList(new StageExpressionFunctionProvider()),
+            new DefaultPluginManager(),
+            DynamicConfigService.NOOP,
+            cached ? new ParsedExpressionCache() : null);
+
+    PipelineExecutionImpl execution = new PipelineExecutionImpl(PIPELINE, "benchmark");
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put("region", "us-west-2");
+    parameters.put("stack", "main");
+    parameters.put("capacity", "4");
+    parameters.put("canary", "false");
+    execution.setTrigger(new DefaultTrigger("manual", null, "someone@example.com", parameters));
+
+    StageExecutionImpl bake = new StageExecutionImpl(execution, "bake");
+    bake.setRefId("1");
+    bake.setName("Bake");
+    bake.getOutputs().put("imageId", "ami-0123456789abcdef0");
+    bake.getOutputs().put("imageName", "benchmark-1.0.0-h42");
+    execution.getStages().add(bake);
+
+    StageExecutionImpl deploy = new StageExecutionImpl(execution, "deploy");
+    deploy.setRefId("2");
+    deploy.setRequisiteStageRefIds(Collections.singletonList("1"));
+    List<Map<String, Object>> clusterContexts = new ArrayList<>();
+    for (int i = 0; i < clusters; i++) {
+      clusterContexts.add(cluster(i));
+    }
+    deploy.getContext().put("clusters", clusterContexts);
+    deploy
+        .getContext()
+        .put(
+            "notification",
+            "Deploying ${execution.application} as ${#stage('Bake').outputs.imageName}");
+    execution.getStages().add(deploy);
+    stage = deploy;
+  }
+
+  @Benchmark
+  public Map<String, Object> evaluate() {
+    return processor.process(stage.getContext(), processor.buildExecutionContext(stage), true);
+  }
+
+  private static Map<String, Object> cluster(int index) {
+    Map<String, Object> capacity = new HashMap<>();
+    capacity.put("min", "${parameters.capacity}");
+    capacity.put("max", "${#toInt(parameters.capacity) * 2}");
+    capacity.put("desired", "${parameters.capacity}");
+
+    Map<String, Object> tags = new HashMap<>();
+    tags.put("owner", "${trigger.user}");
+    tags.put("pipeline", "${execution.name ?: 'unknown'}");
+    tags.put("cluster", "cluster-" + index);
+
+    Map<String, Object> cluster = new HashMap<>();
+    cluster.put("account", "prod");
+    cluster.put("application", "${execution.application}");
+    cluster.put("stack", "${parameters.stack}");
+    cluster.put("freeFormDetails", "c" + index + "${parameters.canary == 'true' ? '-canary' : ''}");
+    cluster.put("region", "${parameters.region}");
+    cluster.put(
+        "availabilityZones",
+        Collections.singletonMap(
+            "${parameters.region}", Collections.singletonList("${parameters.region}a")));
+    cluster.put("imageId", "${#stage('Bake').outputs.imageId}");
+    cluster.put("capacity", capacity);
+    cluster.put("tags", tags);
+    cluster.put("instanceType", "m5.large");
+    cluster.put("useSourceCapacity", false);
+    return cluster;
+  }
+}
@@ -24,6 +24,7 @@ import com.netflix.spinnaker.config.PluginsAutoConfiguration;
 import com.netflix.spinnaker.kork.core.RetrySupport;
 import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService;
 import com.netflix.spinnaker.kork.expressions.ExpressionFunctionProvider;
+import com.netflix.spinnaker.kork.expressions.ParsedExpressionCache;
 import com.netflix.spinnaker.orca.DefaultStageResolver;
 import com.netflix.spinnaker.orca.DynamicStageResolver;
 import com.netflix.spinnaker.orca.StageResolver;
@@ -53,6 +54,7 @@ import java.util.List;
 import java.util.Optional;
 import org.pf4j.PluginManager;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -147,9 +149,14 @@ public class OrcaConfiguration {
   public ContextParameterProcessor contextParameterProcessor(
       List<ExpressionFunctionProvider> expressionFunctionProviders,
       PluginManager pluginManager,
-      DynamicConfigService dynamicConfigService) {
+      DynamicConfigService dynamicConfigService,
+      Registry registry,
+      @Value("${expression.parse-cache-size:10000}") int parseCacheSize) {
     return new ContextParameterProcessor(
-        expressionFunctionProviders, pluginManager, dynamicConfigService);
+        expressionFunctionProviders,
+        pluginManager,
+        dynamicConfigService,
+        new ParsedExpressionCache(parseCacheSize, registry));
   }
 
   @Bean
@@ -22,6 +22,7 @@ import com.netflix.spinnaker.kork.expressions.ExpressionEvaluationSummary;
 import com.netflix.spinnaker.kork.expressions.ExpressionFunctionProvider;
 import com.netflix.spinnaker.kork.expressions.ExpressionTransform;
 import com.netflix.spinnaker.kork.expressions.ExpressionsSupport;
+import com.netflix.spinnaker.kork.expressions.ParsedExpressionCache;
 import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus;
 import com.netflix.spinnaker.orca.api.pipeline.models.PipelineExecution;
 import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
@@ -138,8 +139,20 @@ public class PipelineExpressionEvaluator {
 
   public PipelineExpressionEvaluator(
       List<ExpressionFunctionProvider> expressionFunctionProviders, PluginManager pluginManager) {
+    this(expressionFunctionProviders, pluginManager, new ParsedExpressionCache());
+  }
+
+  /**
+   * @param expressionCache cache of the expressions this evaluator has parsed, or null to parse
+   *     every expression each time it is evaluated
+   */
+  public PipelineExpressionEvaluator(
+      List<ExpressionFunctionProvider> expressionFunctionProviders,
+      PluginManager pluginManager,
+      ParsedExpressionCache expressionCache) {
     this.support =
-        new ExpressionsSupport(extraAllowedReturnTypes, expressionFunctionProviders, pluginManager);
+        new ExpressionsSupport(
+            extraAllowedReturnTypes, expressionFunctionProviders, pluginManager, expressionCache);
     initExecutionAwareFunctions(expressionFunctionProviders);
   }
 
@@ -151,7 +164,11 @@ public class PipelineExpressionEvaluator {
     StandardEvaluationContext evaluationContext =
         support.buildEvaluationContext(rootObject, allowUnknownKeys);
     return new ExpressionTransform(
-            parserContext, parser, includeExecutionParameter, ExecutionStatus.class)
+            parserContext,
+            parser,
+            support.getExpressionCache(),
+            includeExecutionParameter,
+            ExecutionStatus.class)
         .transformMap(source, evaluationContext, summary);
   }
 
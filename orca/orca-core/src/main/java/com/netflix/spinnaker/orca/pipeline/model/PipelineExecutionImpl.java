@@ -182,7 +182,9 @@ public class PipelineExecutionImpl implements PipelineExecution, Serializable {
                 }));
   }
 
-  private final List<StageExecution> stages = new ArrayList<>();
+  private final StageList stages = new StageList();
+
+  private transient volatile StageIndex stageIndex;
 
   /**
    * Gets the stages of this execution. Does not serialize the child Execution object from stages.
@@ -359,6 +361,21 @@ public class PipelineExecutionImpl implements PipelineExecution, Serializable {
     return this.partition;
   }
 
+  private transient Long storedVersion = null;
+
+  /**
+   * The version of the stored execution this was read at, if the repository keeps track of one.
+   * Every write to the stored execution or its stages changes it.
+   */
+  @JsonIgnore
+  public @Nullable Long getStoredVersion() {
+    return storedVersion;
+  }
+
+  public void setStoredVersion(@Nullable Long storedVersion) {
+    this.storedVersion = storedVersion;
+  }
+
   @Nullable
   public StageExecution namedStage(String type) {
     return stages.stream().filter(it -> it.getType().equals(type)).findFirst().orElse(null);
@@ -366,23 +383,37 @@ public class PipelineExecutionImpl implements PipelineExecution, Serializable {
 
   @Nonnull
   public StageExecution stageById(String stageId) {
-    return stages.stream()
-        .filter(it -> it.getId().equals(stageId))
-        .findFirst()
-        .orElseThrow(
-            () ->
-                new IllegalArgumentException(String.format("No stage with id %s exists", stageId)));
+    StageExecution stage = stageIndex().byId(stageId);
+    if (stage == null) {
+      throw new IllegalArgumentException(String.format("No stage with id %s exists", stageId));
+    }
+    return stage;
   }
 
   @Nonnull
   public StageExecution stageByRef(String refId) {
-    return stages.stream()
-        .filter(it -> refId.equals(it.getRefId()))
-        .findFirst()
-        .orElseThrow(
-            () ->
-                new IllegalArgumentException(
-                    String.format("No stage with refId %s exists", refId)));
+    StageExecution stage = stageIndex().byRefId(refId);
+    if (stage == null) {
+      throw new IllegalArgumentException(String.format("No stage with refId %s exists", refId));
+    }
+    return stage;
+  }
+
+  /** Gets the index of this execution's stages, rebuilding it if the stages have changed. */
+  @Nonnull
+  StageIndex stageIndex() {
+    StageIndex index = stageIndex;
+    long version = stages.version();
+    if (index == null || index.getVersion() != version) {
+      index = new StageIndex(stages, version);
+      stageIndex = index;
+    }
+    return index;
+  }
+
+  /** Called by stages of this execution when they change in a way that affects the index. */
+  void invalidateStageIndex() {
+    stages.touch();
   }
 
   @Override
@@ -408,6 +439,29 @@ public class PipelineExecutionImpl implements PipelineExecution, Serializable {
     return new PipelineExecutionImpl(PIPELINE, application);
   }
 
+  /**
+   * The stages of an execution, which keep track of when they change so that the execution's
+   * {@link StageIndex} can be rebuilt.
+   */
+  private static class StageList extends ArrayList<StageExecution> {
+    // changes that ArrayList does not count: replacing a stage and changes to the stages themselves
+    private long touches;
+
+    @Override
+    public StageExecution set(int index, StageExecution element) {
+      touches++;
+      return super.set(index, element);
+    }
+
+    void touch() {
+      touches++;
+    }
+
+    long version() {
+      return modCount + touches;
+    }
+  }
+
   public static class AuthenticationHelper {
     public static Optional<AuthenticationDetails> build() {
       Optional<String> spinnakerUserOptional = AuthenticatedRequest.getSpinnakerUser();
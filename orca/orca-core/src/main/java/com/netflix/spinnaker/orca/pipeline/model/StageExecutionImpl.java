@@ -127,6 +127,7 @@ public class StageExecutionImpl implements StageExecution, Serializable {
   // TODO: this shouldn't be public or used after initial construction
   public void setId(@Nonnull String id) {
     this.id = id;
+    invalidateStageIndex();
   }
 
   private String refId;
@@ -138,6 +139,7 @@ public class StageExecutionImpl implements StageExecution, Serializable {
   // TODO: this shouldn't be public or used after initial construction
   public void setRefId(@Nullable String refId) {
     this.refId = refId;
+    invalidateStageIndex();
   }
 
   /** The type as it corresponds to the Mayo configuration */
@@ -288,6 +290,7 @@ public class StageExecutionImpl implements StageExecution, Serializable {
 
   public void setParentStageId(@Nullable String parentStageId) {
     this.parentStageId = parentStageId;
+    invalidateStageIndex();
   }
 
   @JsonDeserialize(using = RequisiteStageRefIdDeserializer.class)
@@ -309,6 +312,13 @@ public class StageExecutionImpl implements StageExecution, Serializable {
     } else {
       this.requisiteStageRefIds = ImmutableSet.copyOf(requisiteStageRefIds);
     }
+    invalidateStageIndex();
+  }
+
+  private void invalidateStageIndex() {
+    if (execution instanceof PipelineExecutionImpl) {
+      ((PipelineExecutionImpl) execution).invalidateStageIndex();
+    }
   }
 
   /** A date when this stage is scheduled to execute. */
@@ -422,17 +432,12 @@ public class StageExecutionImpl implements StageExecution, Serializable {
     StageExecution matchingStage = null;
 
     if (stage != null && !stage.getRequisiteStageRefIds().isEmpty()) {
-      List<StageExecution> previousStages =
-          execution.getStages().stream()
-              .filter(s -> stage.getRequisiteStageRefIds().contains(s.getRefId()))
-              .collect(toList());
+      StageIndex index = StageIndex.of(execution);
+      List<StageExecution> previousStages = index.withRefIds(stage.getRequisiteStageRefIds());
 
       Set<String> previousStageIds =
           new HashSet<>(previousStages.stream().map(StageExecution::getId).collect(toList()));
-      List<StageExecution> syntheticStages =
-          execution.getStages().stream()
-              .filter(s -> previousStageIds.contains(s.getParentStageId()))
-              .collect(toList());
+      List<StageExecution> syntheticStages = index.childrenOf(previousStageIds);
 
       List<StageExecution> priorStages = new ArrayList<>();
       priorStages.addAll(previousStages);
@@ -451,9 +456,7 @@ public class StageExecutionImpl implements StageExecution, Serializable {
       }
     } else if ((stage != null) && !Strings.isNullOrEmpty(stage.getParentStageId())) {
       Optional<StageExecution> parent =
-          execution.getStages().stream()
-              .filter(s -> s.getId().equals(stage.getParentStageId()))
-              .findFirst();
+          Optional.ofNullable(StageIndex.of(execution).byId(stage.getParentStageId()));
 
       if (!parent.isPresent()) {
         throw new IllegalStateException(
@@ -476,10 +479,8 @@ public class StageExecutionImpl implements StageExecution, Serializable {
       String parentPipelineStageId = parentTrigger.getParentPipelineStageId();
 
       Optional<StageExecution> parentPipelineStage =
-          parentPipelineExecution.getStages().stream()
-              .filter(
-                  s -> s.getType().equals("pipeline") && s.getId().equals(parentPipelineStageId))
-              .findFirst();
+          Optional.ofNullable(StageIndex.of(parentPipelineExecution).byId(parentPipelineStageId))
+              .filter(s -> s.getType().equals("pipeline"));
 
       if (parentPipelineStage.isPresent()) {
         matchingStage = findAncestor(parentPipelineStage.get(), parentPipelineExecution, predicate);
@@ -564,10 +565,7 @@ public class StageExecutionImpl implements StageExecution, Serializable {
   @Nonnull
   public List<StageExecution> directChildren() {
     if (execution != null) {
-      return getExecution().getStages().stream()
-          .filter(
-              stage -> stage.getParentStageId() != null && stage.getParentStageId().equals(getId()))
-          .collect(toList());
+      return StageIndex.of(execution).childrenOf(getId());
     }
     return emptyList();
   }
@@ -673,10 +671,9 @@ public class StageExecutionImpl implements StageExecution, Serializable {
     StageExecution topLevelStage = this;
     while (topLevelStage.getParentStageId() != null) {
       String sid = topLevelStage.getParentStageId();
-      Optional<StageExecution> stage =
-          execution.getStages().stream().filter(s -> s.getId().equals(sid)).findFirst();
-      if (stage.isPresent()) {
-        topLevelStage = stage.get();
+      StageExecution stage = StageIndex.of(execution).byId(sid);
+      if (stage != null) {
+        topLevelStage = stage;
       } else {
         throw new IllegalStateException(
             "Could not find stage by parentStageId (stage: "
@@ -770,9 +767,7 @@ public class StageExecutionImpl implements StageExecution, Serializable {
   @Nonnull
   @JsonIgnore
   public List<StageExecution> downstreamStages() {
-    return getExecution().getStages().stream()
-        .filter(it -> it.getRequisiteStageRefIds().contains(getRefId()))
-        .collect(toList());
+    return StageIndex.of(getExecution()).downstreamOf(getRefId());
   }
 
   @Override
@@ -23,6 +23,7 @@ import com.netflix.spinnaker.orca.api.pipeline.SyntheticStageOwner;
 import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 /** Internal helper methods for {@link StageExecution}. */
@@ -43,19 +44,13 @@ class StageExecutionInternals {
 
     if (!stage.getRequisiteStageRefIds().isEmpty() && !directParentOnly) {
       // Get stages this stage depends on via requisiteStageRefIds:
+      StageIndex index = StageIndex.of(stage.getExecution());
       List<StageExecution> previousStages =
-          stage.getExecution().getStages().stream()
-              .filter(it -> stage.getRequisiteStageRefIds().contains(it.getRefId()))
+          index.withRefIds(stage.getRequisiteStageRefIds()).stream()
               .filter(it -> !visited.contains(it.getRefId()))
               .collect(toList());
       List<StageExecution> syntheticStages =
-          stage.getExecution().getStages().stream()
-              .filter(
-                  s ->
-                      previousStages.stream()
-                          .map(StageExecution::getId)
-                          .anyMatch(id -> id.equals(s.getParentStageId())))
-              .collect(toList());
+          index.childrenOf(previousStages.stream().map(StageExecution::getId).collect(toList()));
       return ImmutableList.<StageExecution>builder()
           .addAll(previousStages)
           .addAll(syntheticStages)
@@ -67,21 +62,17 @@ class StageExecutionInternals {
     } else if (stage.getParentStageId() != null && !visited.contains(stage.getParentStageId())) {
       // Get parent stages, but exclude already visited ones:
 
+      StageIndex index = StageIndex.of(stage.getExecution());
       List<StageExecution> ancestors = new ArrayList<>();
       if (stage.getSyntheticStageOwner() == SyntheticStageOwner.STAGE_AFTER) {
         ancestors.addAll(
-            stage.getExecution().getStages().stream()
-                .filter(
-                    it ->
-                        stage.getParentStageId().equals(it.getParentStageId())
-                            && it.getSyntheticStageOwner() == SyntheticStageOwner.STAGE_BEFORE)
+            index.childrenOf(stage.getParentStageId()).stream()
+                .filter(it -> it.getSyntheticStageOwner() == SyntheticStageOwner.STAGE_BEFORE)
                 .collect(toList()));
       }
 
       ancestors.addAll(
-          stage.getExecution().getStages().stream()
-              .filter(it -> it.getId().equals(stage.getParentStageId()))
-              .findFirst()
+          Optional.ofNullable(index.byId(stage.getParentStageId()))
               .<List<StageExecution>>map(
                   parent ->
                       ImmutableList.<StageExecution>builder()
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.orca.pipeline.model;
+
+import static java.util.Collections.emptyList;
+import static java.util.Comparator.comparingInt;
+
+import com.netflix.spinnaker.orca.api.pipeline.models.PipelineExecution;
+import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Lookups of the stages of an execution by id, by refId, by parent and by the refIds they depend
+ * on, so that walking the stage graph does not scan every stage of the execution at every step.
+ *
+ * <p>An index is a snapshot of the stages at the time it was built. {@link PipelineExecutionImpl}
+ * keeps one, which it builds on first use and rebuilds whenever its stages are added, removed or
+ * replaced, or one of its stages is given a new id, refId, parent or requisite stages. Every lookup
+ * returns stages in the order they appear in the execution, just like scanning the stages would.
+ */
+public final class StageIndex {
+
+  private final long version;
+  private final Map<String, StageExecution> byId;
+  private final Map<String, List<StageExecution>> byRefId;
+  private final Map<String, List<StageExecution>> byParentId;
+  private final Map<String, List<StageExecution>> byRequisiteRefId;
+  private final Map<StageExecution, Integer> positions;
+
+  StageIndex(List<StageExecution> stages, long version) {
+    this.version = version;
+    int size = stages.size();
+    byId = new HashMap<>(size * 2);
+    byRefId = new HashMap<>(size * 2);
+    byParentId = new HashMap<>();
+    byRequisiteRefId = new HashMap<>();
+    positions = new IdentityHashMap<>(size);
+
+    for (int i = 0; i < size; i++) {
+      StageExecution stage = stages.get(i);
+      positions.putIfAbsent(stage, i);
+      byId.putIfAbsent(stage.getId(), stage);
+      if (stage.getRefId() != null) {
+        byRefId.computeIfAbsent(stage.getRefId(), it -> new ArrayList<>(1)).add(stage);
+      }
+      if (stage.getParentStageId() != null) {
+        byParentId.computeIfAbsent(stage.getParentStageId(), it -> new ArrayList<>()).add(stage);
+      }
+      for (String requisiteRefId : stage.getRequisiteStageRefIds()) {
+        byRequisiteRefId.computeIfAbsent(requisiteRefId, it -> new ArrayList<>()).add(stage);
+      }
+    }
+  }
+
+  /**
+   * @return the index kept by {@code execution} or, for any other kind of execution, a new index of
+   *     its stages.
+   */
+  public static @Nonnull StageIndex of(@Nonnull PipelineExecution execution) {
+    if (execution instanceof PipelineExecutionImpl) {
+      return ((PipelineExecutionImpl) execution).stageIndex();
+    }
+    return new StageIndex(execution.getStages(), 0);
+  }
+
+  long getVersion() {
+    return version;
+  }
+
+  /** @return the first stage with the given id, or null if there is none. */
+  public @Nullable StageExecution byId(@Nullable String id) {
+    return id == null ? null : byId.get(id);
+  }
+
+  /** @return the first stage with the given refId, or null if there is none. */
+  public @Nullable StageExecution byRefId(@Nullable String refId) {
+    List<StageExecution> stages = refId == null ? null : byRefId.get(refId);
+    return stages == null ? null : stages.get(0);
+  }
+
+  /** @return the stages with any of the given refIds. */
+  public @Nonnull List<StageExecution> withRefIds(@Nonnull Collection<String> refIds) {
+    return collect(byRefId, refIds);
+  }
+
+  /** @return the stages whose parent is the stage with the given id. */
+  public @Nonnull List<StageExecution> childrenOf(@Nullable String stageId) {
+    List<StageExecution> children = stageId == null ? null : byParentId.get(stageId);
+    return children == null ? emptyList() : new ArrayList<>(children);
+  }
+
+  /** @return the stages whose parent is any of the stages with the given ids. */
+  public @Nonnull List<StageExecution> childrenOf(@Nonnull Collection<String> stageIds) {
+    return collect(byParentId, stageIds);
+  }
+
+  /** @return the stages that list the given refId among their requisite stages. */
+  public @Nonnull List<StageExecution> downstreamOf(@Nullable String refId) {
+    List<StageExecution> downstream = refId == null ? null : byRequisiteRefId.get(refId);
+    return downstream == null ? emptyList() : new ArrayList<>(downstream);
+  }
+
+  private List<StageExecution> collect(
+      Map<String, List<StageExecution>> index, Collection<String> keys) {
+    List<StageExecution> stages = new ArrayList<>();
+    // keys may repeat, and a stage may sit under more than one of them
+    Map<StageExecution, Boolean> seen = new IdentityHashMap<>();
+    for (String key : keys) {
+      for (StageExecution stage : index.getOrDefault(key, emptyList())) {
+        if (seen.put(stage, true) == null) {
+          stages.add(stage);
+        }
+      }
+    }
+    if (keys.size() > 1) {
+      stages.sort(comparingInt(positions::get));
+    }
+    return stages;
+  }
+}
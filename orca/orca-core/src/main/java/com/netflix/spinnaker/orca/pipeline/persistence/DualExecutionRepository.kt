@@ -202,6 +202,19 @@ class DualExecutionRepository(
     ).distinct { it.id }
   }
 
+  override fun retrievePipelineSummariesForPipelineConfigId(
+    pipelineConfigId: String,
+    criteria: ExecutionCriteria
+  ): Observable<PipelineExecution> {
+    return Observable.merge(
+      primary.retrievePipelineSummariesForPipelineConfigId(pipelineConfigId, criteria),
+      previous.retrievePipelineSummariesForPipelineConfigId(pipelineConfigId, criteria)
+    ).distinct { it.id }
+  }
+
+  override fun hasPipelineSummaries(): Boolean =
+    primary.hasPipelineSummaries() && previous.hasPipelineSummaries()
+
   override fun retrievePipelinesForPipelineConfigIdsBetweenBuildTimeBoundary(
     pipelineConfigIds: MutableList<String>,
     buildTimeStartBoundary: Long,
@@ -81,6 +81,25 @@ public interface ExecutionRepository {
   Observable<PipelineExecution> retrieve(
       @Nonnull ExecutionType type, @Nonnull ExecutionCriteria criteria);
 
+  /**
+   * Streams the executions with the given ids, in the order of the ids, reading no more than
+   * {@code fetchSize} of them at a time so that callers can handle each execution as it is emitted
+   * rather than holding all of them. Executions that do not exist are skipped.
+   */
+  @Nonnull
+  default Observable<PipelineExecution> retrieveExecutions(
+      @Nonnull ExecutionType type, @Nonnull List<String> ids, int fetchSize) {
+    return Observable.from(ids)
+        .concatMap(
+            id -> {
+              try {
+                return Observable.just(retrieve(type, id));
+              } catch (ExecutionNotFoundException e) {
+                return Observable.<PipelineExecution>empty();
+              }
+            });
+  }
+
   @Nonnull
   Observable<PipelineExecution> retrievePipelinesForApplication(@Nonnull String application);
 
@@ -88,13 +107,35 @@ public interface ExecutionRepository {
   Observable<PipelineExecution> retrievePipelinesForPipelineConfigId(
       @Nonnull String pipelineConfigId, @Nonnull ExecutionCriteria criteria);
 
+  /**
+   * Returns the same executions as {@link #retrievePipelinesForPipelineConfigId}, but possibly as
+   * summaries: their stages may have no context (other than its {@code group}), outputs or tasks,
+   * and the parent execution of a pipeline trigger may have no stages. Repositories that maintain
+   * such summaries can return them without reading the full executions.
+   */
+  @Nonnull
+  default Observable<PipelineExecution> retrievePipelineSummariesForPipelineConfigId(
+      @Nonnull String pipelineConfigId, @Nonnull ExecutionCriteria criteria) {
+    return retrievePipelinesForPipelineConfigId(pipelineConfigId, criteria);
+  }
+
+  /**
+   * @return whether {@link #retrievePipelineSummariesForPipelineConfigId} returns summaries, rather
+   *     than the full executions it returns by default.
+   */
+  default boolean hasPipelineSummaries() {
+    return false;
+  }
+
   /**
    * Returns executions in the time boundary. Redis impl does not respect pageSize or offset params,
    * and returns all executions. Sql impl respects these params.
    *
    * @param executionCriteria use this param to specify: if there are statuses, only those will be
    *     returned if there is a sort type that will be used to sort the results use pageSize and
-   *     page to control pagination
+   *     page to control pagination. If there are trigger types or an event id, only executions
+   *     triggered that way are returned, although the Sql impl also returns executions stored
+   *     before it recorded their triggers
    */
   @Nonnull
   List<PipelineExecution> retrievePipelinesForPipelineConfigIdsBetweenBuildTimeBoundary(
@@ -183,6 +224,8 @@ public interface ExecutionRepository {
     private int page;
     private Instant startTimeCutoff;
     private ExecutionComparator sortType;
+    private Collection<String> triggerTypes = new ArrayList<>();
+    private String eventId;
 
     public int getPageSize() {
       return pageSize;
@@ -237,6 +280,25 @@ public interface ExecutionRepository {
       return this;
     }
 
+    public @Nonnull Collection<String> getTriggerTypes() {
+      return triggerTypes;
+    }
+
+    public @Nonnull ExecutionCriteria setTriggerTypes(@Nonnull Collection<String> triggerTypes) {
+      this.triggerTypes = triggerTypes;
+      return this;
+    }
+
+    /** @return the {@code eventId} of the triggers to match, as set by event based triggers. */
+    public @Nullable String getEventId() {
+      return eventId;
+    }
+
+    public ExecutionCriteria setEventId(@Nullable String eventId) {
+      this.eventId = eventId;
+      return this;
+    }
+
     @Override
     public boolean equals(Object o) {
       if (this == o) return true;
@@ -244,12 +306,14 @@ public interface ExecutionRepository {
       ExecutionCriteria that = (ExecutionCriteria) o;
       return pageSize == that.pageSize
           && Objects.equals(statuses, that.statuses)
-          && page == that.page;
+          && page == that.page
+          && Objects.equals(triggerTypes, that.triggerTypes)
+          && Objects.equals(eventId, that.eventId);
     }
 
     @Override
     public int hashCode() {
-      return Objects.hash(pageSize, statuses, page);
+      return Objects.hash(pageSize, statuses, page, triggerTypes, eventId);
     }
   }
 
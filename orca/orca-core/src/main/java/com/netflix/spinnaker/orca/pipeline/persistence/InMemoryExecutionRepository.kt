@@ -296,6 +296,8 @@ class InMemoryExecutionRepository : ExecutionRepository {
   private fun List<PipelineExecution>.applyCriteria(criteria: ExecutionCriteria): List<PipelineExecution> {
     return filter { criteria.statuses.contains(it.status) }
       .filter { Instant.ofEpochMilli(it.startTime).isAfter(criteria.startTimeCutoff) }
+      .filter { criteria.triggerTypes.isEmpty() || criteria.triggerTypes.contains(it.trigger.type) }
+      .filter { criteria.eventId == null || criteria.eventId == it.trigger.other["eventId"] }
       .chunked(criteria.pageSize)[criteria.page]
   }
 
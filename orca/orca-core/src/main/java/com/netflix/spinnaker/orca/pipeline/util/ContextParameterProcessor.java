@@ -28,6 +28,7 @@ import com.google.common.base.Strings;
 import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService;
 import com.netflix.spinnaker.kork.expressions.ExpressionEvaluationSummary;
 import com.netflix.spinnaker.kork.expressions.ExpressionFunctionProvider;
+import com.netflix.spinnaker.kork.expressions.ParsedExpressionCache;
 import com.netflix.spinnaker.orca.api.pipeline.models.PipelineExecution;
 import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution;
 import com.netflix.spinnaker.orca.api.pipeline.models.Trigger;
@@ -72,8 +73,21 @@ public class ContextParameterProcessor {
       List<ExpressionFunctionProvider> expressionFunctionProviders,
       PluginManager pluginManager,
       DynamicConfigService dynamicConfigService) {
+    this(
+        expressionFunctionProviders,
+        pluginManager,
+        dynamicConfigService,
+        new ParsedExpressionCache());
+  }
+
+  public ContextParameterProcessor(
+      List<ExpressionFunctionProvider> expressionFunctionProviders,
+      PluginManager pluginManager,
+      DynamicConfigService dynamicConfigService,
+      ParsedExpressionCache expressionCache) {
     this.expressionEvaluator =
-        new PipelineExpressionEvaluator(expressionFunctionProviders, pluginManager);
+        new PipelineExpressionEvaluator(
+            expressionFunctionProviders, pluginManager, expressionCache);
     this.dynamicConfigService = dynamicConfigService;
   }
 
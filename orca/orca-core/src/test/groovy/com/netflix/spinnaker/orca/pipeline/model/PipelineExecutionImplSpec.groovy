@@ -114,4 +114,68 @@ class PipelineExecutionImplSpec extends Specification {
       ]]
     }
   }
+
+  def "should look up stages by the current shape of the stage graph"() {
+    given:
+    def pipeline = pipeline {
+      stage {
+        refId = "1"
+      }
+      stage {
+        refId = "2"
+        requisiteStageRefIds = ["1"]
+      }
+    }
+    def first = pipeline.stageByRef("1")
+    def second = pipeline.stageByRef("2")
+
+    expect:
+    first.downstreamStages() == [second]
+    pipeline.stageById(second.id).is(second)
+
+    when: "a stage is added"
+    def third = new StageExecutionImpl(pipeline, "wait")
+    third.refId = "3"
+    third.requisiteStageRefIds = ["1"]
+    pipeline.stages.add(third)
+
+    then:
+    first.downstreamStages() == [second, third]
+    pipeline.stageByRef("3").is(third)
+
+    when: "a stage changes what it depends on"
+    second.requisiteStageRefIds = []
+
+    then:
+    first.downstreamStages() == [third]
+
+    when: "a stage becomes the child of another"
+    third.parentStageId = first.id
+
+    then:
+    first.directChildren() == [third]
+    third.topLevelStage.is(first)
+
+    when: "a stage is replaced"
+    def replacement = new StageExecutionImpl(pipeline, "wait")
+    replacement.refId = "2"
+    pipeline.stages.set(1, replacement)
+
+    then:
+    pipeline.stageByRef("2").is(replacement)
+    pipeline.stageById(replacement.id).is(replacement)
+
+    when: "a stage is removed"
+    pipeline.stages.remove(third)
+
+    then:
+    first.downstreamStages().isEmpty()
+    first.directChildren().isEmpty()
+
+    when:
+    pipeline.stageById(third.id)
+
+    then:
+    thrown(IllegalArgumentException)
+  }
 }
@@ -28,6 +28,7 @@ import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus.SUCCEEDED
 import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus.TERMINAL
 import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution
 import com.netflix.spinnaker.orca.api.pipeline.models.TaskExecution
+import com.netflix.spinnaker.orca.pipeline.model.StageIndex
 
 /**
  * @return the stage's first before stage or `null` if there are none.
@@ -54,9 +55,7 @@ fun StageExecution.firstTask(): TaskExecution? = tasks.firstOrNull()
  * @throws IllegalStateException if the stage is not synthetic.
  */
 fun StageExecution.parent(): StageExecution =
-  execution
-    .stages
-    .find { it.id == parentStageId }
+  StageIndex.of(execution).byId(parentStageId)
     ?: throw IllegalStateException("Not a synthetic stage")
 
 /**
@@ -75,7 +74,7 @@ fun StageExecution.nextTask(task: TaskExecution): TaskExecution? =
  * @return all stages directly upstream of this stage.
  */
 fun StageExecution.upstreamStages(): List<StageExecution> =
-  execution.stages.filter { it.refId in requisiteStageRefIds }
+  StageIndex.of(execution).withRefIds(requisiteStageRefIds)
 
 /**
  * @return `true` if all upstream stages of this stage were run successfully.
@@ -87,7 +86,7 @@ fun StageExecution.anyUpstreamStagesFailed(): Boolean =
   upstreamStages().any { it.status in listOf(TERMINAL, STOPPED, CANCELED) || it.status == NOT_STARTED && it.anyUpstreamStagesFailed() }
 
 fun StageExecution.syntheticStages(): List<StageExecution> =
-  execution.stages.filter { it.parentStageId == id }
+  StageIndex.of(execution).childrenOf(id)
 
 fun StageExecution.recursiveSyntheticStages(): List<StageExecution> =
   syntheticStages() + syntheticStages().flatMap {
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.orca.pipelinetemplate.v1schema.render;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.spinnaker.orca.front50.Front50Service;
+import com.netflix.spinnaker.orca.pipelinetemplate.v1schema.model.NamedHashMap;
+import com.netflix.spinnaker.orca.pipelinetemplate.v1schema.model.PipelineTemplate;
+import com.netflix.spinnaker.orca.pipelinetemplate.v1schema.model.TemplateModule;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders the stage configs of a v1 pipeline template the way planning a templated pipeline does,
+ * with the parsed templates cached and with every template parsed as it is rendered.
+ *
+ * <p>The template deploys a cluster module to each of a few regions, and notifies through a second
+ * module, with the usual loops, conditionals and filters in between.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JinjaRendererBenchmark {
+
+  @Param({"true", "false"})
+  public boolean cached;
+
+  @Param({"1", "4"})
+  public int regions;
+
+  private Renderer renderer;
+  private PipelineTemplate template;
+  private List<Map<String, Object>> stageConfigs;
+
+  @Setup
+  public void buildTemplate() {
+    Front50Service front50Service =
+        (Front50Service)
+            Proxy.newProxyInstance(
+                Front50Service.class.getClassLoader(),
+                new Class<?>[] {Front50Service.class},
+                (proxy, method, args) -> {
+                  throw new UnsupportedOperationException(method.getName());
+                });
+    renderer =
+        new JinjaRenderer(
+            new YamlRenderedValueConverter(),
+            new ObjectMapper(),
+            front50Service,
+            Collections.emptyList(),
+            cached ? JinjaRenderer.DEFAULT_TEMPLATE_CACHE_SIZE : 0);
+
+    template = new PipelineTemplate();
+    template.setId("benchmark");
+    template.setModules(Arrays.asList(deployClusterModule(), notificationModule()));
+
+    stageConfigs = new ArrayList<>();
+    stageConfigs.add(
+        config(
+            "package", "{{ application }}-{{ trigger.job }}",
+            "baseOs", "{{ baseOs | default('bionic') }}",
+            "regions", "{% for region in regions %}\n- {{ region }}\n{% endfor %}",
+            "vmType", "hvm"));
+    stageConfigs.add(
+        config(
+            "clusters",
+            "{% for region in regions %}\n"
+                + "- {% module deployCluster region=region %}\n"
+                + "{% endfor %}"));
+    stageConfigs.add(
+        config(
+            "instructions", "Promote {{ application }} build {{ trigger.buildNumber }}?",
+            "notifications", "- {% module notification level='stage' %}",
+            "failPipeline", "{{ failOnReject | default(true) }}"));
+    stageConfigs.add(
+        config(
+            "waitTime", "{{ waitTime | default(300) }}",
+            "skipWaitText",
+            "{% if regions | length > 1 %}Waiting before the next region{% endif %}"));
+  }
+
+  @Benchmark
+  public List<Object> render() {
+    RenderContext context = new DefaultRenderContext("benchmark", template, trigger());
+    addVariables(context.getVariables());
+    List<Object> rendered = new ArrayList<>(stageConfigs.size());
+    for (Map<String, Object> config : stageConfigs) {
+      rendered.add(RenderUtil.deepRender(renderer, config, context));
+    }
+    return rendered;
+  }
+
+  private void addVariables(Map<String, Object> variables) {
+    List<String> names = Arrays.asList("us-east-1", "us-west-2", "eu-west-1", "ap-southeast-1");
+    variables.put("regions", names.subList(0, regions));
+    variables.put("account", "prod");
+    variables.put("stack", "main");
+    variables.put("capacity", 4);
+    variables.put("slackChannel", "deploys");
+    variables.put("baseOs", "bionic");
+    variables.put("waitTime", 300);
+    variables.put("failOnReject", true);
+  }
+
+  private static Map<String, Object> trigger() {
+    Map<String, Object> trigger = new HashMap<>();
+    trigger.put("job", "benchmark-build");
+    trigger.put("buildNumber", 42);
+    return trigger;
+  }
+
+  private static TemplateModule deployClusterModule() {
+    Map<String, Object> capacity = new LinkedHashMap<>();
+    capacity.put("min", "{{ capacity }}");
+    capacity.put("max", "{{ capacity * 2 }}");
+    capacity.put("desired", "{{ capacity }}");
+
+    Map<String, Object> definition = new LinkedHashMap<>();
+    definition.put("provider", "aws");
+    definition.put("account", "{{ account }}");
+    definition.put("application", "{{ application }}");
+    definition.put("stack", "{{ stack }}");
+    definition.put("freeFormDetails", "{{ region | replace('-', '') }}");
+    definition.put("region", "{{ region }}");
+    definition.put(
+        "availabilityZones",
+        "{ \"{{ region }}\": [\"{{ region }}a\", \"{{ region }}b\", \"{{ region }}c\"] }");
+    definition.put("capacity", capacity);
+    definition.put("strategy", "{% if stack == 'main' %}redblack{% else %}highlander{% endif %}");
+    definition.put(
+        "tags", "{ \"owner\": \"{{ trigger.job }}\", \"build\": \"{{ trigger.buildNumber }}\" }");
+
+    return module("deployCluster", definition, "region", "account", "stack", "capacity");
+  }
+
+  private static TemplateModule notificationModule() {
+    Map<String, Object> definition = new LinkedHashMap<>();
+    definition.put("type", "slack");
+    definition.put("address", "{{ slackChannel }}");
+    definition.put("level", "{{ level }}");
+    definition.put("message", "{{ application }} {{ level }} in {{ regions | join(', ') }}");
+    return module("notification", definition, "level", "slackChannel", "regions");
+  }
+
+  private static TemplateModule module(String id, Object definition, String... variableNames) {
+    List<NamedHashMap> variables = new ArrayList<>();
+    for (String name : variableNames) {
+      NamedHashMap variable = new NamedHashMap();
+      variable.put("name", name);
+      variables.add(variable);
+    }
+    TemplateModule module = new TemplateModule();
+    module.setId(id);
+    module.setVariables(variables);
+    module.setDefinition(definition);
+    return module;
+  }
+
+  private static Map<String, Object> config(Object... keysAndValues) {
+    Map<String, Object> config = new LinkedHashMap<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      config.put((String) keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return config;
+  }
+}
@@ -16,8 +16,12 @@
 package com.netflix.spinnaker.orca.pipelinetemplate.v1schema.render;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.hubspot.jinjava.Jinjava;
 import com.hubspot.jinjava.JinjavaConfig;
+import com.hubspot.jinjava.interpret.Context;
 import com.hubspot.jinjava.interpret.Context.Library;
 import com.hubspot.jinjava.interpret.FatalTemplateErrorsException;
 import com.hubspot.jinjava.interpret.InterpretException;
@@ -26,9 +30,11 @@ import com.hubspot.jinjava.interpret.TemplateError;
 import com.hubspot.jinjava.interpret.TemplateError.ErrorItem;
 import com.hubspot.jinjava.interpret.TemplateError.ErrorReason;
 import com.hubspot.jinjava.interpret.TemplateError.ErrorType;
+import com.hubspot.jinjava.interpret.TemplateSyntaxException;
 import com.hubspot.jinjava.interpret.errorcategory.BasicTemplateErrorCategory;
 import com.hubspot.jinjava.lib.tag.Tag;
 import com.hubspot.jinjava.loader.ResourceLocator;
+import com.hubspot.jinjava.tree.Node;
 import com.netflix.spinnaker.orca.front50.Front50Service;
 import com.netflix.spinnaker.orca.pipelinetemplate.exceptions.TemplateRenderException;
 import com.netflix.spinnaker.orca.pipelinetemplate.v1schema.render.filters.*;
@@ -50,6 +56,8 @@ import org.yaml.snakeyaml.parser.ParserException;
 
 public class JinjaRenderer implements Renderer {
 
+  public static final int DEFAULT_TEMPLATE_CACHE_SIZE = 1000;
+
   private final Logger log = LoggerFactory.getLogger(getClass());
 
   private Jinjava jinja;
@@ -59,6 +67,15 @@ public class JinjaRenderer implements Renderer {
    */
   private Jinjava nullableJinja;
 
+  /**
+   * The trees templates were parsed to, by renderer and template, so that templates rendered over
+   * and over (the same modules, stage configs and variables are rendered many times while planning
+   * a templated pipeline) are only parsed once. Only templates that parsed without errors are
+   * cached, so parse errors are reported on every render as they would be otherwise. Parsed trees
+   * hold no render state, so they are rendered against each context from several threads.
+   */
+  private Cache<TemplateKey, Node> templates;
+
   private RenderedValueConverter renderedValueConverter;
 
   public JinjaRenderer(
@@ -77,6 +94,21 @@ public class JinjaRenderer implements Renderer {
       ObjectMapper pipelineTemplateObjectMapper,
       Front50Service front50Service,
       List<Tag> jinjaTags) {
+    this(
+        renderedValueConverter,
+        pipelineTemplateObjectMapper,
+        front50Service,
+        jinjaTags,
+        DEFAULT_TEMPLATE_CACHE_SIZE);
+  }
+
+  /** @param templateCacheSize the maximum number of parsed templates cached, 0 to parse them all */
+  public JinjaRenderer(
+      RenderedValueConverter renderedValueConverter,
+      ObjectMapper pipelineTemplateObjectMapper,
+      Front50Service front50Service,
+      List<Tag> jinjaTags,
+      int templateCacheSize) {
     if (front50Service == null) {
       log.error(
           "Pipeline templates require front50 to enabled. Set 'front50.enabled: true' in your orca config.");
@@ -84,6 +116,9 @@ public class JinjaRenderer implements Renderer {
     }
 
     this.renderedValueConverter = renderedValueConverter;
+    if (templateCacheSize > 0) {
+      templates = CacheBuilder.newBuilder().maximumSize(templateCacheSize).build();
+    }
 
     jinja = createJinjaRenderer(true, pipelineTemplateObjectMapper, front50Service, jinjaTags);
     nullableJinja =
@@ -118,7 +153,7 @@ public class JinjaRenderer implements Renderer {
   public String render(String template, RenderContext context) {
     String rendered;
     try {
-      rendered = jinja.render(template, context.getVariables());
+      rendered = render(jinja, false, template, context.getVariables());
     } catch (FatalTemplateErrorsException fte) {
       List<TemplateError> templateErrors = (List<TemplateError>) fte.getErrors();
 
@@ -140,7 +175,7 @@ public class JinjaRenderer implements Renderer {
       if (contextVariables.keySet().stream().anyMatch(nullableUnknownToken)) {
         log.debug(
             "Nullable variable referenced in template '{}'. Rendering template with unknown token tolerant Jinja renderer.");
-        rendered = nullableJinja.render(template, context.getVariables());
+        rendered = render(nullableJinja, true, template, context.getVariables());
       } else {
         log.error("Failed rendering jinja template", fte);
         throw new TemplateRenderException(
@@ -184,6 +219,91 @@ public class JinjaRenderer implements Renderer {
     }
   }
 
+  /**
+   * Renders {@code template} the way {@link Jinjava#render(String, Map)} does, but for taking its
+   * parsed tree from {@link #templates} if it has been parsed before. Like Jinjava, it resets the
+   * global context afterwards, so that it does not collect what every render resolved.
+   *
+   * @throws FatalTemplateErrorsException if rendering the template failed
+   */
+  private String render(
+      Jinjava jinjava, boolean nullable, String template, Map<String, Object> bindings) {
+    JinjavaInterpreter parent = JinjavaInterpreter.getCurrent();
+    // a template rendered from within another (such as a module) renders the same way as it
+    JinjavaConfig config = parent != null ? parent.getConfig() : jinjava.getGlobalConfig();
+    Context context = new Context(jinjava.getGlobalContext(), bindings, config.getDisabled());
+    JinjavaInterpreter interpreter = new JinjavaInterpreter(jinjava, context, config);
+
+    List<TemplateError> errors = new ArrayList<>();
+    String rendered = null;
+    JinjavaInterpreter.pushCurrent(interpreter);
+    try {
+      rendered = interpreter.render(parse(interpreter, nullable, template));
+    } catch (TemplateSyntaxException e) {
+      errors.add(TemplateError.fromException(e));
+    } catch (InterpretException e) {
+      errors.add(TemplateError.fromSyntaxError(e));
+    } catch (Exception e) {
+      errors.add(TemplateError.fromException(e));
+    } finally {
+      jinjava.getGlobalContext().reset();
+      JinjavaInterpreter.popCurrent();
+    }
+
+    errors.addAll(interpreter.getErrors());
+    List<TemplateError> fatalErrors =
+        errors.stream()
+            .filter(error -> error.getSeverity() == ErrorType.FATAL)
+            .collect(Collectors.toList());
+    if (!fatalErrors.isEmpty()) {
+      throw new FatalTemplateErrorsException(template, fatalErrors);
+    }
+    return rendered;
+  }
+
+  private Node parse(JinjavaInterpreter interpreter, boolean nullable, String template) {
+    if (templates == null) {
+      return parseTemplate(interpreter, template);
+    }
+    TemplateKey key = new TemplateKey(nullable, template);
+    Node tree = templates.getIfPresent(key);
+    if (tree == null) {
+      tree = parseTemplate(interpreter, template);
+      if (interpreter.getErrors().isEmpty()) {
+        templates.put(key, tree);
+      }
+    }
+    return tree;
+  }
+
+  @VisibleForTesting
+  protected Node parseTemplate(JinjavaInterpreter interpreter, String template) {
+    return interpreter.parse(template);
+  }
+
+  private static class TemplateKey {
+    private final boolean nullable;
+    private final String template;
+
+    TemplateKey(boolean nullable, String template) {
+      this.nullable = nullable;
+      this.template = template;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      TemplateKey key = (TemplateKey) o;
+      return nullable == key.nullable && template.equals(key.template);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(nullable, template);
+    }
+  }
+
   private static class NoopResourceLocator implements ResourceLocator {
     @Override
     public String getString(String fullName, Charset encoding, JinjavaInterpreter interpreter)
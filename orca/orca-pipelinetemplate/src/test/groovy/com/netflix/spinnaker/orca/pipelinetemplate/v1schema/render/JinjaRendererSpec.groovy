@@ -16,6 +16,8 @@
 package com.netflix.spinnaker.orca.pipelinetemplate.v1schema.render
 
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.hubspot.jinjava.interpret.JinjavaInterpreter
+import com.hubspot.jinjava.tree.Node
 import com.netflix.spinnaker.orca.front50.Front50Service
 import com.netflix.spinnaker.orca.pipelinetemplate.exceptions.TemplateRenderException
 import com.netflix.spinnaker.orca.pipelinetemplate.v1schema.model.PipelineTemplate
@@ -134,4 +136,54 @@ class JinjaRendererSpec extends Specification {
     TemplateRenderException tre = thrown()
     tre.message == 'failed rendering jinja template'
   }
+
+  def 'should render a template that was rendered before against the new context'() {
+    given:
+    def template = '{% for region in regions %}{{ region }}-{{ stringVar }} {% endfor %}'
+    def contextOf = { Map<String, Object> variables ->
+      new DefaultRenderContext('myApp', new PipelineTemplate(), [job: 'job', buildNumber: 1234]).with {
+        it.variables.putAll(variables)
+        it
+      }
+    }
+
+    expect:
+    subject.render(template, contextOf([regions: ['us-east-1'], stringVar: 'a'])) == 'us-east-1-a'
+    subject.render(template, contextOf([regions: ['us-west-2', 'eu-west-1'], stringVar: 'b'])) == 'us-west-2-b eu-west-1-b'
+
+    when:
+    subject.render(template, contextOf([regions: ['us-east-1']]))
+
+    then:
+    TemplateRenderException tre = thrown()
+    tre.message == 'failed rendering jinja template'
+  }
+
+  @Unroll
+  def 'should only parse a template once while it is cached'() {
+    given:
+    int parses = 0
+    Renderer renderer = new JinjaRenderer(renderedValueConverter, objectMapper, Mock(Front50Service), [], templateCacheSize) {
+      @Override
+      protected Node parseTemplate(JinjavaInterpreter interpreter, String template) {
+        parses++
+        return super.parseTemplate(interpreter, template)
+      }
+    }
+    def context = new DefaultRenderContext('myApp', new PipelineTemplate(), [job: 'job', buildNumber: 1234]).with {
+      variables.put('stringVar', 'myStringValue')
+      it
+    }
+
+    when:
+    3.times { renderer.render('{{ stringVar }}', context) }
+
+    then:
+    parses == expectedParses
+
+    where:
+    templateCacheSize                         || expectedParses
+    JinjaRenderer.DEFAULT_TEMPLATE_CACHE_SIZE || 1
+    0                                         || 3
+  }
 }
@@ -19,6 +19,7 @@ import com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PRO
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.databind.module.SimpleModule
 import com.fasterxml.jackson.module.kotlin.KotlinModule
+import com.netflix.spectator.api.Registry
 import com.netflix.spinnaker.orca.TaskResolver
 import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionType
 import com.netflix.spinnaker.orca.q.migration.ExecutionTypeDeserializer
@@ -87,9 +88,19 @@ class RedisOrcaQueueConfiguration : RedisQueueConfiguration() {
     deadMessageHandler: RedisDeadMessageHandler,
     publisher: EventPublisher,
     mapper: ObjectMapper,
-    serializationMigrator: Optional<SerializationMigrator>
+    serializationMigrator: Optional<SerializationMigrator>,
+    registry: Registry
   ): RedisQueue {
-    return super.queue(redisPool, redisQueueProperties, clock, deadMessageHandler, publisher, mapper, serializationMigrator)
+    return super.queue(
+      redisPool,
+      redisQueueProperties,
+      clock,
+      deadMessageHandler,
+      publisher,
+      mapper,
+      serializationMigrator,
+      registry
+    )
   }
 
   @Bean
@@ -102,7 +113,8 @@ class RedisOrcaQueueConfiguration : RedisQueueConfiguration() {
     deadMessageHandler: RedisClusterDeadMessageHandler,
     publisher: EventPublisher,
     redisQueueObjectMapper: ObjectMapper,
-    serializationMigrator: Optional<SerializationMigrator>
+    serializationMigrator: Optional<SerializationMigrator>,
+    registry: Registry
   ): RedisClusterQueue {
     return super.clusterQueue(
       cluster,
@@ -111,7 +123,8 @@ class RedisOrcaQueueConfiguration : RedisQueueConfiguration() {
       deadMessageHandler,
       publisher,
       redisQueueObjectMapper,
-      serializationMigrator
+      serializationMigrator,
+      registry
     )
   }
 
@@ -20,10 +20,14 @@ import com.fasterxml.jackson.databind.DeserializationFeature
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.databind.module.SimpleModule
 import com.fasterxml.jackson.module.kotlin.KotlinModule
+import com.netflix.spectator.api.Registry
 import com.netflix.spinnaker.orca.TaskResolver
 import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionType
 import com.netflix.spinnaker.orca.q.migration.ExecutionTypeDeserializer
 import com.netflix.spinnaker.orca.q.migration.TaskTypeDeserializer
+import com.netflix.spinnaker.q.LocalRedelivery
+import com.netflix.spinnaker.q.MessagePriorityPolicy
+import com.netflix.spinnaker.q.codec.MessageCodec
 import com.netflix.spinnaker.q.metrics.EventPublisher
 import com.netflix.spinnaker.q.migration.SerializationMigrator
 import com.netflix.spinnaker.q.sql.SqlDeadMessageHandler
@@ -75,7 +79,8 @@ class SqlOrcaQueueConfiguration : SqlQueueConfiguration() {
     deadMessageHandler: SqlDeadMessageHandler,
     publisher: EventPublisher,
     serializationMigrator: Optional<SerializationMigrator>,
-    properties: SqlQueueProperties
+    properties: SqlQueueProperties,
+    registry: Registry
   ) =
     SqlQueue(
       queueName = properties.queueName,
@@ -88,6 +93,18 @@ class SqlOrcaQueueConfiguration : SqlQueueConfiguration() {
       ackTimeout = properties.ackTimeout,
       deadMessageHandlers = listOf(deadMessageHandler),
       publisher = publisher,
-      sqlRetryProperties = properties.retries
+      sqlRetryProperties = properties.retries,
+      claimMode = properties.claimMode,
+      shardCount = properties.shards,
+      shardsPerPoll = properties.shardsPerPoll,
+      priorityPolicy = MessagePriorityPolicy(properties.priorityAgingInterval),
+      localRedelivery = if (properties.localRedeliveryEnabled) {
+        LocalRedelivery(clock, properties.localRedeliveryMaxDelay)
+      } else {
+        null
+      },
+      codec = MessageCodec(mapper, properties.messageFormat, serializationMigrator, registry),
+      affinity = properties.affinityEnabled,
+      affinityLeaseDuration = properties.affinityLeaseDuration
     )
 }
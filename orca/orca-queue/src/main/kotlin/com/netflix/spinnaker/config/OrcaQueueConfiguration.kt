@@ -16,10 +16,14 @@
 
 package com.netflix.spinnaker.config
 
+import com.netflix.spectator.api.Registry
+import com.netflix.spinnaker.orca.q.handler.MergedContextCache
 import com.netflix.spinnaker.q.NoopQueue
 import com.netflix.spinnaker.q.Queue
 import java.time.Clock
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.ComponentScan
 import org.springframework.context.annotation.Configuration
@@ -39,4 +43,15 @@ class OrcaQueueConfiguration {
   @Bean
   @ConditionalOnMissingBean(Queue::class)
   fun queue(): Queue = NoopQueue()
+
+  /**
+   * Only has an effect along with `sql.execution-cache-enabled`, as contexts are cached by the
+   * version of the stored execution.
+   */
+  @Bean
+  @ConditionalOnProperty("tasks.merged-context-cache.enabled")
+  fun mergedContextCache(
+    registry: Registry,
+    @Value("\${tasks.merged-context-cache.max-weight:50000000}") maxWeight: Long
+  ): MergedContextCache = MergedContextCache(maxWeight, registry)
 }
@@ -47,9 +47,19 @@ interface ExpressionAware {
   val log: Logger
     get() = LoggerFactory.getLogger(javaClass)
 
+  /**
+   * Contexts to reuse rather than merge again, or `null` to merge every time.
+   */
+  val mergedContextCache: MergedContextCache?
+    get() = null
+
   fun StageExecution.withMergedContext(): StageExecution {
-    val evalSummary = ExpressionEvaluationSummary()
-    val processed = processEntries(this, evalSummary)
+    val cache = mergedContextCache
+    val processed = if (cache == null || processesOwnExpressions(this)) {
+      mergeContext(this)
+    } else {
+      cache.getOrMerge(this) { mergeContext(this) }
+    }
     val execution = execution
     val stage = this
     this.context = object : MutableMap<String, Any?> by processed {
@@ -75,28 +85,6 @@ interface ExpressionAware {
       }
     }
 
-    // Clean up errors: since expressions are evaluated multiple times, it's possible that when
-    // they were evaluated before the execution started not all data was available and the evaluation failed for
-    // some property. If that evaluation subsequently succeeds, make sure to remove past error messages from the
-    // context. Otherwise, it's very confusing in the UI because the value is clearly correctly evaluated but
-    // the error is still shown
-    if (hasFailedExpressions()) {
-      try {
-        val failedExpressions = this.context[SUMMARY] as MutableMap<String, *>
-
-        val keysToRemove: List<String> = failedExpressions.keys.filter { expressionKey ->
-          (evalSummary.wasAttempted(expressionKey) && !evalSummary.hasFailed(expressionKey))
-        }.toList()
-
-        keysToRemove.forEach { expressionKey ->
-          failedExpressions.remove(expressionKey)
-        }
-      } catch (e: Exception) {
-        // Best effort clean up, if if fails just log the error and leave the context be
-        log.error("Failed to remove stale expression errors", e)
-      }
-    }
-
     return this
   }
 
@@ -132,6 +120,48 @@ interface ExpressionAware {
       mapOf("details" to mapOf("errors" to mergedErrors))
     }
 
+  /**
+   * Merges the context of [stage], removing the past errors of expressions that now evaluate from
+   * the merged context itself, so that a context reused by the [mergedContextCache] needs no
+   * evaluation summary of its own.
+   */
+  private fun mergeContext(stage: StageExecution): StageContext {
+    val summary = ExpressionEvaluationSummary()
+    val processed = processEntries(stage, summary)
+
+    // Clean up errors: since expressions are evaluated multiple times, it's possible that when
+    // they were evaluated before the execution started not all data was available and the evaluation failed for
+    // some property. If that evaluation subsequently succeeds, make sure to remove past error messages from the
+    // context. Otherwise, it's very confusing in the UI because the value is clearly correctly evaluated but
+    // the error is still shown
+    if ((SUMMARY in processed) && (processed[SUMMARY] as Map<*, *>).size > 0) {
+      try {
+        val failedExpressions = processed[SUMMARY] as MutableMap<String, *>
+
+        val keysToRemove: List<String> = failedExpressions.keys.filter { expressionKey ->
+          (summary.wasAttempted(expressionKey) && !summary.hasFailed(expressionKey))
+        }.toList()
+
+        keysToRemove.forEach { expressionKey ->
+          failedExpressions.remove(expressionKey)
+        }
+      } catch (e: Exception) {
+        // Best effort clean up, if if fails just log the error and leave the context be
+        log.error("Failed to remove stale expression errors", e)
+      }
+    }
+
+    return processed
+  }
+
+  /**
+   * @return `true` if the stage evaluates (and updates) its own context, in which case it must be
+   * merged every time.
+   */
+  private fun processesOwnExpressions(stage: StageExecution): Boolean =
+    SpelEvaluatorVersion.V4 == contextParameterProcessor.getEffectiveSpelVersionToUse(stage.execution.spelEvaluator) &&
+      stageDefinitionBuilderFactory.builderFor(stage) is ExpressionAwareStageDefinitionBuilder
+
   private fun processEntries(stage: StageExecution, summary: ExpressionEvaluationSummary): StageContext {
     var shouldContinueProcessing = true
 
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.orca.q.handler
+
+import com.netflix.spectator.api.NoopRegistry
+import com.netflix.spectator.api.Registry
+import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution
+import com.netflix.spinnaker.orca.pipeline.model.PipelineExecutionImpl
+import com.netflix.spinnaker.orca.pipeline.model.StageContext
+
+/**
+ * Remembers the contexts stages were merged to by [ExpressionAware.withMergedContext], so that a
+ * task that is run over and over (such as a monitor) does not evaluate its stage's context every
+ * time it runs.
+ *
+ * A merged context is reused for as long as the stored version of its execution is unchanged
+ * (see [PipelineExecutionImpl.getStoredVersion]), as every write to the execution or any of its
+ * stages changes it. Executions read without a version, which is the case unless the SQL
+ * repository's execution cache is enabled, are merged every time. So are contexts whose
+ * expressions call anything but the [DETERMINISTIC_FUNCTIONS], or refer to types (`T(...)`) or
+ * construct objects (`new ...`), as their result may change while the version does not (`#fromUrl`,
+ * or the time). Only a context that is merged is checked for those, as the stage's context cannot
+ * have changed while the version has not.
+ *
+ * The cache holds up to [maxWeight] characters worth of contexts, roughly the number of characters
+ * of their strings plus a few for every other value, and evicts the least recently used ones beyond
+ * that. A context heavier than that on its own is not cached.
+ *
+ * Entries are copied on the way in and out, as tasks are free to change the context they are given.
+ */
+class MergedContextCache(
+  private val maxWeight: Long,
+  registry: Registry = NoopRegistry()
+) {
+  private val entries = LinkedHashMap<String, MergedContext>(16, 0.75f, true)
+  private var weight = 0L
+
+  private val hits = registry.counter("tasks.mergedContext.cache", "result", "hit")
+  private val misses = registry.counter("tasks.mergedContext.cache", "result", "miss")
+  private val uncacheable = registry.counter("tasks.mergedContext.cache", "result", "uncacheable")
+
+  /**
+   * @return the context [stage] was last merged to if its execution has not been written to since,
+   * otherwise the context [merge] merges it to.
+   */
+  fun getOrMerge(stage: StageExecution, merge: () -> StageContext): StageContext {
+    val version = (stage.execution as? PipelineExecutionImpl)?.storedVersion
+    if (version == null) {
+      uncacheable.increment()
+      return merge()
+    }
+
+    val cached = synchronized(entries) { entries[stage.id] }?.takeIf { it.version == version }
+    if (cached != null) {
+      hits.increment()
+      return StageContext(stage, copy(cached.context))
+    }
+
+    if (!cacheable(stage.context)) {
+      uncacheable.increment()
+      return merge()
+    }
+
+    misses.increment()
+    val merged = merge()
+    val entry = MergedContext(version, copy(merged), weigh(merged))
+    synchronized(entries) {
+      entries.remove(stage.id)?.let { weight -= it.weight }
+      if (entry.weight <= maxWeight) {
+        entries[stage.id] = entry
+        weight += entry.weight
+        val eldest = entries.values.iterator()
+        while (weight > maxWeight) {
+          weight -= eldest.next().weight
+          eldest.remove()
+        }
+      }
+    }
+    return merged
+  }
+
+  private fun cacheable(value: Any?): Boolean =
+    when (value) {
+      is String -> !value.contains("\${") || deterministic(value)
+      is Map<*, *> -> value.values.all { cacheable(it) }
+      is Iterable<*> -> value.all { cacheable(it) }
+      is Array<*> -> value.all { cacheable(it) }
+      else -> true
+    }
+
+  private fun deterministic(expression: String): Boolean =
+    !expression.contains("T(") &&
+      !NEW.containsMatchIn(expression) &&
+      FUNCTION.findAll(expression).all { it.groupValues[1] in DETERMINISTIC_FUNCTIONS }
+
+  @Suppress("UNCHECKED_CAST")
+  private fun copy(context: Map<String, Any?>): MutableMap<String, Any?> =
+    copyValue(context) as MutableMap<String, Any?>
+
+  private fun copyValue(value: Any?): Any? =
+    when (value) {
+      is Map<*, *> -> value.entries.associateTo(LinkedHashMap()) { (k, v) -> k to copyValue(v) }
+      is Set<*> -> value.mapTo(LinkedHashSet()) { copyValue(it) }
+      is List<*> -> value.mapTo(ArrayList(value.size)) { copyValue(it) }
+      else -> value
+    }
+
+  private fun weigh(value: Any?): Long =
+    when (value) {
+      is CharSequence -> VALUE_WEIGHT + value.length
+      is Map<*, *> -> value.entries.fold(VALUE_WEIGHT) { acc, (k, v) -> acc + weigh(k) + weigh(v) }
+      is Iterable<*> -> value.fold(VALUE_WEIGHT) { acc, it -> acc + weigh(it) }
+      else -> VALUE_WEIGHT
+    }
+
+  private class MergedContext(
+    val version: Long,
+    val context: Map<String, Any?>,
+    val weight: Long
+  )
+
+  companion object {
+    private const val VALUE_WEIGHT = 8L
+
+    private val FUNCTION = Regex("#([A-Za-z_][A-Za-z0-9_]*)\\s*\\(")
+    private val NEW = Regex("\\bnew\\s+[A-Za-z_]")
+
+    /**
+     * The expression functions whose result only depends on their arguments and the execution.
+     */
+    private val DETERMINISTIC_FUNCTIONS = setOf(
+      "alphanumerical",
+      "cfServiceKey",
+      "currentStage",
+      "deployedServerGroups",
+      "fromBase64",
+      "judgement",
+      "judgment",
+      "manifestLabelValue",
+      "readJson",
+      "readYaml",
+      "stage",
+      "stageByRefId",
+      "stageExists",
+      "toBase64",
+      "toBoolean",
+      "toFloat",
+      "toInt",
+      "toJson",
+      "triggerResolvedArtifact",
+      "triggerResolvedArtifactByType"
+    )
+  }
+}
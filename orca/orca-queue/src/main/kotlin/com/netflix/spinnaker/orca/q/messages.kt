@@ -16,6 +16,7 @@
 
 package com.netflix.spinnaker.orca.q
 
+import com.fasterxml.jackson.annotation.JsonIgnore
 import com.fasterxml.jackson.annotation.JsonTypeName
 import com.netflix.spinnaker.orca.api.pipeline.SyntheticStageOwner
 import com.netflix.spinnaker.orca.api.pipeline.SyntheticStageOwner.STAGE_BEFORE
@@ -26,8 +27,10 @@ import com.netflix.spinnaker.orca.api.pipeline.models.PipelineExecution
 import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution
 import com.netflix.spinnaker.orca.api.pipeline.models.TaskExecution
 import com.netflix.spinnaker.orca.pipeline.persistence.ExecutionRepository
+import com.netflix.spinnaker.q.AffinityAware
 import com.netflix.spinnaker.q.Attribute
 import com.netflix.spinnaker.q.Message
+import com.netflix.spinnaker.q.MessagePriority
 import java.time.Duration
 
 /**
@@ -37,9 +40,17 @@ interface ApplicationAware {
   val application: String
 }
 
-interface ExecutionLevel : ApplicationAware {
+/**
+ * All the messages for one execution share an affinity key, so queues that route by affinity
+ * handle them on the same instance.
+ */
+interface ExecutionLevel : ApplicationAware, AffinityAware {
   val executionType: ExecutionType
   val executionId: String
+
+  @get:JsonIgnore
+  override val affinityKey: String
+    get() = executionId
 }
 
 interface StageLevel : ExecutionLevel {
@@ -148,6 +159,9 @@ data class StartStage(
   override val application: String,
   override val stageId: String
 ) : Message(), StageLevel {
+  override val priority
+    get() = MessagePriority.HIGH
+
   constructor(source: ExecutionLevel, stageId: String) :
     this(source.executionType, source.executionId, source.application, stageId)
 
@@ -183,6 +197,9 @@ data class CompleteStage(
   override val application: String,
   override val stageId: String
 ) : Message(), StageLevel {
+  override val priority
+    get() = MessagePriority.HIGH
+
   constructor(source: ExecutionLevel, stageId: String) :
     this(source.executionType, source.executionId, source.application, stageId)
 
@@ -329,6 +346,9 @@ data class CancelExecution(
   val user: String?,
   val reason: String?
 ) : Message(), ExecutionLevel {
+  override val priority
+    get() = MessagePriority.HIGH
+
   constructor(source: PipelineExecution, user: String?, reason: String?) :
     this(source.type, source.id, source.application, user, reason)
 
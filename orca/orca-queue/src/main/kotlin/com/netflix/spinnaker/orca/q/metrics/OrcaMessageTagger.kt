@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.orca.q.metrics
+
+import com.netflix.spinnaker.orca.q.ExecutionLevel
+import com.netflix.spinnaker.orca.q.RunTask
+import com.netflix.spinnaker.q.Message
+import com.netflix.spinnaker.q.metrics.MessageTagger
+import org.springframework.stereotype.Component
+
+/**
+ * Breaks queue timings down by execution type and, for [RunTask], by the task being run, so
+ * slow tasks stand out from the rest of the messages.
+ */
+@Component
+class OrcaMessageTagger : MessageTagger {
+  override fun tags(message: Message): Map<String, String> {
+    val tags = mutableMapOf<String, String>()
+    if (message is ExecutionLevel) {
+      tags["executionType"] = message.executionType.name.capitalize()
+    }
+    if (message is RunTask) {
+      tags["taskType"] = message.taskType.simpleName
+    }
+    return tags
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.orca.q.handler
+
+import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus.RUNNING
+import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus.SUCCEEDED
+import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution
+import com.netflix.spinnaker.orca.api.test.pipeline
+import com.netflix.spinnaker.orca.api.test.stage
+import com.netflix.spinnaker.orca.pipeline.model.PipelineExecutionImpl
+import com.netflix.spinnaker.orca.pipeline.model.StageContext
+import org.assertj.core.api.Assertions.assertThat
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.describe
+import org.jetbrains.spek.api.dsl.it
+
+object MergedContextCacheTest : Spek({
+
+  describe("merging a stage's context") {
+    val cache = MergedContextCache(1_000_000)
+    var merges = 0
+    lateinit var upstream: StageExecution
+    lateinit var downstream: StageExecution
+    val execution = pipeline {
+      upstream = stage {
+        refId = "1"
+        status = SUCCEEDED
+        outputs["imageId"] = "ami-1"
+      }
+      downstream = stage {
+        refId = "2"
+        requisiteStageRefIds = listOf("1")
+        status = RUNNING
+        context["imageId"] = "\${imageId}"
+        context["nested"] = mutableMapOf("list" to mutableListOf("a"))
+      }
+    } as PipelineExecutionImpl
+    execution.storedVersion = 1
+
+    fun merge(): StageContext =
+      cache.getOrMerge(downstream) {
+        merges++
+        StageContext(downstream, mutableMapOf<String, Any>(
+          "imageId" to upstream.outputs["imageId"]!!,
+          "nested" to mutableMapOf("list" to mutableListOf("a"))
+        ))
+      }
+
+    it("merges the first time") {
+      assertThat(merge()["imageId"]).isEqualTo("ami-1")
+      assertThat(merges).isEqualTo(1)
+    }
+
+    it("reuses the merged context while the stored version is unchanged") {
+      assertThat(merge()["imageId"]).isEqualTo("ami-1")
+      assertThat(merges).isEqualTo(1)
+    }
+
+    it("hands out a copy of the merged context") {
+      @Suppress("UNCHECKED_CAST")
+      (merge()["nested"] as MutableMap<String, MutableList<String>>)["list"]!!.add("b")
+
+      assertThat(merge()["nested"]).isEqualTo(mapOf("list" to listOf("a")))
+      assertThat(merges).isEqualTo(1)
+    }
+
+    it("merges again once the stored version changes") {
+      upstream.outputs["imageId"] = "ami-2"
+      execution.storedVersion = 2
+
+      assertThat(merge()["imageId"]).isEqualTo("ami-2")
+      assertThat(merges).isEqualTo(2)
+    }
+
+    it("merges every time once the execution has no stored version") {
+      execution.storedVersion = null
+
+      merge()
+      merge()
+      assertThat(merges).isEqualTo(4)
+    }
+  }
+
+  describe("merging a context with an expression that reads from elsewhere") {
+    val cache = MergedContextCache(1_000_000)
+    var merges = 0
+    lateinit var subject: StageExecution
+    (pipeline {
+      subject = stage {
+        refId = "1"
+        context["manifest"] = "\${#fromUrl('https://example.com/manifest.yml')}"
+        context["startedAt"] = "\${new java.util.Date().getTime()}"
+      }
+    } as PipelineExecutionImpl).storedVersion = 1
+
+    fun merge() {
+      cache.getOrMerge(subject) {
+        merges++
+        StageContext(subject, mutableMapOf<String, Any>())
+      }
+    }
+
+    it("merges it every time") {
+      merge()
+      merge()
+      assertThat(merges).isEqualTo(2)
+    }
+  }
+
+  describe("merging contexts beyond the weight the cache holds") {
+    // each merged context weighs 36: 8 for the map, 15 for its key and 13 for its value
+    val cache = MergedContextCache(50)
+    val merges = mutableMapOf<String, Int>()
+    lateinit var first: StageExecution
+    lateinit var second: StageExecution
+    (pipeline {
+      first = stage { refId = "1" }
+      second = stage { refId = "2" }
+    } as PipelineExecutionImpl).storedVersion = 1
+
+    fun merge(stage: StageExecution) {
+      cache.getOrMerge(stage) {
+        merges.merge(stage.refId, 1, Int::plus)
+        StageContext(stage, mutableMapOf<String, Any>("imageId" to "ami-1"))
+      }
+    }
+
+    it("evicts the least recently used context") {
+      merge(first)
+      merge(second)
+      merge(second)
+      merge(first)
+
+      assertThat(merges).isEqualTo(mapOf("1" to 2, "2" to 1))
+    }
+  }
+})
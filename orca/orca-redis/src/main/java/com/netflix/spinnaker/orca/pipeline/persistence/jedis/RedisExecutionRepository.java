@@ -508,6 +508,16 @@ public class RedisExecutionRepository implements ExecutionRepository {
                 return executionCriteria.getStatuses().contains(it.getStatus());
               }
             })
+        .filter(
+            it ->
+                executionCriteria.getTriggerTypes().isEmpty()
+                    || executionCriteria.getTriggerTypes().contains(it.getTrigger().getType()))
+        .filter(
+            it ->
+                executionCriteria.getEventId() == null
+                    || executionCriteria
+                        .getEventId()
+                        .equals(it.getTrigger().getOther().get("eventId")))
         .collect(Collectors.toList());
   }
 
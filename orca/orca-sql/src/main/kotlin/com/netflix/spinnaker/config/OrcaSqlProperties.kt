@@ -20,10 +20,24 @@ import org.springframework.boot.context.properties.ConfigurationProperties
 /**
  * @param partitionName Multi-region partitioning; unused presently
  * @param batchReadSize Defines the internal page size for large select scans
+ * @param executionCacheEnabled Caches the rows of recently retrieved executions, checking their
+ * version on every retrieve. Pays off when the queue routes all messages for an execution to the
+ * same instance (`keiko.queue.sql.affinity-enabled`). Execution versions are only maintained
+ * while it is enabled, so it must be enabled on every instance sharing the database or none
+ * @param executionCacheSize The maximum number of executions cached
+ * @param bodyCompressionEnabled Stores execution and stage bodies compressed once they are at least
+ * [bodyCompressionThreshold] characters long. Bodies are read whether they are compressed or not,
+ * but compression must only be enabled once every instance sharing the database runs a version
+ * that can read compressed bodies
+ * @param bodyCompressionThreshold The length, in characters, from which bodies are compressed
  */
 @ConfigurationProperties("sql")
 class OrcaSqlProperties {
   var partitionName: String? = null
   var batchReadSize: Int = 10
   var stageReadSize: Int = 200
+  var executionCacheEnabled: Boolean = false
+  var executionCacheSize: Int = 1000
+  var bodyCompressionEnabled: Boolean = false
+  var bodyCompressionThreshold: Int = 65536
 }
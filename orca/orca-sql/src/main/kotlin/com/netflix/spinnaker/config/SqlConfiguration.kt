@@ -28,6 +28,8 @@ import com.netflix.spinnaker.orca.pipeline.persistence.ExecutionRepository
 import com.netflix.spinnaker.orca.sql.SpringLiquibaseProxy
 import com.netflix.spinnaker.orca.sql.SqlHealthIndicator
 import com.netflix.spinnaker.orca.sql.SqlHealthcheckActivator
+import com.netflix.spinnaker.orca.sql.pipeline.persistence.BodyCompression
+import com.netflix.spinnaker.orca.sql.pipeline.persistence.ExecutionCache
 import com.netflix.spinnaker.orca.sql.pipeline.persistence.SqlExecutionRepository
 import java.time.Clock
 import java.util.Optional
@@ -71,7 +73,14 @@ class SqlConfiguration {
       properties.retries.transactions,
       orcaSqlProperties.batchReadSize,
       orcaSqlProperties.stageReadSize,
-      interlink = interlink.orElse(null)
+      interlink = interlink.orElse(null),
+      executionCache = if (orcaSqlProperties.executionCacheEnabled) {
+        ExecutionCache(orcaSqlProperties.executionCacheSize, registry)
+      } else {
+        null
+      },
+      bodyCompression = bodyCompression(orcaSqlProperties, registry),
+      registry = registry
     ).let {
       InstrumentedProxy.proxy(registry, it, "sql.executions", mapOf(Pair("repository", "primary"))) as ExecutionRepository
     }
@@ -93,11 +102,19 @@ class SqlConfiguration {
       properties.retries.transactions,
       orcaSqlProperties.batchReadSize,
       orcaSqlProperties.stageReadSize,
-      poolName
+      poolName,
+      bodyCompression = bodyCompression(orcaSqlProperties, registry),
+      registry = registry
     ).let {
       InstrumentedProxy.proxy(registry, it, "sql.executions", mapOf(Pair("repository", "secondary"))) as ExecutionRepository
     }
 
+  private fun bodyCompression(orcaSqlProperties: OrcaSqlProperties, registry: Registry) =
+    BodyCompression(
+      threshold = if (orcaSqlProperties.bodyCompressionEnabled) orcaSqlProperties.bodyCompressionThreshold else null,
+      registry = registry
+    )
+
   @Bean
   fun sqlHealthcheckActivator(dsl: DSLContext, registry: Registry) =
     SqlHealthcheckActivator(dsl, registry)
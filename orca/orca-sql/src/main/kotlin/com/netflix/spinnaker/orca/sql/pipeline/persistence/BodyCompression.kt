@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.orca.sql.pipeline.persistence
+
+import com.netflix.spectator.api.NoopRegistry
+import com.netflix.spectator.api.Registry
+import java.io.ByteArrayOutputStream
+import java.util.Base64
+import java.util.concurrent.TimeUnit
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+/**
+ * Compresses the bodies [SqlExecutionRepository] writes once they are at least [threshold]
+ * characters long, and decompresses the bodies it reads.
+ *
+ * A compressed body is deflated and stored as base64 after a [MARKER], in the same `body` column as
+ * any other. A body is JSON, so it never starts with the marker, and bodies without it are read as
+ * they are. That way rows written before compression was enabled (or after it was disabled) read
+ * the same as ever. Older versions can not read compressed bodies though, so compression should
+ * only be enabled once every instance sharing the database can.
+ *
+ * Bodies are always decompressed, whether or not a [threshold] is set. Records the time spent
+ * compressing and decompressing as the `sql.bodies.compression` timer, tagged with `operation`, and
+ * the size of the bodies it compresses before and after as the `sql.bodies.compression.chars`
+ * counter, tagged with `state` (`raw` or `compressed`).
+ */
+class BodyCompression(
+  private val threshold: Int? = null,
+  private val level: Int = Deflater.BEST_SPEED,
+  registry: Registry = NoopRegistry()
+) {
+  private val compressTime = registry.timer("sql.bodies.compression", "operation", "compress")
+  private val decompressTime = registry.timer("sql.bodies.compression", "operation", "decompress")
+  private val rawChars = registry.counter("sql.bodies.compression.chars", "state", "raw")
+  private val compressedChars = registry.counter("sql.bodies.compression.chars", "state", "compressed")
+
+  /**
+   * @return whether [compress] compresses [body].
+   */
+  fun compresses(body: String): Boolean =
+    threshold != null && body.length >= threshold
+
+  /**
+   * @return [body] as it should be stored.
+   */
+  fun compress(body: String): String {
+    if (!compresses(body)) {
+      return body
+    }
+    val start = System.nanoTime()
+    val deflater = Deflater(level)
+    try {
+      val input = body.toByteArray(Charsets.UTF_8)
+      deflater.setInput(input)
+      deflater.finish()
+      val output = ByteArrayOutputStream(input.size / 4)
+      val buffer = ByteArray(BUFFER_SIZE)
+      while (!deflater.finished()) {
+        output.write(buffer, 0, deflater.deflate(buffer))
+      }
+      val compressed = MARKER + Base64.getEncoder().encodeToString(output.toByteArray())
+      rawChars.increment(body.length.toLong())
+      compressedChars.increment(compressed.length.toLong())
+      return compressed
+    } finally {
+      deflater.end()
+      compressTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS)
+    }
+  }
+
+  /**
+   * @return the body [stored] is, whether it was compressed or not.
+   */
+  fun decompress(stored: String): String {
+    if (!stored.startsWith(MARKER)) {
+      return stored
+    }
+    val start = System.nanoTime()
+    val inflater = Inflater()
+    try {
+      inflater.setInput(Base64.getDecoder().decode(stored.substring(MARKER.length)))
+      val output = ByteArrayOutputStream(stored.length * 4)
+      val buffer = ByteArray(BUFFER_SIZE)
+      while (!inflater.finished()) {
+        val inflated = inflater.inflate(buffer)
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw IllegalStateException("Compressed body is truncated")
+        }
+        output.write(buffer, 0, inflated)
+      }
+      return String(output.toByteArray(), Charsets.UTF_8)
+    } finally {
+      inflater.end()
+      decompressTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS)
+    }
+  }
+
+  companion object {
+    const val MARKER = "deflate:"
+    private const val BUFFER_SIZE = 8192
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.orca.sql.pipeline.persistence
+
+import com.netflix.spectator.api.NoopRegistry
+import com.netflix.spectator.api.Registry
+import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionType
+
+/**
+ * A node-local cache of the rows of recently retrieved executions.
+ *
+ * Intended for instances that handle all the queue messages for an execution (when the queue
+ * routes messages by affinity), and so retrieve the same executions over and over. Every write to
+ * an execution or its stages increments the `version` column of the execution, and a cached
+ * entry is only used while its version still matches, so writes made by other instances are never
+ * missed. [SqlExecutionRepository] writes through to entries as it updates stages and executions,
+ * so its own writes do not invalidate them.
+ *
+ * Rows are cached rather than the executions themselves, as executions are mutable and are often
+ * retrieved by several handlers at once. Every retrieve still maps its own copy, but without
+ * reading the execution and its stages from the database.
+ */
+class ExecutionCache(
+  private val maxSize: Int,
+  registry: Registry = NoopRegistry()
+) {
+  private val entries = object : LinkedHashMap<String, CachedExecution>(16, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, CachedExecution>) =
+      size > maxSize
+  }
+
+  private val hits = registry.counter("sql.executions.cache", "result", "hit")
+  private val misses = registry.counter("sql.executions.cache", "result", "miss")
+
+  /**
+   * @return the cached rows of the execution with the given row [id], if they are at [version].
+   */
+  fun get(type: ExecutionType, id: String, version: Long): CachedExecution? =
+    synchronized(entries) {
+      entries[key(type, id)]?.takeIf { it.version == version }
+    }
+      .also { if (it == null) misses.increment() else hits.increment() }
+
+  fun contains(type: ExecutionType, id: String): Boolean =
+    synchronized(entries) { entries.containsKey(key(type, id)) }
+
+  fun put(type: ExecutionType, execution: CachedExecution) {
+    synchronized(entries) {
+      entries[key(type, execution.id)] = execution
+    }
+  }
+
+  /**
+   * Applies a write of the stage with row id [stageId] that took the execution to [version]. The
+   * entry is evicted instead if it was not at the previous version, as another instance must have
+   * written to the execution too.
+   */
+  fun putStage(type: ExecutionType, id: String, stageId: String, body: String, version: Long) {
+    synchronized(entries) {
+      val key = key(type, id)
+      val current = entries[key]
+      if (current != null && current.version == version - 1) {
+        entries[key] = current.copy(version = version, stages = current.stages + (stageId to body))
+      } else {
+        entries.remove(key)
+      }
+    }
+  }
+
+  fun evict(type: ExecutionType, id: String) {
+    synchronized(entries) {
+      entries.remove(key(type, id))
+    }
+  }
+
+  private fun key(type: ExecutionType, id: String) = "$type:$id"
+}
+
+/**
+ * The rows of an execution: its own row id and body, and the bodies of its stages by row id.
+ */
+data class CachedExecution(
+  val id: String,
+  val version: Long,
+  val body: String,
+  val partition: String?,
+  val stages: Map<String, String>
+)
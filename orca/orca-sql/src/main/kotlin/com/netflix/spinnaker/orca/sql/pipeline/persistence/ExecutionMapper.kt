@@ -19,6 +19,7 @@ import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.module.kotlin.readValue
 import com.netflix.spinnaker.orca.api.pipeline.models.PipelineExecution
 import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution
+import com.netflix.spinnaker.orca.pipeline.model.PipelineExecutionImpl
 import java.sql.ResultSet
 import org.jooq.DSLContext
 import org.slf4j.LoggerFactory
@@ -27,11 +28,15 @@ import org.slf4j.LoggerFactory
  * Converts a SQL [ResultSet] into an Execution.
  *
  * When retrieving an Execution from SQL, we lazily load its stages on-demand
- * in this mapper as well.
+ * in this mapper as well. With [summaries], the stages are loaded from their
+ * summaries rather than their bodies. Compressed bodies are decompressed by
+ * [bodyCompression].
  */
 class ExecutionMapper(
   private val mapper: ObjectMapper,
-  private val stageBatchSize: Int
+  private val stageBatchSize: Int,
+  private val summaries: Boolean = false,
+  private val bodyCompression: BodyCompression = BodyCompression()
 ) {
 
   private val log = LoggerFactory.getLogger(javaClass)
@@ -42,7 +47,7 @@ class ExecutionMapper(
     val legacyMap = mutableMapOf<String, String>()
 
     while (rs.next()) {
-      mapper.readValue<PipelineExecution>(rs.getString("body"))
+      mapper.readValue<PipelineExecution>(bodyCompression.decompress(rs.getString("body")))
         .also {
           execution -> results.add(execution)
           execution.partition = rs.getString("`partition`")
@@ -69,7 +74,7 @@ class ExecutionMapper(
           }
         }
 
-        context.selectExecutionStages(type, executionIds).let { stageResultSet ->
+        context.selectExecutionStages(type, executionIds, summaries).let { stageResultSet ->
           while (stageResultSet.next()) {
             mapStage(stageResultSet, executionMap)
           }
@@ -84,12 +89,30 @@ class ExecutionMapper(
     return results
   }
 
+  /**
+   * Maps an execution from rows cached by an [ExecutionCache], rather than from the database, along
+   * with the version they were read at.
+   */
+  fun map(rows: CachedExecution): PipelineExecution =
+    mapper.readValue<PipelineExecution>(rows.body)
+      .also { execution ->
+        execution.partition = rows.partition
+        (execution as? PipelineExecutionImpl)?.storedVersion = rows.version
+        rows.stages.values.forEach { body ->
+          execution.stages.add(
+            mapper.readValue<StageExecution>(body)
+              .apply { this.execution = execution }
+          )
+        }
+        execution.stages.sortBy { it.refId }
+      }
+
   private fun mapStage(rs: ResultSet, executions: Map<String, PipelineExecution>) {
     val executionId = rs.getString("execution_id")
     executions.getValue(executionId)
       .stages
       .add(
-        mapper.readValue<StageExecution>(rs.getString("body"))
+        mapper.readValue<StageExecution>(bodyCompression.decompress(rs.getString("body")))
           .apply {
             execution = executions.getValue(executionId)
           }
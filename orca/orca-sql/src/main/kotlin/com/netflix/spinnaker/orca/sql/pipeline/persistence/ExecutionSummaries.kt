@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.orca.sql.pipeline.persistence
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.ObjectNode
+import com.netflix.spinnaker.orca.api.pipeline.models.PipelineExecution
+import com.netflix.spinnaker.orca.api.pipeline.models.StageExecution
+import com.netflix.spinnaker.orca.pipeline.model.StageExecutionImpl
+
+/**
+ * Builds the summaries of pipelines and their stages that [SqlExecutionRepository] stores in the
+ * `summary` column alongside their bodies, and reads in place of them for
+ * [SqlExecutionRepository.retrievePipelineSummariesForPipelineConfigId].
+ *
+ * A summary is the body as the unexpanded list endpoints return it: a stage without its context
+ * (but for its `group`, which is needed to collapse templated pipelines), outputs or tasks, and a
+ * pipeline without the stages of the parent execution of its trigger. So summaries deserialize to
+ * the same kind of executions as the bodies, just without the parts that make up most of their
+ * size.
+ */
+internal class ExecutionSummaries(mapper: ObjectMapper) {
+
+  private val mapper = mapper.copy()
+    .addMixIn(StageExecutionImpl::class.java, StageSummaryMixin::class.java)
+
+  fun stage(stage: StageExecution): String {
+    val tree = mapper.valueToTree<ObjectNode>(stage)
+    val context = tree.putObject("context")
+    stage.context["group"]?.also { context.set<JsonNode>("group", mapper.valueToTree(it)) }
+    tree.putObject("outputs")
+    tree.putArray("tasks")
+    return mapper.writeValueAsString(tree)
+  }
+
+  /**
+   * @return the summary of [execution], given its [body], or `null` if the body is as small as
+   * the summary would be, which is unless it was triggered by another pipeline.
+   */
+  fun pipeline(execution: PipelineExecution, body: String): String? {
+    if (!execution.trigger.type.equals(PIPELINE_TRIGGER, ignoreCase = true)) {
+      return null
+    }
+    val tree = mapper.readTree(body) as? ObjectNode ?: return null
+    clearParentStages(tree.path("trigger"))
+    return mapper.writeValueAsString(tree)
+  }
+
+  private fun clearParentStages(trigger: JsonNode) {
+    if (!trigger.path("type").asText().equals(PIPELINE_TRIGGER, ignoreCase = true)) {
+      return
+    }
+    val parent = trigger.path("parentExecution") as? ObjectNode ?: return
+    parent.putArray("stages")
+    clearParentStages(parent.path("trigger"))
+  }
+
+  @JsonIgnoreProperties("context", "outputs", "tasks")
+  private abstract class StageSummaryMixin
+
+  private companion object {
+    const val PIPELINE_TRIGGER = "pipeline"
+  }
+}
@@ -16,6 +16,8 @@
 package com.netflix.spinnaker.orca.sql.pipeline.persistence
 
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spectator.api.NoopRegistry
+import com.netflix.spectator.api.Registry
 import com.netflix.spinnaker.kork.core.RetrySupport
 import com.netflix.spinnaker.kork.exceptions.ConfigurationException
 import com.netflix.spinnaker.kork.exceptions.SystemException
@@ -49,11 +51,14 @@ import com.netflix.spinnaker.orca.pipeline.persistence.UnpausablePipelineExcepti
 import com.netflix.spinnaker.orca.pipeline.persistence.UnresumablePipelineException
 import de.huxhorn.sulky.ulid.SpinULID
 import java.lang.System.currentTimeMillis
+import java.security.MessageDigest
 import java.security.SecureRandom
+import java.util.concurrent.TimeUnit
 import org.jooq.DSLContext
 import org.jooq.DatePart
 import org.jooq.Field
 import org.jooq.Record
+import org.jooq.SQLDialect
 import org.jooq.SelectConditionStep
 import org.jooq.SelectConnectByStep
 import org.jooq.SelectForUpdateStep
@@ -65,6 +70,7 @@ import org.jooq.exception.TooManyRowsException
 import org.jooq.impl.DSL
 import org.jooq.impl.DSL.count
 import org.jooq.impl.DSL.field
+import org.jooq.impl.DSL.md5
 import org.jooq.impl.DSL.name
 import org.jooq.impl.DSL.now
 import org.jooq.impl.DSL.table
@@ -78,6 +84,23 @@ import rx.Observable
  *
  * There is a small amount of MySQL/PostgreSQL specific commands inside, but
  * all of which safely fallback to common SQL if the dialect does not match.
+ *
+ * With an [executionCache], every write to an execution or its stages
+ * increments the execution's `version`, which is what lets the cache tell
+ * whether the rows it holds are still current. The execution row is updated
+ * before any stage row, in the same order [store] locks them. Without a cache,
+ * writes of a single stage leave the execution row alone.
+ *
+ * Pipelines and their stages are written along with their [ExecutionSummaries],
+ * which is what [retrievePipelineSummariesForPipelineConfigId] reads.
+ *
+ * Large bodies are stored compressed by [bodyCompression], if it has a threshold.
+ * Summaries, and the bodies held by an [executionCache], are never compressed.
+ *
+ * Records the time [store] spends writing the stages of an execution as the
+ * `sql.executions.stages.write` timer, tagged with whether they were written in
+ * batches, and the stages it writes or skips as unchanged as the
+ * `sql.executions.stages` counter, tagged with `state`.
  */
 class SqlExecutionRepository(
   private val partitionName: String?,
@@ -87,15 +110,34 @@ class SqlExecutionRepository(
   private val batchReadSize: Int = 10,
   private val stageReadSize: Int = 200,
   private val poolName: String = "default",
-  private val interlink: Interlink? = null
+  private val interlink: Interlink? = null,
+  private val executionCache: ExecutionCache? = null,
+  private val bodyCompression: BodyCompression = BodyCompression(),
+  registry: Registry = NoopRegistry()
 ) : ExecutionRepository, ExecutionStatisticsRepository {
   companion object {
     val ulid = SpinULID(SecureRandom())
     internal val retrySupport = RetrySupport()
+
+    /**
+     * Limits on the size of the statements stages are written in by [store], the characters
+     * being those of stage bodies. Kept well below MySQL's default `max_allowed_packet`.
+     */
+    private const val STAGE_BATCH_ROWS = 100
+    private const val STAGE_BATCH_CHARS = 1_000_000
   }
 
   private val log = LoggerFactory.getLogger(javaClass)
 
+  private val versionField = field("version", Long::class.java)
+
+  private val summaries = ExecutionSummaries(mapper)
+
+  private val batchedStagesWriteTime = registry.timer("sql.executions.stages.write", "batched", "true")
+  private val stagesWriteTime = registry.timer("sql.executions.stages.write", "batched", "false")
+  private val writtenStages = registry.counter("sql.executions.stages", "state", "written")
+  private val unchangedStages = registry.counter("sql.executions.stages", "state", "unchanged")
+
   init {
     log.info("Creating SqlExecutionRepository with partition=$partitionName and pool=$poolName")
 
@@ -126,15 +168,28 @@ class SqlExecutionRepository(
   }
 
   override fun store(execution: PipelineExecution) {
+    var written: CachedExecution? = null
     withPool(poolName) {
-      jooq.transactional { storeExecutionInternal(it, execution, true) }
+      jooq.transactional { written = storeExecutionInternal(it, execution, true) }
     }
+    written?.let { executionCache?.put(execution.type, it) }
   }
 
   override fun storeStage(stage: StageExecution) {
+    var written: StoredStage? = null
+    var version: Long? = null
     doForeignAware(PatchStageInterlinkEvent(stage.execution.type, stage.execution.id, stage.id, mapper.writeValueAsString(stage))) {
       _, dslContext ->
-      jooq.transactional { storeStageInternal(dslContext, stage) }
+      jooq.transactional {
+        version = incrementVersion(dslContext, stage.execution.type, stage.execution.id)
+        written = storeStageInternal(dslContext, stage)
+      }
+    }
+    if (executionCache != null) {
+      written?.let { (executionId, stageId, body) ->
+        version?.also { executionCache.putStage(stage.execution.type, executionId, stageId, body, it) }
+          ?: executionCache.evict(stage.execution.type, executionId)
+      }
     }
   }
 
@@ -147,6 +202,7 @@ class SqlExecutionRepository(
 
     withPool(poolName) {
       jooq.transactional {
+        incrementVersion(it, execution.type, execution.id)
         it.delete(execution.type.stagesTableName)
           .where(stageId.toWhereCondition()).execute()
       }
@@ -364,6 +420,35 @@ class SqlExecutionRepository(
     return retrieve(type, criteria, null)
   }
 
+  /**
+   * Reads the executions [fetchSize] at a time, each batch (and the stages of its executions) in
+   * a single select, and only once the previous batch has been emitted.
+   */
+  override fun retrieveExecutions(type: ExecutionType, ids: List<String>, fetchSize: Int): Observable<PipelineExecution> =
+    Observable.from(ids.chunked(fetchSize.coerceAtLeast(1)))
+      .concatMap { batch -> Observable.defer { Observable.from(selectExecutionsById(type, batch)) } }
+
+  /**
+   * @return the executions with the given [ids] that exist, in the order of the ids.
+   */
+  private fun selectExecutionsById(type: ExecutionType, ids: List<String>): List<PipelineExecution> {
+    val (ulids, legacyIds) = ids.partition { isULID(it) }
+    withPool(poolName) {
+      val executions = jooq.selectExecutions(
+        type,
+        conditions = {
+          it.where(field("id").`in`(*ulids.toTypedArray()))
+            .or(field("legacy_id").`in`(*legacyIds.toTypedArray()))
+        },
+        seek = {
+          it.orderBy(field("id").asc())
+        }
+      ).fetchExecutions().associateBy { it.id }
+
+      return ids.mapNotNull { executions[it] }
+    }
+  }
+
   private fun retrieve(type: ExecutionType, criteria: ExecutionCriteria, partition: String?): Observable<PipelineExecution> {
     withPool(poolName) {
       val select = jooq.selectExecutions(
@@ -404,7 +489,24 @@ class SqlExecutionRepository(
   override fun retrievePipelinesForPipelineConfigId(
     pipelineConfigId: String,
     criteria: ExecutionCriteria
+  ): Observable<PipelineExecution> =
+    retrievePipelinesForPipelineConfigId(pipelineConfigId, criteria, summaries = false)
+
+  override fun retrievePipelineSummariesForPipelineConfigId(
+    pipelineConfigId: String,
+    criteria: ExecutionCriteria
+  ): Observable<PipelineExecution> =
+    retrievePipelinesForPipelineConfigId(pipelineConfigId, criteria, summaries = true)
+
+  override fun hasPipelineSummaries() = true
+
+  private fun retrievePipelinesForPipelineConfigId(
+    pipelineConfigId: String,
+    criteria: ExecutionCriteria,
+    summaries: Boolean
   ): Observable<PipelineExecution> {
+    val fields = if (summaries) summaryFields() else selectFields()
+
     // When not filtering by status, provide an index hint to ensure use of `pipeline_config_id_idx` which
     // fully satisfies the where clause and order by. Without, some lookups by config_id matching thousands
     // of executions triggered costly full table scans.
@@ -412,6 +514,7 @@ class SqlExecutionRepository(
       val select = if (criteria.statuses.isEmpty() || criteria.statuses.size == ExecutionStatus.values().size) {
         jooq.selectExecutions(
           PIPELINE,
+          fields = fields,
           usingIndex = "pipeline_config_id_idx",
           conditions = {
             it.where(field("config_id").eq(pipelineConfigId))
@@ -426,6 +529,7 @@ class SqlExecutionRepository(
         // appears to be used reliably without hinting.
         jooq.selectExecutions(
           PIPELINE,
+          fields = fields,
           conditions = {
             it.where(field("config_id").eq(pipelineConfigId))
               .statusIn(criteria.statuses)
@@ -436,7 +540,7 @@ class SqlExecutionRepository(
         )
       }
 
-      return Observable.from(select.fetchExecutions())
+      return Observable.from(select.fetchExecutions(summaries))
     }
   }
 
@@ -644,6 +748,22 @@ class SqlExecutionRepository(
             conditions = conditions.and(field("status").`in`(*statusStrings.toTypedArray()))
           }
 
+          // executions stored before their trigger columns were added have no trigger type, and are
+          // left for the caller to match
+          if (executionCriteria.triggerTypes.isNotEmpty()) {
+            conditions = conditions.and(
+              field("trigger_type").`in`(*executionCriteria.triggerTypes.toTypedArray())
+                .or(field("trigger_type").isNull)
+            )
+          }
+
+          if (executionCriteria.eventId != null) {
+            conditions = conditions.and(
+              field("trigger_event_id").eq(executionCriteria.eventId)
+                .or(field("trigger_type").isNull)
+            )
+          }
+
           conditions
         },
         seek = {
@@ -734,7 +854,15 @@ class SqlExecutionRepository(
     }
   }
 
-  private fun storeExecutionInternal(ctx: DSLContext, execution: PipelineExecution, storeStages: Boolean = false) {
+  /**
+   * @return the rows written, if [storeStages] is set and there is an [executionCache] to write
+   * them through to.
+   */
+  private fun storeExecutionInternal(
+    ctx: DSLContext,
+    execution: PipelineExecution,
+    storeStages: Boolean = false
+  ): CachedExecution? {
     validateHandledPartitionOrThrow(execution)
 
     val stages = execution.stages.toMutableList().toList()
@@ -745,6 +873,8 @@ class SqlExecutionRepository(
       val stageTableName = execution.type.stagesTableName
       val status = execution.status.toString()
       val body = mapper.writeValueAsString(execution)
+      val storedBody = bodyCompression.compress(body)
+      val updatedAt = currentTimeMillis()
 
       val (executionId, legacyId) = mapLegacyId(ctx, tableName, execution.id, execution.startTime)
 
@@ -757,28 +887,38 @@ class SqlExecutionRepository(
         field("build_time") to (execution.buildTime ?: currentTimeMillis()),
         field("start_time") to execution.startTime,
         field("canceled") to execution.isCanceled,
-        field("updated_at") to currentTimeMillis(),
-        field("body") to body
+        field("updated_at") to updatedAt,
+        field("body") to storedBody
       )
 
       val updatePairs = mapOf(
         field("status") to status,
-        field("body") to body,
+        field("body") to storedBody,
         field(name("partition")) to partitionName,
         // won't have started on insert
         field("start_time") to execution.startTime,
         field("canceled") to execution.isCanceled,
-        field("updated_at") to currentTimeMillis()
+        field("updated_at") to updatedAt,
+        field("version") to versionField.plus(1)
       )
 
       when (execution.type) {
-        PIPELINE -> upsert(
-          ctx,
-          execution.type.tableName,
-          insertPairs.plus(field("config_id") to execution.pipelineConfigId),
-          updatePairs.plus(field("config_id") to execution.pipelineConfigId),
-          executionId
-        )
+        PIPELINE -> {
+          val pipelinePairs = mapOf(
+            field("config_id") to execution.pipelineConfigId,
+            field("trigger_type") to execution.trigger.type,
+            field("trigger_event_id") to execution.trigger.other["eventId"]?.toString(),
+            field("summary") to summaries.pipeline(execution, body),
+            field("summary_updated_at") to updatedAt
+          )
+          upsert(
+            ctx,
+            execution.type.tableName,
+            insertPairs.plus(pipelinePairs),
+            updatePairs.plus(pipelinePairs),
+            executionId
+          )
+        }
         ORCHESTRATION -> upsert(
           ctx,
           execution.type.tableName,
@@ -807,18 +947,40 @@ class SqlExecutionRepository(
             }.execute()
         }
 
-        stages.forEach { storeStageInternal(ctx, it, executionId) }
+        val start = System.nanoTime()
+        val batched = storeStagesInternal(ctx, execution.type, executionId, stages)
+        val stageBodies = batched ?: stages.map { storeStageInternal(ctx, it, executionId) }
+        (if (batched != null) batchedStagesWriteTime else stagesWriteTime)
+          .record(System.nanoTime() - start, TimeUnit.NANOSECONDS)
+        if (batched == null) {
+          writtenStages.increment(stages.size.toLong())
+        }
+
+        if (executionCache != null) {
+          return selectVersion(ctx, execution.type, executionId)?.let { version ->
+            CachedExecution(
+              executionId,
+              version,
+              body,
+              partitionName,
+              stageBodies.associate { it.stageId to it.body }
+            )
+          }
+        }
       }
+      return null
     } finally {
       execution.stages.addAll(stages)
     }
   }
 
-  private fun storeStageInternal(ctx: DSLContext, stage: StageExecution, executionId: String? = null) {
+  private fun storeStageInternal(ctx: DSLContext, stage: StageExecution, executionId: String? = null): StoredStage {
     val stageTable = stage.execution.type.stagesTableName
     val table = stage.execution.type.tableName
     val body = mapper.writeValueAsString(stage)
     val buildTime = stage.execution.buildTime
+    val storedBody = bodyCompression.compress(body)
+    val updatedAt = currentTimeMillis()
 
     val executionUlid = executionId ?: mapLegacyId(ctx, table, stage.execution.id, buildTime).first
     val (stageId, legacyId) = mapLegacyId(ctx, stageTable, stage.id, buildTime)
@@ -828,19 +990,142 @@ class SqlExecutionRepository(
       field("legacy_id") to legacyId,
       field("execution_id") to executionUlid,
       field("status") to stage.status.toString(),
-      field("updated_at") to currentTimeMillis(),
-      field("body") to body
+      field("updated_at") to updatedAt,
+      field("body") to storedBody
     )
 
     val updatePairs = mapOf(
       field("status") to stage.status.toString(),
-      field("updated_at") to currentTimeMillis(),
-      field("body") to body
+      field("updated_at") to updatedAt,
+      field("body") to storedBody
     )
 
-    upsert(ctx, stageTable, insertPairs, updatePairs, stage.id)
+    if (stage.execution.type == PIPELINE) {
+      val summary = mapOf(field("summary") to summaries.stage(stage), field("summary_updated_at") to updatedAt)
+      upsert(ctx, stageTable, insertPairs.plus(summary), updatePairs.plus(summary), stage.id)
+    } else {
+      upsert(ctx, stageTable, insertPairs, updatePairs, stage.id)
+    }
+
+    return StoredStage(executionUlid, stageId, body)
   }
 
+  /**
+   * Writes the [stages] of an execution as multi-row upserts of up to [STAGE_BATCH_ROWS] rows (or
+   * [STAGE_BATCH_CHARS] characters of stage bodies), skipping stages whose stored body is already
+   * the same as their serialized (and possibly compressed) body. The stored bodies are compared by
+   * their MD5 hashes, which are read along with the row ids that legacy stage ids map to in a
+   * single select.
+   *
+   * @return the rows of all [stages], whether written or not, or `null` if the dialect does not
+   * support multi-row upserts, in which case nothing has been written.
+   */
+  private fun storeStagesInternal(
+    ctx: DSLContext,
+    type: ExecutionType,
+    executionId: String,
+    stages: List<StageExecution>
+  ): List<StoredStage>? {
+    val family = ctx.dialect().family()
+    if (family != SQLDialect.MYSQL && family != SQLDialect.POSTGRES) {
+      return null
+    }
+    val stageTable = type.stagesTableName
+
+    val existing = ctx
+      .select(field("id", String::class.java), field("legacy_id", String::class.java), md5(field("body", String::class.java)))
+      .from(stageTable)
+      .where(field("execution_id").eq(executionId))
+      .fetch()
+    val hashes = existing.associate { it.value1() to it.value3() }
+    val legacyIds = existing.filter { it.value2() != null }.associate { it.value2() to it.value1() }
+
+    val updatedAt = currentTimeMillis()
+    val stored = mutableListOf<StoredStage>()
+    val dirty = mutableListOf<List<Any?>>()
+    stages.forEach { stage ->
+      val body = mapper.writeValueAsString(stage)
+      val storedBody = bodyCompression.compress(body)
+      val (stageId, legacyId) = legacyIds[stage.id]
+        ?.let { Pair(it, stage.id) }
+        ?: mapLegacyId(ctx, stageTable, stage.id, stage.execution.buildTime)
+      stored.add(StoredStage(executionId, stageId, body))
+      if (hashes[stageId] != md5(storedBody)) {
+        val row = listOf(stageId, legacyId, executionId, stage.status.toString(), updatedAt, storedBody)
+        dirty.add(if (type == PIPELINE) row + listOf(summaries.stage(stage), updatedAt) else row)
+      }
+    }
+
+    val summary = if (type == PIPELINE) listOf("summary", "summary_updated_at") else emptyList()
+    val columns = (listOf("id", "legacy_id", "execution_id", "status", "updated_at", "body") + summary).map { field(it) }
+    val updated = (listOf("status", "updated_at", "body") + summary).map { field(it) }
+    batches(dirty) { (it[5] as String).length }.forEach { batch ->
+      val insert = batch.fold(ctx.insertInto(stageTable, columns)) { step, row -> step.values(row) }
+      when (family) {
+        SQLDialect.MYSQL -> insert
+          .onDuplicateKeyUpdate()
+          .set(updated.associateWith { DSL.field("VALUES({0})", it) })
+        else -> insert
+          .onConflict(field("id"))
+          .doUpdate()
+          .set(updated.associateWith { DSL.field("excluded.{0}", it) })
+      }.execute()
+    }
+    writtenStages.increment(dirty.size.toLong())
+    unchangedStages.increment((stages.size - dirty.size).toLong())
+    return stored
+  }
+
+  /**
+   * Splits [rows] into batches of up to [STAGE_BATCH_ROWS] rows, and up to [STAGE_BATCH_CHARS]
+   * characters unless a single row is larger than that.
+   */
+  private fun <T> batches(rows: List<T>, size: (T) -> Int): List<List<T>> {
+    val batches = mutableListOf<MutableList<T>>()
+    var chars = 0
+    rows.forEach { row ->
+      val current = batches.lastOrNull()
+      if (current == null || current.size >= STAGE_BATCH_ROWS || chars + size(row) > STAGE_BATCH_CHARS) {
+        batches.add(mutableListOf(row))
+        chars = size(row)
+      } else {
+        current.add(row)
+        chars += size(row)
+      }
+    }
+    return batches
+  }
+
+  private fun md5(body: String): String =
+    MessageDigest.getInstance("MD5")
+      .digest(body.toByteArray(Charsets.UTF_8))
+      .joinToString("") { "%02x".format(it) }
+
+  /**
+   * Increments the version of an execution, as every write to the execution or its stages must
+   * while there is an [executionCache]. Called before the stages are written, so that the execution
+   * row is locked first.
+   *
+   * @return the new version, or `null` if there is no [executionCache] to write through to.
+   */
+  private fun incrementVersion(ctx: DSLContext, type: ExecutionType, id: String): Long? {
+    if (executionCache == null) {
+      return null
+    }
+    ctx.update(type.tableName)
+      .set(versionField, versionField.plus(1))
+      .where(id.toWhereCondition())
+      .execute()
+    return selectVersion(ctx, type, id)
+  }
+
+  private fun selectVersion(ctx: DSLContext, type: ExecutionType, id: String): Long? =
+    ctx.select(versionField)
+      .from(type.tableName)
+      .where(id.toWhereCondition())
+      .fetchOne()
+      ?.value1()
+
   private fun storeCorrelationIdInternal(ctx: DSLContext, execution: PipelineExecution) {
     if (execution.trigger.correlationId != null && !execution.status.isComplete) {
       val executionIdField = when (execution.type) {
@@ -922,6 +1207,10 @@ class SqlExecutionRepository(
     forUpdate: Boolean = false
   ): PipelineExecution? {
     withPool(poolName) {
+      if (executionCache != null && !forUpdate) {
+        return selectCachedExecution(ctx, executionCache, type, id)
+      }
+
       val select = ctx.selectExecution(type).where(id.toWhereCondition())
       if (forUpdate) {
         select.forUpdate()
@@ -930,6 +1219,58 @@ class SqlExecutionRepository(
     }
   }
 
+  /**
+   * Reads an execution through [cache]: the cached rows are used if the execution's version is
+   * unchanged since they were cached, otherwise its rows are read and cached afresh.
+   */
+  private fun selectCachedExecution(
+    ctx: DSLContext,
+    cache: ExecutionCache,
+    type: ExecutionType,
+    id: String
+  ): PipelineExecution? {
+    val cached = if (isULID(id) && !cache.contains(type, id)) {
+      // nothing to check the version of
+      null
+    } else {
+      val current = ctx.select(field("id", String::class.java), versionField)
+        .from(type.tableName)
+        .where(id.toWhereCondition())
+        .fetchOne()
+        ?: return null
+      cache.get(type, current.value1(), current.value2())
+    }
+
+    val rows = cached
+      ?: selectExecutionRows(ctx, type, id)?.also { cache.put(type, it) }
+      ?: return null
+    return ExecutionMapper(mapper, stageReadSize).map(rows)
+  }
+
+  private fun selectExecutionRows(ctx: DSLContext, type: ExecutionType, id: String): CachedExecution? {
+    val partitionField = field(name("partition"), String::class.java)
+    val execution = ctx
+      .select(field("id", String::class.java), versionField, field("body", String::class.java), partitionField)
+      .from(type.tableName)
+      .where(id.toWhereCondition())
+      .fetchOne()
+      ?: return null
+
+    val stages = ctx.select(field("id", String::class.java), field("body", String::class.java))
+      .from(type.stagesTableName)
+      .where(field("execution_id").eq(execution.value1()))
+      .fetch()
+      .associate { it.value1() to bodyCompression.decompress(it.value2()) }
+
+    return CachedExecution(
+      execution.value1(),
+      execution.value2(),
+      bodyCompression.decompress(execution.value3()),
+      execution.value4(),
+      stages
+    )
+  }
+
   private fun selectExecutions(
     type: ExecutionType,
     limit: Int,
@@ -1001,8 +1342,11 @@ class SqlExecutionRepository(
   private fun selectFields() =
     listOf(field("id"), field("body"), field("`partition`"))
 
-  private fun SelectForUpdateStep<out Record>.fetchExecutions() =
-    ExecutionMapper(mapper, stageReadSize).map(fetch().intoResultSet(), jooq)
+  private fun summaryFields() =
+    listOf(field("id"), summaryField, field("`partition`"))
+
+  private fun SelectForUpdateStep<out Record>.fetchExecutions(summaries: Boolean = false) =
+    ExecutionMapper(mapper, stageReadSize, summaries, bodyCompression).map(fetch().intoResultSet(), jooq)
 
   private fun SelectForUpdateStep<out Record>.fetchExecution() =
     fetchExecutions().firstOrNull()
@@ -1048,4 +1392,6 @@ class SqlExecutionRepository(
     isForeign(execution, true)
 
   class SyntheticStageRequired : IllegalArgumentException("Only synthetic stages can be inserted ad-hoc")
+
+  private data class StoredStage(val executionId: String, val stageId: String, val body: String)
 }
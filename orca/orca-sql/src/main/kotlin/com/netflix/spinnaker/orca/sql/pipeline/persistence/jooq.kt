@@ -82,10 +82,23 @@ internal val ExecutionType.stagesTableName: Table<Record>
   }
 
 /**
- * Selects all stages for an [executionType] and List [executionIds].
+ * The `summary` of a pipeline or stage row as `body`, or its body if it has no summary or the
+ * summary is out of date, having been written before the body was last written by an instance
+ * that does not write summaries.
  */
-internal fun DSLContext.selectExecutionStages(executionType: ExecutionType, executionIds: Collection<String>) =
-  select(field("execution_id"), field("body"))
+internal val summaryField =
+  field("case when summary_updated_at = updated_at then coalesce(summary, body) else body end").`as`("body")
+
+/**
+ * Selects all stages for an [executionType] and List [executionIds], with their [summaryField]
+ * as their body if [summaries] is set.
+ */
+internal fun DSLContext.selectExecutionStages(
+  executionType: ExecutionType,
+  executionIds: Collection<String>,
+  summaries: Boolean = false
+) =
+  select(field("execution_id"), if (summaries) summaryField else field("body"))
     .from(executionType.stagesTableName)
     .where(field("execution_id").`in`(*executionIds.toTypedArray()))
     .fetch()
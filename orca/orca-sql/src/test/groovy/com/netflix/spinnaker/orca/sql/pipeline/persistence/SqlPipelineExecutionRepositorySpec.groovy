@@ -29,10 +29,12 @@ import com.netflix.spinnaker.orca.interlink.events.PauseInterlinkEvent
 import com.netflix.spinnaker.orca.interlink.events.ResumeInterlinkEvent
 import com.netflix.spinnaker.orca.interlink.events.PatchStageInterlinkEvent
 import com.netflix.spinnaker.orca.jackson.OrcaObjectMapper
+import com.netflix.spinnaker.orca.pipeline.model.DefaultTrigger
 import com.netflix.spinnaker.orca.pipeline.model.PipelineExecutionImpl
 import com.netflix.spinnaker.orca.pipeline.model.StageExecutionImpl
 import com.netflix.spinnaker.orca.pipeline.persistence.ExecutionRepository
 import com.netflix.spinnaker.orca.pipeline.persistence.PipelineExecutionRepositoryTck
+import java.util.zip.Deflater
 import org.jooq.impl.DSL
 import rx.schedulers.Schedulers
 import de.huxhorn.sulky.ulid.ULID
@@ -41,12 +43,16 @@ import spock.lang.Shared
 import spock.lang.Unroll
 
 import static com.netflix.spinnaker.kork.sql.test.SqlTestUtil.initPreviousTcMysqlDatabase
+import static com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus.NOT_STARTED
+import static com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus.RUNNING
+import static com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus.SUCCEEDED
 import static com.netflix.spinnaker.orca.api.pipeline.models.ExecutionType.PIPELINE
 import static com.netflix.spinnaker.orca.pipeline.persistence.ExecutionRepository.ExecutionComparator.BUILD_TIME_ASC
 import static com.netflix.spinnaker.orca.pipeline.persistence.ExecutionRepository.ExecutionComparator.BUILD_TIME_DESC
 import static com.netflix.spinnaker.orca.pipeline.persistence.ExecutionRepository.ExecutionCriteria
 import static com.netflix.spinnaker.orca.test.model.ExecutionBuilder.orchestration
 import static com.netflix.spinnaker.orca.test.model.ExecutionBuilder.pipeline
+import static com.netflix.spinnaker.orca.test.model.ExecutionBuilder.stage
 import static com.netflix.spinnaker.kork.sql.test.SqlTestUtil.cleanupDb
 import static com.netflix.spinnaker.kork.sql.test.SqlTestUtil.initTcMysqlDatabase
 
@@ -85,13 +91,13 @@ class SqlPipelineExecutionRepositorySpec extends PipelineExecutionRepositoryTck<
 
   @Override
   ExecutionRepository createExecutionRepositoryPrevious() {
-    new SqlExecutionRepository("test", previousDatabase.context, mapper, new RetryProperties(), 10, 100, "poolName", null)
+    new SqlExecutionRepository("test", previousDatabase.context, mapper, new RetryProperties(), 10, 100, "poolName", null, null)
   }
 
-  ExecutionRepository createExecutionRepository(String partition, Interlink interlink = null) {
+  ExecutionRepository createExecutionRepository(String partition, Interlink interlink = null, ExecutionCache executionCache = null, BodyCompression bodyCompression = new BodyCompression(), DefaultRegistry registry = new DefaultRegistry()) {
     return com.netflix.spinnaker.kork.telemetry.InstrumentedProxy.proxy(
-        new DefaultRegistry(),
-        new SqlExecutionRepository(partition, currentDatabase.context, mapper, new RetryProperties(), 10, 100, "poolName", interlink),
+        registry,
+        new SqlExecutionRepository(partition, currentDatabase.context, mapper, new RetryProperties(), 10, 100, "poolName", interlink, executionCache, bodyCompression, registry),
         "namespace")
   }
 
@@ -666,4 +672,271 @@ class SqlPipelineExecutionRepositorySpec extends PipelineExecutionRepositoryTck<
       new ExecutionCriteria().setPageSize(1).setSortType(BUILD_TIME_ASC)
     ).size() == 0
   }
+
+  def "filters pipelines by trigger type and event id in the database"() {
+    given:
+    def triggers = [
+      new DefaultTrigger("docker"),
+      new DefaultTrigger("jenkins"),
+      new DefaultTrigger("pubsub"),
+      new DefaultTrigger("pubsub")
+    ]
+    triggers[2].other.eventId = "event-1"
+    triggers[3].other.eventId = "event-2"
+    def ids = triggers.withIndex().collect { trigger, i ->
+      def execution = pipeline {
+        application = "spinnaker"
+        pipelineConfigId = "foo1"
+        buildTime = i + 1
+      }
+      execution.trigger = trigger
+      repository.store(execution)
+      execution.id
+    }
+
+    and: "one execution was stored before its trigger columns were recorded"
+    def legacy = pipeline {
+      application = "spinnaker"
+      pipelineConfigId = "foo1"
+      buildTime = 5
+    }
+    legacy.trigger = new DefaultTrigger("git")
+    repository.store(legacy)
+    currentDatabase.context
+      .update(DSL.table("pipelines"))
+      .set(DSL.field("trigger_type"), (Object) null)
+      .set(DSL.field("trigger_event_id"), (Object) null)
+      .where(DSL.field("id").eq(legacy.id))
+      .execute()
+
+    when:
+    def byType = repository.retrievePipelinesForPipelineConfigIdsBetweenBuildTimeBoundary(
+      ["foo1"], 0L, 10L, new ExecutionCriteria().setTriggerTypes(["docker", "pubsub"]).setSortType(BUILD_TIME_ASC)
+    )
+    def byEventId = repository.retrievePipelinesForPipelineConfigIdsBetweenBuildTimeBoundary(
+      ["foo1"], 0L, 10L, new ExecutionCriteria().setEventId("event-2").setSortType(BUILD_TIME_ASC)
+    )
+
+    then:
+    byType*.id == [ids[0], ids[2], ids[3], legacy.id]
+    byEventId*.id == [ids[3], legacy.id]
+  }
+
+  def "reads pipeline summaries instead of full pipelines"() {
+    given:
+    def execution = pipeline {
+      application = "spinnaker"
+      pipelineConfigId = "foo1"
+      stage {
+        refId = "1"
+        type = "wait"
+        context = [waitTime: 10, group: "deploy"]
+        outputs = [foo: "FOO"]
+      }
+      stage {
+        refId = "2"
+        type = "wait"
+        context = [waitTime: 10]
+      }
+    }
+    repository.store(execution)
+    def running = execution.stageByRef("2")
+    running.context.waitTime = 20
+    running.status = RUNNING
+    repository.storeStage(running)
+
+    when:
+    def summary = repository.retrievePipelineSummariesForPipelineConfigId("foo1", new ExecutionCriteria()).toBlocking().single()
+
+    then:
+    summary.id == execution.id
+    summary.stages*.refId == ["1", "2"]
+    summary.stages*.status == [NOT_STARTED, RUNNING]
+    summary.stages*.context == [[group: "deploy"], [:]]
+    summary.stages*.outputs == [[:], [:]]
+
+    and: "the full pipelines are still read by default"
+    repository.retrievePipelinesForPipelineConfigId("foo1", new ExecutionCriteria()).toBlocking().single()
+      .stages*.context == [[waitTime: 10, group: "deploy"], [waitTime: 20]]
+
+    when: "a stage is written by an instance that does not write summaries"
+    running.status = SUCCEEDED
+    currentDatabase.context
+      .update(DSL.table("pipeline_stages"))
+      .set(DSL.field("body"), mapper.writeValueAsString(running))
+      .set(DSL.field("updated_at"), System.currentTimeMillis() + 1000)
+      .where(DSL.field("id").eq(running.id))
+      .execute()
+    summary = repository.retrievePipelineSummariesForPipelineConfigId("foo1", new ExecutionCriteria()).toBlocking().single()
+
+    then: "its body is read instead of its out of date summary"
+    summary.stages*.status == [NOT_STARTED, SUCCEEDED]
+  }
+
+  def "streams executions by id in the order of the ids"() {
+    given:
+    def executions = (1..5).collect { i ->
+      def execution = pipeline {
+        application = "spinnaker"
+        name = "Execution #${i}"
+        stage {
+          refId = "1"
+          type = "wait"
+        }
+      }
+      repository.store(execution)
+      execution
+    }
+    def ids = [executions[3].id, "does-not-exist", executions[0].id, executions[4].id, executions[1].id]
+
+    when:
+    def streamed = repository.retrieveExecutions(PIPELINE, ids, 2).toList().toBlocking().single()
+
+    then:
+    streamed*.id == [executions[3].id, executions[0].id, executions[4].id, executions[1].id]
+    streamed.every { it.stages.size() == 1 }
+  }
+
+  def "retrieves executions through the execution cache"() {
+    given:
+    def cache = new ExecutionCache(10, new DefaultRegistry())
+    ExecutionRepository repo = createExecutionRepository("test", null, cache)
+    // versions are only maintained by repositories with a cache, so every instance needs one
+    ExecutionRepository otherRepo = createExecutionRepository("test", null, new ExecutionCache(10, new DefaultRegistry()))
+    PipelineExecution orig = new PipelineExecutionImpl(PIPELINE, "myapp")
+    orig.stages.add(new StageExecutionImpl(orig, "wait", "wait stage", [foo: 'FOO']))
+    repo.store(orig)
+
+    when: "the cached execution is updated by this repository"
+    def stage = repo.retrieve(PIPELINE, orig.id).stages[0]
+    stage.name = "updated here"
+    repo.storeStage(stage)
+
+    then: "the write is applied to the cached rows"
+    repo.retrieve(PIPELINE, orig.id).stages[0].name == "updated here"
+    cache.get(PIPELINE, orig.id, 1) != null
+
+    when: "the execution is updated elsewhere"
+    def elsewhere = otherRepo.retrieve(PIPELINE, orig.id).stages[0]
+    elsewhere.name = "updated elsewhere"
+    otherRepo.storeStage(elsewhere)
+
+    then: "the cached rows are not used"
+    repo.retrieve(PIPELINE, orig.id).stages[0].name == "updated elsewhere"
+
+    and: "each retrieve maps its own copy"
+    !repo.retrieve(PIPELINE, orig.id).is(repo.retrieve(PIPELINE, orig.id))
+  }
+
+  def "only increments the version of an execution on stage writes when there is an execution cache"() {
+    given:
+    PipelineExecution orig = new PipelineExecutionImpl(PIPELINE, "myapp")
+    orig.stages.add(new StageExecutionImpl(orig, "wait", "wait stage", [foo: 'FOO']))
+    createExecutionRepository().store(orig)
+
+    def version = {
+      currentDatabase.context
+        .select(DSL.field("version"))
+        .from(DSL.table("pipelines"))
+        .where(DSL.field("id").eq(orig.id))
+        .fetchOne(0, Long)
+    }
+    def stored = version()
+
+    when:
+    createExecutionRepository().storeStage(orig.stages[0])
+
+    then:
+    version() == stored
+
+    when:
+    createExecutionRepository("test", null, new ExecutionCache(10, new DefaultRegistry())).storeStage(orig.stages[0])
+
+    then:
+    version() == stored + 1
+  }
+
+  def "writes only the stages of an execution that have changed"() {
+    given:
+    def registry = new DefaultRegistry()
+    ExecutionRepository repo = createExecutionRepository("test", null, null, new BodyCompression(), registry)
+    PipelineExecution e = new PipelineExecutionImpl(PIPELINE, "myapp")
+    (1..250).each {
+      e.stages.add(new StageExecutionImpl(e, "wait", "stage $it", [index: it]))
+    }
+    repo.store(e)
+
+    def updatedAt = { String stageId ->
+      currentDatabase.context
+        .select(DSL.field("updated_at"))
+        .from(DSL.table("pipeline_stages"))
+        .where(DSL.field("id").eq(stageId))
+        .fetchOne(0, Long)
+    }
+    def unchangedAt = updatedAt(e.stages[0].id)
+
+    when:
+    sleep(10) // so rewritten stages have a later updated_at
+    e.stages[1].context.index = "changed"
+    e.stages.add(new StageExecutionImpl(e, "wait", "new stage", [:]))
+    repo.store(e)
+
+    then:
+    with(repo.retrieve(PIPELINE, e.id)) {
+      stages.size() == 251
+      stages.find { it.id == e.stages[1].id }.context.index == "changed"
+      stages.find { it.name == "new stage" } != null
+    }
+    updatedAt(e.stages[0].id) == unchangedAt
+    updatedAt(e.stages[1].id) > unchangedAt
+
+    and: "both stores are timed, and only the changed and new stages are counted as written the second time"
+    registry.timer("sql.executions.stages.write", "batched", "true").count() == 2
+    registry.counter("sql.executions.stages", "state", "written").count() == 250 + 2
+    registry.counter("sql.executions.stages", "state", "unchanged").count() == 249
+  }
+
+  def "stores large bodies compressed and reads them along with uncompressed ones"() {
+    given:
+    def registry = new DefaultRegistry()
+    ExecutionRepository uncompressedRepo = createExecutionRepository("test")
+    ExecutionRepository repo = createExecutionRepository("test", null, null, new BodyCompression(5000, Deflater.BEST_SPEED, registry))
+    PipelineExecution e = new PipelineExecutionImpl(PIPELINE, "myapp")
+    e.stages.add(new StageExecutionImpl(e, "wait", "small stage", [foo: 'FOO']))
+    e.stages.add(new StageExecutionImpl(e, "wait", "large stage", [big: 'x' * 10000]))
+    uncompressedRepo.store(e)
+
+    def storedBody = { String table, String id ->
+      currentDatabase.context
+        .select(DSL.field("body"))
+        .from(DSL.table(table))
+        .where(DSL.field("id").eq(id))
+        .fetchOne(0, String)
+    }
+
+    expect: "bodies written before compression was enabled are read as they are"
+    !storedBody("pipeline_stages", e.stages[1].id).startsWith(BodyCompression.MARKER)
+    repo.retrieve(PIPELINE, e.id).stages.find { it.name == "large stage" }.context.big == 'x' * 10000
+
+    when:
+    def large = repo.retrieve(PIPELINE, e.id).stages.find { it.name == "large stage" }
+    large.context.foo = 'UPDATED'
+    repo.storeStage(large)
+
+    then: "the large stage is stored compressed"
+    storedBody("pipeline_stages", large.id).startsWith(BodyCompression.MARKER)
+    !storedBody("pipeline_stages", e.stages[0].id).startsWith(BodyCompression.MARKER)
+    registry.counter("sql.bodies.compression.chars", "state", "raw").count() >
+      registry.counter("sql.bodies.compression.chars", "state", "compressed").count()
+
+    and: "compressed and uncompressed bodies read the same from either repository"
+    [repo, uncompressedRepo].every { r ->
+      def retrieved = r.retrieve(PIPELINE, e.id)
+      def largeStage = retrieved.stages.find { it.name == "large stage" }
+      retrieved.stages.size() == 2 &&
+        largeStage.context.big == 'x' * 10000 &&
+        largeStage.context.foo == 'UPDATED' &&
+        retrieved.stages.find { it.name == "small stage" }.context.foo == 'FOO'
+    }
+  }
 }
@@ -16,9 +16,11 @@
 
 package com.netflix.spinnaker.orca.controllers
 
+import com.fasterxml.jackson.core.JsonGenerator
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.google.common.annotations.VisibleForTesting
 import com.netflix.spectator.api.Registry
+import com.netflix.spinnaker.fiat.shared.FiatPermissionEvaluator
 import com.netflix.spinnaker.kork.web.exceptions.NotFoundException
 import com.netflix.spinnaker.orca.api.pipeline.graph.StageDefinitionBuilder
 import com.netflix.spinnaker.orca.api.pipeline.models.*
@@ -37,13 +39,18 @@ import groovy.util.logging.Slf4j
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.beans.factory.annotation.Value
 import org.springframework.http.HttpStatus
+import org.springframework.http.MediaType
 import org.springframework.security.access.prepost.PostAuthorize
 import org.springframework.security.access.prepost.PostFilter
 import org.springframework.security.access.prepost.PreAuthorize
 import org.springframework.security.access.prepost.PreFilter
+import org.springframework.security.core.Authentication
+import org.springframework.security.core.context.SecurityContextHolder
 import org.springframework.web.bind.annotation.*
 import rx.schedulers.Schedulers
 
+import javax.servlet.http.HttpServletResponse
+
 import java.nio.charset.Charset
 import java.time.Clock
 import java.time.ZoneOffset
@@ -90,12 +97,18 @@ class TaskController {
   @Autowired
   StageDefinitionBuilderFactory stageDefinitionBuilderFactory
 
+  @Autowired(required = false)
+  FiatPermissionEvaluator fiatPermissionEvaluator
+
   @Value('${tasks.days-of-execution-history:14}')
   int daysOfExecutionHistory
 
   @Value('${tasks.number-of-old-pipeline-executions-to-include:2}')
   int numberOfOldPipelineExecutionsToInclude
 
+  @Value('${tasks.execution-stream-fetch-size:20}')
+  int executionStreamFetchSize = 20
+
   Clock clock = Clock.systemUTC()
 
   @PreAuthorize("hasPermission(#application, 'APPLICATION', 'READ')")
@@ -194,14 +207,14 @@ class TaskController {
  * it is defaulted to true.
  * @return
  */
-  @PostFilter("hasPermission(filterObject.application, 'APPLICATION', 'READ')")
   @RequestMapping(value = "/pipelines", method = RequestMethod.GET)
-  List<PipelineExecution> listSubsetOfPipelines(
+  void listSubsetOfPipelines(
     @RequestParam(value = "pipelineConfigIds", required = false) String pipelineConfigIds,
     @RequestParam(value = "executionIds", required = false) String executionIds,
     @RequestParam(value = "limit", required = false) Integer limit,
     @RequestParam(value = "statuses", required = false) String statuses,
-    @RequestParam(value = "expand", defaultValue = "true") boolean expand) {
+    @RequestParam(value = "expand", defaultValue = "true") boolean expand,
+    HttpServletResponse response) {
     statuses = statuses ?: ExecutionStatus.values()*.toString().join(",")
     limit = limit ?: 1
     ExecutionCriteria executionCriteria = new ExecutionCriteria(
@@ -210,41 +223,35 @@ class TaskController {
     )
 
     if (!pipelineConfigIds && !executionIds) {
-      return []
+      writeExecutions(response, rx.Observable.empty(), expand)
+      return
     }
 
     if (pipelineConfigIds && executionIds) {
       throw new IllegalArgumentException("Only pipelineConfigIds OR executionIds can be specified")
     }
 
+    // the applications of these executions are only known once they have been read, so they can not
+    // be filtered with @PostFilter without holding all of them
+    Map<String, Boolean> readableApplications = [:]
+    Closure<Boolean> isReadable = { PipelineExecution execution ->
+      readableApplications.computeIfAbsent(execution.application, { hasReadPermission(it) })
+    }
+
     if (executionIds) {
       List<String> ids = executionIds.split(',')
-
-      List<PipelineExecution> executions = rx.Observable.from(ids.collect {
-        try {
-          executionRepository.retrieve(PIPELINE, it)
-        } catch (ExecutionNotFoundException e) {
-          null
-        }
-      }).subscribeOn(Schedulers.io()).toList().toBlocking().single().findAll()
-
-      if (!expand) {
-        unexpandPipelineExecutions(executions)
-      }
-
-      return executions
+      writeExecutions(
+        response,
+        executionRepository.retrieveExecutions(PIPELINE, ids, executionStreamFetchSize).filter(isReadable),
+        expand
+      )
+      return
     }
     List<String> ids = pipelineConfigIds.split(',')
 
-    List<PipelineExecution> allPipelines = rx.Observable.merge(ids.collect {
-      executionRepository.retrievePipelinesForPipelineConfigId(it, executionCriteria)
-    }).subscribeOn(Schedulers.io()).toList().toBlocking().single().sort(startTimeOrId)
-
-    if (!expand) {
-      unexpandPipelineExecutions(allPipelines)
-    }
-
-    return filterPipelinesByHistoryCutoff(allPipelines, limit)
+    List<PipelineExecution> selected = selectPipelinesForPipelineConfigIds(ids, executionCriteria, limit)
+      .findAll(isReadable)
+    writeSelectedPipelines(response, selected, expand)
   }
 
   /**
@@ -350,6 +357,15 @@ class TaskController {
       executionCriteria.setStatuses(statuses.split(",").toList())
     }
 
+    // Let the repository filter by trigger type and event ID where it can, so that only matching
+    // executions are loaded; they are still checked below, as not every execution may be indexed
+    if (triggerTypesAsSet) {
+      executionCriteria.setTriggerTypes(triggerTypesAsSet)
+    }
+    if (eventId) {
+      executionCriteria.setEventId(eventId)
+    }
+
     List<PipelineExecution> matchingExecutions = new ArrayList<>()
 
     int page = 1
@@ -573,29 +589,32 @@ class TaskController {
 
   @PreAuthorize("hasPermission(#application, 'APPLICATION', 'READ')")
   @RequestMapping(value = "/v2/applications/{application}/pipelines", method = RequestMethod.GET)
-  List<PipelineExecution> getApplicationPipelines(@PathVariable String application,
+  void getApplicationPipelines(@PathVariable String application,
                                                       @RequestParam(value = "limit", defaultValue = "5")
                                             int limit,
                                                       @RequestParam(value = "statuses", required = false)
                                             String statuses,
-                                                      @RequestParam(value = "expand", defaultValue = "true") Boolean expand) {
-    return getPipelinesForApplication(application, limit, statuses, expand)
+                                                      @RequestParam(value = "expand", defaultValue = "true") Boolean expand,
+                               HttpServletResponse response) {
+    getPipelinesForApplication(application, limit, statuses, expand, response)
   }
 
   @PreAuthorize("hasPermission(#application, 'APPLICATION', 'READ')")
   @RequestMapping(value = "/applications/{application}/pipelines", method = RequestMethod.GET)
-  List<PipelineExecution> getPipelinesForApplication(@PathVariable String application,
+  void getPipelinesForApplication(@PathVariable String application,
                                                          @RequestParam(value = "limit", defaultValue = "5")
                                                int limit,
                                                          @RequestParam(value = "statuses", required = false)
                                                String statuses,
-                                                         @RequestParam(value = "expand", defaultValue = "true") Boolean expand) {
+                                                         @RequestParam(value = "expand", defaultValue = "true") Boolean expand,
+                                  HttpServletResponse response) {
     if (!front50Service) {
       throw new UnsupportedOperationException("Cannot lookup pipelines, front50 has not been enabled. Fix this by setting front50.enabled: true")
     }
 
     if (!limit) {
-      return []
+      writeExecutions(response, rx.Observable.empty(), expand)
+      return
     }
 
     statuses = statuses ?: ExecutionStatus.values()*.toString().join(",")
@@ -608,15 +627,62 @@ class TaskController {
     def strategyConfigIds = front50Service.getStrategies(application)*.id as List<String>
     def allIds = pipelineConfigIds + strategyConfigIds
 
-    def allPipelines = rx.Observable.merge(allIds.collect {
-      executionRepository.retrievePipelinesForPipelineConfigId(it, executionCriteria)
+    writeSelectedPipelines(response, selectPipelinesForPipelineConfigIds(allIds, executionCriteria, limit), expand)
+  }
+
+  /**
+   * Works out which executions of the given pipeline configs to list, and in which order, from their
+   * summaries, so that the full executions can be read and written one batch at a time afterwards.
+   */
+  private List<PipelineExecution> selectPipelinesForPipelineConfigIds(List<String> pipelineConfigIds,
+                                                                      ExecutionCriteria executionCriteria,
+                                                                      int limit) {
+    List<PipelineExecution> summaries = rx.Observable.merge(pipelineConfigIds.collect {
+      executionRepository.retrievePipelineSummariesForPipelineConfigId(it, executionCriteria)
     }).subscribeOn(Schedulers.io()).toList().toBlocking().single().sort(startTimeOrId)
 
-    if (!expand) {
-      unexpandPipelineExecutions(allPipelines)
+    return filterPipelinesByHistoryCutoff(summaries, limit)
+  }
+
+  private void writeSelectedPipelines(HttpServletResponse response, List<PipelineExecution> selected, boolean expand) {
+    if (expand && executionRepository.hasPipelineSummaries()) {
+      writeExecutions(response, executionRepository.retrieveExecutions(PIPELINE, selected*.id, executionStreamFetchSize), true)
+    } else {
+      // repositories without summaries have already read the full executions, so they are not read again
+      writeExecutions(response, rx.Observable.from(selected), expand)
+    }
+  }
+
+  /**
+   * Writes executions to the response as a JSON array as they are emitted, rather than collecting them
+   * first, so that only the executions being written are held at any one time.
+   *
+   * The array is only closed once every execution has been written. If reading or writing one fails
+   * part way through, the response is left as invalid JSON rather than passing for a complete list.
+   */
+  private void writeExecutions(HttpServletResponse response, rx.Observable<PipelineExecution> executions, boolean expand) {
+    response.contentType = MediaType.APPLICATION_JSON_VALUE
+    JsonGenerator generator = mapper.factory.createGenerator(response.outputStream)
+      .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)
+    generator.writeStartArray()
+    executions.toBlocking().forEach { PipelineExecution execution ->
+      if (!expand) {
+        unexpandPipelineExecutions([execution])
+      }
+      mapper.writeValue(generator, execution)
     }
+    generator.writeEndArray()
+    generator.close()
+  }
 
-    return filterPipelinesByHistoryCutoff(allPipelines, limit)
+  /**
+   * Denies access when there is no permission evaluator, as the default evaluator behind
+   * {@code hasPermission} does.
+   */
+  private boolean hasReadPermission(String application) {
+    return fiatPermissionEvaluator != null && fiatPermissionEvaluator.hasPermission(
+      (Authentication) SecurityContextHolder.context.authentication, application, "APPLICATION", "READ"
+    )
   }
 
   private static void validateSearchForPipelinesByTriggerParameters(long triggerTimeStartBoundary, long triggerTimeEndBoundary, int startIndex, int size) {
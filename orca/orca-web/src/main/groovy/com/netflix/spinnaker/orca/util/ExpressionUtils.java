@@ -26,6 +26,7 @@ import com.netflix.spinnaker.orca.pipeline.expressions.PipelineExpressionEvaluat
 import com.netflix.spinnaker.orca.pipeline.model.StageExecutionImpl;
 import com.netflix.spinnaker.orca.pipeline.util.ContextParameterProcessor;
 import com.netflix.spinnaker.orca.q.handler.ExpressionAware;
+import com.netflix.spinnaker.orca.q.handler.MergedContextCache;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -96,6 +97,12 @@ public class ExpressionUtils implements ExpressionAware {
     return stageDefinitionBuilderFactory;
   }
 
+  @Nullable
+  @Override
+  public MergedContextCache getMergedContextCache() {
+    return DefaultImpls.getMergedContextCache(this);
+  }
+
   @Override
   public boolean shouldFailOnFailedExpressionEvaluation(@NotNull StageExecution stage) {
     return false;
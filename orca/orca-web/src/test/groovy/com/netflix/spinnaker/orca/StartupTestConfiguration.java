@@ -16,6 +16,7 @@
 
 package com.netflix.spinnaker.orca;
 
+import com.netflix.spinnaker.q.MessagePriorityPolicy;
 import com.netflix.spinnaker.q.Queue;
 import com.netflix.spinnaker.q.memory.InMemoryQueue;
 import com.netflix.spinnaker.q.metrics.EventPublisher;
@@ -32,6 +33,12 @@ class StartupTestConfiguration {
   @Primary
   Queue queue(Clock clock, EventPublisher publisher) {
     return new InMemoryQueue(
-        clock, Duration.ofMinutes(1), Collections.emptyList(), false, publisher);
+        clock,
+        Duration.ofMinutes(1),
+        Collections.emptyList(),
+        false,
+        publisher,
+        new MessagePriorityPolicy(),
+        null);
   }
 }
@@ -19,6 +19,7 @@ package com.netflix.spinnaker.orca.controllers
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.google.common.collect.Collections2
 import com.netflix.spectator.api.NoopRegistry
+import com.netflix.spinnaker.fiat.shared.FiatPermissionEvaluator
 import com.netflix.spinnaker.kork.artifacts.model.Artifact
 import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionStatus
 import com.netflix.spinnaker.orca.api.pipeline.models.ExecutionType
@@ -65,21 +66,27 @@ class TaskControllerSpec extends Specification {
 
   ObjectMapper objectMapper = OrcaObjectMapper.newInstance()
 
+  def fiatPermissionEvaluator = Stub(FiatPermissionEvaluator)
+  Set<String> unreadableApplications = []
+
+  TaskController taskController
+
   void setup() {
-    mockMvc = MockMvcBuilders.standaloneSetup(
-      new TaskController(
-        front50Service: front50Service,
-        executionRepository: executionRepository,
-        executionRunner: executionRunner,
-        daysOfExecutionHistory: daysOfExecutionHistory,
-        numberOfOldPipelineExecutionsToInclude: numberOfOldPipelineExecutionsToInclude,
-        clock: clock,
-        mapper: mapper,
-        registry: registry,
-        contextParameterProcessor: new ContextParameterProcessor(),
-        executionOperator: executionOperator
-      )
-    ).build()
+    fiatPermissionEvaluator.hasPermission(*_) >> { args -> !unreadableApplications.contains(args[1]) }
+    taskController = new TaskController(
+      front50Service: front50Service,
+      executionRepository: executionRepository,
+      executionRunner: executionRunner,
+      daysOfExecutionHistory: daysOfExecutionHistory,
+      numberOfOldPipelineExecutionsToInclude: numberOfOldPipelineExecutionsToInclude,
+      clock: clock,
+      mapper: mapper,
+      registry: registry,
+      contextParameterProcessor: new ContextParameterProcessor(),
+      executionOperator: executionOperator,
+      fiatPermissionEvaluator: fiatPermissionEvaluator
+    )
+    mockMvc = MockMvcBuilders.standaloneSetup(taskController).build()
   }
 
   void '/tasks returns a list of active tasks'() {
@@ -224,7 +231,7 @@ class TaskControllerSpec extends Specification {
       [pipelineConfigId: "2", id: 'older3', application: app, startTime: clock.instant().minus(daysOfExecutionHistory + 1, DAYS).minus(4, HOURS).toEpochMilli()]
     ]
 
-    executionRepository.retrievePipelinesForPipelineConfigId("1", _) >> rx.Observable.from(pipelines.findAll {
+    executionRepository.retrievePipelineSummariesForPipelineConfigId("1", _) >> rx.Observable.from(pipelines.findAll {
       it.pipelineConfigId == "1"
     }.collect { config ->
       pipeline {
@@ -234,7 +241,7 @@ class TaskControllerSpec extends Specification {
         pipelineConfigId = config.pipelineConfigId
       }
     })
-    executionRepository.retrievePipelinesForPipelineConfigId("2", _) >> rx.Observable.from(pipelines.findAll {
+    executionRepository.retrievePipelineSummariesForPipelineConfigId("2", _) >> rx.Observable.from(pipelines.findAll {
       it.pipelineConfigId == "2"
     }.collect { config ->
       pipeline {
@@ -244,6 +251,15 @@ class TaskControllerSpec extends Specification {
         pipelineConfigId = config.pipelineConfigId
       }
     })
+    executionRepository.hasPipelineSummaries() >> true
+    executionRepository.retrieveExecutions(ExecutionType.PIPELINE, _, _) >> { type, List<String> ids, int fetchSize ->
+      rx.Observable.from(ids.collect { executionId ->
+        pipeline {
+          id = executionId
+          application = app
+        }
+      })
+    }
     front50Service.getPipelines(app, false) >> [[id: "1"], [id: "2"]]
     front50Service.getStrategies(app) >> []
 
@@ -294,7 +310,7 @@ class TaskControllerSpec extends Specification {
       [pipelineConfigId: "3", id: "started-5", application: "covfefe", startTime: clock.instant().minus(daysOfExecutionHistory, DAYS).minus(2, HOURS).toEpochMilli(), id: 'old-3']
     ]
 
-    executionRepository.retrievePipelinesForPipelineConfigId("1", _) >> rx.Observable.from(pipelines.findAll {
+    executionRepository.retrievePipelineSummariesForPipelineConfigId("1", _) >> rx.Observable.from(pipelines.findAll {
       it.pipelineConfigId == "1"
     }.collect { config ->
       pipeline {
@@ -304,7 +320,7 @@ class TaskControllerSpec extends Specification {
         pipelineConfigId = config.pipelineConfigId
       }
     })
-    executionRepository.retrievePipelinesForPipelineConfigId("2", _) >> rx.Observable.from(pipelines.findAll {
+    executionRepository.retrievePipelineSummariesForPipelineConfigId("2", _) >> rx.Observable.from(pipelines.findAll {
       it.pipelineConfigId == "2"
     }.collect { config ->
       pipeline {
@@ -314,7 +330,7 @@ class TaskControllerSpec extends Specification {
         pipelineConfigId = config.pipelineConfigId
       }
     })
-    executionRepository.retrievePipelinesForPipelineConfigId("3", _) >> rx.Observable.from(pipelines.findAll {
+    executionRepository.retrievePipelineSummariesForPipelineConfigId("3", _) >> rx.Observable.from(pipelines.findAll {
       it.pipelineConfigId == "3"
     }.collect { config ->
       pipeline {
@@ -324,6 +340,15 @@ class TaskControllerSpec extends Specification {
         pipelineConfigId = config.pipelineConfigId
       }
     })
+    executionRepository.hasPipelineSummaries() >> true
+    executionRepository.retrieveExecutions(ExecutionType.PIPELINE, _, _) >> { type, List<String> ids, int fetchSize ->
+      rx.Observable.from(ids.collect { executionId ->
+        pipeline {
+          id = executionId
+          application = "covfefe"
+        }
+      })
+    }
 
     when:
     def response = mockMvc.perform(get("/pipelines?pipelineConfigIds=1,2")).andReturn().response
@@ -333,6 +358,85 @@ class TaskControllerSpec extends Specification {
     results.id == ['newer-2', 'newer-1']
   }
 
+  void '/pipelines should not read the executions again when the repository has no summaries'() {
+    given:
+    executionRepository.retrievePipelineSummariesForPipelineConfigId("1", _) >> rx.Observable.just(pipeline {
+      id = "full"
+      application = "covfefe"
+      startTime = clock.instant().toEpochMilli()
+      pipelineConfigId = "1"
+    })
+
+    when:
+    def response = mockMvc.perform(get("/pipelines?pipelineConfigIds=1")).andReturn().response
+    List results = new ObjectMapper().readValue(response.contentAsString, List)
+
+    then:
+    results.id == ['full']
+    0 * executionRepository.retrieveExecutions(*_)
+  }
+
+  void '/pipelines should only return executions of applications that can be read'() {
+    given:
+    unreadableApplications << "secret"
+    executionRepository.retrieveExecutions(ExecutionType.PIPELINE, ["1", "2", "3"], _) >> rx.Observable.from([
+      pipeline {
+        id = "1"
+        application = "covfefe"
+      },
+      pipeline {
+        id = "2"
+        application = "secret"
+      },
+      pipeline {
+        id = "3"
+        application = "covfefe"
+      }
+    ])
+
+    when:
+    def response = mockMvc.perform(get("/pipelines?executionIds=1,2,3")).andReturn().response
+    List results = new ObjectMapper().readValue(response.contentAsString, List)
+
+    then:
+    results.id == ['1', '3']
+  }
+
+  void '/pipelines should not return any executions without a permission evaluator'() {
+    given:
+    taskController.fiatPermissionEvaluator = null
+    executionRepository.retrieveExecutions(ExecutionType.PIPELINE, ["1"], _) >> rx.Observable.just(pipeline {
+      id = "1"
+      application = "covfefe"
+    })
+
+    when:
+    def response = mockMvc.perform(get("/pipelines?executionIds=1")).andReturn().response
+
+    then:
+    new ObjectMapper().readValue(response.contentAsString, List) == []
+  }
+
+  void '/pipelines should leave the list unterminated when reading an execution fails'() {
+    given:
+    executionRepository.retrieveExecutions(ExecutionType.PIPELINE, ["1", "2"], _) >> rx.Observable.concat(
+      rx.Observable.just(pipeline {
+        id = "1"
+        application = "covfefe"
+      }),
+      rx.Observable.error(new IllegalStateException("deliberate failure"))
+    )
+    def response = new MockHttpServletResponse()
+
+    when:
+    taskController.listSubsetOfPipelines(null, "1,2", null, null, true, response)
+
+    then:
+    thrown(IllegalStateException)
+    response.contentAsString.startsWith('[{')
+    !response.contentAsString.trim().endsWith("]")
+  }
+
   void 'should update existing stage context'() {
     given:
     def pipeline = PipelineExecutionImpl.newPipeline("covfefe")